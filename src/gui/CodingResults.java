@@ -3,7 +3,7 @@ package gui;
 import java.awt.image.BufferedImage;
 
 import gui.observable.Observable;
-import img.math.Vector2D;
+import img.math.MotionField;
 
 /**
  * Ensemble d'images résultantes du codage d'une trame.
@@ -17,7 +17,7 @@ public class CodingResults
 	/**
 	 * Carte des vecteurs de mouvement.
 	 */
-	public final Observable<Vector2D[][]> movementMap;
+	public final Observable<MotionField> movementMap;
 	/**
 	 * Image reconstruite.
 	 */
@@ -39,6 +39,10 @@ public class CodingResults
 	 * Entropie de la carte de mouvement.
 	 */
 	public final Observable<Double> movementMapEntropy;
+	/**
+	 * Taille de la trame codée dans le flux binaire, en bits.
+	 */
+	public final Observable<Integer> bitstreamSize;
 	
 	public CodingResults()
 	{
@@ -50,5 +54,6 @@ public class CodingResults
 		originalEntropy = new Observable<>(0.0);
 		errorsEntropy = new Observable<>(0.0);
 		movementMapEntropy = new Observable<>(0.0);
+		bitstreamSize = new Observable<>(0);
 	}
 }
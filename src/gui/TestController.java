@@ -5,8 +5,11 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -17,9 +20,13 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 
 import gui.observable.Observable;
 import gui.observable.Observables;
+import img.BytePlane;
 import img.Images;
 import img.Videos;
 import img.math.Matrices;
+import img.videoEncoder.RandomAccessDecoder;
+import img.videoEncoder.StagedEncoder;
+import img.videoEncoder.StagedEncoder.CodedFrame;
 import img.videoEncoder.VideoEncoder;
 import img.videoEncoder.io.EncodedFrame;
 import img.videoEncoder.io.EncodedFrame.FrameType;
@@ -30,6 +37,13 @@ import img.videoEncoder.io.EncoderParams;
  */
 public class TestController
 {
+	/**
+	 * Longueur des groupes de trames de l'encodage : une trame intra toutes
+	 * les GOP_LENGTH trames, pour le défilement rapide et les retours en
+	 * arrière.
+	 */
+	private static final int GOP_LENGTH = 12;
+	
 	/**
 	 * Frame de l'interface de test.
 	 */
@@ -55,18 +69,29 @@ public class TestController
 	 * Tas des résultats.
 	 */
 	private final Stack<CodingResults> resultStack;
+	/**
+	 * Résultats des trames lues mais pas encore encodées, dans l'ordre : la
+	 * lecture et l'encodage se font sur des threads différents.
+	 */
+	private final Queue<CodingResults> pendingResults;
 	/**
 	 * Processus de codage / décodage.
 	 */
 	private Thread encodingThread;
+	/**
+	 * Décodeur de la séquence encodée, pour reconstruire à la demande la
+	 * trame choisie, ou null.
+	 */
+	private RandomAccessDecoder sequenceDecoder;
 	
 	public TestController(final TestFrame frame)
 	{
 		this.frame = frame;
 		
-		encoderParams = new EncoderParams();
+		encoderParams = new EncoderParams().gopLength(GOP_LENGTH);
 		
 		resultStack = new Stack<>();
+		pendingResults = new ConcurrentLinkedQueue<>();
 		
 		videoResults  = new Observable<>();
 		codingResults = new CodingResults();
@@ -109,20 +134,33 @@ public class TestController
 				{
 					videoResults.set(null);
 					resultStack.clear();
+					pendingResults.clear();
+					setSequenceDecoder(null);
+					
+					// Trames encodées, gardées pour le parcours de la séquence.
+					final List<EncodedFrame> encodedFrames = new ArrayList<>();
 					
 					// Flux de trames originales.
-					Stream<int[][]> inputSequence = Videos.readGray(sequencePathPrefix.get())
+					Stream<BytePlane> inputSequence = Videos.readGrayPlanes(sequencePathPrefix.get())
 														  .peek(this::handleNewFrame);
 					
-					// Flux de trames encodées.
-					Stream<EncodedFrame> encodedSequence = VideoEncoder.encode(inputSequence, encoderParams)
-																	   .peek(this::handleNewEncodedFrame);
-					
-					// Flux de trames décodées.
-					VideoEncoder.decode(encodedSequence, encoderParams)
-								.peek(this::handleNewReconstructedFrame)
-								.forEach(img->{});
+					// Flux de trames encodées, par un encodeur en étages : la
+					// lecture, l'estimation de mouvement, la transformée et le
+					// codage entropique se font en même temps sur des trames
+					// successives.
+					try (final Stream<CodedFrame> codedSequence = StagedEncoder.encode(inputSequence, encoderParams))
+					{
+						Stream<EncodedFrame> encodedSequence = codedSequence.peek(this::handleNewEncodedFrame)
+																			.map(CodedFrame::getFrame)
+																			.peek(encodedFrames::add);
+						
+						// Flux de trames décodées, rendues au décodeur une fois affichées.
+						VideoEncoder.decodePlanes(encodedSequence, encoderParams)
+									.peek(this::handleNewReconstructedFrame)
+									.forEach(BytePlane::release);
+					}
 					
+					setSequenceDecoder(new RandomAccessDecoder(encodedFrames, encoderParams));
 					videoResults.set(resultStack.stream().collect(Collectors.toList()));
 				}
 				catch (FileNotFoundException e)
@@ -137,34 +175,38 @@ public class TestController
 	
 	
 	/**
-	 * Une nouvelle trame originale est arrivée.
+	 * Une nouvelle trame originale est arrivée. Appelé par l'étage de lecture
+	 * de l'encodeur.
 	 * 
 	 * @param frame
 	 *            trame originale.
 	 */
-	private void handleNewFrame(final int[][] frame)
+	private void handleNewFrame(final BytePlane frame)
 	{
 		final CodingResults newResults = new CodingResults();
 		final BufferedImage originalImg = Images.grayToJavaImg(frame);
 		
 		codingResults.originalImg.set(originalImg);
 		newResults.originalImg.set(originalImg);
-		newResults.originalEntropy.set(Matrices.computeEntropy(frame));
+		newResults.originalEntropy.set(Matrices.computeEntropy(frame.toInt()));
 		
-		resultStack.push(newResults);
+		pendingResults.add(newResults);
 	}
 	
 	/**
-	 * Une nouvelle trame encodée est arrivée.
+	 * Une nouvelle trame encodée est arrivée. Ses résultats sont ceux de la
+	 * plus ancienne trame originale pas encore encodée.
 	 * 
-	 * @param encodedFrame
-	 *            trame encodée.
+	 * @param codedFrame
+	 *            trame encodée et son flux binaire.
 	 */
-	private void handleNewEncodedFrame(final EncodedFrame encodedFrame)
+	private void handleNewEncodedFrame(final CodedFrame codedFrame)
 	{
+		final EncodedFrame encodedFrame = codedFrame.getFrame();
+		resultStack.push(pendingResults.poll());
+		
 		final BufferedImage errorsImg = Images
-				.grayToJavaImg(Matrices.map(VideoEncoder.inverseTransformErrors(encodedFrame.getTransformedErrors(),
-						encoderParams.getDctBlockSize(), encoderParams.getQuantificationWeights(), encoderParams.getQuantificationScale(), encodedFrame.getType()), -255, 255, 0, 255)
+				.grayToJavaImg(Matrices.map(VideoEncoder.inverseTransformErrors(encodedFrame, encoderParams, null).toInt(), -255, 255, 0, 255)
 		);
 		
 		codingResults.errorsImg.set(errorsImg);
@@ -172,26 +214,45 @@ public class TestController
 		resultStack.peek().errorsImg.set(errorsImg);
 		resultStack.peek().errorsEntropy.set(Matrices.computeEntropy(encodedFrame.getTransformedErrors()));
 		
+		final int bitstreamSize = 8*codedFrame.getBytes().length;
+		codingResults.bitstreamSize.set(bitstreamSize);
+		resultStack.peek().bitstreamSize.set(bitstreamSize);
+		
 		if (encodedFrame.getType() != FrameType.I)
 		{
-			codingResults.movementMap.set(VideoEncoder.inverseTransformBlockMovementMap(encodedFrame.getTransformedBlockMovementMap()));
+			codingResults.movementMap.set(VideoEncoder.inverseTransformBlockMovementMap(encodedFrame.getTransformedBlockMovementMap(), encoderParams));
 			
-			resultStack.peek().movementMap.set(VideoEncoder.inverseTransformBlockMovementMap(encodedFrame.getTransformedBlockMovementMap()));
+			resultStack.peek().movementMap.set(VideoEncoder.inverseTransformBlockMovementMap(encodedFrame.getTransformedBlockMovementMap(), encoderParams));
 			resultStack.peek().movementMapEntropy.set(Matrices.computeEntropy(encodedFrame.getTransformedBlockMovementMap()));
 		}
 	}
 	
 	/**
-	 * Une nouvelle trame reconstruite est arrivée.
+	 * Une nouvelle trame reconstruite est arrivée. Elle n'est pas gardée : le
+	 * parcours de la séquence la décode de nouveau si besoin.
 	 * 
 	 * @param reconstructedFrame
 	 *            trame reconstruite.
 	 */
-	private void handleNewReconstructedFrame(final int[][] reconstructedFrame)
+	private void handleNewReconstructedFrame(final BytePlane reconstructedFrame)
 	{
-		final BufferedImage reconstImg = Images.grayToJavaImg(reconstructedFrame);
-		codingResults.reconstImg.set(reconstImg);
-		resultStack.peek().reconstImg.set(reconstImg);
+		codingResults.reconstImg.set(Images.grayToJavaImg(reconstructedFrame));
+	}
+	
+	/**
+	 * Remplacer le décodeur de la séquence encodée, en fermant le précédent.
+	 * 
+	 * @param decoder
+	 *            nouveau décodeur, ou null.
+	 */
+	private synchronized void setSequenceDecoder(final RandomAccessDecoder decoder)
+	{
+		if (sequenceDecoder != null)
+		{
+			sequenceDecoder.close();
+		}
+		
+		sequenceDecoder = decoder;
 	}
 	
 	// ======================================================================================
@@ -233,14 +294,43 @@ public class TestController
 	 */
 	public void setVideoResult(final int frameIndex)
 	{
-		codingResults.errorsImg.set(videoResults.get().get(frameIndex).errorsImg.get());
-		codingResults.movementMap.set(videoResults.get().get(frameIndex).movementMap.get());
-		codingResults.originalImg.set(videoResults.get().get(frameIndex).originalImg.get());
-		codingResults.reconstImg.set(videoResults.get().get(frameIndex).reconstImg.get());
+		setVideoResult(frameIndex, false);
+	}
+	
+	/**
+	 * Définir le résultat de la frameIndex ème trame, ou de la trame intra qui
+	 * la précède pendant un défilement rapide. La trame reconstruite est
+	 * décodée à la demande, depuis la trame intra précédente ou le repère du
+	 * décodeur le plus proche.
+	 * 
+	 * @param frameIndex
+	 *            index de la trame à définir.
+	 * @param keyFrameOnly
+	 *            vrai pour afficher la trame intra précédente, qui se décode
+	 *            seule.
+	 */
+	public synchronized void setVideoResult(final int frameIndex, final boolean keyFrameOnly)
+	{
+		if (sequenceDecoder == null)
+		{
+			return;
+		}
+		
+		final int shownIndex = keyFrameOnly ? Math.max(sequenceDecoder.findKeyFrame(frameIndex), 0) : frameIndex;
+		final CodingResults results = videoResults.get().get(shownIndex);
+		
+		final BytePlane reconstructedFrame = sequenceDecoder.seek(shownIndex);
+		codingResults.reconstImg.set(Images.grayToJavaImg(reconstructedFrame));
+		reconstructedFrame.release();
+		
+		codingResults.errorsImg.set(results.errorsImg.get());
+		codingResults.movementMap.set(results.movementMap.get());
+		codingResults.originalImg.set(results.originalImg.get());
 		
-		codingResults.originalEntropy.set(videoResults.get().get(frameIndex).originalEntropy.get());
-		codingResults.errorsEntropy.set(videoResults.get().get(frameIndex).errorsEntropy.get());
-		codingResults.movementMapEntropy.set(videoResults.get().get(frameIndex).movementMapEntropy.get());
+		codingResults.originalEntropy.set(results.originalEntropy.get());
+		codingResults.errorsEntropy.set(results.errorsEntropy.get());
+		codingResults.movementMapEntropy.set(results.movementMapEntropy.get());
+		codingResults.bitstreamSize.set(results.bitstreamSize.get());
 	}
 	
 	// ======================================================================================
@@ -28,7 +28,6 @@ import javax.swing.event.ChangeListener;
 
 import gui.custom.VectorMapView;
 import gui.observable.Observables;
-import img.math.Vector2D;
 
 /**
  * Frame principal pour l'interface de test.
@@ -183,13 +182,8 @@ public class TestFrame extends JFrame
 			{new JLabel("Flux binaire"), outStreamLbl}	
 		};
 		
-		controller.getCodingResults().errorsEntropy.addListener(entropy->
-		{
-			final BufferedImage errorImg = controller.getCodingResults().errorsImg.get();
-			final Vector2D[][] vectorMap = controller.getCodingResults().movementMap.get();
-			
-			outStreamLbl.setText(entropy*errorImg.getWidth()*errorImg.getHeight()/1000 + " Kbits");
-		});
+		controller.getCodingResults().bitstreamSize.addListener(size->
+			outStreamLbl.setText(size/1000.0 + " Kbits"));
 		
 		populateForm(resultPanel, new Insets(5, 5, 5, 5), resultComponents);
 		
@@ -272,9 +266,11 @@ public class TestFrame extends JFrame
 					progressSlider.removeChangeListener(listener);
 				}
 				
+				// Défilement rapide sur les trames intra tant que le curseur est
+				// déplacé, trame exacte une fois relâché.
 				progressSlider.addChangeListener(e->
 				{
-					controller.setVideoResult(progressSlider.getValue());
+					controller.setVideoResult(progressSlider.getValue(), progressSlider.getValueIsAdjusting());
 				});
 				controller.setVideoResult(0);
 				progressSlider.setValue(0);
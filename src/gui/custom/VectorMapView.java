@@ -12,7 +12,7 @@ import java.awt.geom.AffineTransform;
 
 import javax.swing.JComponent;
 
-import img.math.Vector2D;
+import img.math.MotionField;
 
 /**
  * Visualisateur pour les champs de vecteurs.
@@ -22,7 +22,7 @@ public class VectorMapView extends JComponent
 	/**
 	 * Champs de vecteurs à visualiser.
 	 */
-	private Vector2D[][] vectorMap;
+	private MotionField vectorMap;
 	/**
 	 * Delta x entre chaque vecteur.
 	 */
@@ -81,8 +81,8 @@ public class VectorMapView extends JComponent
 		final int width  = getWidth()-getInsets().left-getInsets().right, 
 				  height = getHeight()-getInsets().top-getInsets().bottom;
 		
-		final int nW = vectorMap[0].length,
-				  nH = vectorMap.length;
+		final int nW = vectorMap.getWidth(),
+				  nH = vectorMap.getHeight();
 		
 		final int dxScaled = (int) (dx * scale),
 				  dyScaled = (int) (dy * scale);
@@ -124,7 +124,7 @@ public class VectorMapView extends JComponent
 						  vectDx   = vectTipX - vectX,
 						  vectDy   = vectTipY - vectY;
 				*/
-				drawVector(g2, x*dxScaled, y*dyScaled, -(int)Math.round(vectorMap[y][x].x() * scale), -(int)Math.round(vectorMap[y][x].y() * scale));
+				drawVector(g2, x*dxScaled, y*dyScaled, -(int)Math.round(vectorMap.x(x, y) * scale), -(int)Math.round(vectorMap.y(x, y) * scale));
 				//drawVector(g2, vectTipX, vectTipY, vectDx, vectDy);
 			}
 		}
@@ -145,7 +145,7 @@ public class VectorMapView extends JComponent
 	 * @param dy
 	 *            delta y.
 	 */
-	public void setVectorMap(final Vector2D[][] vectorMap, final int dx, final int dy)
+	public void setVectorMap(final MotionField vectorMap, final int dx, final int dy)
 	{
 		this.vectorMap = vectorMap;
 		
@@ -161,7 +161,7 @@ public class VectorMapView extends JComponent
 	 * @param ds
 	 *            delta s.
 	 */
-	public void setVectorMap(final Vector2D[][] vectorMap, final int ds)
+	public void setVectorMap(final MotionField vectorMap, final int ds)
 	{
 		setVectorMap(vectorMap, ds, ds);
 		repaint();
@@ -0,0 +1,311 @@
+package img;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plan d'échantillons 8 bits non signés (0 à 255), stocké dans un byte[] sur
+ * le tas, ou hors du tas dans un ByteBuffer direct ou projeté en mémoire
+ * (voir {@link #allocateDirect(int, int)}).<br>
+ * Les boucles critiques accèdent directement au tableau avec
+ * {@link #getData()} lorsque {@link #hasArray()} est vrai, et passent sinon par
+ * {@link #getRow(int, int, byte[], int, int)} et
+ * {@link #putRow(int, int, byte[], int, int)}.
+ */
+public class BytePlane extends Plane
+{
+	/**
+	 * Échantillons du plan sur le tas, null pour un plan hors du tas.
+	 */
+	private final byte[] data;
+	/**
+	 * Échantillons du plan hors du tas, null pour un plan sur le tas.
+	 */
+	private final ByteBuffer buffer;
+	
+	public BytePlane(final int width, final int height)
+	{
+		this(width, height, width);
+	}
+	
+	public BytePlane(final int width, final int height, final int stride)
+	{
+		this(new byte[height*stride], width, height, stride);
+	}
+	
+	public BytePlane(final byte[] data, final int width, final int height, final int stride)
+			throws IllegalArgumentException
+	{
+		super(width, height, stride);
+		
+		if (data.length < (height-1)*stride + width)
+		{
+			throw new IllegalArgumentException("Tableau trop petit pour le plan.");
+		}
+		this.data   = data;
+		this.buffer = null;
+	}
+	
+	/**
+	 * Créer un plan dont les échantillons sont stockés dans le buffer spécifié,
+	 * typiquement direct (ByteBuffer.allocateDirect) ou projeté en mémoire
+	 * (FileChannel.map). Les indices sont absolus : la position du buffer est
+	 * ignorée.
+	 * 
+	 * @param buffer
+	 *            buffer des échantillons.
+	 * @param width
+	 *            largeur du plan.
+	 * @param height
+	 *            hauteur du plan.
+	 * @param stride
+	 *            pas entre deux lignes du plan.
+	 * @throws IllegalArgumentException
+	 *             si le buffer est trop petit pour le plan.
+	 */
+	public BytePlane(final ByteBuffer buffer, final int width, final int height, final int stride)
+			throws IllegalArgumentException
+	{
+		super(width, height, stride);
+		
+		if (buffer.capacity() < (height-1)*stride + width)
+		{
+			throw new IllegalArgumentException("Buffer trop petit pour le plan.");
+		}
+		this.data   = null;
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Créer un plan stocké hors du tas, dans un ByteBuffer direct.
+	 * 
+	 * @param width
+	 *            largeur du plan.
+	 * @param height
+	 *            hauteur du plan.
+	 * @return plan hors du tas, initialement nul.
+	 */
+	public static BytePlane allocateDirect(final int width, final int height)
+	{
+		return new BytePlane(ByteBuffer.allocateDirect(width*height), width, height, width);
+	}
+	
+	/**
+	 * Créer un plan à partir d'une matrice d'entiers entre 0 et 255.
+	 * 
+	 * @param matrix
+	 *            matrice d'entiers.
+	 * @return plan contenant les valeurs de la matrice.
+	 */
+	public static BytePlane fromInt(final int[][] matrix)
+	{
+		final int h = matrix.length,
+				  w = matrix[0].length;
+		
+		final BytePlane plane = new BytePlane(w, h);
+		for (int y = 0; y < h; ++y)
+		{
+			final int[] row = matrix[y];
+			final int offset = y*w;
+			
+			for (int x = 0; x < w; ++x)
+			{
+				plane.data[offset + x] = (byte) row[x];
+			}
+		}
+		return plane;
+	}
+	
+	/**
+	 * Indiquer si les échantillons du plan sont dans un tableau sur le tas.
+	 * 
+	 * @return vrai si {@link #getData()} peut être utilisé.
+	 */
+	public boolean hasArray()
+	{
+		return data != null;
+	}
+	
+	/**
+	 * Obtenir le tableau des échantillons d'un plan sur le tas. Un échantillon
+	 * se lit avec data[i] &amp; 0xFF.
+	 * 
+	 * @return tableau des échantillons.
+	 * @throws UnsupportedOperationException
+	 *             si le plan est stocké hors du tas.
+	 */
+	public byte[] getData() throws UnsupportedOperationException
+	{
+		if (data == null)
+		{
+			throw new UnsupportedOperationException("Plan stocké hors du tas.");
+		}
+		return data;
+	}
+	
+	/**
+	 * Obtenir le buffer des échantillons d'un plan stocké hors du tas.
+	 * 
+	 * @return buffer des échantillons, ou null pour un plan sur le tas.
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+	
+	/**
+	 * Copier une portion de ligne du plan dans un tableau.
+	 * 
+	 * @param x
+	 *            position x du premier échantillon.
+	 * @param y
+	 *            ligne.
+	 * @param dest
+	 *            tableau destination.
+	 * @param destOffset
+	 *            indice de destination du premier échantillon.
+	 * @param length
+	 *            nombre d'échantillons.
+	 */
+	public void getRow(final int x, final int y, final byte[] dest, final int destOffset, final int length)
+	{
+		final int offset = y*stride + x;
+		
+		if (data != null)
+		{
+			System.arraycopy(data, offset, dest, destOffset, length);
+			return;
+		}
+		
+		for (int i = 0; i < length; ++i)
+		{
+			dest[destOffset + i] = buffer.get(offset + i);
+		}
+	}
+	
+	/**
+	 * Copier un tableau dans une portion de ligne du plan.
+	 * 
+	 * @param x
+	 *            position x du premier échantillon.
+	 * @param y
+	 *            ligne.
+	 * @param src
+	 *            tableau source.
+	 * @param srcOffset
+	 *            indice source du premier échantillon.
+	 * @param length
+	 *            nombre d'échantillons.
+	 */
+	public void putRow(final int x, final int y, final byte[] src, final int srcOffset, final int length)
+	{
+		final int offset = y*stride + x;
+		
+		if (data != null)
+		{
+			System.arraycopy(src, srcOffset, data, offset, length);
+			return;
+		}
+		
+		for (int i = 0; i < length; ++i)
+		{
+			buffer.put(offset + i, src[srcOffset + i]);
+		}
+	}
+	
+	/**
+	 * Copier une région du plan dans un tableau compact (pas égal à la
+	 * largeur de la région).
+	 * 
+	 * @param x
+	 *            position x du coin supérieur gauche de la région.
+	 * @param y
+	 *            position y du coin supérieur gauche de la région.
+	 * @param regionW
+	 *            largeur de la région.
+	 * @param regionH
+	 *            hauteur de la région.
+	 * @return échantillons de la région.
+	 */
+	public byte[] copyRegion(final int x, final int y, final int regionW, final int regionH)
+	{
+		return copyRegion(x, y, regionW, regionH, new byte[regionW*regionH]);
+	}
+	
+	/**
+	 * Copier une région du plan dans un tableau existant, au début et en
+	 * format compact (pas égal à la largeur de la région).
+	 * 
+	 * @param x
+	 *            position x du coin supérieur gauche de la région.
+	 * @param y
+	 *            position y du coin supérieur gauche de la région.
+	 * @param regionW
+	 *            largeur de la région.
+	 * @param regionH
+	 *            hauteur de la région.
+	 * @param region
+	 *            tableau d'au moins regionW*regionH échantillons recevant la
+	 *            région.
+	 * @return échantillons de la région (region).
+	 */
+	public byte[] copyRegion(final int x, final int y, final int regionW, final int regionH, final byte[] region)
+	{
+		for (int j = 0; j < regionH; ++j)
+		{
+			getRow(x, y + j, region, j*regionW, regionW);
+		}
+		return region;
+	}
+	
+	/**
+	 * Copier tous les échantillons d'un plan de même taille dans ce plan.
+	 * 
+	 * @param src
+	 *            plan source.
+	 */
+	public void copyFrom(final BytePlane src)
+	{
+		final byte[] row = new byte[width];
+		for (int y = 0; y < height; ++y)
+		{
+			src.getRow(0, y, row, 0, width);
+			putRow(0, y, row, 0, width);
+		}
+	}
+	
+	@Override
+	public int get(final int x, final int y)
+	{
+		return (data != null ? data[y*stride + x] : buffer.get(y*stride + x)) & 0xFF;
+	}
+	
+	@Override
+	public void set(final int x, final int y, final int value)
+	{
+		if (data != null)
+		{
+			data[y*stride + x] = (byte) value;
+		}
+		else
+		{
+			buffer.put(y*stride + x, (byte) value);
+		}
+	}
+	
+	@Override
+	public int[][] toInt()
+	{
+		final int[][] matrix = new int[height][width];
+		final byte[] row = new byte[width];
+		
+		for (int y = 0; y < height; ++y)
+		{
+			getRow(0, y, row, 0, width);
+			for (int x = 0; x < width; ++x)
+			{
+				matrix[y][x] = row[x] & 0xFF;
+			}
+		}
+		return matrix;
+	}
+}
@@ -44,6 +44,39 @@ public class Images
 		return javaImg;
 	}
 
+	/**
+	 * Convertit un plan d'échantillons en niveaux de gris en une image
+	 * buffererisée java.
+	 * 
+	 * @param img
+	 *            plan d'échantillons en niveaux de gris.
+	 * @return image buffererisée java.
+	 */
+	public static BufferedImage grayToJavaImg(final BytePlane img)
+	{
+		final int w = img.getWidth(),
+				  h = img.getHeight();
+		
+		final BufferedImage javaImg = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+		final byte[] grayRow = new byte[w];
+		final int[] rgbRow = new int[w];
+		
+		// Convertir le niveau de gris en entier rgb, ligne par ligne.
+		for (int y = 0; y < h; ++y)
+		{
+			img.getRow(0, y, grayRow, 0, w);
+			
+			for (int x = 0; x < w; ++x)
+			{
+				final int gray = grayRow[x] & 0xFF;
+				rgbRow[x] = gray | (gray << 8) | (gray << 16);
+			}
+			javaImg.setRGB(0, y, w, 1, rgbRow, 0, w);
+		}
+		
+		return javaImg;
+	}
+	
 	/**
 	 * Lit une image couleur et retourne une matrice d'entiers dont les 3
 	 * derniers octets sont les composantes R, G et B.
@@ -121,4 +154,45 @@ public class Images
 			throw new FileNotFoundException("Fichier inexistant ou malformé.");
 		}
 	}
+	
+	/**
+	 * Lit une image en niveaux de gris et retourne un plan d'échantillons 8
+	 * bits.
+	 * 
+	 * @param filePath
+	 *            chemin du fichier.
+	 * @return plan d'échantillons.
+	 * @throws FileNotFoundException
+	 *             si le fichier est malformé ou inexistant.
+	 */
+	public static BytePlane readGrayPlane(final Path filePath) throws FileNotFoundException
+	{
+		try
+		{
+			final BufferedImage img = ImageIO.read(filePath.toFile());
+			final int w = img.getWidth(),
+					  h = img.getHeight();
+			
+			final BytePlane plane = new BytePlane(w, h);
+			final byte[] data = plane.getData();
+			final int[] rgbRow = new int[w];
+			
+			// Garder l'octet de poids faible de chaque pixel rgb.
+			for (int y = 0; y < h; ++y)
+			{
+				img.getRGB(0, y, w, 1, rgbRow, 0, w);
+				
+				final int offset = plane.index(0, y);
+				for (int x = 0; x < w; ++x)
+				{
+					data[offset + x] = (byte) rgbRow[x];
+				}
+			}
+			
+			return plane;
+		} catch (IOException e)
+		{
+			throw new FileNotFoundException("Fichier inexistant ou malformé.");
+		}
+	}
 }
@@ -0,0 +1,81 @@
+package img;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Allocateur de plans stockés hors du tas, dans des ByteBuffers directs. Les
+ * buffers rendus sont conservés et réutilisés pour les plans de même taille :
+ * la mémoire hors du tas n'est allouée qu'une fois et n'est pas soumise aux
+ * pauses du ramasse-miettes.<br>
+ * {@link #close()} abandonne les buffers conservés, qui seront libérés avec
+ * les ByteBuffers directs qui les référencent.
+ */
+public class OffHeapPlaneAllocator implements PlaneAllocator, AutoCloseable
+{
+	/**
+	 * Buffers rendus, par capacité.
+	 */
+	private final Map<Integer, ArrayDeque<ByteBuffer>> freeBuffers = new HashMap<>();
+	/**
+	 * Nombre d'octets alloués hors du tas, rendus ou non.
+	 */
+	private long allocatedBytes;
+	
+	@Override
+	public synchronized BytePlane allocate(final int width, final int height)
+	{
+		final ArrayDeque<ByteBuffer> free = freeBuffers.get(width*height);
+		
+		ByteBuffer buffer = free != null ? free.poll() : null;
+		if (buffer == null)
+		{
+			buffer = ByteBuffer.allocateDirect(width*height);
+			allocatedBytes += width*height;
+		}
+		
+		return new BytePlane(buffer, width, height, width);
+	}
+	
+	@Override
+	public synchronized void release(final BytePlane plane)
+	{
+		final ByteBuffer buffer = plane.getBuffer();
+		
+		// Plan sur le tas ou buffer d'une autre origine : rien à conserver.
+		if (buffer == null || !buffer.isDirect())
+		{
+			return;
+		}
+		
+		freeBuffers.computeIfAbsent(buffer.capacity(), capacity -> new ArrayDeque<>()).push(buffer);
+	}
+	
+	/**
+	 * Obtenir le nombre d'octets alloués hors du tas par cet allocateur.
+	 * 
+	 * @return nombre d'octets alloués.
+	 */
+	public synchronized long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+	
+	/**
+	 * Abandonner les buffers conservés.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		for (final ArrayDeque<ByteBuffer> free : freeBuffers.values())
+		{
+			for (final ByteBuffer buffer : free)
+			{
+				allocatedBytes -= buffer.capacity();
+			}
+		}
+		freeBuffers.clear();
+	}
+}
@@ -0,0 +1,200 @@
+package img;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plan d'image stocké dans un unique tableau à plat : l'élément (x, y) est à
+ * l'indice y*stride + x. Le pas (stride) peut être plus grand que la largeur.
+ * <br>
+ * Un plan obtenu d'un {@link PlanePool} compte ses références : il retourne
+ * au pool lorsque la dernière est rendue avec {@link #release()}. Pour les
+ * autres plans, {@link #retain()} et {@link #release()} sont sans effet.
+ */
+public abstract class Plane
+{
+	/**
+	 * Largeur du plan.
+	 */
+	protected final int width;
+	/**
+	 * Hauteur du plan.
+	 */
+	protected final int height;
+	/**
+	 * Nombre d'éléments entre le début de deux lignes consécutives.
+	 */
+	protected final int stride;
+	/**
+	 * Pool auquel appartient le plan, null s'il n'en vient pas.
+	 */
+	private PlanePool pool;
+	/**
+	 * Nombre de références sur le plan tant qu'il est sorti du pool.
+	 */
+	private final AtomicInteger references = new AtomicInteger();
+	
+	protected Plane(final int width, final int height, final int stride) throws IllegalArgumentException
+	{
+		if (width <= 0 || height <= 0 || stride < width)
+		{
+			throw new IllegalArgumentException("Dimensions du plan invalides.");
+		}
+		
+		this.width  = width;
+		this.height = height;
+		this.stride = stride;
+	}
+	
+	/**
+	 * Obtenir la largeur du plan.
+	 * @return largeur du plan.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+	
+	/**
+	 * Obtenir la hauteur du plan.
+	 * @return hauteur du plan.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+	
+	/**
+	 * Obtenir le pas entre deux lignes du plan.
+	 * @return pas entre deux lignes du plan.
+	 */
+	public int getStride()
+	{
+		return stride;
+	}
+	
+	/**
+	 * Ajouter une référence sur le plan, qui devra être rendue avec
+	 * {@link #release()}.
+	 * 
+	 * @return ce plan.
+	 */
+	public Plane retain()
+	{
+		if (pool != null)
+		{
+			references.incrementAndGet();
+		}
+		return this;
+	}
+	
+	/**
+	 * Rendre une référence sur le plan. Le plan retourne à son pool à la
+	 * dernière référence rendue et ne doit plus être utilisé ensuite.
+	 * 
+	 * @throws IllegalStateException
+	 *             si toutes les références ont déjà été rendues.
+	 */
+	public void release() throws IllegalStateException
+	{
+		if (pool == null)
+		{
+			return;
+		}
+		
+		final int count = references.decrementAndGet();
+		if (count == 0)
+		{
+			pool.recycle(this);
+		}
+		else if (count < 0)
+		{
+			references.incrementAndGet();
+			throw new IllegalStateException("Le plan a déjà été rendu.");
+		}
+	}
+	
+	/**
+	 * Confier le plan à un pool, avec une seule référence.
+	 * 
+	 * @param pool
+	 *            pool auquel appartient le plan.
+	 */
+	/*package*/ void attach(final PlanePool pool)
+	{
+		this.pool = pool;
+		references.set(1);
+	}
+	
+	/**
+	 * Obtenir l'indice de l'élément (x, y) dans le tableau du plan.
+	 * 
+	 * @param x
+	 *            position x.
+	 * @param y
+	 *            position y.
+	 * @return indice de l'élément.
+	 */
+	public int index(final int x, final int y)
+	{
+		return y*stride + x;
+	}
+	
+	/**
+	 * Obtenir la valeur de l'élément (x, y).
+	 * 
+	 * @param x
+	 *            position x.
+	 * @param y
+	 *            position y.
+	 * @return valeur de l'élément.
+	 */
+	public abstract int get(final int x, final int y);
+	
+	/**
+	 * Modifier la valeur de l'élément (x, y).
+	 * 
+	 * @param x
+	 *            position x.
+	 * @param y
+	 *            position y.
+	 * @param value
+	 *            nouvelle valeur de l'élément.
+	 */
+	public abstract void set(final int x, final int y, final int value);
+	
+	/**
+	 * Convertir le plan en matrice d'entiers.
+	 * 
+	 * @return matrice d'entiers de taille height x width.
+	 */
+	public int[][] toInt()
+	{
+		final int[][] matrix = new int[height][width];
+		for (int y = 0; y < height; ++y)
+		{
+			for (int x = 0; x < width; ++x)
+			{
+				matrix[y][x] = get(x, y);
+			}
+		}
+		return matrix;
+	}
+	
+	/**
+	 * Convertir le plan en matrice de réels.
+	 * 
+	 * @return matrice de réels de taille height x width.
+	 */
+	public double[][] toDouble()
+	{
+		final double[][] matrix = new double[height][width];
+		for (int y = 0; y < height; ++y)
+		{
+			for (int x = 0; x < width; ++x)
+			{
+				matrix[y][x] = get(x, y);
+			}
+		}
+		return matrix;
+	}
+}
@@ -0,0 +1,47 @@
+package img;
+
+/**
+ * Allocateur de plans d'échantillons 8 bits. Les plans obtenus avec
+ * {@link #allocate(int, int)} doivent être rendus avec
+ * {@link #release(BytePlane)} lorsqu'ils ne sont plus utilisés.
+ */
+public interface PlaneAllocator
+{
+	/**
+	 * Allocateur de plans sur le tas : la libération est laissée au
+	 * ramasse-miettes.
+	 */
+	public static final PlaneAllocator HEAP = new PlaneAllocator()
+	{
+		@Override
+		public BytePlane allocate(final int width, final int height)
+		{
+			return new BytePlane(width, height);
+		}
+		
+		@Override
+		public void release(final BytePlane plane)
+		{
+		}
+	};
+	
+	/**
+	 * Obtenir un plan. Son contenu initial n'est pas défini.
+	 * 
+	 * @param width
+	 *            largeur du plan.
+	 * @param height
+	 *            hauteur du plan.
+	 * @return plan de la taille spécifiée.
+	 */
+	public BytePlane allocate(final int width, final int height);
+	
+	/**
+	 * Rendre un plan obtenu avec {@link #allocate(int, int)}. Le plan ne doit
+	 * plus être utilisé ensuite.
+	 * 
+	 * @param plane
+	 *            plan à rendre.
+	 */
+	public void release(final BytePlane plane);
+}
@@ -0,0 +1,258 @@
+package img;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool borné de plans et de matrices de la taille des trames, propre à une
+ * session d'encodage ou de décodage. En régime établi, les plans rendus sont
+ * réutilisés d'une trame à l'autre et aucune matrice n'est allouée par trame.
+ * <br>
+ * Les plans obtenus comptent leurs références (voir {@link Plane#retain()} et
+ * {@link Plane#release()}) : une trame gardée comme référence ne retourne au
+ * pool que lorsque tous ses utilisateurs l'ont rendue. Au-delà de la capacité,
+ * les plans rendus sont abandonnés (ou rendus à l'allocateur sous-jacent pour
+ * les plans 8 bits).
+ */
+public class PlanePool implements PlaneAllocator, AutoCloseable
+{
+	/**
+	 * Nombre de plans conservés par défaut pour chaque type.
+	 */
+	public static final int DEFAULT_CAPACITY = 4;
+	
+	/**
+	 * Allocateur des plans 8 bits.
+	 */
+	private final PlaneAllocator allocator;
+	/**
+	 * Nombre maximal de plans conservés pour chaque type.
+	 */
+	private final int capacity;
+	/**
+	 * Plans 8 bits disponibles.
+	 */
+	private final ArrayDeque<BytePlane> bytePlanes = new ArrayDeque<>();
+	/**
+	 * Plans 16 bits disponibles.
+	 */
+	private final ArrayDeque<ShortPlane> shortPlanes = new ArrayDeque<>();
+	/**
+	 * Matrices de réels disponibles.
+	 */
+	private final ArrayDeque<double[][]> matrices = new ArrayDeque<>();
+	/**
+	 * Pool fermé : les plans rendus ne sont plus conservés.
+	 */
+	private boolean closed;
+	
+	/**
+	 * Créer un pool de {@link #DEFAULT_CAPACITY} plans par type.
+	 * 
+	 * @param allocator
+	 *            allocateur des plans 8 bits.
+	 */
+	public PlanePool(final PlaneAllocator allocator)
+	{
+		this(allocator, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Créer un pool.
+	 * 
+	 * @param allocator
+	 *            allocateur des plans 8 bits.
+	 * @param capacity
+	 *            nombre maximal de plans conservés pour chaque type.
+	 * @throws IllegalArgumentException
+	 *             si la capacité est négative.
+	 */
+	public PlanePool(final PlaneAllocator allocator, final int capacity) throws IllegalArgumentException
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("La capacité du pool doit être positive.");
+		}
+		
+		this.allocator = allocator;
+		this.capacity  = capacity;
+	}
+	
+	/**
+	 * Obtenir un plan 8 bits avec une référence. Son contenu initial n'est
+	 * pas défini.
+	 */
+	@Override
+	public synchronized BytePlane allocate(final int width, final int height)
+	{
+		BytePlane plane = poll(bytePlanes, width, height);
+		if (plane == null)
+		{
+			plane = allocator.allocate(width, height);
+		}
+		
+		plane.attach(this);
+		return plane;
+	}
+	
+	/**
+	 * Rendre une référence sur un plan 8 bits, équivalent à
+	 * {@link Plane#release()}.
+	 */
+	@Override
+	public void release(final BytePlane plane)
+	{
+		plane.release();
+	}
+	
+	/**
+	 * Obtenir un plan 16 bits avec une référence. Son contenu initial n'est
+	 * pas défini.
+	 * 
+	 * @param width
+	 *            largeur du plan.
+	 * @param height
+	 *            hauteur du plan.
+	 * @return plan de la taille spécifiée.
+	 */
+	public synchronized ShortPlane allocateShort(final int width, final int height)
+	{
+		ShortPlane plane = poll(shortPlanes, width, height);
+		if (plane == null)
+		{
+			plane = new ShortPlane(width, height);
+		}
+		
+		plane.attach(this);
+		return plane;
+	}
+	
+	/**
+	 * Obtenir une matrice de réels de travail. Son contenu initial n'est pas
+	 * défini ; elle doit être rendue avec {@link #releaseMatrix(double[][])}.
+	 * 
+	 * @param width
+	 *            largeur de la matrice.
+	 * @param height
+	 *            hauteur de la matrice.
+	 * @return matrice de taille height x width.
+	 */
+	public synchronized double[][] allocateMatrix(final int width, final int height)
+	{
+		for (final Iterator<double[][]> it = matrices.iterator(); it.hasNext();)
+		{
+			final double[][] matrix = it.next();
+			if (matrix.length == height && matrix[0].length == width)
+			{
+				it.remove();
+				return matrix;
+			}
+		}
+		
+		return new double[height][width];
+	}
+	
+	/**
+	 * Rendre une matrice obtenue avec {@link #allocateMatrix(int, int)}. Elle
+	 * ne doit plus être utilisée ensuite.
+	 * 
+	 * @param matrix
+	 *            matrice à rendre.
+	 */
+	public synchronized void releaseMatrix(final double[][] matrix)
+	{
+		if (!closed)
+		{
+			offer(matrices, matrix);
+		}
+	}
+	
+	/**
+	 * Reprendre un plan dont la dernière référence vient d'être rendue.
+	 * 
+	 * @param plane
+	 *            plan à reprendre.
+	 */
+	/*package*/ synchronized void recycle(final Plane plane)
+	{
+		if (plane instanceof BytePlane)
+		{
+			final BytePlane evicted = closed ? (BytePlane) plane : offer(bytePlanes, (BytePlane) plane);
+			if (evicted != null)
+			{
+				allocator.release(evicted);
+			}
+		}
+		else if (plane instanceof ShortPlane && !closed)
+		{
+			offer(shortPlanes, (ShortPlane) plane);
+		}
+	}
+	
+	/**
+	 * Abandonner les plans conservés. Les plans encore utilisés restent
+	 * valides, et sont rendus à l'allocateur sous-jacent à leur dernière
+	 * référence.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		closed = true;
+		
+		for (final BytePlane plane : bytePlanes)
+		{
+			allocator.release(plane);
+		}
+		bytePlanes.clear();
+		shortPlanes.clear();
+		matrices.clear();
+	}
+	
+	/**
+	 * Retirer un plan de la taille spécifiée d'une liste de plans disponibles.
+	 * 
+	 * @param free
+	 *            plans disponibles.
+	 * @param width
+	 *            largeur du plan.
+	 * @param height
+	 *            hauteur du plan.
+	 * @return plan retiré, ou null si aucun n'a cette taille.
+	 */
+	private static <P extends Plane> P poll(final ArrayDeque<P> free, final int width, final int height)
+	{
+		for (final Iterator<P> it = free.iterator(); it.hasNext();)
+		{
+			final P plane = it.next();
+			if (plane.getWidth() == width && plane.getHeight() == height)
+			{
+				it.remove();
+				return plane;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Ajouter un élément à une liste d'éléments disponibles, en évinçant le
+	 * plus ancien si la capacité est atteinte.
+	 * 
+	 * @param free
+	 *            éléments disponibles.
+	 * @param element
+	 *            élément à ajouter.
+	 * @return élément évincé, ou null.
+	 */
+	private <E> E offer(final ArrayDeque<E> free, final E element)
+	{
+		if (capacity == 0)
+		{
+			return element;
+		}
+		
+		final E evicted = free.size() >= capacity ? free.pollLast() : null;
+		free.push(element);
+		return evicted;
+	}
+}
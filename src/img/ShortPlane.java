@@ -0,0 +1,144 @@
+package img;
+
+/**
+ * Plan de valeurs 16 bits signées (erreurs de prédiction), stocké dans un
+ * short[].
+ */
+public class ShortPlane extends Plane
+{
+	/**
+	 * Valeurs du plan.
+	 */
+	private final short[] data;
+	
+	public ShortPlane(final int width, final int height)
+	{
+		this(width, height, width);
+	}
+	
+	public ShortPlane(final int width, final int height, final int stride)
+	{
+		this(new short[height*stride], width, height, stride);
+	}
+	
+	public ShortPlane(final short[] data, final int width, final int height, final int stride)
+			throws IllegalArgumentException
+	{
+		super(width, height, stride);
+		
+		if (data.length < (height-1)*stride + width)
+		{
+			throw new IllegalArgumentException("Tableau trop petit pour le plan.");
+		}
+		this.data = data;
+	}
+	
+	/**
+	 * Créer un plan à partir d'une matrice d'entiers tenant sur 16 bits.
+	 * 
+	 * @param matrix
+	 *            matrice d'entiers.
+	 * @return plan contenant les valeurs de la matrice.
+	 */
+	public static ShortPlane fromInt(final int[][] matrix)
+	{
+		final int h = matrix.length,
+				  w = matrix[0].length;
+		
+		final ShortPlane plane = new ShortPlane(w, h);
+		for (int y = 0; y < h; ++y)
+		{
+			final int[] row = matrix[y];
+			final int offset = y*w;
+			
+			for (int x = 0; x < w; ++x)
+			{
+				plane.data[offset + x] = (short) row[x];
+			}
+		}
+		return plane;
+	}
+	
+	/**
+	 * Créer un plan 16 bits à partir d'un plan d'échantillons 8 bits.
+	 * 
+	 * @param plane
+	 *            plan d'échantillons.
+	 * @return plan contenant les valeurs des échantillons.
+	 */
+	public static ShortPlane fromBytes(final BytePlane plane)
+	{
+		final int h = plane.getHeight(),
+				  w = plane.getWidth();
+		final byte[] row = new byte[w];
+		
+		final ShortPlane shortPlane = new ShortPlane(w, h);
+		for (int y = 0; y < h; ++y)
+		{
+			final int offset = y*w;
+			plane.getRow(0, y, row, 0, w);
+			
+			for (int x = 0; x < w; ++x)
+			{
+				shortPlane.data[offset + x] = (short) (row[x] & 0xFF);
+			}
+		}
+		return shortPlane;
+	}
+	
+	/**
+	 * Obtenir le tableau des valeurs du plan.
+	 * 
+	 * @return tableau des valeurs.
+	 */
+	public short[] getData()
+	{
+		return data;
+	}
+	
+	@Override
+	public int get(final int x, final int y)
+	{
+		return data[y*stride + x];
+	}
+	
+	@Override
+	public void set(final int x, final int y, final int value)
+	{
+		data[y*stride + x] = (short) value;
+	}
+	
+	@Override
+	public int[][] toInt()
+	{
+		final int[][] matrix = new int[height][width];
+		for (int y = 0; y < height; ++y)
+		{
+			final int[] row = matrix[y];
+			final int offset = y*stride;
+			
+			for (int x = 0; x < width; ++x)
+			{
+				row[x] = data[offset + x];
+			}
+		}
+		return matrix;
+	}
+	
+	@Override
+	public double[][] toDouble()
+	{
+		final double[][] matrix = new double[height][width];
+		for (int y = 0; y < height; ++y)
+		{
+			final double[] row = matrix[y];
+			final int offset = y*stride;
+			
+			for (int x = 0; x < width; ++x)
+			{
+				row[x] = data[offset + x];
+			}
+		}
+		return matrix;
+	}
+}
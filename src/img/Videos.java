@@ -26,6 +26,33 @@ public class Videos
 	 * @throws FileNotFoundException
 	 */
 	public static Stream<int[][]> readGray(final Path sequencePath) throws FileNotFoundException
+	{
+		return listFrames(sequencePath).map(asUncheckedFunction(Images::readGray));
+	}
+	
+	/**
+	 * Lire une séquence d'images en niveau de gris, sous forme de plans
+	 * d'échantillons 8 bits. Voir {@link #readGray(Path)}.
+	 * 
+	 * @param sequencePath
+	 *            Emplacement de la séquence avec le prefixe de nom.
+	 * @return Flux de trames de la séquence.
+	 * @throws FileNotFoundException
+	 */
+	public static Stream<BytePlane> readGrayPlanes(final Path sequencePath) throws FileNotFoundException
+	{
+		return listFrames(sequencePath).map(asUncheckedFunction(Images::readGrayPlane));
+	}
+	
+	/**
+	 * Lister les fichiers des images d'une séquence, dans l'ordre.
+	 * 
+	 * @param sequencePath
+	 *            Emplacement de la séquence avec le prefixe de nom.
+	 * @return Flux des chemins des images de la séquence.
+	 * @throws FileNotFoundException
+	 */
+	private static Stream<Path> listFrames(final Path sequencePath) throws FileNotFoundException
 	{
 		final PathMatcher frameMatcher = sequencePath.getFileSystem().getPathMatcher("glob:**/" + sequencePath.getFileName() + "*.{jpg,jpeg,png,bmp}");
 		
@@ -33,8 +60,7 @@ public class Videos
 		{
 			return Files.list(sequencePath.getParent())
 					 	.filter(frameMatcher::matches)
-					 	.sorted()
-					 	.map(asUncheckedFunction(Images::readGray));
+					 	.sorted();
 		} catch (IOException e)
 		{
 			throw new FileNotFoundException("La séquence est inexistante.");
@@ -199,23 +199,50 @@ public class Matrices
 		return computeEntropy(matrixInt);
 	}
 	
-	public static double computeEntropy(final Vector2D[][] matrix)
+	public static double computeEntropy(final MotionField field)
 	{
-		final int h = matrix.length,
-				  w = matrix[0].length;
+		final int h = field.getHeight(),
+				  w = field.getWidth();
 		
 		final int[][] matrixInt = new int[h][w];
 		for (int y = 0; y < h; ++y)
 		{
 			for (int x = 0; x < w; ++x)
 			{
-				matrixInt[y][x] = (int)(Math.round(matrix[y][x].xDouble()));
+				matrixInt[y][x] = field.x(x, y);
 			}
 		}
 		
 		return computeEntropy(matrixInt);
 	}
 	
+	/**
+	 * Calculer l'histogramme des valeurs d'une matrice d'entiers.
+	 * 
+	 * @param matrix
+	 *            matrice d'entiers.
+	 * @param min
+	 *            plus petite valeur de la matrice.
+	 * @param max
+	 *            plus grande valeur de la matrice.
+	 * @return nombre d'occurrences de chaque valeur, indexé par la valeur
+	 *         moins min.
+	 */
+	public static int[] histogram(final int[][] matrix, final int min, final int max)
+	{
+		final int[] counts = new int[max-min+1];
+		
+		for (final int[] row : matrix)
+		{
+			for (final int value : row)
+			{
+				++counts[value-min];
+			}
+		}
+		
+		return counts;
+	}
+	
 	private static double entropie(final EntropyResult res)
 	{
 		double Hx = 0.0;
@@ -241,19 +268,13 @@ public class Matrices
 		mi = Matrices.min(matrix); 
 		Mi = Matrices.max(matrix);
 		
+		final int[] counts = histogram(matrix, mi, Mi);
 		final double[] h = new double[Mi-mi+1];
 		
-		for(int i=0; i < M; i++)
-		{
-		   for (int j = 0; j < N; j++)
-		   {
-		      h[matrix[i][j]-mi]=h[matrix[i][j]-mi] + 1.0;
-		   }
-		   res.nr = Mi-mi+1;
-		}
+		res.nr = Mi-mi+1;
 		for(int i = 0; i<res.nr; i++)
 	  	{ 
-			h[i]=(double)h[i]/((double)M*(double)N);
+			h[i]=(double)counts[i]/((double)M*(double)N);
 		}
 		
 		res.h = h;
@@ -0,0 +1,280 @@
+package img.math;
+
+import java.util.Arrays;
+
+/**
+ * Champ de vecteurs de mouvement entiers, un vecteur par bloc. Les vecteurs
+ * sont stockés à plat dans un unique tableau de shorts : les composantes x et
+ * y du vecteur du bloc (bx, by) sont aux indices {@link #index(int, int)} et
+ * {@link #index(int, int)} + 1. Les composantes doivent tenir sur 16 bits.
+ */
+public class MotionField
+{
+	/**
+	 * Nombre de blocs en largeur.
+	 */
+	private final int width;
+	/**
+	 * Nombre de blocs en hauteur.
+	 */
+	private final int height;
+	/**
+	 * Composantes x et y des vecteurs, ligne de blocs par ligne de blocs.
+	 */
+	private final short[] data;
+	
+	/**
+	 * Créer un champ de vecteurs nuls.
+	 * 
+	 * @param width
+	 *            nombre de blocs en largeur.
+	 * @param height
+	 *            nombre de blocs en hauteur.
+	 * @throws IllegalArgumentException
+	 *             si une dimension n'est pas strictement positive.
+	 */
+	public MotionField(final int width, final int height) throws IllegalArgumentException
+	{
+		if (width <= 0 || height <= 0)
+		{
+			throw new IllegalArgumentException("Dimensions du champ de vecteurs invalides.");
+		}
+		
+		this.width  = width;
+		this.height = height;
+		this.data   = new short[2*width*height];
+	}
+	
+	/**
+	 * Obtenir le nombre de blocs en largeur.
+	 * @return nombre de blocs en largeur.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+	
+	/**
+	 * Obtenir le nombre de blocs en hauteur.
+	 * @return nombre de blocs en hauteur.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+	
+	/**
+	 * Obtenir le tableau des composantes, pour un parcours rapide.
+	 * @return composantes x et y des vecteurs, entrelacées.
+	 */
+	public short[] getData()
+	{
+		return data;
+	}
+	
+	/**
+	 * Obtenir l'indice de la composante x du vecteur du bloc (bx, by) dans le
+	 * tableau des composantes.
+	 * 
+	 * @param bx
+	 *            position x du bloc.
+	 * @param by
+	 *            position y du bloc.
+	 * @return indice de la composante x.
+	 */
+	public int index(final int bx, final int by)
+	{
+		return 2*(by*width + bx);
+	}
+	
+	/**
+	 * Obtenir la composante x du vecteur du bloc (bx, by).
+	 * 
+	 * @param bx
+	 *            position x du bloc.
+	 * @param by
+	 *            position y du bloc.
+	 * @return composante x.
+	 */
+	public int x(final int bx, final int by)
+	{
+		return data[index(bx, by)];
+	}
+	
+	/**
+	 * Obtenir la composante y du vecteur du bloc (bx, by).
+	 * 
+	 * @param bx
+	 *            position x du bloc.
+	 * @param by
+	 *            position y du bloc.
+	 * @return composante y.
+	 */
+	public int y(final int bx, final int by)
+	{
+		return data[index(bx, by) + 1];
+	}
+	
+	/**
+	 * Modifier le vecteur du bloc (bx, by).
+	 * 
+	 * @param bx
+	 *            position x du bloc.
+	 * @param by
+	 *            position y du bloc.
+	 * @param x
+	 *            composante x.
+	 * @param y
+	 *            composante y.
+	 */
+	public void set(final int bx, final int by, final int x, final int y)
+	{
+		final int index = index(bx, by);
+		data[index]     = (short) x;
+		data[index + 1] = (short) y;
+	}
+	
+	/**
+	 * Obtenir le vecteur du bloc (bx, by) sous forme d'objet.
+	 * 
+	 * @param bx
+	 *            position x du bloc.
+	 * @param by
+	 *            position y du bloc.
+	 * @return vecteur du bloc.
+	 */
+	public Vector2D get(final int bx, final int by)
+	{
+		return new Vector2D(x(bx, by), y(bx, by));
+	}
+	
+	/**
+	 * Copier tous les vecteurs d'un champ de même taille.
+	 * 
+	 * @param other
+	 *            champ à copier.
+	 * @throws IllegalArgumentException
+	 *             si les champs n'ont pas la même taille.
+	 */
+	public void copyFrom(final MotionField other) throws IllegalArgumentException
+	{
+		if (other.width != width || other.height != height)
+		{
+			throw new IllegalArgumentException("Les champs de vecteurs n'ont pas la même taille.");
+		}
+		
+		System.arraycopy(other.data, 0, data, 0, data.length);
+	}
+	
+	/**
+	 * Copier une bande de lignes de blocs dans un nouveau champ.
+	 * 
+	 * @param by0
+	 *            première ligne de la bande.
+	 * @param by1
+	 *            ligne suivant la bande.
+	 * @return champ de largeur width et de hauteur by1-by0.
+	 */
+	public MotionField copyRows(final int by0, final int by1)
+	{
+		final MotionField rows = new MotionField(width, by1 - by0);
+		System.arraycopy(data, index(0, by0), rows.data, 0, rows.data.length);
+		return rows;
+	}
+	
+	/**
+	 * Recopier un champ de même largeur dans une bande de lignes de blocs.
+	 * 
+	 * @param by0
+	 *            première ligne de la bande.
+	 * @param rows
+	 *            champ à recopier.
+	 * @throws IllegalArgumentException
+	 *             si le champ n'a pas la même largeur ou dépasse.
+	 */
+	public void setRows(final int by0, final MotionField rows) throws IllegalArgumentException
+	{
+		if (rows.width != width || by0 + rows.height > height)
+		{
+			throw new IllegalArgumentException("La bande ne tient pas dans le champ de vecteurs.");
+		}
+		
+		System.arraycopy(rows.data, 0, data, index(0, by0), rows.data.length);
+	}
+	
+	/**
+	 * Donner le même vecteur à tous les blocs.
+	 * 
+	 * @param x
+	 *            composante x.
+	 * @param y
+	 *            composante y.
+	 */
+	public void fill(final int x, final int y)
+	{
+		for (int i = 0; i < data.length; i += 2)
+		{
+			data[i]     = (short) x;
+			data[i + 1] = (short) y;
+		}
+	}
+	
+	/**
+	 * Convertir le champ en matrice de vecteurs.
+	 * 
+	 * @return matrice de vecteurs de taille height x width.
+	 */
+	public Vector2D[][] toVectors()
+	{
+		final Vector2D[][] vectors = new Vector2D[height][width];
+		for (int by = 0; by < height; ++by)
+		{
+			for (int bx = 0; bx < width; ++bx)
+			{
+				vectors[by][bx] = get(bx, by);
+			}
+		}
+		return vectors;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + width;
+		result = prime * result + Arrays.hashCode(data);
+		return result;
+	}
+	
+	@Override
+	public boolean equals(final Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (!(obj instanceof MotionField))
+		{
+			return false;
+		}
+		final MotionField other = (MotionField) obj;
+		return width == other.width && height == other.height && Arrays.equals(data, other.data);
+	}
+	
+	@Override
+	public String toString()
+	{
+		final StringBuilder builder = new StringBuilder("[");
+		for (int by = 0; by < height; ++by)
+		{
+			builder.append(by == 0 ? "[" : ", [");
+			for (int bx = 0; bx < width; ++bx)
+			{
+				builder.append(bx == 0 ? "(" : ", (").append(x(bx, by)).append(", ").append(y(bx, by)).append(')');
+			}
+			builder.append(']');
+		}
+		return builder.append(']').toString();
+	}
+}
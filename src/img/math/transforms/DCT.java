@@ -1,5 +1,9 @@
 package img.math.transforms;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
 import img.math.Matrices;
 
 /**
@@ -7,6 +11,25 @@ import img.math.Matrices;
  */
 public class DCT
 {
+	/**
+	 * Contenu d'un bloc de coefficients dont tous les coefficients sont nuls.
+	 */
+	public static final byte BLOCK_ZERO = 0;
+	/**
+	 * Bit indiquant que le coefficient DC d'un bloc est non nul.
+	 */
+	public static final byte BLOCK_DC = 1;
+	/**
+	 * Bit indiquant qu'au moins un coefficient AC d'un bloc est non nul.
+	 */
+	public static final byte BLOCK_AC = 2;
+	
+	/**
+	 * Fonctions de base de la DCT 1D déjà calculées, par taille (voir
+	 * {@link #basis(int)}).
+	 */
+	private static final ConcurrentHashMap<Integer, double[]> BASES = new ConcurrentHashMap<>();
+	
 	/**
 	 * Faire une DCT d'une matrice 2D.
 	 * 
@@ -20,31 +43,54 @@ public class DCT
 				  w = matrix[0].length;
 		
 		final double[][] matrixDCT = new double[h][w];
+		Matrices.blockCopy(matrix, 0, 0, matrixDCT, 0, 0, w, h);
+		transform2DInPlace(matrixDCT, new double[2*Math.max(w, h)]);
 		
-		// Calculer la matrice matrixDCT de la transformée sur les lignes.
+		return matrixDCT;
+	}
+	
+	/**
+	 * Faire une DCT d'une matrice 2D en place, sans allocation : les lignes
+	 * puis les colonnes sont transformées à travers un vecteur de travail
+	 * fourni par l'appelant (typiquement un par worker).
+	 * 
+	 * @param matrix
+	 *            matrice 2D à transformer, remplacée par sa transformée.
+	 * @param scratch
+	 *            vecteur de travail d'au moins 2*max(largeur, hauteur)
+	 *            éléments.
+	 */
+	public static void transform2DInPlace(final double[][] matrix, final double[] scratch)
+	{
+		final int h = matrix.length,
+				  w = matrix[0].length;
+		
+		final double[] basisW = basis(w),
+					   basisH = basis(h);
+		
+		// Transformée sur les lignes.
 		for (int y = 0; y < h; ++y)
 		{
-			// Calculer la DCT de la ligne.
-			matrixDCT[y] = transform(matrix[y]);
+			transform(basisW, w, matrix[y], 0, scratch, 0);
+			System.arraycopy(scratch, 0, matrix[y], 0, w);
 		}
 		
-		// Calculer la matrice de la transformée sur les colonnes de la matrice
-		// rowDCT.
-		
-		// Pour chaque colonne...
-		double[] column = new double[h];
-		
+		// Transformée sur les colonnes : la colonne est copiée au début du
+		// vecteur de travail et sa transformée écrite juste après.
 		for (int x = 0; x < w; ++x)
 		{
-			// Copier la colonne x de matrixDCT dans le vecteur column.
-			Matrices.columnCopy(matrixDCT, x, column);
+			for (int y = 0; y < h; ++y)
+			{
+				scratch[y] = matrix[y][x];
+			}
 			
-			// Calculer la DCT de la colonne de rowDCT et copier ce vecteur dans
-			// la colonne x de matrixDCT.
-			Matrices.columnCopy(transform(column), matrixDCT, x);
+			transform(basisH, h, scratch, 0, scratch, h);
+			
+			for (int y = 0; y < h; ++y)
+			{
+				matrix[y][x] = scratch[h + y];
+			}
 		}
-		
-		return matrixDCT;
 	}
 
 	/**
@@ -60,28 +106,54 @@ public class DCT
 				  w = matrixDCT[0].length;
 		
 		final double[][] matrix = new double[h][w];
+		Matrices.blockCopy(matrixDCT, 0, 0, matrix, 0, 0, w, h);
+		inverseTransform2DInPlace(matrix, new double[2*Math.max(w, h)]);
+		
+		return matrix;
+	}
+	
+	/**
+	 * Faire une transformée DCT inverse d'une matrice 2D en place, sans
+	 * allocation (colonnes puis lignes, voir
+	 * {@link #transform2DInPlace(double[][], double[])}).
+	 * 
+	 * @param matrixDCT
+	 *            matrice 2D à transformer inversement, remplacée par sa
+	 *            transformée inverse.
+	 * @param scratch
+	 *            vecteur de travail d'au moins 2*max(largeur, hauteur)
+	 *            éléments.
+	 */
+	public static void inverseTransform2DInPlace(final double[][] matrixDCT, final double[] scratch)
+	{
+		final int h = matrixDCT.length,
+				  w = matrixDCT[0].length;
 		
-		// Pour chaque colonne...
-		double[] columnDCT = new double[h];
+		final double[] basisW = basis(w),
+					   basisH = basis(h);
 		
+		// Transformée inverse sur les colonnes.
 		for (int x = 0; x < w; ++x)
 		{
-			// Copier la colonne x de matrixDCT dans le vecteur columnDCT.
-			Matrices.columnCopy(matrixDCT, x, columnDCT);
+			for (int y = 0; y < h; ++y)
+			{
+				scratch[y] = matrixDCT[y][x];
+			}
+			
+			inverseTransform(basisH, h, scratch, 0, scratch, h);
 			
-			// Calculer la DCT inverse de la colonne et copier ce vecteur dans
-			// la colonne x de matrix.
-			Matrices.columnCopy(inverseTransform(columnDCT), matrix, x);
+			for (int y = 0; y < h; ++y)
+			{
+				matrixDCT[y][x] = scratch[h + y];
+			}
 		}
 		
-		// Calculer la transformée inverse sur chaque ligne de l'image obtenue.
+		// Puis sur les lignes.
 		for (int y = 0; y < h; ++y)
 		{
-			// Calculer la DCT inverse de la ligne.
-			matrix[y] = inverseTransform(matrix[y]);
+			inverseTransform(basisW, w, matrixDCT[y], 0, scratch, 0);
+			System.arraycopy(scratch, 0, matrixDCT[y], 0, w);
 		}
-		
-		return matrix;
 	}
 	
 	/**
@@ -101,25 +173,62 @@ public class DCT
 	public static double[][] blockTransform(final double[][] matrix, final int blockW, final int blockH)
 			throws IllegalArgumentException
 	{
-		final int h = matrix.length,
-				  w = matrix[0].length;
+		checkBlockSize(matrix, blockW, blockH);
 		
-		if (w%blockW != 0 || h%blockH != 0)
-		{
-			throw new IllegalArgumentException("La taille de la matrice n'est pas un multiple de la taille du bloc.");
-		}
+		final double[][] matrixDCT = new double[matrix.length][matrix[0].length];
+		transformBand(matrix, matrixDCT, blockW, blockH, 0, matrix.length, false, null);
 		
-		final double[][] matrixDCT = new double[h][w];
-		final double[][] block = new double[blockH][blockH];
+		return matrixDCT;
+	}
+	
+	/**
+	 * Faire une transformée DCT en blocs d'une matrice 2D en parallèle. La
+	 * matrice est découpée en bandes de lignes de blocs, chaque bande étant
+	 * traitée par un worker avec son propre bloc de travail.
+	 * 
+	 * @param matrix
+	 *            matrice à transformer.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @return transformée DCT en blocs de la matrice 2D.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille du
+	 *             bloc.
+	 */
+	public static double[][] parallelBlockTransform(final double[][] matrix, final int blockW, final int blockH)
+			throws IllegalArgumentException
+	{
+		return parallelBlockTransform(matrix, blockW, blockH, null);
+	}
+	
+	/**
+	 * Faire une transformée DCT en blocs d'une matrice 2D en parallèle, sans
+	 * calculer la DCT des blocs dont on sait déjà que les coefficients sont
+	 * nuls : ils sont directement mis à zéro.
+	 * 
+	 * @param matrix
+	 *            matrice à transformer.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param blockPattern
+	 *            contenu de chaque bloc, {@link #BLOCK_ZERO} pour les blocs à
+	 *            ne pas transformer, ou null pour transformer tous les blocs.
+	 * @return transformée DCT en blocs de la matrice 2D.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille du
+	 *             bloc.
+	 */
+	public static double[][] parallelBlockTransform(final double[][] matrix, final int blockW, final int blockH,
+			final byte[][] blockPattern) throws IllegalArgumentException
+	{
+		checkBlockSize(matrix, blockW, blockH);
 		
-		for (int y = 0; y < h; y+=blockH)
-		{
-			for (int x = 0; x < w; x+=blockW)
-			{
-				Matrices.blockCopy(matrix, x, y, block, 0, 0, blockW, blockH);
-				Matrices.blockCopy(DCT.transform2D(block), 0, 0, matrixDCT, x, y, blockW, blockH);
-			}
-		}
+		final double[][] matrixDCT = new double[matrix.length][matrix[0].length];
+		parallelTransformBands(matrix, matrixDCT, blockW, blockH, false, blockPattern);
 		
 		return matrixDCT;
 	}
@@ -139,28 +248,274 @@ public class DCT
 	 *             du bloc.
 	 */
 	public static double[][] inverseBlockTransform(final double[][] matrixDCT, final int blockW, final int blockH)
+			throws IllegalArgumentException
 	{
-		final int h = matrixDCT.length,
-				  w = matrixDCT[0].length;
+		checkBlockSize(matrixDCT, blockW, blockH);
+		
+		final double[][] matrix = new double[matrixDCT.length][matrixDCT[0].length];
+		transformBand(matrixDCT, matrix, blockW, blockH, 0, matrixDCT.length, true, null);
 		
-		if (w%blockW != 0 || h%blockH != 0)
+		return matrix;
+	}
+	
+	/**
+	 * Faire une transformée DCT en blocs inverse d'une matrice 2D en parallèle,
+	 * par bandes de lignes de blocs.
+	 * 
+	 * @param matrixDCT
+	 *            matrice à transformer inversement.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @return transformée DCT en blocs inverse de la matrice 2D.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille
+	 *             du bloc.
+	 */
+	public static double[][] parallelInverseBlockTransform(final double[][] matrixDCT, final int blockW, final int blockH)
+			throws IllegalArgumentException
+	{
+		checkBlockSize(matrixDCT, blockW, blockH);
+		
+		final double[][] matrix = new double[matrixDCT.length][matrixDCT[0].length];
+		parallelTransformBands(matrixDCT, matrix, blockW, blockH, true, null);
+		
+		return matrix;
+	}
+	
+	/**
+	 * Faire une transformée DCT en blocs inverse d'une matrice 2D en parallèle,
+	 * en s'appuyant sur le contenu connu de chaque bloc : les blocs nuls sont
+	 * ignorés et les blocs n'ayant qu'un coefficient DC sont remplis par une
+	 * constante, sans calcul de la DCT inverse.
+	 * 
+	 * @param matrixDCT
+	 *            matrice à transformer inversement.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param blockPattern
+	 *            contenu de chaque bloc, combinaison de {@link #BLOCK_DC} et
+	 *            {@link #BLOCK_AC}, ou {@link #BLOCK_ZERO}.
+	 * @return transformée DCT en blocs inverse de la matrice 2D.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille
+	 *             du bloc.
+	 */
+	public static double[][] parallelInverseBlockTransform(final double[][] matrixDCT, final int blockW, final int blockH,
+			final byte[][] blockPattern) throws IllegalArgumentException
+	{
+		checkBlockSize(matrixDCT, blockW, blockH);
+		
+		final double[][] matrix = new double[matrixDCT.length][matrixDCT[0].length];
+		parallelTransformBands(matrixDCT, matrix, blockW, blockH, true, blockPattern);
+		
+		return matrix;
+	}
+	
+	/**
+	 * Faire une transformée DCT en blocs inverse d'une matrice 2D en parallèle,
+	 * en place : les blocs de la matrice sont remplacés par leur DCT inverse.
+	 * 
+	 * @param matrixDCT
+	 *            matrice à transformer inversement.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param blockPattern
+	 *            contenu de chaque bloc (voir
+	 *            {@link #parallelInverseBlockTransform(double[][], int, int, byte[][])}),
+	 *            ou null si inconnu.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille
+	 *             du bloc.
+	 */
+	public static void parallelInverseBlockTransformInPlace(final double[][] matrixDCT, final int blockW,
+			final int blockH, final byte[][] blockPattern) throws IllegalArgumentException
+	{
+		checkBlockSize(matrixDCT, blockW, blockH);
+		
+		parallelTransformBands(matrixDCT, matrixDCT, blockW, blockH, true, blockPattern);
+	}
+	
+	/**
+	 * Vérifier que la taille de la matrice est un multiple de la taille du
+	 * bloc.
+	 * 
+	 * @param matrix
+	 *            matrice à vérifier.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @throws IllegalArgumentException
+	 *             si la taille de la matrice n'est pas un multiple de la taille
+	 *             du bloc.
+	 */
+	private static void checkBlockSize(final double[][] matrix, final int blockW, final int blockH)
+			throws IllegalArgumentException
+	{
+		if (matrix[0].length%blockW != 0 || matrix.length%blockH != 0)
 		{
 			throw new IllegalArgumentException("La taille de la matrice n'est pas un multiple de la taille du bloc.");
 		}
+	}
+	
+	/**
+	 * Répartir la transformée (directe ou inverse) en blocs sur plusieurs
+	 * workers. Chaque worker traite une bande de lignes de blocs contigües.
+	 * 
+	 * @param src
+	 *            matrice source.
+	 * @param dest
+	 *            matrice destination.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param inverse
+	 *            transformée inverse ou non.
+	 * @param blockPattern
+	 *            contenu de chaque bloc source, ou null si inconnu.
+	 */
+	private static void parallelTransformBands(final double[][] src, final double[][] dest, final int blockW,
+			final int blockH, final boolean inverse, final byte[][] blockPattern)
+	{
+		final int nBlockRows = src.length / blockH;
+		// On prévoit quelques bandes par coeur pour équilibrer la charge.
+		final int nBands = Math.min(nBlockRows, 4 * Runtime.getRuntime().availableProcessors());
 		
-		final double[][] matrix = new double[h][w];
-		final double[][] blockDCT = new double[blockH][blockH];
+		IntStream.range(0, nBands).parallel().forEach(band ->
+		{
+			final int yStart = (band     * nBlockRows / nBands) * blockH,
+					  yEnd   = ((band+1) * nBlockRows / nBands) * blockH;
+			
+			transformBand(src, dest, blockW, blockH, yStart, yEnd, inverse, blockPattern);
+		});
+	}
+	
+	/**
+	 * Faire la transformée (directe ou inverse) des blocs d'une bande de lignes
+	 * de la matrice source vers la matrice destination.
+	 * 
+	 * @param src
+	 *            matrice source.
+	 * @param dest
+	 *            matrice destination.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param yStart
+	 *            première ligne de la bande (multiple de blockH).
+	 * @param yEnd
+	 *            ligne de fin exclue de la bande (multiple de blockH).
+	 * @param inverse
+	 *            transformée inverse ou non.
+	 * @param blockPattern
+	 *            contenu de chaque bloc source, ou null si inconnu. La matrice
+	 *            destination doit alors être initialement nulle, sauf pour une
+	 *            transformée en place.
+	 */
+	private static void transformBand(final double[][] src, final double[][] dest, final int blockW, final int blockH,
+			final int yStart, final int yEnd, final boolean inverse, final byte[][] blockPattern)
+	{
+		final int w = src[0].length;
+		// Bloc et vecteur de travail propres à la bande.
+		final double[][] block = new double[blockH][blockW];
+		final double[] scratch = new double[2*Math.max(blockW, blockH)];
 		
-		for (int y = 0; y < h; y+=blockH)
+		for (int y = yStart; y < yEnd; y+=blockH)
 		{
 			for (int x = 0; x < w; x+=blockW)
 			{
-				Matrices.blockCopy(matrixDCT, x, y, blockDCT, 0, 0, blockW, blockH);
-				Matrices.blockCopy(DCT.inverseTransform2D(blockDCT), 0, 0, matrix, x, y, blockW, blockH);
+				if (blockPattern != null)
+				{
+					final byte content = blockPattern[y/blockH][x/blockW];
+					
+					// Bloc nul : la destination l'est déjà, sauf en place.
+					if (content == BLOCK_ZERO)
+					{
+						if (dest == src)
+						{
+							for (int by = y; by < y + blockH; ++by)
+							{
+								Arrays.fill(dest[by], x, x + blockW, 0);
+							}
+						}
+						continue;
+					}
+					
+					// Bloc DC seul : sa DCT inverse est constante.
+					if (inverse && content == BLOCK_DC)
+					{
+						final double value = inverseTransformDC(src[y][x], blockW, blockH);
+						for (int by = y; by < y + blockH; ++by)
+						{
+							Arrays.fill(dest[by], x, x + blockW, value);
+						}
+						continue;
+					}
+				}
+				
+				Matrices.blockCopy(src, x, y, block, 0, 0, blockW, blockH);
+				if (inverse)
+				{
+					inverseTransform2DInPlace(block, scratch);
+				}
+				else
+				{
+					transform2DInPlace(block, scratch);
+				}
+				Matrices.blockCopy(block, 0, 0, dest, x, y, blockW, blockH);
 			}
 		}
+	}
+	
+	/**
+	 * Obtenir la valeur constante de la DCT inverse d'un bloc dont seul le
+	 * coefficient DC est non nul.
+	 * 
+	 * @param dc
+	 *            coefficient DC du bloc.
+	 * @param blockW
+	 *            largeur du bloc.
+	 * @param blockH
+	 *            hauteur du bloc.
+	 * @return valeur de chaque élément du bloc transformé inversement.
+	 */
+	public static double inverseTransformDC(final double dc, final int blockW, final int blockH)
+	{
+		// Mêmes opérations que inverseTransform2D (colonnes puis lignes).
+		return (dc * 1.0/Math.sqrt(blockH)) * 1.0/Math.sqrt(blockW);
+	}
+	
+	/**
+	 * Obtenir le module maximal de chacune des fonctions de base de la DCT 1D
+	 * de taille n. Le coefficient k d'un vecteur est ainsi borné par la somme
+	 * des valeurs absolues du vecteur multipliée par l'élément k.
+	 * 
+	 * @param n
+	 *            taille de la DCT.
+	 * @return module maximal de chaque fonction de base.
+	 */
+	public static double[] basisAmplitudes(final int n)
+	{
+		final double[] amplitudes = new double[n];
+		amplitudes[0] = 1.0/Math.sqrt(n);
 		
-		return matrix;
+		for (int k = 1; k < n; ++k)
+		{
+			for (int i = 0; i < n; ++i)
+			{
+				amplitudes[k] = Math.max(amplitudes[k], Math.abs(Math.sqrt(2.0/n) * Math.cos((Math.PI*(2*i+1)*k)/(2*n))));
+			}
+		}
+		
+		return amplitudes;
 	}
 	
 	/**
@@ -187,45 +542,129 @@ public class DCT
 		return symExtension;
 	}
 	
+	/**
+	 * Faire une DCT d'un vecteur 1D.
+	 * 
+	 * @param vector
+	 *            vecteur à transformer.
+	 * @return Transformée en cos discret du vecteur 1D.
+	 */
 	public static double[] transform(final double[] vector)
 	{
 		final int N = vector.length;
-		final double[] vectorDCT = new double[vector.length];
-		// k = 0
+		final double[] vectorDCT = new double[N];
+		transform(basis(N), N, vector, 0, vectorDCT, 0);
+		
+		return vectorDCT;
+	}
+	
+	/**
+	 * Faire une DCT inverse d'un vecteur 1D.
+	 * 
+	 * @param vectorDCT
+	 *            vecteur à transformer inversement.
+	 * @return Transformée inverse en cos discret du vecteur 1D.
+	 */
+	public static double[] inverseTransform(final double[] vectorDCT)
+	{
+		final int N = vectorDCT.length;
+		final double[] vector = new double[N];
+		inverseTransform(basis(N), N, vectorDCT, 0, vector, 0);
+		
+		return vector;
+	}
+	
+	/**
+	 * Faire la DCT de n éléments d'un tableau vers un autre.
+	 * 
+	 * @param basis
+	 *            fonctions de base de la DCT de taille n.
+	 * @param n
+	 *            taille de la DCT.
+	 * @param vector
+	 *            tableau source.
+	 * @param vectorOffset
+	 *            indice du premier élément source.
+	 * @param vectorDCT
+	 *            tableau destination.
+	 * @param vectorDCTOffset
+	 *            indice du premier élément destination.
+	 */
+	private static void transform(final double[] basis, final int n, final double[] vector, final int vectorOffset,
+			final double[] vectorDCT, final int vectorDCTOffset)
+	{
+		for (int k = 0; k < n; ++k)
 		{
-			for (int n = 0; n < N; ++n)
+			double sum = 0;
+			for (int i = 0; i < n; ++i)
 			{
-				vectorDCT[0] += 1.0/Math.sqrt(N) * vector[n];
+				sum += basis[k*n + i] * vector[vectorOffset + i];
 			}
+			vectorDCT[vectorDCTOffset + k] = sum;
 		}
+	}
+	
+	/**
+	 * Faire la DCT inverse de n éléments d'un tableau vers un autre.
+	 * 
+	 * @param basis
+	 *            fonctions de base de la DCT de taille n.
+	 * @param n
+	 *            taille de la DCT.
+	 * @param vectorDCT
+	 *            tableau source.
+	 * @param vectorDCTOffset
+	 *            indice du premier élément source.
+	 * @param vector
+	 *            tableau destination.
+	 * @param vectorOffset
+	 *            indice du premier élément destination.
+	 */
+	private static void inverseTransform(final double[] basis, final int n, final double[] vectorDCT,
+			final int vectorDCTOffset, final double[] vector, final int vectorOffset)
+	{
+		final double sqrtN = Math.sqrt(n);
 		
-		for (int k = 1; k < N; ++k)
+		for (int k = 0; k < n; ++k)
 		{
-			for (int n = 0; n < N; ++n)
+			double sum = vectorDCT[vectorDCTOffset] * 1.0/sqrtN;
+			for (int i = 1; i < n; ++i)
 			{
-				vectorDCT[k] += Math.sqrt(2.0/N) * Math.cos((Math.PI*(2*n+1)*k)/(2*N)) * vector[n];
+				sum += basis[i*n + k] * vectorDCT[vectorDCTOffset + i];
 			}
+			vector[vectorOffset + k] = sum;
 		}
-		
-		return vectorDCT;
 	}
 	
-	public static double[] inverseTransform(final double[] vectorDCT)
+	/**
+	 * Obtenir les fonctions de base de la DCT 1D de taille n, calculées une
+	 * seule fois par taille : l'élément k*n + i est le poids de l'échantillon
+	 * i dans le coefficient k.
+	 * 
+	 * @param n
+	 *            taille de la DCT.
+	 * @return fonctions de base de la DCT.
+	 */
+	private static double[] basis(final int n)
 	{
-		final int N = vectorDCT.length;
-		final double[] vector = new double[N];
+		final double[] basis = BASES.get(n);
 		
-		for (int k = 0; k < N; ++k)
+		return basis != null ? basis : BASES.computeIfAbsent(n, size ->
 		{
-			// n = 0
-			vector[k] = vectorDCT[0] * 1.0/Math.sqrt(N);
-			for (int n = 1; n < N; ++n)
+			final double[] values = new double[size*size];
+			for (int i = 0; i < size; ++i)
 			{
-				vector[k] += Math.sqrt(2.0/N) * Math.cos((Math.PI*(2*k+1)*n)/(2*N)) * vectorDCT[n];
+				values[i] = 1.0/Math.sqrt(size);
 			}
-		}
-		
-		return vector;
+			for (int k = 1; k < size; ++k)
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					values[k*size + i] = Math.sqrt(2.0/size) * Math.cos((Math.PI*(2*i+1)*k)/(2*size));
+				}
+			}
+			return values;
+		});
 	}
 	
 	/**
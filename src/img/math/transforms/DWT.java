@@ -0,0 +1,276 @@
+package img.math.transforms;
+
+import java.util.Arrays;
+
+/**
+ * Classe utilitaire pour la transformée en ondelettes discrète (DWT) entière
+ * 5/3 de Le Gall, calculée par lifting. La transformée est réversible : la
+ * transformée inverse redonne exactement la matrice d'origine.<br>
+ * Après transformation sur n niveaux, la matrice est organisée en sous-bandes
+ * (disposition de Mallat) : la sous-bande basse fréquence LL du dernier niveau
+ * en haut à gauche, puis pour chaque niveau les sous-bandes HL (à droite), LH
+ * (en bas) et HH (en bas à droite).
+ */
+public class DWT
+{
+	/**
+	 * Faire la transformée en ondelettes 5/3 sur place d'une matrice 2D.
+	 * 
+	 * @param matrix
+	 *            matrice à transformer, remplacée par ses coefficients.
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 */
+	public static void transform2D(final int[][] matrix, final int levels)
+	{
+		final int h = matrix.length,
+				  w = matrix[0].length;
+		
+		final int[] buffer = new int[Math.max(w, h)],
+					tmp    = new int[Math.max(w, h)];
+		
+		for (int level = 0; level < levels; ++level)
+		{
+			// Taille de la sous-bande LL transformée à ce niveau.
+			final int levelW = subbandSize(w, level),
+					  levelH = subbandSize(h, level);
+			
+			// Transformée des lignes...
+			for (int y = 0; y < levelH; ++y)
+			{
+				System.arraycopy(matrix[y], 0, buffer, 0, levelW);
+				transform(buffer, levelW, tmp);
+				System.arraycopy(buffer, 0, matrix[y], 0, levelW);
+			}
+			
+			// puis des colonnes.
+			for (int x = 0; x < levelW; ++x)
+			{
+				for (int y = 0; y < levelH; ++y)
+				{
+					buffer[y] = matrix[y][x];
+				}
+				transform(buffer, levelH, tmp);
+				for (int y = 0; y < levelH; ++y)
+				{
+					matrix[y][x] = buffer[y];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Faire la transformée en ondelettes 5/3 inverse sur place d'une matrice
+	 * 2D.
+	 * 
+	 * @param matrix
+	 *            matrice des coefficients, remplacée par la matrice
+	 *            reconstruite.
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 */
+	public static void inverseTransform2D(final int[][] matrix, final int levels)
+	{
+		final int h = matrix.length,
+				  w = matrix[0].length;
+		
+		final int[] buffer = new int[Math.max(w, h)],
+					tmp    = new int[Math.max(w, h)];
+		
+		for (int level = levels-1; level >= 0; --level)
+		{
+			final int levelW = subbandSize(w, level),
+					  levelH = subbandSize(h, level);
+			
+			// Colonnes...
+			for (int x = 0; x < levelW; ++x)
+			{
+				for (int y = 0; y < levelH; ++y)
+				{
+					buffer[y] = matrix[y][x];
+				}
+				inverseTransform(buffer, levelH, tmp);
+				for (int y = 0; y < levelH; ++y)
+				{
+					matrix[y][x] = buffer[y];
+				}
+			}
+			
+			// puis lignes.
+			for (int y = 0; y < levelH; ++y)
+			{
+				System.arraycopy(matrix[y], 0, buffer, 0, levelW);
+				inverseTransform(buffer, levelW, tmp);
+				System.arraycopy(buffer, 0, matrix[y], 0, levelW);
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir la taille de la sous-bande basse fréquence après le nombre de
+	 * niveaux de décomposition spécifié.
+	 * 
+	 * @param length
+	 *            taille initiale.
+	 * @param level
+	 *            nombre de niveaux.
+	 * @return taille de la sous-bande basse fréquence.
+	 */
+	public static int subbandSize(final int length, final int level)
+	{
+		// Arrondi supérieur de length / 2^level.
+		return (length + (1 << level) - 1) >> level;
+	}
+	
+	/**
+	 * Faire un niveau de la transformée 5/3 d'un vecteur par lifting. Les
+	 * échantillons pairs deviennent les coefficients basse fréquence (première
+	 * moitié du vecteur) et les impairs les coefficients haute fréquence
+	 * (seconde moitié), avec une extension symétrique aux bords.
+	 * 
+	 * @param vector
+	 *            vecteur à transformer sur place.
+	 * @param n
+	 *            nombre d'éléments à transformer.
+	 * @param tmp
+	 *            vecteur de travail d'au moins n éléments.
+	 */
+	public static void transform(final int[] vector, final int n, final int[] tmp)
+	{
+		if (n < 2)
+		{
+			return;
+		}
+		
+		final int nLow  = (n+1)/2,
+				  nHigh = n/2;
+		
+		// Prédiction : d[i] = x[2i+1] - floor((x[2i] + x[2i+2]) / 2).
+		for (int i = 0; i < nHigh; ++i)
+		{
+			final int right = 2*i+2 < n ? vector[2*i+2] : vector[2*i];
+			tmp[nLow + i] = vector[2*i+1] - ((vector[2*i] + right) >> 1);
+		}
+		
+		// Mise à jour : s[i] = x[2i] + floor((d[i-1] + d[i] + 2) / 4).
+		for (int i = 0; i < nLow; ++i)
+		{
+			final int left  = tmp[nLow + Math.max(i-1, 0)],
+					  right = tmp[nLow + Math.min(i, nHigh-1)];
+			tmp[i] = vector[2*i] + ((left + right + 2) >> 2);
+		}
+		
+		System.arraycopy(tmp, 0, vector, 0, n);
+	}
+	
+	/**
+	 * Faire un niveau de la transformée 5/3 inverse d'un vecteur par lifting.
+	 * 
+	 * @param vector
+	 *            vecteur de coefficients (basses fréquences puis hautes
+	 *            fréquences) à transformer inversement sur place.
+	 * @param n
+	 *            nombre d'éléments à transformer.
+	 * @param tmp
+	 *            vecteur de travail d'au moins n éléments.
+	 */
+	public static void inverseTransform(final int[] vector, final int n, final int[] tmp)
+	{
+		if (n < 2)
+		{
+			return;
+		}
+		
+		final int nLow  = (n+1)/2,
+				  nHigh = n/2;
+		
+		// Echantillons pairs.
+		for (int i = 0; i < nLow; ++i)
+		{
+			final int left  = vector[nLow + Math.max(i-1, 0)],
+					  right = vector[nLow + Math.min(i, nHigh-1)];
+			tmp[2*i] = vector[i] - ((left + right + 2) >> 2);
+		}
+		
+		// Echantillons impairs.
+		for (int i = 0; i < nHigh; ++i)
+		{
+			final int right = 2*i+2 < n ? tmp[2*i+2] : tmp[2*i];
+			tmp[2*i+1] = vector[nLow + i] + ((tmp[2*i] + right) >> 1);
+		}
+		
+		System.arraycopy(tmp, 0, vector, 0, n);
+	}
+	
+	/**
+	 * Obtenir les gains de synthèse 1D (norme de la fonction de base dans le
+	 * domaine reconstruit) des sous-bandes d'une décomposition sur le nombre
+	 * de niveaux spécifié. Ils permettent de répartir l'erreur de
+	 * quantification de façon uniforme entre les sous-bandes.
+	 * 
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 * @return tableau [2][levels+1] : gains[0][l] gain de la sous-bande basse
+	 *         fréquence après l niveaux, gains[1][l] gain de la sous-bande
+	 *         haute fréquence du niveau l (l >= 1).
+	 */
+	public static double[][] synthesisGains(final int levels)
+	{
+		// Vecteur assez long pour que la fonction de base ne touche pas les bords.
+		final int n = 1 << (levels + 4);
+		// Amplitude de l'impulsion, grande pour négliger les arrondis entiers.
+		final int amplitude = 1 << 16;
+		
+		final double[][] gains = new double[2][levels+1];
+		gains[0][0] = 1;
+		
+		final int[] vector = new int[n],
+					tmp    = new int[n];
+		
+		for (int level = 1; level <= levels; ++level)
+		{
+			final int lowSize = n >> level;
+			
+			// Impulsion au milieu de la sous-bande basse, puis haute fréquence.
+			gains[0][level] = impulseNorm(vector, tmp, lowSize/2, level, amplitude);
+			gains[1][level] = impulseNorm(vector, tmp, lowSize + lowSize/2, level, amplitude);
+		}
+		
+		return gains;
+	}
+	
+	/**
+	 * Obtenir la norme de la transformée inverse d'une impulsion.
+	 * 
+	 * @param vector
+	 *            vecteur de travail.
+	 * @param tmp
+	 *            vecteur de travail.
+	 * @param position
+	 *            position de l'impulsion.
+	 * @param levels
+	 *            nombre de niveaux de la transformée inverse.
+	 * @param amplitude
+	 *            amplitude de l'impulsion.
+	 * @return norme de la réponse divisée par l'amplitude.
+	 */
+	private static double impulseNorm(final int[] vector, final int[] tmp, final int position, final int levels,
+			final int amplitude)
+	{
+		Arrays.fill(vector, 0);
+		vector[position] = amplitude;
+		
+		for (int level = levels-1; level >= 0; --level)
+		{
+			inverseTransform(vector, vector.length >> level, tmp);
+		}
+		
+		double energy = 0;
+		for (final int value : vector)
+		{
+			energy += (double) value * value;
+		}
+		
+		return Math.sqrt(energy) / amplitude;
+	}
+}
@@ -3,7 +3,10 @@ package img.math.transforms;
 import img.math.Complex;
 
 /**
- * Classe utilitaire pour la tranformée de Fourier rapide (FFT).
+ * Classe utilitaire pour la tranformée de Fourier rapide (FFT).<br>
+ * Le calcul se fait en place sur les parties réelles et imaginaires stockées
+ * dans deux tableaux de réels, sans créer d'objet {@link Complex} ; les
+ * versions prenant ou rendant des {@link Complex} ne font que convertir.
  */
 public class FFT
 {
@@ -19,24 +22,12 @@ public class FFT
 	 */
 	public static Complex[] transform(final double[] vector) throws IllegalArgumentException
 	{
-		// Vérifier si la taille du vecteur n'est pas une puissance de deux.
+		final double[] real = vector.clone(),
+					   img  = new double[vector.length];
 		
-		// On utilise la représentation binaire du nombre pour vérifier
-		// rapidement.
-		if ((vector.length & (vector.length - 1)) != 0)
-		{
-			throw new IllegalArgumentException("La taille du vecteur (taille de " + vector.length + ") n'est pas une puissance de deux.");
-		}
+		transformInPlace(real, img);
 		
-		// Transformer le vecteur de double en vecteur de nombres complexes.
-		final Complex[] initialVector = new Complex[vector.length];
-		
-		for (int i = 0; i < vector.length; ++i)
-		{
-			initialVector[i] = new Complex(0, vector[i]);
-		}
-		
-		return recursiveTransform(initialVector);
+		return toComplex(real, img);
 	}
 	
 	/**
@@ -52,96 +43,131 @@ public class FFT
 	 */
 	public static Complex[] inverseTransform(final Complex[] vectorFFT) throws IllegalArgumentException
 	{
-		// Vérifier si la taille du vecteur n'est pas une puissance de deux.
+		final double[] real = new double[vectorFFT.length],
+					   img  = new double[vectorFFT.length];
 		
-		// On utilise la représentation binaire du nombre pour vérifier
-		// rapidement.
-		if ((vectorFFT.length & (vectorFFT.length - 1)) != 0)
+		for (int i = 0; i < vectorFFT.length; ++i)
 		{
-			throw new IllegalArgumentException("La taille du vecteur (taille de " + vectorFFT.length + ") n'est pas une puissance de deux.");
+			real[i] = vectorFFT[i].realPart();
+			img[i]  = vectorFFT[i].imgPart();
 		}
 		
-		final Complex[] vectorComplex = recursiveInverseTransform(vectorFFT);
+		inverseTransformInPlace(real, img);
 		
-		return vectorComplex;
+		return toComplex(real, img);
 	}
 	
-	
 	/**
-	 * Sous échantillonnage / décimation du vecteur spécifié d'un facteur 1/2
-	 * avec un décalage donné. Ainsi,
-	 * <ul>
-	 * <li>Si le décalage est de 0 => on ne prendra que les termes d'indice
-	 * pair</li>
-	 * <li>Si le décalage est de 1 => on ne prendra que les termes d'indice
-	 * impair</li>
-	 * </ul>
+	 * Faire une FFT en place, sans allocation.<br>
+	 * L'algorithme utilisé est l'algorithme de Cooley-Tukey (<a href=
+	 * "https://en.wikipedia.org/wiki/Cooley%E2%80%93Tukey_FFT_algorithm">Source1</a>, 
+	 * <a href="http://chamilo2.grenet.fr/inp/courses/PHELMAA2SICOM4PMSTNS/document/BE/BE2/FFT.pdf">Source 2</a>)
+	 * sous sa forme itérative : les éléments sont rangés dans l'ordre des
+	 * indices à bits inversés, puis les demi-FFT sont combinées deux à deux.
+	 * <br>
+	 * <b>La taille des vecteurs doit être une puissance de deux.</b>
 	 * 
-	 * @param vector
-	 *            vecteur à sous échantillonner.
-	 * @param offset
-	 *            décalage pour le 1er échantillon.
-	 * @return
+	 * @param real
+	 *            parties réelles, remplacées par celles de la FFT.
+	 * @param img
+	 *            parties imaginaires, remplacées par celles de la FFT.
+	 * @throws IllegalArgumentException
+	 *             si la taille des vecteurs n'est pas une puissance de 2.
 	 */
-	private static Complex[] decimate(final Complex[] vector, final int offset)
+	public static void transformInPlace(final double[] real, final double[] img) throws IllegalArgumentException
 	{
-		final Complex[] decimatedVector = new Complex[vector.length/2];
-		for (int i = 0; i < decimatedVector.length; ++i)
+		final int n = real.length;
+		
+		// Vérifier si la taille du vecteur n'est pas une puissance de deux.
+		
+		// On utilise la représentation binaire du nombre pour vérifier
+		// rapidement.
+		if ((n & (n - 1)) != 0 || img.length != n)
+		{
+			throw new IllegalArgumentException("La taille du vecteur (taille de " + n + ") n'est pas une puissance de deux.");
+		}
+		
+		// Décimations successives : permutation des indices à bits inversés.
+		for (int i = 1, j = 0; i < n; ++i)
+		{
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1)
+			{
+				j ^= bit;
+			}
+			j |= bit;
+			
+			if (i < j)
+			{
+				swap(real, i, j);
+				swap(img, i, j);
+			}
+		}
+		
+		// On rassemble les FFT des termes pairs et impairs, de taille m/2.
+		for (int m = 2; m <= n; m <<= 1)
 		{
-			decimatedVector[i] = vector[offset + i*2];
+			for (int j = 0; j < m/2; ++j)
+			{
+				// Facteur omega_j = exp(-2*i*pi*j/m).
+				final double expArg = -2*j* Math.PI/m;
+				final double omegaReal = Math.cos(expArg),
+							 omegaImg  = Math.sin(expArg);
+				
+				for (int start = 0; start < n; start += m)
+				{
+					final int even = start + j,
+							  odd  = even + m/2;
+					
+					// Facteur (omega_j * odd).
+					final double oddReal = omegaReal*real[odd] - omegaImg*img[odd],
+								 oddImg  = omegaReal*img[odd] + omegaImg*real[odd];
+					
+					real[odd]  = real[even] - oddReal;
+					img[odd]   = img[even] - oddImg;
+					real[even] = real[even] + oddReal;
+					img[even]  = img[even] + oddImg;
+				}
+			}
 		}
-		return decimatedVector;
 	}
 	
 	/**
-	 * Fonction réccursive pour calculer la FFT d'un vecteur donné. <br>
-	 * L'algorithme utilisé est l'algorithme de Cooley-Tukey. (<a href=
-	 * "https://en.wikipedia.org/wiki/Cooley%E2%80%93Tukey_FFT_algorithm">Source1</a>, 
-	 * <a href="http://chamilo2.grenet.fr/inp/courses/PHELMAA2SICOM4PMSTNS/document/BE/BE2/FFT.pdf">Source 2</a>)<br>
-	 * <b>La taille du vecteur doit être une puissance de deux.</b>
+	 * Faire une FFT inverse en place, sans allocation.<br>
+	 * <b>La taille des vecteurs doit être une puissance de deux.</b>
 	 * 
-	 * @param vector
-	 *            vecteur complexe à transformer.
-	 * @return vecteur transformé.
+	 * @param real
+	 *            parties réelles, remplacées par celles de la FFT inverse.
+	 * @param img
+	 *            parties imaginaires, remplacées par celles de la FFT
+	 *            inverse.
+	 * @throws IllegalArgumentException
+	 *             si la taille des vecteurs n'est pas une puissance de 2.
 	 */
-	private static Complex[] recursiveTransform(final Complex[] vector)
+	public static void inverseTransformInPlace(final double[] real, final double[] img) throws IllegalArgumentException
 	{
-		final int n = vector.length;
+		final int n = real.length;
 		
-		// Vecteur indécomposable d'un seul élément.
-		if (n == 1)
+		// Conjuguer le vecteur.
+		for (int i = 0; i < img.length; ++i)
 		{
-			return vector;
+			img[i] = -img[i];
 		}
 		
-		// On effectue maintenant la FFT sur les termes pairs et impairs.
-		final Complex[] evenFFT, oddFFT;
-		
-		// # Termes pairs :
-		evenFFT = recursiveTransform(decimate(vector, 0));
-		
-		// # Termes impairs :
-		oddFFT = recursiveTransform(decimate(vector, 1));
-		
-		// On rassemble les deux résultats.
-		final Complex[] vectorFFT = new Complex[n];
+		// Calculer sa FFT.
+		transformInPlace(real, img);
 		
-		for (int j = 0; j < n/2; ++j)
+		// Conjuguer et normaliser le résultat.
+		final double f = 1.0/n;
+		for (int i = 0; i < n; ++i)
 		{
-			// Argument de l'exponentielle.
-			double expArg = -2*j* Math.PI/n;
-			// Facteur (omega_j * oddFFT[i]) avec omega_j = exp(-2*i*pi*j/n)) 
-			Complex omegaOdd = Complex.exp(expArg).mult(oddFFT[j]);
-			
-			vectorFFT[j] = evenFFT[j].add(omegaOdd);
-			vectorFFT[j + n/2] = evenFFT[j].sub(omegaOdd);
+			real[i] = real[i] * f;
+			img[i]  = -img[i] * f;
 		}
-		
-		return vectorFFT;
 	}
 	
 	/**
-	 * Fonction réccursive pour calculer l'inverse de la FFT d'un vecteur donné.
+	 * Obtenir l'inverse de la FFT d'un vecteur donné.
 	 * <br>
 	 * <b>La taille du vecteur doit être une puissance de deux.</b>
 	 * 
@@ -151,24 +177,42 @@ public class FFT
 	 */
 	public static Complex[] recursiveInverseTransform(final Complex[] vectorFFT)
 	{
-		final int n = vectorFFT.length;
-		
-		Complex[] vector = new Complex[n];
-		// Conjuguer le vecteur.
-		for (int i = 0; i < n; ++i)
-		{
-			vector[i] = vectorFFT[i].conjugate();
-		}
-		
-		// Calculer sa FFT.
-		vector = recursiveTransform(vector);
-		
-		for (int i = 0; i < n; ++i)
+		return inverseTransform(vectorFFT);
+	}
+	
+	/**
+	 * Rassembler parties réelles et imaginaires en nombres complexes.
+	 * 
+	 * @param real
+	 *            parties réelles.
+	 * @param img
+	 *            parties imaginaires.
+	 * @return vecteur complexe.
+	 */
+	private static Complex[] toComplex(final double[] real, final double[] img)
+	{
+		final Complex[] vector = new Complex[real.length];
+		for (int i = 0; i < vector.length; ++i)
 		{
-			vector[i] = vector[i].conjugate().mult(1.0/n);
+			vector[i] = new Complex(img[i], real[i]);
 		}
-		
 		return vector;
 	}
 	
+	/**
+	 * Échanger deux éléments d'un tableau.
+	 * 
+	 * @param vector
+	 *            tableau.
+	 * @param i
+	 *            indice du premier élément.
+	 * @param j
+	 *            indice du second élément.
+	 */
+	private static void swap(final double[] vector, final int i, final int j)
+	{
+		final double tmp = vector[i];
+		vector[i] = vector[j];
+		vector[j] = tmp;
+	}
 }
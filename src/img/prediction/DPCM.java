@@ -1,15 +1,30 @@
 package img.prediction;
 
-import img.math.Vector2D;
+import java.util.stream.IntStream;
+
+import img.math.MotionField;
 
 /**
  * Classe utilitaire pour la DPCM.
  */
 public class DPCM
 {
+	/**
+	 * Côté des tuiles traitées par une même tâche lors du parcours en front
+	 * d'onde.
+	 */
+	private static final int TILE_SIZE = 64;
+	/**
+	 * Nombre d'éléments en dessous duquel les versions parallèles se
+	 * rabattent sur les versions séquentielles.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+	
 	/**
 	 * Encoder une matrice par un codage DPCM avec le pas de quantification
-	 * spécifié.
+	 * spécifié. Chaque élément est prédit par la moyenne entière (arrondie
+	 * vers le bas) des éléments reconstruits du dessus et de gauche : pour des
+	 * coefficients quantifiés, les erreurs de prédiction restent entières.
 	 * 
 	 * @param matrix
 	 *            matrice à encoder.
@@ -41,7 +56,7 @@ public class DPCM
 	    {
 	        for (int c = 1; c < w; ++c)
 	        {
-	        	final double predictedElement = reconstructedMatrix[l-1][c] * 0.5 + reconstructedMatrix[l][c-1] * 0.5;
+	        	final double predictedElement = predict(reconstructedMatrix[l-1][c], reconstructedMatrix[l][c-1]);
 	        	error[l][c] = quantize(matrix[l][c] - predictedElement, step);
 	        	reconstructedMatrix[l][c] = predictedElement + error[l][c];
 	        }
@@ -78,7 +93,7 @@ public class DPCM
 	    {
 	        for (int c = 1; c < w; ++c)
 	        {
-	        	final double predictedElement = reconstructedMatrix[l-1][c] * 0.5 + reconstructedMatrix[l][c-1] * 0.5;
+	        	final double predictedElement = predict(reconstructedMatrix[l-1][c], reconstructedMatrix[l][c-1]);
 	        	reconstructedMatrix[l][c] = predictedElement + error[l][c];
 	        }
 	    }
@@ -87,112 +102,672 @@ public class DPCM
 	}
 	
 	/**
-	 * Quantifier une valeur donnée avec le pas de quantification spécifié.
+	 * Encoder une matrice par un codage DPCM, en remplaçant ses éléments par
+	 * les erreurs de prédiction. Le résultat est identique à celui de
+	 * {@link #encode(double[][], int)}, sans matrice intermédiaire : seule la
+	 * ligne précédente reconstruite est conservée.
 	 * 
-	 * @param x
-	 *            valeur à quantifier.
+	 * @param matrix
+	 *            matrice à encoder, qui reçoit les erreurs de prédiction.
 	 * @param step
 	 *            pas de quantification.
-	 * @return valeur quantifiée.
 	 */
-	public static double quantize(final double x, final double step)
+	public static void encodeInPlace(final double[][] matrix, final int step)
 	{
-		return x;
-		//return step * Math.round(x / step);
+		encodeInPlace(matrix, step, 1);
 	}
 	
 	/**
-	 * Encoder une matrice de vecteurs par un codage DPCM avec le pas de
-	 * quantification spécifié.
+	 * Encoder en place par un codage DPCM la sous-matrice des éléments dont
+	 * les deux coordonnées sont multiples du pas d'échantillonnage spécifié,
+	 * par exemple les coefficients DC d'une DCT par blocs. Les autres
+	 * éléments ne sont pas modifiés.
 	 * 
 	 * @param matrix
-	 *            matrice de vecteurs à encoder.
+	 *            matrice à encoder, qui reçoit les erreurs de prédiction.
 	 * @param step
 	 *            pas de quantification.
-	 * @return matrice des erreurs de prediction.
+	 * @param stride
+	 *            pas d'échantillonnage de la sous-matrice (1 pour la matrice
+	 *            entière).
 	 */
-	public static Vector2D[][] encode(final Vector2D[][] matrix, final int step)
+	public static void encodeInPlace(final double[][] matrix, final int step, final int stride)
 	{
-		final int h = matrix.length,
-				  w = matrix[0].length;
+		final int h = (matrix.length    + stride-1) / stride,
+				  w = (matrix[0].length + stride-1) / stride;
 		
-		final Vector2D[][] reconstructedMatrix = new Vector2D[h][w];
-		final Vector2D[][] error = new Vector2D[h][w];
-		
-		for (int x = 0; x < w; ++x)
+		// La première ligne et la première colonne sont transmises telles quelles.
+		final double[] reconstructedRow = new double[w];
+		for (int c = 0; c < w; ++c)
 		{
-			reconstructedMatrix[0][x] = matrix[0][x];
-			error[0][x] = matrix[0][x];
+			reconstructedRow[c] = matrix[0][c*stride];
 		}
 		
-		for (int y = 0; y < h; ++y)
-		{
-			reconstructedMatrix[y][0] = matrix[y][0];
-			error[y][0] = matrix[y][0];
-		}
+	    for (int l = 1; l < h; ++l)
+	    {
+	    	final double[] row = matrix[l*stride];
+	    	double reconstructedLeft = row[0];
+	    	reconstructedRow[0] = row[0];
+	    	
+	        for (int c = 1; c < w; ++c)
+	        {
+	        	final double predictedElement = predict(reconstructedRow[c], reconstructedLeft);
+	        	row[c*stride] = quantize(row[c*stride] - predictedElement, step);
+	        	reconstructedLeft = predictedElement + row[c*stride];
+	        	reconstructedRow[c] = reconstructedLeft;
+	        }
+	    }
+	}
+	
+	/**
+	 * Décoder une matrice d'erreurs obtenues par DPCM, en remplaçant ses
+	 * éléments par la matrice reconstruite.
+	 * 
+	 * @param error
+	 *            matrice d'erreurs de la DPCM, qui reçoit la matrice
+	 *            reconstruite.
+	 */
+	public static void decodeInPlace(final double[][] error)
+	{
+		decodeInPlace(error, 1);
+	}
+	
+	/**
+	 * Décoder en place la sous-matrice d'erreurs obtenue par
+	 * {@link #encodeInPlace(double[][], int, int)}.
+	 * 
+	 * @param error
+	 *            matrice d'erreurs de la DPCM, qui reçoit la matrice
+	 *            reconstruite.
+	 * @param stride
+	 *            pas d'échantillonnage de la sous-matrice (1 pour la matrice
+	 *            entière).
+	 */
+	public static void decodeInPlace(final double[][] error, final int stride)
+	{
+		final int h = (error.length    + stride-1) / stride,
+				  w = (error[0].length + stride-1) / stride;
 		
 	    for (int l = 1; l < h; ++l)
 	    {
+	    	final double[] up  = error[(l-1)*stride],
+	    				   row = error[l*stride];
+	    	
 	        for (int c = 1; c < w; ++c)
 	        {
-	        	final Vector2D predictedElement = reconstructedMatrix[l-1][c].times(0.5).plus(reconstructedMatrix[l][c-1].times(0.5));
-	        	error[l][c] = quantize(matrix[l][c].minus(predictedElement), step);
-	        	reconstructedMatrix[l][c] = predictedElement.plus(error[l][c]);
+	        	final double predictedElement = predict(up[c*stride], row[(c-1)*stride]);
+	        	row[c*stride] = predictedElement + row[c*stride];
 	        }
 	    }
-	    
-	    return error;
 	}
 	
 	/**
-	 * Décoder une matrice d'erreurs obtenues par DPCM d'une carte de vecteurs.
+	 * Encoder une matrice par un codage DPCM en parallèle. Le résultat est
+	 * identique bit à bit à celui de {@link #encode(double[][], int)}.
+	 * 
+	 * @param matrix
+	 *            matrice à encoder.
+	 * @param step
+	 *            pas de quantification.
+	 * @return matrice des erreurs de prédiction.
+	 */
+	public static double[][] parallelEncode(final double[][] matrix, final int step)
+	{
+		final double[][] error = new double[matrix.length][];
+		for (int y = 0; y < matrix.length; ++y)
+		{
+			error[y] = matrix[y].clone();
+		}
+		
+		parallelEncodeInPlace(error, step, 1);
+		return error;
+	}
+	
+	/**
+	 * Décoder une matrice d'erreurs obtenues par DPCM en parallèle. Le
+	 * résultat est identique bit à bit à celui de {@link #decode(double[][])}.
 	 * 
 	 * @param error
-	 *            matrice d'erreurs de la DPCM d'une carte de vecteurs.
+	 *            matrice d'erreurs de la DPCM.
 	 * @return matrice originale à des erreurs de quantification près.
 	 */
-	public static Vector2D[][] decode(final Vector2D[][] error)
+	public static double[][] parallelDecode(final double[][] error)
 	{
-		final int h = error.length,
-				  w = error[0].length;
+		final double[][] matrix = new double[error.length][];
+		for (int y = 0; y < error.length; ++y)
+		{
+			matrix[y] = error[y].clone();
+		}
 		
-		final Vector2D[][] reconstructedMatrix = new Vector2D[h][w];
+		parallelDecodeInPlace(matrix, 1);
+		return matrix;
+	}
+	
+	/**
+	 * Encoder en place une sous-matrice par un codage DPCM, en parallèle. Un
+	 * élément ne dépendant que de ses voisins du dessus et de gauche, les
+	 * tuiles d'une même anti-diagonale sont indépendantes : elles sont
+	 * traitées en parallèle, diagonale après diagonale. Le résultat est
+	 * identique bit à bit à celui de
+	 * {@link #encodeInPlace(double[][], int, int)}.
+	 * 
+	 * @param matrix
+	 *            matrice à encoder, qui reçoit les erreurs de prédiction.
+	 * @param step
+	 *            pas de quantification.
+	 * @param stride
+	 *            pas d'échantillonnage de la sous-matrice (1 pour la matrice
+	 *            entière).
+	 */
+	public static void parallelEncodeInPlace(final double[][] matrix, final int step, final int stride)
+	{
+		final int h = (matrix.length    + stride-1) / stride,
+				  w = (matrix[0].length + stride-1) / stride;
 		
-		for (int x = 0; x < w; ++x)
+		if ((long) h*w < PARALLEL_THRESHOLD)
 		{
-			reconstructedMatrix[0][x] = error[0][x];
+			encodeInPlace(matrix, step, stride);
+			return;
 		}
 		
-		for (int y = 0; y < h; ++y)
+		// Valeurs reconstruites de la dernière ligne traitée de chaque colonne
+		// et de la dernière colonne traitée de chaque ligne : deux tuiles
+		// d'une même diagonale n'en partagent aucune.
+		final double[] reconstructedRow    = new double[w],
+					   reconstructedColumn = new double[h];
+		
+		wavefront(h, w, TILE_SIZE, TILE_SIZE, 1, (l0, l1, c0, c1) ->
 		{
-			reconstructedMatrix[y][0] = error[y][0];
+			for (int l = l0; l < l1; ++l)
+			{
+				final double[] row = matrix[l*stride];
+				double reconstructedLeft = reconstructedColumn[l];
+				
+				for (int c = c0; c < c1; ++c)
+				{
+					// La première ligne et la première colonne sont transmises
+					// telles quelles.
+					if (l == 0 || c == 0)
+					{
+						reconstructedLeft = row[c*stride];
+					}
+					else
+					{
+						final double predictedElement = predict(reconstructedRow[c], reconstructedLeft);
+						row[c*stride] = quantize(row[c*stride] - predictedElement, step);
+						reconstructedLeft = predictedElement + row[c*stride];
+					}
+					reconstructedRow[c] = reconstructedLeft;
+				}
+				reconstructedColumn[l] = reconstructedLeft;
+			}
+		});
+	}
+	
+	/**
+	 * Décoder en place une sous-matrice d'erreurs obtenue par DPCM, en
+	 * parallèle par anti-diagonales de tuiles. Le résultat est identique bit à
+	 * bit à celui de {@link #decodeInPlace(double[][], int)}.
+	 * 
+	 * @param error
+	 *            matrice d'erreurs de la DPCM, qui reçoit la matrice
+	 *            reconstruite.
+	 * @param stride
+	 *            pas d'échantillonnage de la sous-matrice (1 pour la matrice
+	 *            entière).
+	 */
+	public static void parallelDecodeInPlace(final double[][] error, final int stride)
+	{
+		final int h = (error.length    + stride-1) / stride,
+				  w = (error[0].length + stride-1) / stride;
+		
+		if ((long) h*w < PARALLEL_THRESHOLD)
+		{
+			decodeInPlace(error, stride);
+			return;
 		}
 		
-	    for (int l = 1; l < h; ++l)
-	    {
-	        for (int c = 1; c < w; ++c)
-	        {
-	        	final Vector2D predictedElement = reconstructedMatrix[l-1][c].times(0.5).plus(reconstructedMatrix[l][c-1].times(0.5));
-	        	reconstructedMatrix[l][c] = predictedElement.plus(error[l][c]);
-	        }
-	    }
-	    
-	    return reconstructedMatrix;
+		wavefront(h, w, TILE_SIZE, TILE_SIZE, 1, (l0, l1, c0, c1) ->
+		{
+			for (int l = Math.max(l0, 1); l < l1; ++l)
+			{
+				final double[] up  = error[(l-1)*stride],
+							   row = error[l*stride];
+				
+				for (int c = Math.max(c0, 1); c < c1; ++c)
+				{
+					final double predictedElement = predict(up[c*stride], row[(c-1)*stride]);
+					row[c*stride] = predictedElement + row[c*stride];
+				}
+			}
+		});
 	}
 	
 	/**
-	 * Quantifier un vecteur donnée avec le pas de quantification spécifié.
+	 * Prédire un élément à partir de ses voisins reconstruits du dessus et de
+	 * gauche.
 	 * 
-	 * @param vector
-	 *            vecteur à quantifier.
+	 * @param up
+	 *            élément du dessus.
+	 * @param left
+	 *            élément de gauche.
+	 * @return moyenne arrondie vers le bas.
+	 */
+	private static double predict(final double up, final double left)
+	{
+		return Math.floor((up + left) * 0.5);
+	}
+	
+	/**
+	 * Quantifier une valeur donnée avec le pas de quantification spécifié.
+	 * 
+	 * @param x
+	 *            valeur à quantifier.
 	 * @param step
 	 *            pas de quantification.
-	 * @return vecteur quantifiée.
+	 * @return valeur quantifiée.
+	 */
+	public static double quantize(final double x, final double step)
+	{
+		return x;
+		//return step * Math.round(x / step);
+	}
+	
+	/**
+	 * Encoder un champ de vecteurs de mouvement par un codage DPCM sans perte.
+	 * Chaque composante est prédite par la moyenne entière (arrondie vers le
+	 * bas) des composantes des vecteurs du dessus et de gauche : les erreurs
+	 * de prédiction restent entières.
+	 * 
+	 * @param field
+	 *            champ de vecteurs à encoder.
+	 * @return champ des erreurs de prédiction.
+	 */
+	public static MotionField encode(final MotionField field)
+	{
+		final MotionField error = new MotionField(field.getWidth(), field.getHeight());
+		
+		for (int l = 0; l < field.getHeight(); ++l)
+		{
+			encodeRow(field.getData(), error.getData(), l, 2*field.getWidth());
+		}
+		
+		return error;
+	}
+	
+	/**
+	 * Décoder un champ d'erreurs obtenues par DPCM d'un champ de vecteurs de
+	 * mouvement.
+	 * 
+	 * @param error
+	 *            champ des erreurs de prédiction.
+	 * @return champ de vecteurs original.
+	 */
+	public static MotionField decode(final MotionField error)
+	{
+		final MotionField field = new MotionField(error.getWidth(), error.getHeight());
+		final int rowLength = 2*error.getWidth();
+		
+		decodeTile(error.getData(), field.getData(), rowLength, 0, error.getHeight(), 0, rowLength);
+		
+		return field;
+	}
+	
+	/**
+	 * Encoder un champ de vecteurs de mouvement par un codage DPCM sans perte,
+	 * avec la prédiction médiane : chaque composante est prédite par la
+	 * médiane des composantes des vecteurs de gauche, du dessus et du dessus à
+	 * droite. Sur les bords, la prédiction se réduit au vecteur de gauche
+	 * (première ligne) ou du dessus (première colonne), et le vecteur du
+	 * dessus à gauche remplace celui du dessus à droite sur la dernière
+	 * colonne.
+	 * 
+	 * @param field
+	 *            champ de vecteurs à encoder.
+	 * @return champ des erreurs de prédiction.
+	 */
+	public static MotionField encodeMedian(final MotionField field)
+	{
+		final MotionField error = new MotionField(field.getWidth(), field.getHeight());
+		
+		for (int l = 0; l < field.getHeight(); ++l)
+		{
+			encodeMedianRow(field.getData(), error.getData(), l, 2*field.getWidth());
+		}
+		
+		return error;
+	}
+	
+	/**
+	 * Décoder un champ d'erreurs obtenues par DPCM d'un champ de vecteurs de
+	 * mouvement avec la prédiction médiane.
+	 * 
+	 * @param error
+	 *            champ des erreurs de prédiction.
+	 * @return champ de vecteurs original.
+	 * @see #encodeMedian(MotionField)
+	 */
+	public static MotionField decodeMedian(final MotionField error)
+	{
+		final MotionField field = new MotionField(error.getWidth(), error.getHeight());
+		final int rowLength = 2*error.getWidth();
+		
+		decodeMedianTile(error.getData(), field.getData(), rowLength, 0, error.getHeight(), 0, rowLength);
+		
+		return field;
+	}
+	
+	/**
+	 * Encoder un champ de vecteurs de mouvement comme
+	 * {@link #encode(MotionField)}, en parallèle : les erreurs ne dépendant
+	 * que du champ original, les lignes sont indépendantes.
+	 * 
+	 * @param field
+	 *            champ de vecteurs à encoder.
+	 * @return champ des erreurs de prédiction.
+	 */
+	public static MotionField parallelEncode(final MotionField field)
+	{
+		if (field.getData().length < PARALLEL_THRESHOLD)
+		{
+			return encode(field);
+		}
+		
+		final MotionField error = new MotionField(field.getWidth(), field.getHeight());
+		IntStream.range(0, field.getHeight()).parallel().forEach(l ->
+				encodeRow(field.getData(), error.getData(), l, 2*field.getWidth()));
+		
+		return error;
+	}
+	
+	/**
+	 * Décoder un champ d'erreurs comme {@link #decode(MotionField)}, en
+	 * parallèle par anti-diagonales de tuiles.
+	 * 
+	 * @param error
+	 *            champ des erreurs de prédiction.
+	 * @return champ de vecteurs original.
+	 */
+	public static MotionField parallelDecode(final MotionField error)
+	{
+		if (error.getData().length < PARALLEL_THRESHOLD)
+		{
+			return decode(error);
+		}
+		
+		final MotionField field = new MotionField(error.getWidth(), error.getHeight());
+		final int rowLength = 2*error.getWidth();
+		
+		wavefront(error.getHeight(), error.getWidth(), TILE_SIZE, TILE_SIZE, 1, (l0, l1, c0, c1) ->
+				decodeTile(error.getData(), field.getData(), rowLength, l0, l1, 2*c0, 2*c1));
+		
+		return field;
+	}
+	
+	/**
+	 * Encoder un champ de vecteurs de mouvement comme
+	 * {@link #encodeMedian(MotionField)}, en parallèle par lignes.
+	 * 
+	 * @param field
+	 *            champ de vecteurs à encoder.
+	 * @return champ des erreurs de prédiction.
+	 */
+	public static MotionField parallelEncodeMedian(final MotionField field)
+	{
+		if (field.getData().length < PARALLEL_THRESHOLD)
+		{
+			return encodeMedian(field);
+		}
+		
+		final MotionField error = new MotionField(field.getWidth(), field.getHeight());
+		IntStream.range(0, field.getHeight()).parallel().forEach(l ->
+				encodeMedianRow(field.getData(), error.getData(), l, 2*field.getWidth()));
+		
+		return error;
+	}
+	
+	/**
+	 * Décoder un champ d'erreurs comme {@link #decodeMedian(MotionField)}, en
+	 * parallèle. Le vecteur du dessus à droite intervenant dans la
+	 * prédiction, les tuiles ont une seule ligne et le front d'onde avance de
+	 * deux tuiles par ligne.
+	 * 
+	 * @param error
+	 *            champ des erreurs de prédiction.
+	 * @return champ de vecteurs original.
+	 */
+	public static MotionField parallelDecodeMedian(final MotionField error)
+	{
+		if (error.getData().length < PARALLEL_THRESHOLD)
+		{
+			return decodeMedian(error);
+		}
+		
+		final MotionField field = new MotionField(error.getWidth(), error.getHeight());
+		final int rowLength = 2*error.getWidth();
+		
+		wavefront(error.getHeight(), error.getWidth(), 1, TILE_SIZE, 2, (l0, l1, c0, c1) ->
+				decodeMedianTile(error.getData(), field.getData(), rowLength, l0, l1, 2*c0, 2*c1));
+		
+		return field;
+	}
+	
+	/**
+	 * Encoder une ligne d'un champ de vecteurs avec la prédiction moyenne.
+	 * 
+	 * @param src
+	 *            composantes entrelacées (x, y) du champ original.
+	 * @param dest
+	 *            composantes des erreurs de prédiction.
+	 * @param l
+	 *            indice de la ligne.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 */
+	private static void encodeRow(final short[] src, final short[] dest, final int l, final int rowLength)
+	{
+		final int row = l*rowLength;
+		
+		// La première ligne et la première colonne sont transmises telles quelles.
+		if (l == 0)
+		{
+			System.arraycopy(src, 0, dest, 0, rowLength);
+			return;
+		}
+		
+		dest[row]     = src[row];
+		dest[row + 1] = src[row + 1];
+		
+		for (int i = row + 2; i < row + rowLength; ++i)
+		{
+			dest[i] = (short) (src[i] - ((src[i - rowLength] + src[i - 2]) >> 1));
+		}
+	}
+	
+	/**
+	 * Décoder une tuile d'un champ d'erreurs avec la prédiction moyenne. Les
+	 * tuiles du dessus et de gauche doivent déjà être décodées.
+	 * 
+	 * @param src
+	 *            composantes entrelacées (x, y) des erreurs de prédiction.
+	 * @param dest
+	 *            composantes du champ reconstruit.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 * @param l0
+	 *            première ligne de la tuile.
+	 * @param l1
+	 *            ligne suivant la dernière ligne de la tuile.
+	 * @param c0
+	 *            position de la première composante de la tuile dans la ligne.
+	 * @param c1
+	 *            position suivant la dernière composante de la tuile.
+	 */
+	private static void decodeTile(final short[] src, final short[] dest, final int rowLength, final int l0,
+			final int l1, final int c0, final int c1)
+	{
+		for (int l = l0; l < l1; ++l)
+		{
+			final int row = l*rowLength;
+			
+			for (int i = row + c0; i < row + c1; ++i)
+			{
+				dest[i] = l == 0 || i < row + 2 ? src[i] : (short) (src[i] + ((dest[i - rowLength] + dest[i - 2]) >> 1));
+			}
+		}
+	}
+	
+	/**
+	 * Encoder une ligne d'un champ de vecteurs avec la prédiction médiane.
+	 * 
+	 * @param src
+	 *            composantes entrelacées (x, y) du champ original.
+	 * @param dest
+	 *            composantes des erreurs de prédiction.
+	 * @param l
+	 *            indice de la ligne.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 */
+	private static void encodeMedianRow(final short[] src, final short[] dest, final int l, final int rowLength)
+	{
+		final int row = l*rowLength;
+		
+		for (int c = 0; c < rowLength; ++c)
+		{
+			dest[row + c] = (short) (src[row + c] - predictMedian(src, row, c, rowLength));
+		}
+	}
+	
+	/**
+	 * Décoder une tuile d'un champ d'erreurs avec la prédiction médiane. Les
+	 * tuiles de gauche, du dessus et du dessus à droite doivent déjà être
+	 * décodées.
+	 * 
+	 * @param src
+	 *            composantes entrelacées (x, y) des erreurs de prédiction.
+	 * @param dest
+	 *            composantes du champ reconstruit.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 * @param l0
+	 *            première ligne de la tuile.
+	 * @param l1
+	 *            ligne suivant la dernière ligne de la tuile.
+	 * @param c0
+	 *            position de la première composante de la tuile dans la ligne.
+	 * @param c1
+	 *            position suivant la dernière composante de la tuile.
+	 */
+	private static void decodeMedianTile(final short[] src, final short[] dest, final int rowLength, final int l0,
+			final int l1, final int c0, final int c1)
+	{
+		for (int l = l0; l < l1; ++l)
+		{
+			final int row = l*rowLength;
+			
+			for (int c = c0; c < c1; ++c)
+			{
+				dest[row + c] = (short) (src[row + c] + predictMedian(dest, row, c, rowLength));
+			}
+		}
+	}
+	
+	/**
+	 * Prédire une composante d'un vecteur de mouvement à partir des vecteurs
+	 * déjà reconstruits de son voisinage causal.
+	 * 
+	 * @param field
+	 *            composantes entrelacées (x, y) du champ reconstruit.
+	 * @param row
+	 *            indice du début de la ligne du vecteur.
+	 * @param c
+	 *            position de la composante dans la ligne.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 * @return composante prédite.
+	 */
+	private static int predictMedian(final short[] field, final int row, final int c, final int rowLength)
+	{
+		final int i = row + c;
+		
+		if (row == 0)
+		{
+			return c < 2 ? 0 : field[i - 2];
+		}
+		
+		final int up = field[i - rowLength];
+		if (c < 2)
+		{
+			return up;
+		}
+		
+		final int left    = field[i - 2],
+				  upRight = c + 2 < rowLength ? field[i - rowLength + 2] : field[i - rowLength - 2];
+		
+		return Math.max(Math.min(left, up), Math.min(Math.max(left, up), upRight));
+	}
+	
+	/**
+	 * Parcourir une matrice en front d'onde : les tuiles sont traitées
+	 * diagonale après diagonale, et celles d'une même diagonale en parallèle.
+	 * La tuile (ti, tj) appartient à la diagonale skew*ti + tj : avec un
+	 * décalage de 1, elle est traitée après ses voisines du dessus et de
+	 * gauche, avec un décalage de 2, également après celle du dessus à
+	 * droite.
+	 * 
+	 * @param h
+	 *            hauteur de la matrice.
+	 * @param w
+	 *            largeur de la matrice.
+	 * @param tileH
+	 *            hauteur des tuiles.
+	 * @param tileW
+	 *            largeur des tuiles.
+	 * @param skew
+	 *            décalage du front d'onde, en tuiles par ligne de tuiles.
+	 * @param task
+	 *            traitement d'une tuile.
+	 */
+	private static void wavefront(final int h, final int w, final int tileH, final int tileW, final int skew,
+			final TileTask task)
+	{
+		final int nTileH = (h + tileH-1) / tileH,
+				  nTileW = (w + tileW-1) / tileW;
+		
+		for (int d = 0; d < skew*(nTileH-1) + nTileW; ++d)
+		{
+			final int diagonal = d;
+			final int tiMin = Math.max(0, (d - nTileW + skew) / skew),
+					  tiMax = Math.min(nTileH-1, d / skew);
+			
+			IntStream.rangeClosed(tiMin, tiMax).parallel().forEach(ti ->
+			{
+				final int tj = diagonal - skew*ti;
+				task.run(ti*tileH, Math.min(h, (ti+1)*tileH), tj*tileW, Math.min(w, (tj+1)*tileW));
+			});
+		}
+	}
+	
+	/**
+	 * Traitement d'une tuile lors d'un parcours en front d'onde.
 	 */
-	public static Vector2D quantize(final Vector2D vector, final int step)
+	@FunctionalInterface
+	private static interface TileTask
 	{
-		return vector;
-//		return new Vector2D(step * (int)Math.round((double)vector.x() / step), step * (int)Math.round((double)vector.y() / step)) ;
+		/**
+		 * Traiter une tuile.
+		 * 
+		 * @param l0
+		 *            première ligne.
+		 * @param l1
+		 *            ligne suivant la dernière ligne.
+		 * @param c0
+		 *            première colonne.
+		 * @param c1
+		 *            colonne suivant la dernière colonne.
+		 */
+		void run(int l0, int l1, int c0, int c1);
 	}
 	
 }
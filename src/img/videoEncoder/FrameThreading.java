@@ -0,0 +1,586 @@
+package img.videoEncoder;
+
+import static img.videoEncoder.VideoEncoder.inverseTransformBlockMovementMap;
+import static img.videoEncoder.VideoEncoder.inverseTransformErrors;
+import static img.videoEncoder.VideoEncoder.reconstructI;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import img.BytePlane;
+import img.OffHeapPlaneAllocator;
+import img.PlaneAllocator;
+import img.PlanePool;
+import img.ShortPlane;
+import img.math.MotionField;
+import img.videoEncoder.io.EncodedFrame;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.EncoderParams.PlaneStorage;
+
+/**
+ * Encodage et décodage avec plusieurs trames en cours à la fois, chacune sur
+ * son propre thread. La recherche de mouvement étant bornée, une ligne de
+ * blocs d'une trame P ne lit que quelques lignes de la trame précédente
+ * reconstruite : chaque trame publie le nombre de lignes déjà reconstruites
+ * ({@link RowProgress}) et la trame suivante n'attend que les lignes qu'elle
+ * lit, d'après ses vecteurs de déplacement. Les trames sont rendues dans
+ * l'ordre et les flux sont identiques à ceux de
+ * {@link VideoEncoder#encodePlanes(Stream, EncoderParams)} et
+ * {@link VideoEncoder#decodePlanes(Stream, EncoderParams)}.
+ */
+public class FrameThreading
+{
+	/**
+	 * Nombre de trames en cours par défaut.
+	 * 
+	 * @return une trame de plus que de threads dans le pool commun.
+	 */
+	public static int defaultFramesInFlight()
+	{
+		return ForkJoinPool.getCommonPoolParallelism() + 1;
+	}
+	
+	/**
+	 * Encoder un flux de trames avec {@link #defaultFramesInFlight()} trames
+	 * en cours.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return flux de trames encodées, dans l'ordre.
+	 */
+	public static Stream<EncodedFrame> encode(final Stream<BytePlane> frameStream, final EncoderParams parameters)
+	{
+		return encode(frameStream, parameters, defaultFramesInFlight());
+	}
+	
+	/**
+	 * Encoder un flux de trames avec plusieurs trames en cours. Chaque trame
+	 * est encodée par macroblocs ({@link MacroblockEncoder}), ligne après
+	 * ligne ; si les paramètres ne le permettent pas, l'encodage est celui,
+	 * séquentiel, de {@link VideoEncoder#encodePlanes(Stream, EncoderParams)}.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param framesInFlight
+	 *            nombre maximum de trames en cours.
+	 * @return flux de trames encodées, dans l'ordre.
+	 * @throws IllegalArgumentException
+	 *             si framesInFlight < 1.
+	 */
+	public static Stream<EncodedFrame> encode(final Stream<BytePlane> frameStream, final EncoderParams parameters,
+			final int framesInFlight) throws IllegalArgumentException
+	{
+		checkFramesInFlight(framesInFlight);
+		
+		final Iterator<BytePlane> frames = frameStream.iterator();
+		if (!frames.hasNext())
+		{
+			return Stream.<EncodedFrame>empty().onClose(frameStream::close);
+		}
+		
+		// La taille de la première trame décide du mode d'encodage.
+		final BytePlane first = frames.next();
+		final Stream<BytePlane> allFrames = Stream.concat(Stream.of(first), toStream(frames));
+		
+		if (!MacroblockEncoder.supports(parameters, first.getWidth(), first.getHeight()))
+		{
+			return VideoEncoder.encodePlanes(allFrames, parameters).onClose(frameStream::close);
+		}
+		
+		final FrameEncoder encoder = new FrameEncoder(parameters);
+		return mapInFlight(allFrames.iterator(), framesInFlight, encoder)
+				.onClose(encoder::close)
+				.onClose(frameStream::close);
+	}
+	
+	/**
+	 * Décoder un flux de trames avec {@link #defaultFramesInFlight()} trames
+	 * en cours.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à décoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return flux de trames décodées, dans l'ordre.
+	 */
+	public static Stream<BytePlane> decode(final Stream<EncodedFrame> frameStream, final EncoderParams parameters)
+	{
+		return decode(frameStream, parameters, defaultFramesInFlight());
+	}
+	
+	/**
+	 * Décoder un flux de trames avec plusieurs trames en cours. Les erreurs de
+	 * prédiction d'une trame sont obtenues sans attendre ; seule la
+	 * compensation de mouvement, ligne de blocs après ligne de blocs, attend
+	 * la trame précédente. Comme pour
+	 * {@link VideoEncoder#decodePlanes(Stream, EncoderParams)}, les plans
+	 * décodés doivent être rendus avec {@link BytePlane#release()}.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à décoder, commençant par une trame intra.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param framesInFlight
+	 *            nombre maximum de trames en cours.
+	 * @return flux de trames décodées, dans l'ordre.
+	 * @throws IllegalArgumentException
+	 *             si framesInFlight < 1.
+	 */
+	public static Stream<BytePlane> decode(final Stream<EncodedFrame> frameStream, final EncoderParams parameters,
+			final int framesInFlight) throws IllegalArgumentException
+	{
+		checkFramesInFlight(framesInFlight);
+		
+		final FrameDecoder decoder = new FrameDecoder(parameters);
+		return mapInFlight(frameStream.iterator(), framesInFlight, decoder)
+				.onClose(decoder::close)
+				.onClose(frameStream::close);
+	}
+	
+	/**
+	 * Vérifier le nombre de trames en cours.
+	 * 
+	 * @param framesInFlight
+	 *            nombre maximum de trames en cours.
+	 * @throws IllegalArgumentException
+	 *             si framesInFlight < 1.
+	 */
+	private static void checkFramesInFlight(final int framesInFlight) throws IllegalArgumentException
+	{
+		if (framesInFlight < 1)
+		{
+			throw new IllegalArgumentException("Nombre de trames en cours invalide : " + framesInFlight);
+		}
+	}
+	
+	/**
+	 * Traiter les trames avec au plus framesInFlight trames en cours et rendre
+	 * les résultats dans l'ordre des trames. La fermeture du flux arrête les
+	 * trames en cours.
+	 * 
+	 * @param inputs
+	 *            trames à traiter, lues au fur et à mesure.
+	 * @param framesInFlight
+	 *            nombre maximum de trames en cours.
+	 * @param coder
+	 *            préparation des tâches des trames.
+	 * @return flux des résultats, dans l'ordre des trames.
+	 */
+	private static <T, R> Stream<R> mapInFlight(final Iterator<T> inputs, final int framesInFlight,
+			final FrameCoder<T, R> coder)
+	{
+		final InFlightIterator<T, R> results = new InFlightIterator<>(inputs, framesInFlight, coder);
+		return toStream(results).onClose(results::close);
+	}
+	
+	/**
+	 * Obtenir un flux séquentiel et ordonné à partir d'un itérateur.
+	 * 
+	 * @param iterator
+	 *            itérateur des éléments.
+	 * @return flux des éléments.
+	 */
+	private static <T> Stream<T> toStream(final Iterator<T> iterator)
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+	}
+	
+	/**
+	 * Préparation de la tâche d'une trame, à partir de la trame précédente.
+	 */
+	private interface FrameCoder<T, R>
+	{
+		/**
+		 * Préparer la tâche d'une trame, sans la lancer.
+		 * 
+		 * @param input
+		 *            trame à traiter.
+		 * @param previous
+		 *            trame précédente, éventuellement encore en cours, null
+		 *            pour la première trame.
+		 * @return trame en cours, avec sa tâche.
+		 */
+		public InFlightFrame<R> prepare(T input, InFlightFrame<R> previous);
+	}
+	
+	/**
+	 * Trame en cours : tâche, avancement de sa reconstruction et références
+	 * gardées pour la trame suivante.
+	 */
+	private static class InFlightFrame<R>
+	{
+		/**
+		 * Avancement de la reconstruction.
+		 */
+		public final RowProgress progress = new RowProgress();
+		/**
+		 * Trame initiale, null au décodage.
+		 */
+		public BytePlane frame;
+		/**
+		 * Trame reconstruite.
+		 */
+		public BytePlane frameRec;
+		/**
+		 * Tâche de la trame.
+		 */
+		public Supplier<R> task;
+		/**
+		 * Résultat de la tâche, une fois lancée.
+		 */
+		public CompletableFuture<R> result;
+		
+		/**
+		 * Rendre les références de la trame.
+		 */
+		public void release()
+		{
+			if (frame != null)
+			{
+				frame.release();
+			}
+			frameRec.release();
+		}
+	}
+	
+	/**
+	 * Résultats des trames, lancées chacune sur un thread d'un pool dédié (les
+	 * tâches attendent la trame précédente : elles ne doivent pas occuper le
+	 * pool commun). Les références d'une trame sont rendues lorsque la trame
+	 * suivante est rendue.
+	 */
+	private static class InFlightIterator<T, R> implements Iterator<R>, AutoCloseable
+	{
+		/**
+		 * Trames à traiter.
+		 */
+		private final Iterator<T> inputs;
+		/**
+		 * Nombre maximum de trames en cours.
+		 */
+		private final int framesInFlight;
+		/**
+		 * Préparation des tâches des trames.
+		 */
+		private final FrameCoder<T, R> coder;
+		/**
+		 * Pool de threads, un par trame en cours.
+		 */
+		private final ExecutorService executor;
+		/**
+		 * Trames lancées et pas encore rendues, dans l'ordre.
+		 */
+		private final ArrayDeque<InFlightFrame<R>> pending;
+		/**
+		 * Dernière trame lancée.
+		 */
+		private InFlightFrame<R> last;
+		/**
+		 * Dernière trame rendue, dont les références sont gardées pour la
+		 * trame suivante.
+		 */
+		private InFlightFrame<R> delivered;
+		
+		public InFlightIterator(final Iterator<T> inputs, final int framesInFlight, final FrameCoder<T, R> coder)
+		{
+			this.inputs         = inputs;
+			this.framesInFlight = framesInFlight;
+			this.coder          = coder;
+			this.pending        = new ArrayDeque<>(framesInFlight);
+			this.executor       = Executors.newFixedThreadPool(framesInFlight, runnable ->
+			{
+				final Thread thread = new Thread(runnable, "frame-thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			submit();
+			if (pending.isEmpty())
+			{
+				close();
+				return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public R next()
+		{
+			submit();
+			if (pending.isEmpty())
+			{
+				throw new NoSuchElementException();
+			}
+			
+			final InFlightFrame<R> current = pending.poll();
+			final R result = current.result.join();
+			
+			// La trame rendue précédente ne sert plus de référence.
+			if (delivered != null)
+			{
+				delivered.release();
+			}
+			delivered = current;
+			
+			return result;
+		}
+		
+		/**
+		 * Lancer les trames suivantes, dans la limite des trames en cours.
+		 */
+		private void submit()
+		{
+			while (pending.size() < framesInFlight && !executor.isShutdown() && inputs.hasNext())
+			{
+				final InFlightFrame<R> current = coder.prepare(inputs.next(), last);
+				final Supplier<R> task = current.task;
+				
+				current.result = CompletableFuture.supplyAsync(() ->
+				{
+					try
+					{
+						return task.get();
+					}
+					catch (final RuntimeException | Error e)
+					{
+						// Les trames qui attendent celle-ci échouent aussi.
+						current.progress.abort();
+						throw e;
+					}
+				}, executor);
+				
+				pending.add(current);
+				last = current;
+			}
+		}
+		
+		/**
+		 * Arrêter les trames en cours, rendre toutes les références et
+		 * arrêter le pool de threads.
+		 */
+		@Override
+		public void close()
+		{
+			if (executor.isShutdown())
+			{
+				return;
+			}
+			executor.shutdown();
+			
+			// Les trames qui attendent encore une référence échouent ; il faut
+			// attendre la fin de toutes avant de rendre leurs plans.
+			pending.forEach(frame -> frame.progress.abort());
+			for (final InFlightFrame<R> frame : pending)
+			{
+				try
+				{
+					frame.result.join();
+				}
+				catch (final RuntimeException e)
+				{
+					// Trame abandonnée.
+				}
+				frame.release();
+			}
+			pending.clear();
+			
+			if (delivered != null)
+			{
+				delivered.release();
+				delivered = null;
+			}
+			last = null;
+		}
+	}
+	
+	/**
+	 * Encodage d'une trame par macroblocs, à partir de la trame précédente.
+	 */
+	private static class FrameEncoder implements FrameCoder<BytePlane, EncodedFrame>, AutoCloseable
+	{
+		/**
+		 * Paramètres d'encodage.
+		 */
+		private final EncoderParams parameters;
+		/**
+		 * Allocateur des trames reconstruites.
+		 */
+		private final PlaneAllocator allocator;
+		/**
+		 * Pool des trames reconstruites.
+		 */
+		private final PlanePool pool;
+		/**
+		 * Nombre de trames préparées.
+		 */
+		private long frameCount;
+		
+		public FrameEncoder(final EncoderParams parameters)
+		{
+			this.parameters = parameters;
+			this.allocator  = parameters.getPlaneStorage() == PlaneStorage.OFF_HEAP ?
+					new OffHeapPlaneAllocator()
+				:
+					PlaneAllocator.HEAP;
+			this.pool       = new PlanePool(allocator);
+		}
+		
+		@Override
+		public InFlightFrame<EncodedFrame> prepare(final BytePlane frame, final InFlightFrame<EncodedFrame> previous)
+		{
+			// Début d'un groupe de trames : on repart d'une trame intra.
+			final InFlightFrame<EncodedFrame> reference =
+					parameters.getGopLength() > 0 && frameCount % parameters.getGopLength() == 0 ?
+						null
+					:
+						previous;
+			++frameCount;
+			
+			final InFlightFrame<EncodedFrame> current = new InFlightFrame<>();
+			current.frame    = frame;
+			current.frameRec = pool.allocate(frame.getWidth(), frame.getHeight());
+			// La trame initiale sert de référence à l'estimation de mouvement
+			// de la trame suivante.
+			frame.retain();
+			
+			current.task = reference == null ?
+					() -> MacroblockEncoder.encode(frame, null, null, current.frameRec, parameters, null, null,
+							current.progress, pool)
+				:
+					() -> MacroblockEncoder.encode(frame, reference.frame, reference.frameRec, current.frameRec,
+							parameters, null, reference.progress, current.progress, pool);
+							
+			return current;
+		}
+		
+		/**
+		 * Libérer le pool et l'allocateur.
+		 */
+		@Override
+		public void close()
+		{
+			pool.close();
+			
+			if (allocator instanceof OffHeapPlaneAllocator)
+			{
+				((OffHeapPlaneAllocator) allocator).close();
+			}
+		}
+	}
+	
+	/**
+	 * Décodage d'une trame, ligne de blocs après ligne de blocs, à partir de
+	 * la trame précédente.
+	 */
+	private static class FrameDecoder implements FrameCoder<EncodedFrame, BytePlane>, AutoCloseable
+	{
+		/**
+		 * Paramètres d'encodage.
+		 */
+		private final EncoderParams parameters;
+		/**
+		 * Pool des trames et des plans de travail.
+		 */
+		private final PlanePool pool = new PlanePool(PlaneAllocator.HEAP);
+		
+		public FrameDecoder(final EncoderParams parameters)
+		{
+			this.parameters = parameters;
+		}
+		
+		@Override
+		public InFlightFrame<BytePlane> prepare(final EncodedFrame frame, final InFlightFrame<BytePlane> previous)
+				throws IllegalStateException
+		{
+			final InFlightFrame<BytePlane> reference = frame.getType() == FrameType.I ? null : previous;
+			if (frame.getType() == FrameType.P && reference == null)
+			{
+				throw new IllegalStateException("Trame prédite sans trame de référence");
+			}
+			
+			final InFlightFrame<BytePlane> current = new InFlightFrame<>();
+			current.frameRec = pool.allocate(frame.getWidth(), frame.getHeight());
+			current.task = () -> decode(frame, reference, current);
+			
+			return current;
+		}
+		
+		/**
+		 * Décoder une trame.
+		 * 
+		 * @param frame
+		 *            trame encodée.
+		 * @param reference
+		 *            trame précédente, null pour une trame intra.
+		 * @param current
+		 *            trame en cours, dont le plan reçoit la trame décodée.
+		 * @return trame décodée, avec une référence pour l'appelant.
+		 */
+		private BytePlane decode(final EncodedFrame frame, final InFlightFrame<BytePlane> reference,
+				final InFlightFrame<BytePlane> current)
+		{
+			final BytePlane frameRec = current.frameRec;
+			final int h = frameRec.getHeight();
+			
+			// Les erreurs de prédiction ne dépendent pas de la trame précédente.
+			final ShortPlane errors = inverseTransformErrors(frame, parameters, pool);
+			
+			if (reference == null)
+			{
+				reconstructI(errors, frameRec);
+				current.progress.publish(h);
+			}
+			else
+			{
+				final MotionField blockMovementMap = inverseTransformBlockMovementMap(
+						frame.getTransformedBlockMovementMap(), parameters);
+				final int blockSize = parameters.getMovementBlockSize();
+				
+				for (int y = 0; y < h; y += blockSize)
+				{
+					reference.progress.await(
+							MotionCompensation.referenceRowLimit(blockMovementMap, y, y + blockSize, blockSize, h));
+					MotionCompensation.reconstructRows(reference.frameRec, errors, blockMovementMap, blockSize,
+							blockSize, frame.getCodedBlockPattern(), parameters.getDctBlockSize(), y, y + blockSize,
+							frameRec);
+					current.progress.publish(y + blockSize);
+				}
+			}
+			
+			errors.release();
+			
+			// Une seconde référence est confiée à l'appelant.
+			frameRec.retain();
+			return frameRec;
+		}
+		
+		/**
+		 * Vider le pool. Les trames encore tenues par l'appelant restent
+		 * valides.
+		 */
+		@Override
+		public void close()
+		{
+			pool.close();
+		}
+	}
+}
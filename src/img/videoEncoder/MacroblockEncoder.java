@@ -0,0 +1,585 @@
+package img.videoEncoder;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import img.BytePlane;
+import img.PlanePool;
+import img.ShortPlane;
+import img.math.Matrices;
+import img.math.MotionField;
+import img.math.transforms.DCT;
+import img.prediction.DPCM;
+import img.videoEncoder.io.EncodedFrame;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.EncoderParams.TransformType;
+
+/**
+ * Coeur d'encodage par macroblocs. Au lieu d'enchaîner les passes sur la trame
+ * entière (estimation de mouvement, erreurs, DCT, quantification, quantification
+ * inverse, DCT inverse, reconstruction), chaque macrobloc passe par toutes ces
+ * étapes d'un coup, pendant que ses données sont encore en cache. Seule la
+ * prédiction DPCM est faite ensuite, sur la trame entière.<br>
+ * Les lignes de macroblocs sont indépendantes (la prédiction ne se fait qu'à
+ * partir de la trame précédente) et sont donc encodées en parallèle. Avec
+ * plusieurs trames en cours (voir {@link FrameThreading}), elles sont au
+ * contraire encodées dans l'ordre, chacune dès que les lignes de la trame
+ * précédente reconstruite qu'elle lit sont disponibles.<br>
+ * La trame encodée et la trame reconstruite sont identiques à celles obtenues
+ * par les fonctions de {@link VideoEncoder}.
+ */
+public class MacroblockEncoder
+{
+	/**
+	 * Blocs de travail de chaque worker, réutilisés d'une trame à l'autre.
+	 */
+	private static final ThreadLocal<MacroblockScratch> SCRATCH = new ThreadLocal<>();
+	
+	/**
+	 * Indiquer si l'encodage par macroblocs peut être utilisé avec les
+	 * paramètres et la taille de trame spécifiés : DCT en blocs, taille des
+	 * blocs de mouvement multiple de celle des blocs DCT ou inversement, et
+	 * trame découpable en macroblocs.
+	 * 
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param w
+	 *            largeur de la trame.
+	 * @param h
+	 *            hauteur de la trame.
+	 * @return vrai si l'encodage par macroblocs peut être utilisé.
+	 */
+	public static boolean supports(final EncoderParams parameters, final int w, final int h)
+	{
+		final int movementSize = parameters.getMovementBlockSize(),
+				  dctSize      = parameters.getDctBlockSize(),
+				  mbSize       = Math.max(movementSize, dctSize);
+		
+		return parameters.getTransformType() == TransformType.DCT
+				&& mbSize % Math.min(movementSize, dctSize) == 0
+				&& w % mbSize == 0 && h % mbSize == 0;
+	}
+	
+	/**
+	 * Encoder une trame par macroblocs.
+	 * 
+	 * @param frame
+	 *            trame actuelle initiale.
+	 * @param prevFrame
+	 *            trame précédente initiale, null pour une trame intra.
+	 * @param prevFrameRec
+	 *            trame précédente reconstruite, null pour une trame intra.
+	 * @param frameRec
+	 *            plan de la taille de la trame recevant la trame actuelle
+	 *            reconstruite.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 */
+	public static EncodedFrame encode(final BytePlane frame, final BytePlane prevFrame, final BytePlane prevFrameRec,
+			final BytePlane frameRec, final EncoderParams parameters)
+	{
+		return encode(frame, prevFrame, prevFrameRec, frameRec, parameters, null, null, null, null);
+	}
+	
+	/**
+	 * Encoder une trame par macroblocs, ligne de macroblocs après ligne de
+	 * macroblocs lorsqu'un avancement est spécifié : chaque ligne attend les
+	 * lignes de la trame précédente reconstruite qu'elle lit, puis publie son
+	 * propre avancement.
+	 * 
+	 * @param frame
+	 *            trame actuelle initiale.
+	 * @param prevFrame
+	 *            trame précédente initiale, null pour une trame intra.
+	 * @param prevFrameRec
+	 *            trame précédente reconstruite, null pour une trame intra.
+	 * @param frameRec
+	 *            plan de la taille de la trame recevant la trame actuelle
+	 *            reconstruite.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param movementMap
+	 *            champ de vecteurs déjà estimé entre prevFrame et frame, ou
+	 *            null pour l'estimer ligne de macroblocs par ligne de
+	 *            macroblocs.
+	 * @param prevProgress
+	 *            avancement de la reconstruction de prevFrameRec, null si elle
+	 *            est terminée.
+	 * @param progress
+	 *            avancement de la reconstruction de frameRec, null pour
+	 *            encoder les lignes de macroblocs en parallèle.
+	 * @param pool
+	 *            pool fournissant la matrice de travail des coefficients,
+	 *            rendue une fois la trame encodée, ou null pour l'allouer.
+	 * @return trame encodée.
+	 */
+	/*package*/ static EncodedFrame encode(final BytePlane frame, final BytePlane prevFrame,
+			final BytePlane prevFrameRec, final BytePlane frameRec, final EncoderParams parameters,
+			final MotionField movementMap, final RowProgress prevProgress, final RowProgress progress,
+			final PlanePool pool)
+	{
+		final int h = frame.getHeight(),
+				  w = frame.getWidth();
+		
+		final int dctSize = parameters.getDctBlockSize(),
+				  mbSize  = Math.max(parameters.getMovementBlockSize(), dctSize);
+		
+		final FrameType frameType = prevFrameRec == null ? FrameType.I : FrameType.P;
+		
+		final Quantizer quantizer = Quantizer.get(parameters.getQuantificationWeights(),
+				parameters.getQuantificationScale(), frameType, dctSize);
+		
+		final MacroblockFrame mbFrame = new MacroblockFrame();
+		mbFrame.frame        = frame;
+		mbFrame.prevFrame    = prevFrame;
+		mbFrame.prevFrameRec = prevFrameRec;
+		mbFrame.frameRec     = frameRec;
+		mbFrame.quantizer    = quantizer;
+		mbFrame.movementSize = parameters.getMovementBlockSize();
+		mbFrame.dctSize      = dctSize;
+		// Pas de détection des blocs nuls pour les trames intra.
+		mbFrame.sadThreshold = frameType == FrameType.P ?
+				parameters.getZeroBlockThreshold() * quantizer.getZeroBlockSadBound()
+			:
+				0;
+		
+		// Chaque bloc de la matrice est écrit, même s'il est nul : son contenu
+		// initial n'importe pas.
+		mbFrame.transformedErrors = pool != null ? pool.allocateMatrix(w, h) : new double[h][w];
+		mbFrame.codedBlockPattern = new byte[h/dctSize][w/dctSize];
+		mbFrame.movementMap       = frameType == FrameType.P ? movementMap : null;
+		mbFrame.estimateMovement  = frameType == FrameType.P && movementMap == null;
+		if (mbFrame.estimateMovement)
+		{
+			mbFrame.movementMap = new MotionField(w/mbFrame.movementSize, h/mbFrame.movementSize);
+		}
+		
+		if (progress == null)
+		{
+			// Une ligne de macroblocs par tâche, avec les blocs de travail du worker.
+			IntStream.range(0, h/mbSize).parallel().forEach(mbRow ->
+				encodeMacroblockRow(mbFrame, mbRow*mbSize, mbSize, null)
+			);
+		}
+		else
+		{
+			for (int mbY = 0; mbY < h; mbY += mbSize)
+			{
+				encodeMacroblockRow(mbFrame, mbY, mbSize, prevProgress);
+				progress.publish(mbY + mbSize);
+			}
+		}
+		
+		// Prédiction DPCM sur les coefficients, en place et en front d'onde,
+		// tranche par tranche.
+		final double[][] transformedErrors = mbFrame.transformedErrors;
+		final int stride = VideoEncoder.dpcmStride(parameters.getCoefficientPrediction(), dctSize);
+		VideoEncoder.forEachSlice(transformedErrors, parameters.getSliceHeight(h), slice ->
+				DPCM.parallelEncodeInPlace(slice, 1, stride));
+		
+		// La trame encodée garde une copie compacte des coefficients : la
+		// matrice de travail peut être rendue.
+		final EncodedFrame encodedFrame = frameType == FrameType.I ?
+				EncodedFrame.intraFrame(transformedErrors, mbFrame.codedBlockPattern)
+			:
+				EncodedFrame.predictedFrame(transformedErrors, mbFrame.codedBlockPattern,
+						VideoEncoder.transformBlockMovementMap(mbFrame.movementMap, parameters));
+		
+		if (pool != null)
+		{
+			pool.releaseMatrix(transformedErrors);
+		}
+		return encodedFrame;
+	}
+	
+	/**
+	 * Encoder et reconstruire une ligne de macroblocs.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param mbY
+	 *            position y de la ligne de macroblocs dans la trame.
+	 * @param mbSize
+	 *            taille des macroblocs.
+	 * @param prevProgress
+	 *            avancement de la reconstruction de la trame précédente, null
+	 *            si elle est terminée.
+	 */
+	private static void encodeMacroblockRow(final MacroblockFrame mbFrame, final int mbY, final int mbSize,
+			final RowProgress prevProgress)
+	{
+		final MacroblockScratch scratch = scratch(mbSize, mbFrame.dctSize);
+		
+		if (mbFrame.movementMap != null)
+		{
+			// L'estimation se fait sur la trame précédente initiale : seule la
+			// compensation attend la trame précédente reconstruite.
+			if (mbFrame.estimateMovement)
+			{
+				estimateMovement(mbFrame, mbY, mbSize);
+			}
+			
+			if (prevProgress != null)
+			{
+				prevProgress.await(MotionCompensation.referenceRowLimit(mbFrame.movementMap, mbY, mbY + mbSize,
+						mbFrame.movementSize, mbFrame.frame.getHeight()));
+			}
+		}
+		
+		for (int x = 0; x < mbFrame.frame.getWidth(); x += mbSize)
+		{
+			encodeMacroblock(mbFrame, x, mbY, mbSize, scratch);
+		}
+	}
+	
+	/**
+	 * Encoder et reconstruire un macrobloc.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param mbX
+	 *            position x du coin supérieur gauche du macrobloc.
+	 * @param mbY
+	 *            position y du coin supérieur gauche du macrobloc.
+	 * @param mbSize
+	 *            taille du macrobloc.
+	 * @param scratch
+	 *            blocs de travail du worker.
+	 */
+	private static void encodeMacroblock(final MacroblockFrame mbFrame, final int mbX, final int mbY, final int mbSize,
+			final MacroblockScratch scratch)
+	{
+		final int dctSize = mbFrame.dctSize;
+		
+		// # Estimation de mouvement et erreurs de prédiction.
+		for (int by = mbY; by < mbY + mbSize; by += mbFrame.movementSize)
+		{
+			for (int bx = mbX; bx < mbX + mbSize; bx += mbFrame.movementSize)
+			{
+				computeBlockErrors(mbFrame, scratch, bx, by, mbX, mbY);
+			}
+		}
+		
+		// # DCT, quantification et erreurs de prédiction quantifiées.
+		for (int by = 0; by < mbSize; by += dctSize)
+		{
+			for (int bx = 0; bx < mbSize; bx += dctSize)
+			{
+				final byte content = transformBlock(mbFrame, scratch, mbX + bx, mbY + by, bx, by);
+				mbFrame.codedBlockPattern[(mbY + by)/dctSize][(mbX + bx)/dctSize] = content;
+				
+				inverseTransformBlock(mbFrame, scratch, content, mbX + bx, mbY + by, bx, by);
+			}
+		}
+		
+		// # Reconstruction.
+		for (int by = mbY; by < mbY + mbSize; by += mbFrame.movementSize)
+		{
+			for (int bx = mbX; bx < mbX + mbSize; bx += mbFrame.movementSize)
+			{
+				reconstructBlock(mbFrame, scratch, bx, by, mbX, mbY);
+			}
+		}
+	}
+	
+	/**
+	 * Estimer le mouvement des blocs d'une ligne de macroblocs.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param mbY
+	 *            position y de la ligne de macroblocs dans la trame.
+	 * @param mbSize
+	 *            taille des macroblocs.
+	 */
+	private static void estimateMovement(final MacroblockFrame mbFrame, final int mbY, final int mbSize)
+	{
+		final int movementSize = mbFrame.movementSize,
+				  w = mbFrame.frame.getWidth();
+		
+		for (int by = mbY; by < mbY + mbSize; by += movementSize)
+		{
+			for (int bx = 0; bx < w; bx += movementSize)
+			{
+				VideoEncoder.computeBlockMovement(mbFrame.frame, mbFrame.prevFrame, bx, by, movementSize,
+						movementSize, mbFrame.movementMap);
+			}
+		}
+	}
+	
+	/**
+	 * Calculer les erreurs de prédiction d'un bloc de mouvement du macrobloc
+	 * par rapport à la trame précédente reconstruite.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param scratch
+	 *            blocs de travail du worker.
+	 * @param bx
+	 *            position x du bloc dans la trame.
+	 * @param by
+	 *            position y du bloc dans la trame.
+	 * @param mbX
+	 *            position x du macrobloc dans la trame.
+	 * @param mbY
+	 *            position y du macrobloc dans la trame.
+	 */
+	private static void computeBlockErrors(final MacroblockFrame mbFrame, final MacroblockScratch scratch, final int bx,
+			final int by, final int mbX, final int mbY)
+	{
+		final int movementSize = mbFrame.movementSize;
+		
+		if (mbFrame.prevFrameRec == null)
+		{
+			// La matrice d'erreurs de prédiction est l'image même.
+			for (int y = by; y < by + movementSize; ++y)
+			{
+				for (int x = bx; x < bx + movementSize; ++x)
+				{
+					scratch.errors.set(x-mbX, y-mbY, mbFrame.frame.get(x, y));
+				}
+			}
+			return;
+		}
+		
+		MotionCompensation.subtractBlock(mbFrame.frame, mbFrame.prevFrameRec,
+				mbFrame.movementMap.x(bx/movementSize, by/movementSize),
+				mbFrame.movementMap.y(bx/movementSize, by/movementSize), bx, by, movementSize, movementSize,
+				scratch.errors, bx-mbX, by-mbY);
+	}
+	
+	/**
+	 * Reconstruire un bloc de mouvement du macrobloc à partir de ses erreurs
+	 * de prédiction quantifiées.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param scratch
+	 *            blocs de travail du worker.
+	 * @param bx
+	 *            position x du bloc dans la trame.
+	 * @param by
+	 *            position y du bloc dans la trame.
+	 * @param mbX
+	 *            position x du macrobloc dans la trame.
+	 * @param mbY
+	 *            position y du macrobloc dans la trame.
+	 */
+	private static void reconstructBlock(final MacroblockFrame mbFrame, final MacroblockScratch scratch, final int bx,
+			final int by, final int mbX, final int mbY)
+	{
+		final int movementSize = mbFrame.movementSize;
+		
+		if (mbFrame.prevFrameRec == null)
+		{
+			for (int y = by; y < by + movementSize; ++y)
+			{
+				for (int x = bx; x < bx + movementSize; ++x)
+				{
+					mbFrame.frameRec.set(x, y, MotionCompensation.saturate(scratch.predError.get(x-mbX, y-mbY)));
+				}
+			}
+			return;
+		}
+		
+		MotionCompensation.addBlock(mbFrame.prevFrameRec, mbFrame.movementMap.x(bx/movementSize, by/movementSize),
+				mbFrame.movementMap.y(bx/movementSize, by/movementSize), scratch.predError, bx-mbX, by-mbY, bx, by, movementSize, movementSize, mbFrame.frameRec);
+	}
+	
+	/**
+	 * Faire la DCT et la quantification d'un bloc des erreurs du macrobloc,
+	 * sauf s'il est détecté nul.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param scratch
+	 *            blocs de travail du worker.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param bx
+	 *            position x du bloc dans le macrobloc.
+	 * @param by
+	 *            position y du bloc dans le macrobloc.
+	 * @return contenu du bloc quantifié.
+	 */
+	private static byte transformBlock(final MacroblockFrame mbFrame, final MacroblockScratch scratch, final int x,
+			final int y, final int bx, final int by)
+	{
+		final int dctSize = mbFrame.dctSize;
+		final short[] errors = scratch.errors.getData();
+		
+		int sad = 0;
+		for (int j = 0; j < dctSize; ++j)
+		{
+			final int offset = scratch.errors.index(bx, by+j);
+			
+			for (int i = 0; i < dctSize; ++i)
+			{
+				scratch.block[j][i] = errors[offset+i];
+				sad += Math.abs(errors[offset+i]);
+			}
+		}
+		
+		// Bloc détecté nul : ni DCT ni quantification.
+		if (sad < mbFrame.sadThreshold)
+		{
+			for (int j = 0; j < dctSize; ++j)
+			{
+				Arrays.fill(mbFrame.transformedErrors[y+j], x, x + dctSize, 0);
+			}
+			return DCT.BLOCK_ZERO;
+		}
+		
+		DCT.transform2DInPlace(scratch.block, scratch.vector);
+		Matrices.blockCopy(scratch.block, 0, 0, mbFrame.transformedErrors, x, y, dctSize, dctSize);
+		return mbFrame.quantizer.quantizeBlock(mbFrame.transformedErrors, x, y);
+	}
+	
+	/**
+	 * Obtenir les erreurs de prédiction quantifiées d'un bloc à partir de ses
+	 * coefficients quantifiés, en évitant la DCT inverse pour les blocs nuls ou
+	 * DC seuls.
+	 * 
+	 * @param mbFrame
+	 *            trame en cours d'encodage.
+	 * @param scratch
+	 *            blocs de travail du worker.
+	 * @param content
+	 *            contenu du bloc quantifié.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param bx
+	 *            position x du bloc dans le macrobloc.
+	 * @param by
+	 *            position y du bloc dans le macrobloc.
+	 */
+	private static void inverseTransformBlock(final MacroblockFrame mbFrame, final MacroblockScratch scratch,
+			final byte content, final int x, final int y, final int bx, final int by)
+	{
+		final int dctSize = mbFrame.dctSize;
+		final short[] predError = scratch.predError.getData();
+		
+		if (content == DCT.BLOCK_ZERO)
+		{
+			for (int j = 0; j < dctSize; ++j)
+			{
+				final int offset = scratch.predError.index(bx, by+j);
+				Arrays.fill(predError, offset, offset + dctSize, (short) 0);
+			}
+			return;
+		}
+		
+		Matrices.blockCopy(mbFrame.transformedErrors, x, y, scratch.block, 0, 0, dctSize, dctSize);
+		mbFrame.quantizer.dequantizeBlock(scratch.block, 0, 0);
+		
+		if (content == DCT.BLOCK_DC)
+		{
+			final short value = clampError(DCT.inverseTransformDC(scratch.block[0][0], dctSize, dctSize));
+			for (int j = 0; j < dctSize; ++j)
+			{
+				final int offset = scratch.predError.index(bx, by+j);
+				Arrays.fill(predError, offset, offset + dctSize, value);
+			}
+			return;
+		}
+		
+		DCT.inverseTransform2DInPlace(scratch.block, scratch.vector);
+		for (int j = 0; j < dctSize; ++j)
+		{
+			final int offset = scratch.predError.index(bx, by+j);
+			
+			for (int i = 0; i < dctSize; ++i)
+			{
+				predError[offset+i] = clampError(scratch.block[j][i]);
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir les blocs de travail du worker courant, créés à sa première
+	 * utilisation ou lorsque la taille des blocs change.
+	 * 
+	 * @param mbSize
+	 *            taille des macroblocs.
+	 * @param dctSize
+	 *            taille des blocs DCT.
+	 * @return blocs de travail du worker.
+	 */
+	private static MacroblockScratch scratch(final int mbSize, final int dctSize)
+	{
+		MacroblockScratch scratch = SCRATCH.get();
+		
+		if (scratch == null || scratch.errors.getWidth() != mbSize || scratch.block.length != dctSize)
+		{
+			scratch = new MacroblockScratch(mbSize, dctSize);
+			SCRATCH.set(scratch);
+		}
+		
+		return scratch;
+	}
+	
+	/**
+	 * Arrondir et borner une erreur de prédiction reconstruite.
+	 * 
+	 * @param error
+	 *            erreur de prédiction.
+	 * @return erreur de prédiction arrondie entre -255 et 255.
+	 */
+	private static short clampError(final double error)
+	{
+		return (short) Math.max(-255, Math.min(Math.round(error), 255));
+	}
+	
+	/**
+	 * Données partagées d'une trame en cours d'encodage par macroblocs.
+	 */
+	private static class MacroblockFrame
+	{
+		public BytePlane frame, prevFrame, prevFrameRec, frameRec;
+		public Quantizer quantizer;
+		public int movementSize, dctSize;
+		public double sadThreshold;
+		public boolean estimateMovement;
+		
+		public double[][] transformedErrors;
+		public byte[][] codedBlockPattern;
+		public MotionField movementMap;
+	}
+	
+	/**
+	 * Blocs de travail propres à un worker.
+	 */
+	private static class MacroblockScratch
+	{
+		/**
+		 * Erreurs de prédiction du macrobloc.
+		 */
+		public final ShortPlane errors;
+		/**
+		 * Erreurs de prédiction quantifiées du macrobloc.
+		 */
+		public final ShortPlane predError;
+		/**
+		 * Bloc DCT de travail.
+		 */
+		public final double[][] block;
+		/**
+		 * Vecteur de travail de la DCT du bloc.
+		 */
+		public final double[] vector;
+		
+		public MacroblockScratch(final int mbSize, final int dctSize)
+		{
+			errors    = new ShortPlane(mbSize, mbSize);
+			predError = new ShortPlane(mbSize, mbSize);
+			block     = new double[dctSize][dctSize];
+			vector    = new double[2*dctSize];
+		}
+	}
+}
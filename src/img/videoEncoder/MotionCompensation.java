@@ -0,0 +1,461 @@
+package img.videoEncoder;
+
+import img.BytePlane;
+import img.ShortPlane;
+import img.math.MotionField;
+import img.math.transforms.DCT;
+
+/**
+ * Compensation de mouvement par blocs. Le vecteur de déplacement de chaque
+ * bloc n'est lu qu'une fois, puis chaque ligne du bloc est traitée d'un seul
+ * tenant à partir de la ligne correspondante de la trame de référence, en
+ * fusionnant la prédiction, la soustraction (ou l'addition) des erreurs et la
+ * saturation. Les trames sont des plans 8 bits et les erreurs des plans 16
+ * bits.
+ */
+public class MotionCompensation
+{
+	/**
+	 * Lignes de travail de chaque worker, pour les plans hors du tas.
+	 */
+	private static final ThreadLocal<byte[][]> ROWS = ThreadLocal.withInitial(() -> new byte[2][0]);
+	
+	/**
+	 * Calculer les erreurs de prédiction d'une trame par rapport à la trame
+	 * précédente reconstruite, avec compensation de mouvement.
+	 * 
+	 * @param prevFrameRec
+	 *            trame précédente reconstruite.
+	 * @param frame
+	 *            trame à prédire.
+	 * @param blockMovementMap
+	 *            carte de déplacement des blocs.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @return plan des erreurs.
+	 */
+	public static ShortPlane computeErrors(final BytePlane prevFrameRec, final BytePlane frame,
+			final MotionField blockMovementMap, final int blockW, final int blockH)
+	{
+		final int h = frame.getHeight(),
+				  w = frame.getWidth();
+		
+		final ShortPlane frameErrors = new ShortPlane(w, h);
+		for (int y = 0; y < h; y += blockH)
+		{
+			for (int x = 0; x < w; x += blockW)
+			{
+				subtractBlock(frame, prevFrameRec, blockMovementMap.x(x/blockW, y/blockH),
+						blockMovementMap.y(x/blockW, y/blockH), x, y, blockW, blockH, frameErrors, x, y);
+			}
+		}
+		return frameErrors;
+	}
+	
+	/**
+	 * Reconstruire une trame P à partir des erreurs de prédiction et de la
+	 * trame précédente, avec compensation de mouvement. Les blocs dont toutes
+	 * les erreurs sont nulles d'après le motif des blocs codés sont copiés
+	 * directement depuis la trame précédente.
+	 * 
+	 * @param prevFrameRec
+	 *            trame précédente reconstruite.
+	 * @param predError
+	 *            erreurs de prédiction.
+	 * @param blockMovementMap
+	 *            carte de déplacement des blocs.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés des erreurs, ou null s'il est inconnu.
+	 * @param dctBlockSize
+	 *            taille des blocs du motif des blocs codés.
+	 * @param frameRec
+	 *            plan de la taille de la trame recevant la trame
+	 *            reconstruite.
+	 * @return trame reconstruite (frameRec).
+	 */
+	public static BytePlane reconstruct(final BytePlane prevFrameRec, final ShortPlane predError,
+			final MotionField blockMovementMap, final int blockW, final int blockH, final byte[][] codedBlockPattern,
+			final int dctBlockSize, final BytePlane frameRec)
+	{
+		return reconstructRows(prevFrameRec, predError, blockMovementMap, blockW, blockH, codedBlockPattern,
+				dctBlockSize, 0, prevFrameRec.getHeight(), frameRec);
+	}
+	
+	/**
+	 * Reconstruire les lignes de blocs d'une trame P comprises entre y0 et y1,
+	 * comme {@link #reconstruct(BytePlane, ShortPlane, MotionField, int, int, byte[][], int, BytePlane)}.
+	 * Seules les lignes de la trame précédente données par
+	 * {@link #referenceRowLimit(MotionField, int, int, int, int)} sont lues.
+	 * 
+	 * @param prevFrameRec
+	 *            trame précédente reconstruite.
+	 * @param predError
+	 *            erreurs de prédiction.
+	 * @param blockMovementMap
+	 *            carte de déplacement des blocs.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés des erreurs, ou null s'il est inconnu.
+	 * @param dctBlockSize
+	 *            taille des blocs du motif des blocs codés.
+	 * @param y0
+	 *            première ligne, multiple de blockH.
+	 * @param y1
+	 *            ligne de fin (exclue), multiple de blockH.
+	 * @param frameRec
+	 *            plan de la taille de la trame recevant la trame
+	 *            reconstruite.
+	 * @return trame reconstruite (frameRec).
+	 */
+	public static BytePlane reconstructRows(final BytePlane prevFrameRec, final ShortPlane predError,
+			final MotionField blockMovementMap, final int blockW, final int blockH, final byte[][] codedBlockPattern,
+			final int dctBlockSize, final int y0, final int y1, final BytePlane frameRec)
+	{
+		final int w = prevFrameRec.getWidth();
+		
+		for (int y = y0; y < y1; y += blockH)
+		{
+			for (int x = 0; x < w; x += blockW)
+			{
+				final int movementX = blockMovementMap.x(x/blockW, y/blockH),
+						  movementY = blockMovementMap.y(x/blockW, y/blockH);
+				
+				if (codedBlockPattern != null
+						&& isZeroBlock(codedBlockPattern, dctBlockSize, x, y, blockW, blockH))
+				{
+					copyBlock(prevFrameRec, movementX, movementY, x, y, blockW, blockH, frameRec);
+				}
+				else
+				{
+					addBlock(prevFrameRec, movementX, movementY, predError, x, y, x, y, blockW, blockH, frameRec);
+				}
+			}
+		}
+		return frameRec;
+	}
+	
+	/**
+	 * Obtenir la limite des lignes de la trame de référence lues pour prédire
+	 * les lignes de blocs comprises entre y0 et y1 : les blocs de ces lignes
+	 * ne lisent que des lignes de référence d'indice inférieur.
+	 * 
+	 * @param blockMovementMap
+	 *            carte de déplacement des blocs.
+	 * @param y0
+	 *            première ligne, multiple de blockH.
+	 * @param y1
+	 *            ligne de fin (exclue), multiple de blockH.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param h
+	 *            hauteur de la trame.
+	 * @return indice de la première ligne de référence non lue, au plus h.
+	 */
+	public static int referenceRowLimit(final MotionField blockMovementMap, final int y0, final int y1,
+			final int blockH, final int h)
+	{
+		int limit = 0;
+		
+		for (int by = y0/blockH; by < y1/blockH; ++by)
+		{
+			for (int bx = 0; bx < blockMovementMap.getWidth(); ++bx)
+			{
+				// Le bloc lit les lignes de référence à partir de y - movementY.
+				limit = Math.max(limit, (by+1)*blockH - blockMovementMap.y(bx, by));
+			}
+		}
+		return Math.min(limit, h);
+	}
+	
+	/**
+	 * Calculer les erreurs de prédiction d'un bloc : dest = frame - ref
+	 * déplacée.
+	 * 
+	 * @param frame
+	 *            trame à prédire.
+	 * @param ref
+	 *            trame de référence.
+	 * @param movementX
+	 *            composante x du vecteur de déplacement du bloc.
+	 * @param movementY
+	 *            composante y du vecteur de déplacement du bloc.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param blockW
+	 *            largeur du bloc.
+	 * @param blockH
+	 *            hauteur du bloc.
+	 * @param dest
+	 *            plan recevant les erreurs.
+	 * @param destX
+	 *            position x du bloc dans le plan des erreurs.
+	 * @param destY
+	 *            position y du bloc dans le plan des erreurs.
+	 */
+	public static void subtractBlock(final BytePlane frame, final BytePlane ref, final int movementX,
+			final int movementY, final int x, final int y, final int blockW, final int blockH, final ShortPlane dest,
+			final int destX, final int destY)
+	{
+		if (!frame.hasArray() || !ref.hasArray())
+		{
+			subtractBlockRows(frame, ref, movementX, movementY, x, y, blockW, blockH, dest, destX, destY);
+			return;
+		}
+		
+		final byte[]  frameData = frame.getData(),
+					  refData   = ref.getData();
+		final short[] destData  = dest.getData();
+		
+		int offset     = frame.index(x, y),
+			refOffset  = ref.index(x - movementX, y - movementY),
+			destOffset = dest.index(destX, destY);
+		
+		for (int j = 0; j < blockH; ++j)
+		{
+			for (int i = 0; i < blockW; ++i)
+			{
+				destData[destOffset+i] = (short) ((frameData[offset+i] & 0xFF) - (refData[refOffset+i] & 0xFF));
+			}
+			
+			offset     += frame.getStride();
+			refOffset  += ref.getStride();
+			destOffset += dest.getStride();
+		}
+	}
+	
+	/**
+	 * Reconstruire un bloc : dest = ref déplacée + erreurs, saturé entre 0 et
+	 * 255.
+	 * 
+	 * @param ref
+	 *            trame de référence.
+	 * @param movementX
+	 *            composante x du vecteur de déplacement du bloc.
+	 * @param movementY
+	 *            composante y du vecteur de déplacement du bloc.
+	 * @param predError
+	 *            erreurs de prédiction.
+	 * @param errX
+	 *            position x du bloc dans le plan des erreurs.
+	 * @param errY
+	 *            position y du bloc dans le plan des erreurs.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param blockW
+	 *            largeur du bloc.
+	 * @param blockH
+	 *            hauteur du bloc.
+	 * @param dest
+	 *            trame reconstruite.
+	 */
+	public static void addBlock(final BytePlane ref, final int movementX, final int movementY,
+			final ShortPlane predError, final int errX, final int errY, final int x, final int y, final int blockW,
+			final int blockH, final BytePlane dest)
+	{
+		if (!ref.hasArray() || !dest.hasArray())
+		{
+			addBlockRows(ref, movementX, movementY, predError, errX, errY, x, y, blockW, blockH, dest);
+			return;
+		}
+		
+		final byte[]  refData  = ref.getData(),
+					  destData = dest.getData();
+		final short[] errData  = predError.getData();
+		
+		int refOffset  = ref.index(x - movementX, y - movementY),
+			errOffset  = predError.index(errX, errY),
+			destOffset = dest.index(x, y);
+		
+		for (int j = 0; j < blockH; ++j)
+		{
+			for (int i = 0; i < blockW; ++i)
+			{
+				destData[destOffset+i] = (byte) saturate((refData[refOffset+i] & 0xFF) + errData[errOffset+i]);
+			}
+			
+			refOffset  += ref.getStride();
+			errOffset  += predError.getStride();
+			destOffset += dest.getStride();
+		}
+	}
+	
+	/**
+	 * Copier un bloc déplacé de la trame de référence, lorsque ses erreurs de
+	 * prédiction sont nulles. La référence étant déjà entre 0 et 255, aucune
+	 * saturation n'est nécessaire.
+	 * 
+	 * @param ref
+	 *            trame de référence.
+	 * @param movementX
+	 *            composante x du vecteur de déplacement du bloc.
+	 * @param movementY
+	 *            composante y du vecteur de déplacement du bloc.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param blockW
+	 *            largeur du bloc.
+	 * @param blockH
+	 *            hauteur du bloc.
+	 * @param dest
+	 *            trame reconstruite.
+	 */
+	public static void copyBlock(final BytePlane ref, final int movementX, final int movementY, final int x,
+			final int y, final int blockW, final int blockH, final BytePlane dest)
+	{
+		if (!ref.hasArray() || !dest.hasArray())
+		{
+			final byte[] row = row(0, blockW);
+			for (int j = 0; j < blockH; ++j)
+			{
+				ref.getRow(x - movementX, y - movementY + j, row, 0, blockW);
+				dest.putRow(x, y + j, row, 0, blockW);
+			}
+			return;
+		}
+		
+		int refOffset  = ref.index(x - movementX, y - movementY),
+			destOffset = dest.index(x, y);
+		
+		for (int j = 0; j < blockH; ++j)
+		{
+			System.arraycopy(ref.getData(), refOffset, dest.getData(), destOffset, blockW);
+			
+			refOffset  += ref.getStride();
+			destOffset += dest.getStride();
+		}
+	}
+	
+	/**
+	 * Version de {@link #subtractBlock} pour des plans hors du tas : chaque
+	 * ligne est d'abord copiée dans les lignes de travail du worker.
+	 */
+	private static void subtractBlockRows(final BytePlane frame, final BytePlane ref, final int movementX,
+			final int movementY, final int x, final int y, final int blockW, final int blockH, final ShortPlane dest,
+			final int destX, final int destY)
+	{
+		final byte[] row    = row(0, blockW),
+					 refRow = row(1, blockW);
+		final short[] destData = dest.getData();
+		
+		for (int j = 0; j < blockH; ++j)
+		{
+			frame.getRow(x, y + j, row, 0, blockW);
+			ref.getRow(x - movementX, y - movementY + j, refRow, 0, blockW);
+			
+			final int destOffset = dest.index(destX, destY + j);
+			for (int i = 0; i < blockW; ++i)
+			{
+				destData[destOffset+i] = (short) ((row[i] & 0xFF) - (refRow[i] & 0xFF));
+			}
+		}
+	}
+	
+	/**
+	 * Version de {@link #addBlock} pour des plans hors du tas : chaque ligne
+	 * est d'abord copiée dans une ligne de travail du worker.
+	 */
+	private static void addBlockRows(final BytePlane ref, final int movementX, final int movementY,
+			final ShortPlane predError, final int errX, final int errY, final int x, final int y, final int blockW,
+			final int blockH, final BytePlane dest)
+	{
+		final byte[] row = row(0, blockW);
+		final short[] errData = predError.getData();
+		
+		for (int j = 0; j < blockH; ++j)
+		{
+			ref.getRow(x - movementX, y - movementY + j, row, 0, blockW);
+			
+			final int errOffset = predError.index(errX, errY + j);
+			for (int i = 0; i < blockW; ++i)
+			{
+				row[i] = (byte) saturate((row[i] & 0xFF) + errData[errOffset+i]);
+			}
+			dest.putRow(x, y + j, row, 0, blockW);
+		}
+	}
+	
+	/**
+	 * Obtenir une ligne de travail du worker courant, agrandie au besoin.
+	 * 
+	 * @param index
+	 *            indice de la ligne, 0 ou 1.
+	 * @param length
+	 *            nombre d'échantillons nécessaires.
+	 * @return ligne d'au moins length échantillons.
+	 */
+	private static byte[] row(final int index, final int length)
+	{
+		final byte[][] rows = ROWS.get();
+		if (rows[index].length < length)
+		{
+			rows[index] = new byte[length];
+		}
+		return rows[index];
+	}
+	
+	/**
+	 * Saturer une valeur de pixel entre 0 et 255.
+	 * 
+	 * @param value
+	 *            valeur du pixel.
+	 * @return valeur saturée.
+	 */
+	public static int saturate(final int value)
+	{
+		// Cas courant : aucun bit hors de [0, 255].
+		if ((value & ~0xFF) == 0)
+		{
+			return value;
+		}
+		return value < 0 ? 0 : 255;
+	}
+	
+	/**
+	 * Indiquer si toutes les erreurs d'un bloc sont nulles d'après le motif des
+	 * blocs codés, c'est-à-dire si tous les blocs DCT qu'il recouvre sont nuls.
+	 * 
+	 * @param codedBlockPattern
+	 *            motif des blocs codés.
+	 * @param dctBlockSize
+	 *            taille des blocs DCT.
+	 * @param x
+	 *            position x du bloc dans la trame.
+	 * @param y
+	 *            position y du bloc dans la trame.
+	 * @param blockW
+	 *            largeur du bloc.
+	 * @param blockH
+	 *            hauteur du bloc.
+	 * @return vrai si les erreurs du bloc sont nulles.
+	 */
+	private static boolean isZeroBlock(final byte[][] codedBlockPattern, final int dctBlockSize, final int x,
+			final int y, final int blockW, final int blockH)
+	{
+		for (int by = y/dctBlockSize; by <= (y + blockH - 1)/dctBlockSize; ++by)
+		{
+			for (int bx = x/dctBlockSize; bx <= (x + blockW - 1)/dctBlockSize; ++bx)
+			{
+				if (codedBlockPattern[by][bx] != DCT.BLOCK_ZERO)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,314 @@
+package img.videoEncoder;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import img.math.transforms.DCT;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+
+/**
+ * Quantificateur des coefficients DCT par bloc. Les tables de multiplicateurs
+ * et d'offsets sont précalculées une fois pour chaque combinaison (poids,
+ * échelle, type de trame, taille des blocs), et partagées entre l'encodeur et
+ * le décodeur qui utilisent ainsi exactement la même arithmétique.<br>
+ * Quantification : q = round(f*16/(2*Qs*w) - k/2)<br>
+ * Quantification inverse : f = (q*2*Qs + k*Qs)*w/16<br>
+ * avec k = 0 pour les blocs intra et le signe du coefficient pour les blocs
+ * prédits. Le signe est reporté sur l'offset sans branchement.<br>
+ * Seuls les derniers quantificateurs utilisés sont gardés en cache, pour
+ * qu'une échelle modifiée en continu ne les accumule pas.
+ */
+public class Quantizer
+{
+	/**
+	 * Nombre maximum de quantificateurs gardés en cache.
+	 */
+	private static final int CACHE_SIZE = 16;
+	/**
+	 * Derniers quantificateurs utilisés, du moins récent au plus récent.
+	 */
+	private static final Map<Key, Quantizer> CACHE = new LinkedHashMap<Key, Quantizer>(2*CACHE_SIZE, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Key, Quantizer> eldest)
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	/**
+	 * Taille des blocs.
+	 */
+	private final int blockSize;
+	/**
+	 * Multiplicateur de chaque coefficient du bloc pour la quantification
+	 * (indice y*blockSize + x).
+	 */
+	private final double[] quantifMultipliers;
+	/**
+	 * Offset (zone morte) appliqué avec le signe du coefficient lors de la
+	 * quantification.
+	 */
+	private final double quantifOffset;
+	/**
+	 * Multiplicateur de chaque coefficient du bloc pour la quantification
+	 * inverse.
+	 */
+	private final double[] dequantifMultipliers;
+	/**
+	 * Offset de chaque coefficient du bloc appliqué avec le signe du
+	 * coefficient quantifié lors de la quantification inverse.
+	 */
+	private final double[] dequantifOffsets;
+	/**
+	 * Borne sur la somme des valeurs absolues d'un bloc en dessous de laquelle
+	 * tous ses coefficients DCT sont quantifiés à zéro.
+	 */
+	private final double zeroBlockSadBound;
+	
+	private Quantizer(final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final int blockSize)
+	{
+		this.blockSize = blockSize;
+		
+		quantifMultipliers   = new double[blockSize*blockSize];
+		dequantifMultipliers = new double[blockSize*blockSize];
+		dequantifOffsets     = new double[blockSize*blockSize];
+		
+		// k = 0 pour les trames intra, signe du coefficient pour les trames prédites.
+		final double k = frameType == FrameType.I ? 0 : 1;
+		quantifOffset = k/2;
+		
+		final double[] amplitudes = DCT.basisAmplitudes(blockSize);
+		// Un coefficient est quantifié à zéro si |f|*16/w < Qs (intra) ou 2*Qs (prédite).
+		final double zeroZone = frameType == FrameType.I ? quantifScale : 2*quantifScale;
+		double sadBound = Double.MAX_VALUE;
+		
+		for (int y = 0; y < blockSize; ++y)
+		{
+			for (int x = 0; x < blockSize; ++x)
+			{
+				final double weight = resampledWeight(quantifWeights, x, y, blockSize);
+				
+				quantifMultipliers[y*blockSize + x]   = 16.0 / (weight * 2*quantifScale);
+				dequantifMultipliers[y*blockSize + x] = 2*quantifScale * weight / 16;
+				dequantifOffsets[y*blockSize + x]     = k*quantifScale * weight / 16;
+				
+				// Le coefficient (x, y) est borné par SAD*a[x]*a[y].
+				sadBound = Math.min(sadBound, zeroZone * weight / 16 / (amplitudes[x]*amplitudes[y]));
+			}
+		}
+		
+		// Marge pour les erreurs d'arrondi de la DCT.
+		zeroBlockSadBound = sadBound * (1 - 1e-9);
+	}
+	
+	/**
+	 * Obtenir le quantificateur correspondant aux paramètres spécifiés.
+	 * 
+	 * @param quantifWeights
+	 *            matrice des poids de quantification, rééchantillonnée si sa
+	 *            taille n'est pas celle des blocs.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de trame.
+	 * @param blockSize
+	 *            taille des blocs DCT.
+	 * @return quantificateur.
+	 */
+	public static Quantizer get(final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final int blockSize)
+	{
+		// La clé de recherche référence les poids sans les copier ; seule la
+		// clé gardée en cache en a une copie.
+		final Key key = new Key(quantifWeights, quantifScale, frameType, blockSize);
+		
+		synchronized (CACHE)
+		{
+			Quantizer quantizer = CACHE.get(key);
+			if (quantizer == null)
+			{
+				quantizer = new Quantizer(quantifWeights, quantifScale, frameType, blockSize);
+				CACHE.put(key.copy(), quantizer);
+			}
+			return quantizer;
+		}
+	}
+	
+	/**
+	 * Obtenir le poids de quantification du coefficient (x, y) d'un bloc de la
+	 * taille spécifiée, par plus proche voisin dans la matrice des poids.
+	 * 
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param x
+	 *            position x du coefficient dans le bloc.
+	 * @param y
+	 *            position y du coefficient dans le bloc.
+	 * @param blockSize
+	 *            taille des blocs.
+	 * @return poids du coefficient.
+	 */
+	private static double resampledWeight(final int[][] quantifWeights, final int x, final int y, final int blockSize)
+	{
+		return quantifWeights[y * quantifWeights.length / blockSize][x * quantifWeights[0].length / blockSize];
+	}
+	
+	/**
+	 * Quantifier sur place le bloc de coefficients DCT spécifié.
+	 * 
+	 * @param coefficients
+	 *            matrice des coefficients.
+	 * @param bx
+	 *            position x du coin supérieur gauche du bloc.
+	 * @param by
+	 *            position y du coin supérieur gauche du bloc.
+	 * @return contenu du bloc quantifié : {@link DCT#BLOCK_ZERO} ou combinaison
+	 *         de {@link DCT#BLOCK_DC} et {@link DCT#BLOCK_AC}.
+	 */
+	public byte quantizeBlock(final double[][] coefficients, final int bx, final int by)
+	{
+		int nonZero = 0;
+		
+		for (int y = 0; y < blockSize; ++y)
+		{
+			final double[] row = coefficients[by + y];
+			final int offset = y*blockSize - bx;
+			
+			for (int x = bx; x < bx + blockSize; ++x)
+			{
+				// Offset du signe du coefficient (+0 pour un coefficient nul,
+				// arrondi à 0 dans tous les cas).
+				final double level = Math.round(row[x]*quantifMultipliers[offset + x]
+						- Math.copySign(quantifOffset, row[x] + 0.0));
+				row[x] = level;
+				nonZero += level != 0 ? 1 : 0;
+			}
+		}
+		
+		// Des coefficients AC sont non nuls s'il en reste une fois le DC écarté.
+		final boolean dc  = coefficients[by][bx] != 0,
+					  ac = nonZero > (dc ? 1 : 0);
+		
+		return (byte) ((dc ? DCT.BLOCK_DC : 0) | (ac ? DCT.BLOCK_AC : 0));
+	}
+	
+	/**
+	 * Quantifier inversement sur place le bloc de coefficients quantifiés
+	 * spécifié.
+	 * 
+	 * @param levels
+	 *            matrice des coefficients quantifiés.
+	 * @param bx
+	 *            position x du coin supérieur gauche du bloc.
+	 * @param by
+	 *            position y du coin supérieur gauche du bloc.
+	 */
+	public void dequantizeBlock(final double[][] levels, final int bx, final int by)
+	{
+		for (int y = 0; y < blockSize; ++y)
+		{
+			final double[] row = levels[by + y];
+			final int offset = y*blockSize - bx;
+			
+			for (int x = bx; x < bx + blockSize; ++x)
+			{
+				// Le signe est celui du coefficient quantifié ; min(1, |q|) vaut 0
+				// pour un coefficient nul, qui reste nul.
+				row[x] = row[x]*dequantifMultipliers[offset + x]
+						+ Math.copySign(dequantifOffsets[offset + x], row[x]) * Math.min(1, Math.abs(row[x]));
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir la taille des blocs de ce quantificateur.
+	 * @return taille des blocs.
+	 */
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+	
+	/**
+	 * Obtenir la borne sur la somme des valeurs absolues (SAD) d'un bloc
+	 * d'erreurs en dessous de laquelle tous ses coefficients DCT sont
+	 * quantifiés à zéro.<br>
+	 * Chaque coefficient f(u,v) est borné par SAD*a[u]*a[v] avec a le module
+	 * maximal des fonctions de base de la DCT (voir
+	 * {@link DCT#basisAmplitudes(int)}).
+	 * 
+	 * @return borne sur la SAD d'un bloc en dessous de laquelle il est
+	 *         quantifié à zéro.
+	 */
+	public double getZeroBlockSadBound()
+	{
+		return zeroBlockSadBound;
+	}
+	
+	/**
+	 * Clé identifiant un quantificateur dans le cache.
+	 */
+	private static class Key
+	{
+		private final int[][] quantifWeights;
+		private final double quantifScale;
+		private final FrameType frameType;
+		private final int blockSize;
+		
+		public Key(final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+				final int blockSize)
+		{
+			this.quantifWeights = quantifWeights;
+			this.quantifScale = quantifScale;
+			this.frameType = frameType;
+			this.blockSize = blockSize;
+		}
+		
+		/**
+		 * Copier la clé, pour qu'elle ne change pas si la matrice des poids
+		 * est modifiée.
+		 * 
+		 * @return clé référençant une copie des poids.
+		 */
+		public Key copy()
+		{
+			return new Key(Arrays.stream(quantifWeights).map(int[]::clone).toArray(int[][]::new), quantifScale,
+					frameType, blockSize);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + Arrays.deepHashCode(quantifWeights);
+			result = prime * result + Double.hashCode(quantifScale);
+			result = prime * result + frameType.hashCode();
+			result = prime * result + blockSize;
+			return result;
+		}
+		
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			
+			if (obj == null || getClass() != obj.getClass())
+			{
+				return false;
+			}
+			
+			final Key other = (Key) obj;
+			return blockSize == other.blockSize && frameType == other.frameType
+					&& quantifScale == other.quantifScale && Arrays.deepEquals(quantifWeights, other.quantifWeights);
+		}
+	}
+}
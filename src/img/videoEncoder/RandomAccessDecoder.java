@@ -0,0 +1,301 @@
+package img.videoEncoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import img.BytePlane;
+import img.videoEncoder.io.EncodedFrame;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.VideoFileReader;
+
+/**
+ * Décodage à accès aléatoire d'une séquence encodée. Pour atteindre une
+ * trame, on repart du point le plus proche qui la précède sans trame intra
+ * entre eux : la trame intra trouvée dans l'index des types de trames, la
+ * dernière trame décodée, ou un repère déjà décodé. Les repères, trames intra
+ * et une trame sur {@value #ANCHOR_INTERVAL}, sont gardés dans un petit
+ * cache : un retour en arrière ou le défilement des seules trames intra ne
+ * décodent alors que quelques trames, même avec de longs groupes de trames.<br>
+ * Comme pour {@link VideoDecodingPipeline}, chaque trame rendue porte une
+ * référence pour l'appelant, qui doit la rendre avec
+ * {@link BytePlane#release()}.
+ */
+public class RandomAccessDecoder implements AutoCloseable
+{
+	/**
+	 * Intervalle entre deux repères, en plus des trames intra.
+	 */
+	private static final int ANCHOR_INTERVAL = 8;
+	/**
+	 * Nombre maximal de repères gardés.
+	 */
+	private static final int ANCHOR_COUNT = 32;
+	
+	/**
+	 * Pipeline de décodage, dont la trame de référence est celle de la
+	 * position courante.
+	 */
+	private final VideoDecodingPipeline pipeline;
+	/**
+	 * Accès aux trames encodées par leur numéro.
+	 */
+	private final IntFunction<EncodedFrame> frames;
+	/**
+	 * Nombre de trames de la séquence.
+	 */
+	private final int frameCount;
+	/**
+	 * Numéros des trames intra, croissants.
+	 */
+	private final int[] keyFrames;
+	/**
+	 * Repères déjà décodés par numéro de trame, chacun avec une référence
+	 * propre au cache, du moins récemment utilisé au plus récent.
+	 */
+	private final Map<Integer, BytePlane> anchors = new LinkedHashMap<Integer, BytePlane>(2*ANCHOR_COUNT, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, BytePlane> eldest)
+		{
+			if (size() > ANCHOR_COUNT)
+			{
+				eldest.getValue().release();
+				return true;
+			}
+			
+			return false;
+		}
+	};
+	
+	/**
+	 * Numéro de la dernière trame décodée, -1 si aucune.
+	 */
+	private int position = -1;
+	/**
+	 * Dernière trame décodée, ou null.
+	 */
+	private BytePlane current;
+	
+	/**
+	 * Créer un décodeur à accès aléatoire sur un fichier conteneur, dont
+	 * l'index donne le type des trames sans les lire.
+	 * 
+	 * @param reader
+	 *            fichier conteneur ouvert, qui doit le rester tant que le
+	 *            décodeur est utilisé.
+	 */
+	public RandomAccessDecoder(final VideoFileReader reader)
+	{
+		this(reader.getParameters(), reader.getFrameCount(), reader::getFrameType, index ->
+		{
+			try
+			{
+				return reader.getFrame(index);
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Créer un décodeur à accès aléatoire sur une séquence encodée gardée en
+	 * mémoire.
+	 * 
+	 * @param frames
+	 *            trames encodées, dans l'ordre.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 */
+	public RandomAccessDecoder(final List<EncodedFrame> frames, final EncoderParams parameters)
+	{
+		this(parameters, frames.size(), index -> frames.get(index).getType(), frames::get);
+	}
+	
+	/**
+	 * Créer un décodeur à accès aléatoire.
+	 * 
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param frameCount
+	 *            nombre de trames.
+	 * @param types
+	 *            type de chaque trame.
+	 * @param frames
+	 *            accès aux trames encodées.
+	 */
+	private RandomAccessDecoder(final EncoderParams parameters, final int frameCount,
+			final IntFunction<FrameType> types, final IntFunction<EncodedFrame> frames)
+	{
+		this.pipeline = new VideoDecodingPipeline(parameters);
+		this.frames = frames;
+		this.frameCount = frameCount;
+		this.keyFrames = IntStream.range(0, frameCount).filter(i -> types.apply(i) == FrameType.I).toArray();
+	}
+	
+	/**
+	 * Obtenir le nombre de trames de la séquence.
+	 * @return nombre de trames.
+	 */
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+	
+	/**
+	 * Obtenir le numéro de la dernière trame décodée.
+	 * @return numéro de la dernière trame décodée, -1 si aucune.
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+	
+	/**
+	 * Obtenir le numéro de la trame intra la plus proche précédant une trame.
+	 * 
+	 * @param index
+	 *            numéro de la trame.
+	 * @return numéro de la dernière trame intra avant la trame spécifiée, ou
+	 *         de la trame elle-même si elle est intra, -1 s'il n'y en a pas.
+	 */
+	public int findKeyFrame(final int index)
+	{
+		final int found = Arrays.binarySearch(keyFrames, index);
+		if (found >= 0)
+		{
+			return index;
+		}
+		
+		final int insertion = -found - 1;
+		return insertion > 0 ? keyFrames[insertion - 1] : -1;
+	}
+	
+	/**
+	 * Décoder une trame quelconque de la séquence.
+	 * 
+	 * @param index
+	 *            numéro de la trame.
+	 * @return trame décodée, avec une référence pour l'appelant.
+	 * @throws IndexOutOfBoundsException
+	 *             si la trame n'existe pas.
+	 * @throws IllegalStateException
+	 *             si aucune trame intra ne précède la trame.
+	 */
+	public BytePlane seek(final int index) throws IndexOutOfBoundsException, IllegalStateException
+	{
+		if (index < 0 || index >= frameCount)
+		{
+			throw new IndexOutOfBoundsException("Trame inexistante : " + index);
+		}
+		
+		if (index != position)
+		{
+			final int keyFrame = findKeyFrame(index);
+			if (keyFrame < 0)
+			{
+				throw new IllegalStateException("Aucune trame intra avant la trame " + index);
+			}
+			
+			// On repart de la trame intra, ou de la dernière trame décodée ou
+			// du repère le plus proche si aucune trame intra ne l'en sépare.
+			int start = position >= keyFrame && position < index ? position : keyFrame - 1;
+			for (final int anchor : anchors.keySet())
+			{
+				if (anchor > start && anchor <= index)
+				{
+					start = anchor;
+				}
+			}
+			
+			if (start != position && start >= keyFrame)
+			{
+				final BytePlane anchor = anchors.get(start);
+				anchor.retain();
+				
+				if (current != null)
+				{
+					current.release();
+				}
+				current = anchor;
+				position = start;
+				pipeline.setReference(anchor);
+			}
+			
+			for (int i = start + 1; i <= index; ++i)
+			{
+				final BytePlane frame = pipeline.apply(frames.apply(i));
+				
+				if (current != null)
+				{
+					current.release();
+				}
+				current = frame;
+				position = i;
+				
+				if ((i % ANCHOR_INTERVAL == 0 || Arrays.binarySearch(keyFrames, i) >= 0) && !anchors.containsKey(i))
+				{
+					frame.retain();
+					anchors.put(i, frame);
+				}
+			}
+		}
+		
+		current.retain();
+		return current;
+	}
+	
+	/**
+	 * Décoder la trame suivant la dernière trame décodée.
+	 * 
+	 * @return trame décodée, avec une référence pour l'appelant.
+	 * @throws IndexOutOfBoundsException
+	 *             si la dernière trame a déjà été décodée.
+	 */
+	public BytePlane next() throws IndexOutOfBoundsException
+	{
+		return seek(position + 1);
+	}
+	
+	/**
+	 * Obtenir le flux des seules trames intra, décodées sans les trames
+	 * prédites qui les séparent (défilement rapide).
+	 * 
+	 * @return flux des trames intra décodées, avec une référence pour
+	 *         l'appelant.
+	 */
+	public Stream<BytePlane> keyFrames()
+	{
+		return Arrays.stream(keyFrames).mapToObj(this::seek);
+	}
+	
+	/**
+	 * Rendre la dernière trame décodée et les repères, et fermer le pipeline
+	 * de décodage.
+	 */
+	@Override
+	public void close()
+	{
+		if (current != null)
+		{
+			current.release();
+			current = null;
+		}
+		
+		anchors.values().forEach(BytePlane::release);
+		anchors.clear();
+		
+		position = -1;
+		pipeline.close();
+	}
+}
@@ -0,0 +1,71 @@
+package img.videoEncoder;
+
+/**
+ * Avancement de la reconstruction d'une trame : nombre de lignes déjà
+ * reconstruites, publié par la tâche qui reconstruit la trame et attendu par
+ * celles qui la prennent pour référence. Si la tâche échoue, l'avancement est
+ * interrompu et les tâches en attente échouent à leur tour.
+ */
+/*package*/ final class RowProgress
+{
+	/**
+	 * Nombre de lignes reconstruites.
+	 */
+	private int rows;
+	/**
+	 * Vrai si la reconstruction a été interrompue.
+	 */
+	private boolean aborted;
+	
+	/**
+	 * Publier le nombre de lignes reconstruites.
+	 * 
+	 * @param rows
+	 *            nombre de lignes reconstruites depuis le haut de la trame.
+	 */
+	public synchronized void publish(final int rows)
+	{
+		this.rows = Math.max(this.rows, rows);
+		notifyAll();
+	}
+	
+	/**
+	 * Interrompre la reconstruction : les attentes en cours et à venir
+	 * échouent.
+	 */
+	public synchronized void abort()
+	{
+		aborted = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Attendre que le nombre de lignes spécifié soit reconstruit.
+	 * 
+	 * @param rows
+	 *            nombre de lignes attendues depuis le haut de la trame.
+	 * @throws IllegalStateException
+	 *             si la reconstruction a été interrompue, ou le thread
+	 *             interrompu pendant l'attente.
+	 */
+	public synchronized void await(final int rows) throws IllegalStateException
+	{
+		while (this.rows < rows)
+		{
+			if (aborted)
+			{
+				throw new IllegalStateException("Reconstruction de la trame de référence interrompue");
+			}
+			
+			try
+			{
+				wait();
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Attente de la trame de référence interrompue", e);
+			}
+		}
+	}
+}
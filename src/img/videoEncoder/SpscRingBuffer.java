@@ -0,0 +1,221 @@
+package img.videoEncoder;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * File bornée sans verrou entre un seul producteur et un seul consommateur,
+ * sur un tableau circulaire dont la taille est une puissance de 2. Chaque
+ * compteur n'est écrit que par un seul thread ; l'autre le relit seulement
+ * lorsque sa copie locale indique la file pleine (ou vide).<br>
+ * {@link #put(Object)} et {@link #take()} attendent en cédant le processeur
+ * puis en s'endormant brièvement : une file pleine ralentit le producteur
+ * jusqu'à ce que le consommateur la vide.
+ */
+/*package*/ final class SpscRingBuffer<T>
+{
+	/**
+	 * Nombre d'attentes actives avant de s'endormir.
+	 */
+	private static final int SPIN_COUNT = 64;
+	/**
+	 * Durée maximum d'une attente endormie, en nanosecondes.
+	 */
+	private static final long MAX_PARK_NANOS = 1_000_000;
+	
+	/**
+	 * Éléments de la file.
+	 */
+	private final AtomicReferenceArray<T> buffer;
+	/**
+	 * Masque des indices dans le tableau.
+	 */
+	private final int mask;
+	/**
+	 * Nombre d'éléments retirés, écrit par le consommateur.
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Nombre d'éléments ajoutés, écrit par le producteur.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * Copie de head vue par le producteur.
+	 */
+	private long producerHead;
+	/**
+	 * Copie de tail vue par le consommateur.
+	 */
+	private long consumerTail;
+	/**
+	 * Vrai lorsque le producteur a fini d'ajouter des éléments.
+	 */
+	private volatile boolean finished;
+	/**
+	 * Vrai lorsque la file est annulée.
+	 */
+	private volatile boolean cancelled;
+	
+	/**
+	 * Créer une file vide.
+	 * 
+	 * @param capacity
+	 *            capacité minimum, arrondie à la puissance de 2 supérieure.
+	 * @throws IllegalArgumentException
+	 *             si la capacité n'est pas comprise entre 1 et 2^30.
+	 */
+	public SpscRingBuffer(final int capacity) throws IllegalArgumentException
+	{
+		if (capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException("Capacité invalide : " + capacity);
+		}
+		
+		final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		buffer = new AtomicReferenceArray<>(size);
+		mask   = size - 1;
+	}
+	
+	/**
+	 * Ajouter un élément s'il reste de la place. Appelé par le producteur.
+	 * 
+	 * @param element
+	 *            élément non null.
+	 * @return vrai si l'élément a été ajouté, faux si la file est pleine.
+	 */
+	public boolean offer(final T element)
+	{
+		final long t = tail.get();
+		
+		if (t - producerHead > mask)
+		{
+			producerHead = head.get();
+			if (t - producerHead > mask)
+			{
+				return false;
+			}
+		}
+		
+		// L'élément est publié avant le compteur : le consommateur qui voit le
+		// compteur voit aussi l'élément.
+		buffer.lazySet((int) t & mask, element);
+		tail.lazySet(t + 1);
+		return true;
+	}
+	
+	/**
+	 * Retirer l'élément le plus ancien s'il y en a un. Appelé par le
+	 * consommateur.
+	 * 
+	 * @return élément retiré, ou null si la file est vide.
+	 */
+	public T poll()
+	{
+		final long h = head.get();
+		
+		if (h >= consumerTail)
+		{
+			consumerTail = tail.get();
+			if (h >= consumerTail)
+			{
+				return null;
+			}
+		}
+		
+		final int index = (int) h & mask;
+		final T element = buffer.get(index);
+		buffer.lazySet(index, null);
+		head.lazySet(h + 1);
+		return element;
+	}
+	
+	/**
+	 * Ajouter un élément, en attendant qu'il y ait de la place.
+	 * 
+	 * @param element
+	 *            élément non null.
+	 * @throws CancellationException
+	 *             si la file est annulée.
+	 */
+	public void put(final T element) throws CancellationException
+	{
+		for (int attempt = 0; !offer(element); ++attempt)
+		{
+			backOff(attempt);
+		}
+	}
+	
+	/**
+	 * Retirer l'élément le plus ancien, en attendant qu'il y en ait un.
+	 * 
+	 * @return élément retiré, ou null si la file est vide et que le
+	 *         producteur a fini.
+	 * @throws CancellationException
+	 *             si la file est annulée.
+	 */
+	public T take() throws CancellationException
+	{
+		for (int attempt = 0; ; ++attempt)
+		{
+			// finished est lu avant la file : s'il est vrai, tous les éléments
+			// sont déjà visibles.
+			final boolean done = finished;
+			
+			final T element = poll();
+			if (element != null)
+			{
+				return element;
+			}
+			if (done)
+			{
+				return null;
+			}
+			
+			backOff(attempt);
+		}
+	}
+	
+	/**
+	 * Indiquer que le producteur n'ajoutera plus d'élément.
+	 */
+	public void finish()
+	{
+		finished = true;
+	}
+	
+	/**
+	 * Annuler la file : les attentes en cours et à venir échouent.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	/**
+	 * Attendre avant une nouvelle tentative : céder le processeur, puis
+	 * s'endormir de plus en plus longtemps.
+	 * 
+	 * @param attempt
+	 *            nombre de tentatives déjà faites.
+	 * @throws CancellationException
+	 *             si la file est annulée ou le thread interrompu.
+	 */
+	private void backOff(final int attempt) throws CancellationException
+	{
+		if (cancelled || Thread.currentThread().isInterrupted())
+		{
+			throw new CancellationException("File annulée");
+		}
+		
+		if (attempt < SPIN_COUNT)
+		{
+			Thread.yield();
+		}
+		else
+		{
+			LockSupport.parkNanos(Math.min(1000L << Math.min(attempt - SPIN_COUNT, 10), MAX_PARK_NANOS));
+		}
+	}
+}
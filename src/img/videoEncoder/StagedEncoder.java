@@ -0,0 +1,334 @@
+package img.videoEncoder;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import img.BytePlane;
+import img.math.MotionField;
+import img.videoEncoder.io.EncodedFrame;
+import img.videoEncoder.io.EncoderParams;
+
+/**
+ * Encodeur en étages, chacun sur son propre thread, reliés par des files
+ * bornées à un producteur et un consommateur ({@link SpscRingBuffer}) :
+ * <ol>
+ * <li>lecture et conversion des trames (le flux d'entrée est consommé sur ce
+ * thread) ;</li>
+ * <li>estimation de mouvement, qui ne dépend que de la trame précédente
+ * initiale et peut donc prendre de l'avance sur la reconstruction ;</li>
+ * <li>transformée, quantification et reconstruction, par un
+ * {@link VideoEncodingPipeline} ;</li>
+ * <li>codage entropique des trames encodées.</li>
+ * </ol>
+ * Les étages travaillent sur des trames successives en même temps ; une file
+ * pleine bloque l'étage qui la remplit. L'ordre des trames est conservé et
+ * les trames encodées sont identiques à celles de
+ * {@link VideoEncoder#encodePlanes(Stream, EncoderParams)}.
+ */
+public class StagedEncoder
+{
+	/**
+	 * Capacité par défaut des files entre les étages.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+	
+	/**
+	 * Encoder un flux de trames en étages, avec des files de
+	 * {@link #DEFAULT_QUEUE_CAPACITY} trames.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return flux de trames encodées et codées, dans l'ordre.
+	 */
+	public static Stream<CodedFrame> encode(final Stream<BytePlane> frameStream, final EncoderParams parameters)
+	{
+		return encode(frameStream, parameters, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	/**
+	 * Encoder un flux de trames en étages. Une erreur d'un étage arrête les
+	 * autres et est relancée, dans une {@link CompletionException}, à la
+	 * lecture du flux rendu ; la fermeture du flux rendu arrête les étages.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param queueCapacity
+	 *            capacité des files entre les étages.
+	 * @return flux de trames encodées et codées, dans l'ordre.
+	 * @throws IllegalArgumentException
+	 *             si la capacité des files est invalide.
+	 */
+	public static Stream<CodedFrame> encode(final Stream<BytePlane> frameStream, final EncoderParams parameters,
+			final int queueCapacity) throws IllegalArgumentException
+	{
+		final Stages stages = new Stages(queueCapacity);
+		
+		// # Lecture et conversion.
+		stages.start("load", stages.loaded, () ->
+		{
+			try
+			{
+				frameStream.forEachOrdered(stages.loaded::put);
+			}
+			finally
+			{
+				frameStream.close();
+			}
+		});
+		
+		// # Estimation de mouvement par rapport à la trame précédente initiale.
+		stages.start("analysis", stages.analysed, () ->
+		{
+			BytePlane prevFrame = null;
+			long frameCount = 0;
+			
+			try
+			{
+				for (BytePlane frame; (frame = stages.loaded.take()) != null; ++frameCount)
+				{
+					// Trame intra : pas de mouvement.
+					final boolean intra = prevFrame == null
+							|| parameters.getGopLength() > 0 && frameCount % parameters.getGopLength() == 0;
+							
+					final MotionField blockMovementMap = intra ?
+							null
+						:
+							VideoEncoder.computeBlockMovementMap(prevFrame, frame,
+									parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
+									
+					if (prevFrame != null)
+					{
+						prevFrame.release();
+					}
+					prevFrame = frame;
+					prevFrame.retain();
+					
+					stages.analysed.put(new AnalysedFrame(frame, blockMovementMap));
+				}
+			}
+			finally
+			{
+				if (prevFrame != null)
+				{
+					prevFrame.release();
+				}
+			}
+		});
+		
+		// # Transformée, quantification et reconstruction.
+		stages.start("transform", stages.encoded, () ->
+		{
+			try (final VideoEncodingPipeline pipeline = new VideoEncodingPipeline(parameters))
+			{
+				for (AnalysedFrame frame; (frame = stages.analysed.take()) != null; )
+				{
+					stages.encoded.put(pipeline.encode(frame.frame, frame.blockMovementMap));
+				}
+			}
+		});
+		
+		// # Codage entropique.
+		stages.start("entropy", stages.coded, () ->
+		{
+			for (EncodedFrame frame; (frame = stages.encoded.take()) != null; )
+			{
+				stages.coded.put(new CodedFrame(frame, frame.toBytes(parameters)));
+			}
+		});
+		
+		final Iterator<CodedFrame> results = new Iterator<CodedFrame>()
+		{
+			/**
+			 * Trame suivante, déjà retirée de la file.
+			 */
+			private CodedFrame next;
+			
+			@Override
+			public boolean hasNext()
+			{
+				if (next == null)
+				{
+					next = stages.take();
+				}
+				return next != null;
+			}
+			
+			@Override
+			public CodedFrame next()
+			{
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				
+				final CodedFrame frame = next;
+				next = null;
+				return frame;
+			}
+		};
+		
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED), false)
+							.onClose(stages::cancel);
+	}
+	
+	/**
+	 * Trame encodée et son flux binaire.
+	 */
+	public static class CodedFrame
+	{
+		/**
+		 * Trame encodée.
+		 */
+		private final EncodedFrame frame;
+		/**
+		 * Flux binaire de la trame.
+		 */
+		private final byte[] bytes;
+		
+		public CodedFrame(final EncodedFrame frame, final byte[] bytes)
+		{
+			this.frame = frame;
+			this.bytes = bytes;
+		}
+		
+		/**
+		 * @return trame encodée.
+		 */
+		public EncodedFrame getFrame()
+		{
+			return frame;
+		}
+		
+		/**
+		 * @return flux binaire de la trame, tel que produit par
+		 *         {@link EncodedFrame#toBytes(EncoderParams)}.
+		 */
+		public byte[] getBytes()
+		{
+			return bytes;
+		}
+	}
+	
+	/**
+	 * Trame et son mouvement estimé, entre l'analyse et la transformée.
+	 */
+	private static class AnalysedFrame
+	{
+		public final BytePlane frame;
+		public final MotionField blockMovementMap;
+		
+		public AnalysedFrame(final BytePlane frame, final MotionField blockMovementMap)
+		{
+			this.frame            = frame;
+			this.blockMovementMap = blockMovementMap;
+		}
+	}
+	
+	/**
+	 * Files entre les étages, threads des étages et première erreur.
+	 */
+	private static class Stages
+	{
+		public final SpscRingBuffer<BytePlane> loaded;
+		public final SpscRingBuffer<AnalysedFrame> analysed;
+		public final SpscRingBuffer<EncodedFrame> encoded;
+		public final SpscRingBuffer<CodedFrame> coded;
+		
+		/**
+		 * Première erreur d'un étage.
+		 */
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		public Stages(final int queueCapacity) throws IllegalArgumentException
+		{
+			loaded   = new SpscRingBuffer<>(queueCapacity);
+			analysed = new SpscRingBuffer<>(queueCapacity);
+			encoded  = new SpscRingBuffer<>(queueCapacity);
+			coded    = new SpscRingBuffer<>(queueCapacity);
+		}
+		
+		/**
+		 * Lancer un étage sur son propre thread. A la fin de l'étage, sa file
+		 * de sortie est terminée ; en cas d'erreur, toutes les files sont
+		 * annulées.
+		 * 
+		 * @param name
+		 *            nom de l'étage.
+		 * @param output
+		 *            file de sortie de l'étage.
+		 * @param stage
+		 *            traitement de l'étage.
+		 */
+		public void start(final String name, final SpscRingBuffer<?> output, final Runnable stage)
+		{
+			final Thread thread = new Thread(() ->
+			{
+				try
+				{
+					stage.run();
+					output.finish();
+				}
+				catch (final CancellationException e)
+				{
+					// Arrêt demandé, ou erreur d'un autre étage.
+				}
+				catch (final RuntimeException | Error e)
+				{
+					failure.compareAndSet(null, e);
+					cancel();
+				}
+			}, "encoder-" + name);
+			
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		/**
+		 * Retirer la trame codée suivante.
+		 * 
+		 * @return trame codée, ou null à la fin du flux.
+		 * @throws CompletionException
+		 *             si un étage a échoué.
+		 * @throws CancellationException
+		 *             si les étages ont été arrêtés.
+		 */
+		public CodedFrame take() throws CompletionException, CancellationException
+		{
+			try
+			{
+				return coded.take();
+			}
+			catch (final CancellationException e)
+			{
+				final Throwable cause = failure.get();
+				if (cause != null)
+				{
+					throw new CompletionException(cause);
+				}
+				throw e;
+			}
+		}
+		
+		/**
+		 * Arrêter tous les étages.
+		 */
+		public void cancel()
+		{
+			loaded.cancel();
+			analysed.cancel();
+			encoded.cancel();
+			coded.cancel();
+		}
+	}
+}
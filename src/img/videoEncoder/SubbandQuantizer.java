@@ -0,0 +1,229 @@
+package img.videoEncoder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import img.math.transforms.DWT;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+
+/**
+ * Quantificateur des sous-bandes de la transformée en ondelettes 5/3. Chaque
+ * sous-bande a son propre pas de quantification, obtenu à partir de l'échelle
+ * de quantification, du poids de la matrice de pondération correspondant à sa
+ * fréquence et de son gain de synthèse, de sorte que l'erreur de quantification
+ * dans l'image reconstruite soit comparable à celle de la DCT en blocs.<br>
+ * Comme pour la DCT, les trames prédites utilisent une zone morte : un
+ * coefficient est quantifié à zéro s'il est inférieur au pas.
+ */
+public class SubbandQuantizer
+{
+	/**
+	 * Orientation des sous-bandes : basse fréquence, haute fréquence
+	 * horizontale, verticale et diagonale.
+	 */
+	private static final int LL = 0, HL = 1, LH = 2, HH = 3;
+	
+	/**
+	 * Quantificateurs déjà construits.
+	 */
+	private static final Map<String, SubbandQuantizer> CACHE = new ConcurrentHashMap<>();
+	
+	/**
+	 * Nombre de niveaux de décomposition.
+	 */
+	private final int levels;
+	/**
+	 * Pas de quantification de chaque sous-bande : steps[l][orientation] pour
+	 * le niveau l (de 1 à levels), steps[levels][LL] pour la sous-bande basse
+	 * fréquence.
+	 */
+	private final double[][] steps;
+	/**
+	 * Offset d'arrondi de la quantification (0.5 : arrondi, 0 : zone morte).
+	 */
+	private final double quantifOffset;
+	/**
+	 * Offset de reconstruction de la quantification inverse, en pas.
+	 */
+	private final double dequantifOffset;
+	
+	private SubbandQuantizer(final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final int levels)
+	{
+		this.levels = levels;
+		
+		quantifOffset   = frameType == FrameType.I ? 0.5 : 0;
+		dequantifOffset = frameType == FrameType.I ? 0   : 0.5;
+		
+		final double[][] gains = DWT.synthesisGains(levels);
+		final int n = quantifWeights.length;
+		
+		steps = new double[levels+1][4];
+		for (int level = 1; level <= levels; ++level)
+		{
+			// Indice de fréquence correspondant à ce niveau dans la matrice des poids.
+			final int f = Math.max(1, n >> level);
+			
+			steps[level][HL] = 2*quantifScale * quantifWeights[0][f] / 16 / (gains[1][level]*gains[0][level]);
+			steps[level][LH] = 2*quantifScale * quantifWeights[f][0] / 16 / (gains[0][level]*gains[1][level]);
+			steps[level][HH] = 2*quantifScale * quantifWeights[f][f] / 16 / (gains[1][level]*gains[1][level]);
+		}
+		steps[levels][LL] = 2*quantifScale * quantifWeights[0][0] / 16 / (gains[0][levels]*gains[0][levels]);
+	}
+	
+	/**
+	 * Obtenir le quantificateur de sous-bandes correspondant aux paramètres
+	 * spécifiés.
+	 * 
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de trame.
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 * @return quantificateur de sous-bandes.
+	 */
+	public static SubbandQuantizer get(final int[][] quantifWeights, final double quantifScale,
+			final FrameType frameType, final int levels)
+	{
+		final String key = Arrays.deepToString(quantifWeights) + quantifScale + frameType + levels;
+		return CACHE.computeIfAbsent(key, k -> new SubbandQuantizer(quantifWeights, quantifScale, frameType, levels));
+	}
+	
+	/**
+	 * Quantifier les coefficients de la transformée en ondelettes.
+	 * 
+	 * @param coefficients
+	 *            coefficients organisés en sous-bandes.
+	 * @param quantized
+	 *            matrice de même taille recevant les coefficients quantifiés.
+	 */
+	public void quantize(final int[][] coefficients, final double[][] quantized)
+	{
+		final int h = coefficients.length,
+				  w = coefficients[0].length;
+		
+		for (int level = 1; level <= levels; ++level)
+		{
+			final int levelW = DWT.subbandSize(w, level-1), lowW = DWT.subbandSize(w, level),
+					  levelH = DWT.subbandSize(h, level-1), lowH = DWT.subbandSize(h, level);
+			
+			quantizeRegion(coefficients, quantized, lowW, levelW, 0, lowH, steps[level][HL]);
+			quantizeRegion(coefficients, quantized, 0, lowW, lowH, levelH, steps[level][LH]);
+			quantizeRegion(coefficients, quantized, lowW, levelW, lowH, levelH, steps[level][HH]);
+		}
+		
+		quantizeRegion(coefficients, quantized, 0, DWT.subbandSize(w, levels), 0, DWT.subbandSize(h, levels), steps[levels][LL]);
+	}
+	
+	/**
+	 * Quantifier inversement les coefficients de la transformée en ondelettes.
+	 * 
+	 * @param quantized
+	 *            coefficients quantifiés organisés en sous-bandes.
+	 * @param coefficients
+	 *            matrice de même taille recevant les coefficients.
+	 */
+	public void dequantize(final double[][] quantized, final int[][] coefficients)
+	{
+		final int h = quantized.length,
+				  w = quantized[0].length;
+		
+		for (int level = 1; level <= levels; ++level)
+		{
+			final int levelW = DWT.subbandSize(w, level-1), lowW = DWT.subbandSize(w, level),
+					  levelH = DWT.subbandSize(h, level-1), lowH = DWT.subbandSize(h, level);
+			
+			dequantizeRegion(quantized, coefficients, lowW, levelW, 0, lowH, steps[level][HL]);
+			dequantizeRegion(quantized, coefficients, 0, lowW, lowH, levelH, steps[level][LH]);
+			dequantizeRegion(quantized, coefficients, lowW, levelW, lowH, levelH, steps[level][HH]);
+		}
+		
+		dequantizeRegion(quantized, coefficients, 0, DWT.subbandSize(w, levels), 0, DWT.subbandSize(h, levels), steps[levels][LL]);
+	}
+	
+	/**
+	 * Quantifier une sous-bande.
+	 * 
+	 * @param coefficients
+	 *            coefficients.
+	 * @param quantized
+	 *            coefficients quantifiés.
+	 * @param x0
+	 *            début de la sous-bande en x.
+	 * @param x1
+	 *            fin exclue de la sous-bande en x.
+	 * @param y0
+	 *            début de la sous-bande en y.
+	 * @param y1
+	 *            fin exclue de la sous-bande en y.
+	 * @param step
+	 *            pas de quantification de la sous-bande.
+	 */
+	private void quantizeRegion(final int[][] coefficients, final double[][] quantized, final int x0, final int x1,
+			final int y0, final int y1, final double step)
+	{
+		final double invStep = 1.0 / step;
+		
+		for (int y = y0; y < y1; ++y)
+		{
+			final int[] row = coefficients[y];
+			final double[] quantizedRow = quantized[y];
+			
+			for (int x = x0; x < x1; ++x)
+			{
+				quantizedRow[x] = Integer.signum(row[x]) * (int) (Math.abs(row[x])*invStep + quantifOffset);
+			}
+		}
+	}
+	
+	/**
+	 * Quantifier inversement une sous-bande.
+	 * 
+	 * @param quantized
+	 *            coefficients quantifiés.
+	 * @param coefficients
+	 *            coefficients reconstruits.
+	 * @param x0
+	 *            début de la sous-bande en x.
+	 * @param x1
+	 *            fin exclue de la sous-bande en x.
+	 * @param y0
+	 *            début de la sous-bande en y.
+	 * @param y1
+	 *            fin exclue de la sous-bande en y.
+	 * @param step
+	 *            pas de quantification de la sous-bande.
+	 */
+	private void dequantizeRegion(final double[][] quantized, final int[][] coefficients, final int x0, final int x1,
+			final int y0, final int y1, final double step)
+	{
+		for (int y = y0; y < y1; ++y)
+		{
+			final double[] quantizedRow = quantized[y];
+			final int[] row = coefficients[y];
+			
+			for (int x = x0; x < x1; ++x)
+			{
+				final double level = quantizedRow[x];
+				row[x] = (int) Math.round((level + Math.signum(level)*dequantifOffset) * step);
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir la largeur ou hauteur de la sous-bande basse fréquence pour une
+	 * taille de trame donnée.
+	 * 
+	 * @param length
+	 *            largeur ou hauteur de la trame.
+	 * @return largeur ou hauteur de la sous-bande basse fréquence.
+	 */
+	public int lowSubbandSize(final int length)
+	{
+		return DWT.subbandSize(length, levels);
+	}
+}
@@ -5,17 +5,24 @@ import static img.videoEncoder.VideoEncoder.*;
 import java.util.Arrays;
 import java.util.function.Function;
 
+import img.BytePlane;
 import img.Images;
-import img.math.Vector2D;
+import img.PlaneAllocator;
+import img.PlanePool;
+import img.ShortPlane;
+import img.math.MotionField;
 import img.videoEncoder.io.EncodedFrame;
 import img.videoEncoder.io.EncoderParams;
 import img.videoEncoder.io.EncodedFrame.FrameType;
 import test.plot.Plot;
 
 /**
- * Pipeline de décodage vidéo.
+ * Pipeline de décodage vidéo.<br>
+ * Les trames décodées et les plans de travail viennent d'un pool propre au
+ * pipeline. Chaque trame rendue porte une référence pour l'appelant, qui doit
+ * la rendre avec {@link BytePlane#release()} pour qu'elle soit recyclée.
  */
-public class VideoDecodingPipeline implements Function<EncodedFrame, int[][]>
+public class VideoDecodingPipeline implements Function<EncodedFrame, BytePlane>, AutoCloseable
 {
 	/**
 	 * Paramètres d'encodage.
@@ -24,7 +31,11 @@ public class VideoDecodingPipeline implements Function<EncodedFrame, int[][]>
 	/**
 	 * Trame précédente reconstruite.
 	 */
-	private int[][] prevFrameRec;
+	private BytePlane prevFrameRec;
+	/**
+	 * Pool des trames et des plans de travail.
+	 */
+	private final PlanePool pool = new PlanePool(PlaneAllocator.HEAP);
 	
 	public VideoDecodingPipeline(final EncoderParams parameters)
 	{
@@ -36,34 +47,85 @@ public class VideoDecodingPipeline implements Function<EncodedFrame, int[][]>
 	 * 
 	 * @param frame
 	 *            trame encodée.
-	 * @return trame décodée.
+	 * @return trame décodée, avec une référence pour l'appelant.
 	 */
 	@Override
-	public int[][] apply(final EncodedFrame frame)
+	public BytePlane apply(final EncodedFrame frame)
 	{
 		/**
 		 * Erreurs de prédiction.
 		 */
-		final int[][] errors;
+		final ShortPlane errors;
+		/**
+		 * Trame actuelle reconstruite.
+		 */
+		final BytePlane frameRec;
 		
 		// Trame Intra.
 		if (frame.getType() == FrameType.I)
 		{
-			errors = inverseTransformErrors(frame.getTransformedErrors(), parameters.getDctBlockSize(), parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.I);
-			prevFrameRec = reconstructI(errors);
+			errors = inverseTransformErrors(frame, parameters, pool);
+			frameRec = reconstructI(errors, pool.allocate(errors.getWidth(), errors.getHeight()));
+		}
+		else
+		{
+			// On récupère les erreurs de prédiction.
+			errors = inverseTransformErrors(frame, parameters, pool);
+			// La carte de compensation de mouvement.
+			final MotionField blockMovementMap = inverseTransformBlockMovementMap(frame.getTransformedBlockMovementMap(), parameters);
 			
-			return prevFrameRec;
+			// On calcul la trame actuelle reconstruite.
+			frameRec = MotionCompensation.reconstruct(prevFrameRec, errors, blockMovementMap, parameters.getMovementBlockSize(), parameters.getMovementBlockSize(),
+					frame.getCodedBlockPattern(), parameters.getDctBlockSize(), pool.allocate(errors.getWidth(), errors.getHeight()));
 		}
 		
-		// On récupère les erreurs de prédiction.
-		errors = inverseTransformErrors(frame.getTransformedErrors(), parameters.getDctBlockSize(), parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.P);
-		// La carte de compensation de mouvement.
-		final Vector2D[][] blockMovementMap = inverseTransformBlockMovementMap(frame.getTransformedBlockMovementMap());
-		
-		// On calcul la trame actuelle reconstruite.
-		final int[][] frameRec = reconstructP(prevFrameRec, errors, blockMovementMap, parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
+		errors.release();
 		
+		// La trame reconstruite devient la référence ; une seconde référence
+		// est confiée à l'appelant.
+		if (prevFrameRec != null)
+		{
+			prevFrameRec.release();
+		}
 		prevFrameRec = frameRec;
+		frameRec.retain();
+		
 		return frameRec;
 	}
+	
+	/**
+	 * Reprendre le décodage après une trame déjà décodée, par exemple gardée
+	 * par l'appelant : elle devient la référence de la trame prédite
+	 * suivante.
+	 * 
+	 * @param reference
+	 *            trame décodée de la séquence, dont le pipeline prend une
+	 *            référence.
+	 */
+	public void setReference(final BytePlane reference)
+	{
+		reference.retain();
+		
+		if (prevFrameRec != null)
+		{
+			prevFrameRec.release();
+		}
+		prevFrameRec = reference;
+	}
+	
+	/**
+	 * Rendre la trame de référence et vider le pool. Les trames encore tenues
+	 * par l'appelant restent valides.
+	 */
+	@Override
+	public void close()
+	{
+		if (prevFrameRec != null)
+		{
+			prevFrameRec.release();
+			prevFrameRec = null;
+		}
+		
+		pool.close();
+	}
 }
\ No newline at end of file
@@ -1,14 +1,37 @@
 package img.videoEncoder;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import img.BytePlane;
+import img.Plane;
+import img.PlanePool;
+import img.ShortPlane;
 import img.math.Matrices;
-import img.math.Vector2D;
+import img.math.MotionField;
 import img.math.transforms.DCT;
+import img.math.transforms.DWT;
 import img.prediction.DPCM;
 import img.videoEncoder.io.EncodedFrame;
 import img.videoEncoder.io.EncodedFrame.FrameType;
 import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.EncoderParams.CoefficientPrediction;
+import img.videoEncoder.io.EncoderParams.VectorPrediction;
 
 /**
  * Possède toutes les fonctions d'encodage / décodage utilisées dans le pipeline
@@ -16,6 +39,12 @@ import img.videoEncoder.io.EncoderParams;
  */
 public class VideoEncoder
 {
+	/**
+	 * Copies sur le tas du bloc et de sa fenêtre de recherche, propres à
+	 * chaque worker, pour l'estimation de mouvement sur des plans hors du tas.
+	 */
+	private static final ThreadLocal<SearchScratch> SEARCH_SCRATCH = ThreadLocal.withInitial(SearchScratch::new);
+	
 	//==========================================================================
 	// Fonctions principales d'encodage / décodage.
 	//==========================================================================
@@ -28,7 +57,22 @@ public class VideoEncoder
 	 */
 	public static Stream<EncodedFrame> encode(final Stream<int[][]> frameStream, final EncoderParams parameters)
 	{
-		return frameStream.map(new VideoEncodingPipeline(parameters));
+		return encodePlanes(frameStream.map(BytePlane::fromInt), parameters);
+	}
+	
+	/**
+	 * Encoder un flux de trames stockées en plans 8 bits.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @return flux de trames encodées.
+	 */
+	public static Stream<EncodedFrame> encodePlanes(final Stream<BytePlane> frameStream, final EncoderParams parameters)
+	{
+		final VideoEncodingPipeline pipeline = new VideoEncodingPipeline(parameters);
+		
+		// Fermer le flux rend les trames de référence de l'encodeur.
+		return frameStream.map(pipeline).onClose(pipeline::close);
 	}
 	
 	/**
@@ -40,7 +84,202 @@ public class VideoEncoder
 	 */
 	public static Stream<int[][]> decode(final Stream<EncodedFrame> frameStream, final EncoderParams parameters)
 	{
-		return frameStream.map(new VideoDecodingPipeline(parameters));
+		return decodePlanes(frameStream, parameters).map(plane ->
+		{
+			final int[][] frame = plane.toInt();
+			plane.release();
+			return frame;
+		});
+	}
+	
+	/**
+	 * Decoder un flux de trame en plans 8 bits. Les plans décodés viennent du
+	 * pool du décodeur : ils doivent être rendus avec {@link Plane#release()}
+	 * une fois utilisés pour être recyclés (à défaut, ils sont laissés au
+	 * ramasse-miettes).
+	 * 
+	 * @param frameStream
+	 *            flux de trame à décoder.
+	 * @return flux de trames décodées.
+	 */
+	public static Stream<BytePlane> decodePlanes(final Stream<EncodedFrame> frameStream, final EncoderParams parameters)
+	{
+		final VideoDecodingPipeline pipeline = new VideoDecodingPipeline(parameters);
+		return frameStream.map(pipeline).onClose(pipeline::close);
+	}
+	
+	/**
+	 * Encoder un flux de trames par groupes de trames (voir
+	 * {@link EncoderParams#gopLength(int)}) encodés en parallèle, chacun par
+	 * son propre pipeline. Le flux rendu est identique à celui de
+	 * {@link #encodePlanes(Stream, EncoderParams)} : les groupes sont remis
+	 * dans l'ordre, et seuls quelques groupes sont en cours à la fois. Sans
+	 * groupes de trames, l'encodage est séquentiel.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à encoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return flux de trames encodées.
+	 */
+	public static Stream<EncodedFrame> encodeGopParallel(final Stream<BytePlane> frameStream, final EncoderParams parameters)
+	{
+		final int gopLength = parameters.getGopLength();
+		if (gopLength <= 0)
+		{
+			return encodePlanes(frameStream, parameters);
+		}
+		
+		final Iterator<BytePlane> frames = frameStream.iterator();
+		
+		// Groupes de gopLength trames consécutives.
+		final Iterator<List<BytePlane>> gops = new Iterator<List<BytePlane>>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return frames.hasNext();
+			}
+			
+			@Override
+			public List<BytePlane> next()
+			{
+				final List<BytePlane> gop = new ArrayList<>(gopLength);
+				while (gop.size() < gopLength && frames.hasNext())
+				{
+					gop.add(frames.next());
+				}
+				
+				return gop;
+			}
+		};
+		
+		return mapGroupsInParallel(gops, gop ->
+		{
+			try (final VideoEncodingPipeline pipeline = new VideoEncodingPipeline(parameters))
+			{
+				return gop.stream().map(pipeline).collect(Collectors.toList());
+			}
+		}).onClose(frameStream::close);
+	}
+	
+	/**
+	 * Décoder un flux de trames par groupes de trames décodés en parallèle,
+	 * chacun par son propre pipeline. Chaque trame intra commence un groupe.
+	 * Comme pour {@link #decodePlanes(Stream, EncoderParams)}, les plans
+	 * décodés doivent être rendus avec {@link Plane#release()}.
+	 * 
+	 * @param frameStream
+	 *            flux de trame à décoder.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return flux de trames décodées, dans l'ordre.
+	 */
+	public static Stream<BytePlane> decodeGopParallel(final Stream<EncodedFrame> frameStream, final EncoderParams parameters)
+	{
+		final Iterator<EncodedFrame> frames = frameStream.iterator();
+		
+		// Groupes commençant par une trame intra : on lit jusqu'à la suivante.
+		final Iterator<List<EncodedFrame>> gops = new Iterator<List<EncodedFrame>>()
+		{
+			/**
+			 * Première trame du groupe suivant, déjà lue.
+			 */
+			private EncodedFrame nextGopStart;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return nextGopStart != null || frames.hasNext();
+			}
+			
+			@Override
+			public List<EncodedFrame> next()
+			{
+				final List<EncodedFrame> gop = new ArrayList<>();
+				gop.add(nextGopStart != null ? nextGopStart : frames.next());
+				nextGopStart = null;
+				
+				while (frames.hasNext())
+				{
+					final EncodedFrame frame = frames.next();
+					if (frame.getType() == FrameType.I)
+					{
+						nextGopStart = frame;
+						break;
+					}
+					
+					gop.add(frame);
+				}
+				
+				return gop;
+			}
+		};
+		
+		return mapGroupsInParallel(gops, gop ->
+		{
+			// Les trames rendues restent valides après la fermeture du pipeline.
+			try (final VideoDecodingPipeline pipeline = new VideoDecodingPipeline(parameters))
+			{
+				return gop.stream().map(pipeline).collect(Collectors.toList());
+			}
+		}).onClose(frameStream::close);
+	}
+	
+	/**
+	 * Traiter des groupes en parallèle dans le pool commun, en gardant au plus
+	 * un groupe d'avance par thread du pool, et rendre leurs résultats à la
+	 * suite, dans l'ordre des groupes.
+	 * 
+	 * @param groups
+	 *            groupes à traiter, lus au fur et à mesure.
+	 * @param process
+	 *            traitement d'un groupe, indépendant des autres groupes.
+	 * @return flux des résultats des groupes mis bout à bout.
+	 */
+	private static <T, R> Stream<R> mapGroupsInParallel(final Iterator<List<T>> groups,
+			final Function<List<T>, List<R>> process)
+	{
+		final int window = ForkJoinPool.getCommonPoolParallelism() + 1;
+		final ArrayDeque<CompletableFuture<List<R>>> pending = new ArrayDeque<>(window);
+		
+		final Iterator<List<R>> results = new Iterator<List<R>>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				submit();
+				return !pending.isEmpty();
+			}
+			
+			@Override
+			public List<R> next()
+			{
+				submit();
+				if (pending.isEmpty())
+				{
+					throw new NoSuchElementException();
+				}
+				
+				return pending.poll().join();
+			}
+			
+			/**
+			 * Lancer le traitement des groupes suivants, dans la limite de la
+			 * fenêtre.
+			 */
+			private void submit()
+			{
+				while (pending.size() < window && groups.hasNext())
+				{
+					final List<T> group = groups.next();
+					pending.add(CompletableFuture.supplyAsync(() -> process.apply(group)));
+				}
+			}
+		};
+		
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED), false)
+							.flatMap(List::stream);
 	}
 	
 	//==========================================================================
@@ -53,12 +292,20 @@ public class VideoEncoder
 	 * 
 	 * @param blockMovementMap
 	 *            carte de compensation de mouvement.
+	 * @param parameters
+	 *            paramètres de l'encodeur, qui fixent la prédiction.
 	 * @return carte de compensation de mouvement transformée par une prédiction
 	 *         DPCM.
 	 */
-	/*package*/ static Vector2D[][] transformBlockMovementMap(final Vector2D[][] blockMovementMap)
+	/*package*/ static MotionField transformBlockMovementMap(final MotionField blockMovementMap,
+			final EncoderParams parameters)
 	{
-		return DPCM.encode(blockMovementMap, 1);
+		return mapVectorSlices(blockMovementMap, parameters, field ->
+			parameters.getVectorPrediction() == VectorPrediction.MEDIAN ?
+					DPCM.parallelEncodeMedian(field)
+				:
+					DPCM.parallelEncode(field)
+		);
 	}
 	
 	/**
@@ -67,11 +314,80 @@ public class VideoEncoder
 	 * 
 	 * @param transformedBlockMovementMap
 	 *            prédiction DPCM carte de compensation de mouvement.
+	 * @param parameters
+	 *            paramètres de l'encodeur, qui fixent la prédiction.
 	 * @return carte de compensation de mouvement.
 	 */
-	public static Vector2D[][] inverseTransformBlockMovementMap(final Vector2D[][] transformedBlockMovementMap)
+	public static MotionField inverseTransformBlockMovementMap(final MotionField transformedBlockMovementMap,
+			final EncoderParams parameters)
+	{
+		return mapVectorSlices(transformedBlockMovementMap, parameters, field ->
+			parameters.getVectorPrediction() == VectorPrediction.MEDIAN ?
+					DPCM.parallelDecodeMedian(field)
+				:
+					DPCM.parallelDecode(field)
+		);
+	}
+	
+	/**
+	 * Appliquer une prédiction DPCM à chaque tranche d'un champ de vecteurs,
+	 * indépendamment et en parallèle, pour qu'elle reparte de zéro au début
+	 * de chaque tranche.
+	 * 
+	 * @param field
+	 *            champ de vecteurs de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur, qui fixent les tranches.
+	 * @param prediction
+	 *            codage ou décodage DPCM d'un champ de vecteurs.
+	 * @return champ transformé, tranche par tranche.
+	 */
+	private static MotionField mapVectorSlices(final MotionField field, final EncoderParams parameters,
+			final UnaryOperator<MotionField> prediction)
+	{
+		final int blockSize   = parameters.getMovementBlockSize(),
+				  sliceHeight = parameters.getSliceHeight(field.getHeight()*blockSize) / blockSize;
+		
+		if (sliceHeight >= field.getHeight())
+		{
+			return prediction.apply(field);
+		}
+		
+		final MotionField result = new MotionField(field.getWidth(), field.getHeight());
+		IntStream.range(0, (field.getHeight() + sliceHeight - 1) / sliceHeight).parallel().forEach(slice ->
+		{
+			final int by0 = slice*sliceHeight,
+					  by1 = Math.min(by0 + sliceHeight, field.getHeight());
+			
+			result.setRows(by0, prediction.apply(field.copyRows(by0, by1)));
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Appliquer un traitement à chaque tranche d'une matrice de coefficients,
+	 * en parallèle. Chaque tranche est vue comme la sous-matrice de ses
+	 * lignes, qui partage les lignes de la matrice (sans copie).
+	 * 
+	 * @param matrix
+	 *            matrice de la trame.
+	 * @param sliceHeight
+	 *            hauteur des tranches, la hauteur de la matrice s'il n'y en a
+	 *            qu'une.
+	 * @param action
+	 *            traitement d'une tranche, en place.
+	 */
+	/*package*/ static void forEachSlice(final double[][] matrix, final int sliceHeight, final Consumer<double[][]> action)
 	{
-		return DPCM.decode(transformedBlockMovementMap);
+		if (sliceHeight >= matrix.length)
+		{
+			action.accept(matrix);
+			return;
+		}
+		
+		IntStream.range(0, (matrix.length + sliceHeight - 1) / sliceHeight).parallel().forEach(slice ->
+				action.accept(Arrays.copyOfRange(matrix, slice*sliceHeight, Math.min((slice + 1)*sliceHeight, matrix.length))));
 	}
 	
 	/**
@@ -91,19 +407,21 @@ public class VideoEncoder
 	 *            largeur du bloc.
 	 * @param blockH
 	 *            hauteur du bloc.
-	 * @return vecteur de déplacement optimal dans le bloc spécifié entre deux
-	 *         trames.
+	 * @param movementMap
+	 *            champ de vecteurs recevant le vecteur de déplacement optimal
+	 *            du bloc.
 	 */
-	private static Vector2D computeBlockMovement(final int[][] frame1, final int[][] frame2, final int bx, final int by,
-			final int blockW, final int blockH)
+	/*package*/ static void computeBlockMovement(final BytePlane frame1, final BytePlane frame2, final int bx,
+			final int by, final int blockW, final int blockH, final MotionField movementMap)
 	{
-		final int h = frame1.length,
-				  w = frame1[0].length;
+		final int h = frame1.getHeight(),
+				  w = frame1.getWidth();
 		
 		// Mesure de disimilarité minimum obtenue.
 		int minDisimilarity = Integer.MAX_VALUE;
-		// Vecteur de déplacement obtenu pour ce min de disimilarité.
-		Vector2D minMovement = new Vector2D(0, 0);
+		// Déplacement obtenu pour ce min de disimilarité.
+		int bestI = 0,
+			bestJ = 0;
 		
 		// Déplacements maximums autorisés pour ne pas sortir de l'image.
 		
@@ -113,18 +431,47 @@ public class VideoEncoder
 				  minJ = Math.max(-2*blockH, (by+blockH) - h),
 				  maxJ = Math.min(2*blockH, by);
 		
-		int disimilarity = 0;
-		for (int y = by; y < by + blockH; ++y)
+		// Échantillons du bloc et de sa fenêtre de recherche, avec l'indice du
+		// bloc non déplacé. Un plan hors du tas est d'abord copié dans les
+		// tableaux du worker, une seule fois par bloc, pour garder les accès
+		// directs au tableau sans allouer.
+		final byte[] data1, data2;
+		final int stride1, stride2, origin1, origin2;
+		
+		if (frame1.hasArray())
 		{
-			for (int x = bx; x < bx + blockW; ++x)
-			{
-				disimilarity += Math.abs(frame1[y][x] - frame2[y][x]);
-			}
+			data1   = frame1.getData();
+			stride1 = frame1.getStride();
+			origin1 = frame1.index(bx, by);
+		}
+		else
+		{
+			data1   = frame1.copyRegion(bx, by, blockW, blockH, SEARCH_SCRATCH.get().block(blockW*blockH));
+			stride1 = blockW;
+			origin1 = 0;
+		}
+		
+		if (frame2.hasArray())
+		{
+			data2   = frame2.getData();
+			stride2 = frame2.getStride();
+			origin2 = frame2.index(bx, by);
+		}
+		else
+		{
+			stride2 = maxI - minI + blockW;
+			data2   = frame2.copyRegion(bx - maxI, by - maxJ, stride2, maxJ - minJ + blockH,
+					SEARCH_SCRATCH.get().window(stride2*(maxJ - minJ + blockH)));
+			origin2 = maxJ*stride2 + maxI;
 		}
 		
+		int disimilarity = blockSad(data1, origin1, stride1, data2, origin2, stride2, blockW, blockH,
+				Integer.MAX_VALUE);
+		
 		if (disimilarity == 0)
 		{
-			return new Vector2D(0, 0);
+			movementMap.set(bx/blockW, by/blockH, 0, 0);
+			return;
 		}
 		
 		// Essayer pour différents déplacement possibles en x...
@@ -133,38 +480,77 @@ public class VideoEncoder
 			// et différents déplacement possibles en y.
 			for (int j = minJ; j <= maxJ; ++j)
 			{
-				// Calculer la disimilarité.
-				disimilarity = 0;
-				
-				for (int y = by; y < by + blockH; ++y)
-				{
-					for (int x = bx; x < bx + blockW; ++x)
-					{
-						disimilarity += Math.abs(frame1[y][x] - frame2[y-j][x-i]);
-					}
-				}
+				// Calculer la disimilarité, abandonnée dès qu'elle atteint le min.
+				disimilarity = blockSad(data1, origin1, stride1, data2, origin2 - j*stride2 - i, stride2, blockW, blockH,
+						minDisimilarity);
 				
 				// Si on obtient un nouveau min...
 				if (disimilarity < minDisimilarity)
 				{
 					minDisimilarity = disimilarity;
-					minMovement = new Vector2D(i, j);
+					bestI = i;
+					bestJ = j;
 					
 					// Si on obtient 0, on ne pourra pas avoir mieux, quitter la boucle.
 					if (disimilarity == 0)
 					{
-						return minMovement;
+						movementMap.set(bx/blockW, by/blockH, bestI, bestJ);
+						return;
 					}
 				}
 			}
 		}
 		
-		return minMovement;
+		movementMap.set(bx/blockW, by/blockH, bestI, bestJ);
+	}
+	
+	/**
+	 * Calculer la somme des différences absolues entre deux blocs
+	 * d'échantillons 8 bits. Le calcul s'arrête à la fin de la première ligne
+	 * où la somme atteint la limite spécifiée.
+	 * 
+	 * @param data1
+	 *            échantillons du premier plan.
+	 * @param offset1
+	 *            indice du coin supérieur gauche du premier bloc.
+	 * @param stride1
+	 *            pas du premier plan.
+	 * @param data2
+	 *            échantillons du second plan.
+	 * @param offset2
+	 *            indice du coin supérieur gauche du second bloc.
+	 * @param stride2
+	 *            pas du second plan.
+	 * @param blockW
+	 *            largeur des blocs.
+	 * @param blockH
+	 *            hauteur des blocs.
+	 * @param limit
+	 *            limite au-delà de laquelle la somme exacte n'est pas utile.
+	 * @return somme des différences absolues, ou une valeur partielle
+	 *         supérieure ou égale à la limite.
+	 */
+	private static int blockSad(final byte[] data1, int offset1, final int stride1, final byte[] data2, int offset2,
+			final int stride2, final int blockW, final int blockH, final int limit)
+	{
+		int sad = 0;
+		for (int y = 0; y < blockH && sad < limit; ++y)
+		{
+			for (int x = 0; x < blockW; ++x)
+			{
+				sad += Math.abs((data1[offset1 + x] & 0xFF) - (data2[offset2 + x] & 0xFF));
+			}
+			
+			offset1 += stride1;
+			offset2 += stride2;
+		}
+		return sad;
 	}
 	
 	/**
 	 * Obtenir la carte de compensation de mouvement des blocks entre la trame
-	 * précédente et la trame actuelle.
+	 * précédente et la trame actuelle. Les lignes de blocs sont indépendantes
+	 * et estimées en parallèle.
 	 * 
 	 * @param prevFrame
 	 *            trame précédente.
@@ -177,27 +563,113 @@ public class VideoEncoder
 	 * @return carte de compensation de mouvement des blocks entre la trame
 	 *         précédente reconstruite et la trame actuelle.
 	 */
-	/*package*/ static Vector2D[][] computeBlockMovementMap(final int[][] prevFrame, final int[][] frame, final int blockW,
-			final int blockH)
+	/*package*/ static MotionField computeBlockMovementMap(final BytePlane prevFrame, final BytePlane frame,
+			final int blockW, final int blockH)
 	{
-		final int nBlockH = frame.length    / blockH,
-				  nBlockW = frame[0].length / blockW;
+		final int nBlockH = frame.getHeight() / blockH,
+				  nBlockW = frame.getWidth()  / blockW;
 		
-		final Vector2D[][] movementMap = new Vector2D[nBlockH][nBlockW];
+		final MotionField movementMap = new MotionField(nBlockW, nBlockH);
 		
 		// Pour chaque bloc...
-		for (int by = 0; by < nBlockH; ++by) 		// Indice bloc position y.
+		IntStream.range(0, nBlockH).parallel().forEach(by -> 	// Indice bloc position y.
 		{
 			for (int bx = 0; bx < nBlockW; ++bx) 	// Indice bloc position x.
 			{
-				movementMap[by][bx] = computeBlockMovement(frame, prevFrame, bx*blockW, by*blockH, blockW, blockH);
-				//movementMap[by][bx] = new Vector2D(0, 0);
+				computeBlockMovement(frame, prevFrame, bx*blockW, by*blockH, blockW, blockH, movementMap);
 			}
-		}
+		});
 		
 		return movementMap;
 	}
 	
+	/**
+	 * Transformer les erreurs de prédiction avec la transformée choisie dans
+	 * les paramètres de l'encodeur.
+	 * 
+	 * @param errors
+	 *            carte des erreurs de prédiction.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param frameType
+	 *            type de la trame que l'on va envoyer.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés rempli pour la DCT, null pour les
+	 *            ondelettes.
+	 * @return erreurs de prédiction transformées et quantifiées.
+	 */
+	/*package*/ static double[][] transformErrors(final ShortPlane errors, final EncoderParams parameters,
+			final FrameType frameType, final byte[][] codedBlockPattern)
+	{
+		switch (parameters.getTransformType())
+		{
+			case DWT :
+				return transformErrorsWavelet(errors, parameters.getWaveletLevels(),
+						parameters.getQuantificationWeights(), parameters.getQuantificationScale(), frameType);
+				
+			case DCT :
+			default :
+				return transformErrors(errors, parameters.getDctBlockSize(), parameters.getQuantificationWeights(),
+						parameters.getQuantificationScale(), frameType, parameters.getZeroBlockThreshold(), codedBlockPattern,
+						parameters.getCoefficientPrediction(), parameters.getSliceHeight(errors.getHeight()));
+		}
+	}
+	
+	/**
+	 * Obtenir les erreurs de prédiction <b>quantifiées</b> à partir de leur
+	 * transformée choisie dans les paramètres de l'encodeur.
+	 * 
+	 * @param transformedErrors
+	 *            erreurs de prédiction transformées.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param frameType
+	 *            type de la trame.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés (DCT seulement), ou null.
+	 * @return carte des erreurs de prédiction.
+	 */
+	public static ShortPlane inverseTransformErrors(final double[][] transformedErrors, final EncoderParams parameters,
+			final FrameType frameType, final byte[][] codedBlockPattern)
+	{
+		return inverseTransformErrors(transformedErrors, parameters, frameType, codedBlockPattern, null);
+	}
+	
+	/**
+	 * Obtenir les erreurs de prédiction <b>quantifiées</b> à partir de leur
+	 * transformée choisie dans les paramètres de l'encodeur, en prenant les
+	 * matrices de travail et le plan résultat dans un pool.
+	 * 
+	 * @param transformedErrors
+	 *            erreurs de prédiction transformées.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param frameType
+	 *            type de la trame.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés (DCT seulement), ou null.
+	 * @param pool
+	 *            pool de la session, ou null pour allouer les matrices.
+	 * @return carte des erreurs de prédiction, à rendre avec
+	 *         {@link ShortPlane#release()} si elle vient du pool.
+	 */
+	public static ShortPlane inverseTransformErrors(final double[][] transformedErrors, final EncoderParams parameters,
+			final FrameType frameType, final byte[][] codedBlockPattern, final PlanePool pool)
+	{
+		switch (parameters.getTransformType())
+		{
+			case DWT :
+				return inverseTransformErrorsWavelet(transformedErrors, parameters.getWaveletLevels(),
+						parameters.getQuantificationWeights(), parameters.getQuantificationScale(), frameType);
+				
+			case DCT :
+			default :
+				return inverseTransformErrorsInPlace(copyToWorkMatrix(transformedErrors, pool), parameters.getDctBlockSize(),
+						parameters.getQuantificationWeights(), parameters.getQuantificationScale(), frameType, codedBlockPattern,
+						parameters.getCoefficientPrediction(), parameters.getSliceHeight(transformedErrors.length), pool);
+		}
+	}
+	
 	/**
 	 * Obtenir la prédiction DPCM de la matrice de coefficients de la DCT par
 	 * bloc quantifiée des erreurs de prédiction spécifiées.
@@ -207,60 +679,116 @@ public class VideoEncoder
 	 * @param dctBlockSize
 	 *            taille des blocs DCT.
 	 * @param quantifWeights
-	 *            matrice des poids de quantification pour un bloc de la dct.
+	 *            matrice des poids de quantification, rééchantillonnée à la
+	 *            taille des blocs de la dct si besoin.
 	 * @param quantifScale
 	 *            échelle de quantification.
 	 * @param frameType
 	 *            type de la trame que l'on va envoyer.
+	 * @param zeroBlockThreshold
+	 *            facteur appliqué au seuil de détection des blocs nuls avant
+	 *            la DCT (trames prédites seulement). 1 : seuil garantissant
+	 *            que les blocs ignorés auraient été quantifiés à zéro, plus
+	 *            grand : détection plus agressive, 0 : pas de détection.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés (taille h/dctBlockSize x
+	 *            w/dctBlockSize, initialement nul), rempli lors de la
+	 *            quantification avec le contenu de chaque bloc (voir
+	 *            {@link DCT#BLOCK_DC} et {@link DCT#BLOCK_AC}).
+	 * @param coefficientPrediction
+	 *            coefficients prédits par la DPCM : tous, ou seulement le plan
+	 *            des coefficients DC.
+	 * @param sliceHeight
+	 *            hauteur des tranches au début desquelles la DPCM repart de
+	 *            zéro, la hauteur de la carte s'il n'y en a qu'une.
 	 * @return prédiction DPCM de la matrice de coefficients de la DCT par bloc
 	 *         quantifiée des erreurs de prédiction spécifiées.
 	 */
-	/*package*/ static double[][] transformErrors(final int[][] errors, final int dctBlockSize,
-			final int[][] quantifWeights, final double quantifScale, final FrameType frameType)
+	/*package*/ static double[][] transformErrors(final ShortPlane errors, final int dctBlockSize,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final double zeroBlockThreshold, final byte[][] codedBlockPattern,
+			final CoefficientPrediction coefficientPrediction, final int sliceHeight)
 	{
-		final int h = errors.length,
-				  w = errors[0].length;
+		final int h = errors.getHeight(),
+				  w = errors.getWidth();
 		
-		double[][] transformedErrors = DCT.blockTransform(Matrices.toDouble(errors), dctBlockSize, dctBlockSize);
+		final Quantizer quantizer = Quantizer.get(quantifWeights, quantifScale, frameType, dctBlockSize);
 		
-		// Quantification coefficients.
-
-		// On sépare la boucle trame intra / prédite pour accélérer et ne pas
-		// faire la vérification à chaque itération.
+		// Blocs dont on sait qu'ils seront quantifiés à zéro : ni DCT ni
+		// quantification.
+		final byte[][] blockContent = frameType == FrameType.P ?
+				detectZeroBlocks(errors, dctBlockSize, zeroBlockThreshold * quantizer.getZeroBlockSadBound())
+			:
+				null;
+		
+		final double[][] transformedErrors = DCT.parallelBlockTransform(errors.toDouble(), dctBlockSize, dctBlockSize, blockContent);
 		
-		switch (frameType)
+		// Quantification coefficients, bloc par bloc.
+		for (int by = 0; by < h; by += dctBlockSize)
 		{
-			// # Trame intra
-			case I :
-				for (int y = 0; y < h; y++)
+			for (int bx = 0; bx < w; bx += dctBlockSize)
+			{
+				// Bloc détecté nul : ses coefficients le sont déjà.
+				if (blockContent != null && blockContent[by/dctBlockSize][bx/dctBlockSize] == DCT.BLOCK_ZERO)
 				{
-					for (int x = 0; x < w; x++)
-					{
-						transformedErrors[y][x] = Math.round(((transformedErrors[y][x]*16.0)/quantifWeights[y%dctBlockSize][x%dctBlockSize]) / 
-												(2.0*quantifScale));
-						//transformedErrors[y][x] = Math.round(transformedErrors[y][x] / 1.5)*1.5;
-					}
+					continue;
 				}
-				break;
 				
-			// # Trame prédite
-			case P :
-				for (int y = 0; y < h; ++y)
+				codedBlockPattern[by/dctBlockSize][bx/dctBlockSize] = quantizer.quantizeBlock(transformedErrors, bx, by);
+			}
+		}
+		
+		// Prédiction DPCM sur ces coefficients, en place, tranche par tranche.
+		final int stride = dpcmStride(coefficientPrediction, dctBlockSize);
+		forEachSlice(transformedErrors, sliceHeight, slice -> DPCM.parallelEncodeInPlace(slice, 1, stride));
+		
+		return transformedErrors;
+	}
+	
+	/**
+	 * Détecter les blocs de la carte d'erreurs dont la somme des valeurs
+	 * absolues est inférieure au seuil spécifié.
+	 * 
+	 * @param errors
+	 *            carte des erreurs de prédiction.
+	 * @param dctBlockSize
+	 *            taille des blocs DCT.
+	 * @param sadThreshold
+	 *            seuil sur la somme des valeurs absolues d'un bloc.
+	 * @return contenu de chaque bloc : {@link DCT#BLOCK_ZERO} pour les blocs
+	 *         sous le seuil, {@link DCT#BLOCK_DC} | {@link DCT#BLOCK_AC} sinon.
+	 */
+	private static byte[][] detectZeroBlocks(final ShortPlane errors, final int dctBlockSize, final double sadThreshold)
+	{
+		final int nBlockH = errors.getHeight() / dctBlockSize,
+				  nBlockW = errors.getWidth()  / dctBlockSize;
+		
+		final short[] data = errors.getData();
+		
+		final byte[][] blockContent = new byte[nBlockH][nBlockW];
+		
+		for (int by = 0; by < nBlockH; ++by)
+		{
+			for (int bx = 0; bx < nBlockW; ++bx)
+			{
+				int sad = 0;
+				
+				// On s'arrête dès que le seuil est atteint.
+				for (int y = by*dctBlockSize; y < (by+1)*dctBlockSize && sad < sadThreshold; ++y)
 				{
-					for (int x = 0; x < w; ++x)
+					final int offset = errors.index(0, y);
+					
+					for (int x = bx*dctBlockSize; x < (bx+1)*dctBlockSize; ++x)
 					{
-						transformedErrors[y][x] = Math.round((transformedErrors[y][x]*16.0 / quantifWeights[y%dctBlockSize][x%dctBlockSize] - 
-													Math.signum(transformedErrors[y][x])*quantifScale) / 
-												(2*quantifScale));
+						sad += Math.abs(data[offset + x]);
 					}
 				}
-				break;
+				
+				blockContent[by][bx] = sad < sadThreshold ? DCT.BLOCK_ZERO : DCT.BLOCK_DC | DCT.BLOCK_AC;
+			}
 		}
 		
-		// Prédiction DPCM sur ces coefficients.
-		transformedErrors = DPCM.encode(transformedErrors, 1);
-		
-		return transformedErrors;
+		return blockContent;
 	}
 	
 	/**
@@ -272,150 +800,391 @@ public class VideoEncoder
 	 *            erreurs de prédiction.
 	 * @param dctBlockSize
 	 *            taille des blocs DCT.
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de la trame.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés : la DCT inverse n'est pas calculée
+	 *            pour les blocs nuls, et est remplacée par une constante pour
+	 *            les blocs DC seuls. Si null, tous les blocs sont transformés.
+	 * @param coefficientPrediction
+	 *            coefficients prédits par la DPCM à l'encodage.
+	 * @param sliceHeight
+	 *            hauteur des tranches au début desquelles la DPCM repart de
+	 *            zéro (voir {@link EncoderParams#getSliceHeight(int)}), la
+	 *            hauteur de la carte s'il n'y en a qu'une.
 	 * @return carte des erreurs de prédiction à partir de la matrice de
 	 *         coefficient DCT par bloc.
 	 */
-	public static int[][] inverseTransformErrors(final double[][] transformedErrors, final int dctBlockSize,
-			final int[][] quantifWeights, final double quantifScale, final FrameType frameType)
+	public static ShortPlane inverseTransformErrors(final double[][] transformedErrors, final int dctBlockSize,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final byte[][] codedBlockPattern, final CoefficientPrediction coefficientPrediction, final int sliceHeight)
+	{
+		return inverseTransformErrors(transformedErrors, dctBlockSize, quantifWeights, quantifScale, frameType,
+				codedBlockPattern, coefficientPrediction, sliceHeight, null);
+	}
+	
+	/**
+	 * Obtenir la carte des erreurs de prédiction <b>quantifiée</b> à partir de
+	 * la prédiction DPCM de la matrice de coefficient DCT par bloc. Le décodage
+	 * DPCM, la quantification inverse et la DCT inverse se font en place dans
+	 * une seule matrice de travail, prise dans le pool s'il est spécifié.
+	 * 
+	 * @param transformedErrors
+	 *            prédiction DPCM matrice des coefficents de la DCT par bloc des
+	 *            erreurs de prédiction (non modifiée).
+	 * @param dctBlockSize
+	 *            taille des blocs DCT.
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de la trame.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés, ou null.
+	 * @param coefficientPrediction
+	 *            coefficients prédits par la DPCM à l'encodage.
+	 * @param sliceHeight
+	 *            hauteur des tranches au début desquelles la DPCM repart de
+	 *            zéro (voir {@link EncoderParams#getSliceHeight(int)}), la
+	 *            hauteur de la carte s'il n'y en a qu'une.
+	 * @param pool
+	 *            pool de la session, ou null pour allouer les matrices.
+	 * @return carte des erreurs de prédiction, à rendre avec
+	 *         {@link ShortPlane#release()} si elle vient du pool.
+	 */
+	public static ShortPlane inverseTransformErrors(final double[][] transformedErrors, final int dctBlockSize,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final byte[][] codedBlockPattern, final CoefficientPrediction coefficientPrediction, final int sliceHeight,
+			final PlanePool pool)
+	{
+		// On effectue le décodage DPCM, sur une copie des coefficients.
+		return inverseTransformErrorsInPlace(copyToWorkMatrix(transformedErrors, pool), dctBlockSize, quantifWeights,
+				quantifScale, frameType, codedBlockPattern, coefficientPrediction, sliceHeight, pool);
+	}
+	
+	/**
+	 * Copier une matrice de coefficients dans une matrice de travail.
+	 * 
+	 * @param transformedErrors
+	 *            matrice à copier.
+	 * @param pool
+	 *            pool fournissant la matrice de travail, ou null pour
+	 *            l'allouer.
+	 * @return copie de la matrice.
+	 */
+	private static double[][] copyToWorkMatrix(final double[][] transformedErrors, final PlanePool pool)
 	{
 		final int h = transformedErrors.length,
 				  w = transformedErrors[0].length;
 		
-		// On effectue le décodage DPCM.
-		final double[][] dctErrors = DPCM.decode(transformedErrors);
+		final double[][] dctErrors = pool != null ? pool.allocateMatrix(w, h) : new double[h][w];
+		for (int y = 0; y < h; ++y)
+		{
+			System.arraycopy(transformedErrors[y], 0, dctErrors[y], 0, w);
+		}
 		
-		// Quantification inverse.
-		switch (frameType)
+		return dctErrors;
+	}
+	
+	/**
+	 * Obtenir la carte des erreurs de prédiction <b>quantifiée</b> d'une trame
+	 * encodée, en décompactant ses coefficients directement dans la matrice de
+	 * travail.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param pool
+	 *            pool de la session, ou null pour allouer les matrices.
+	 * @return carte des erreurs de prédiction, à rendre avec
+	 *         {@link ShortPlane#release()} si elle vient du pool.
+	 */
+	public static ShortPlane inverseTransformErrors(final EncodedFrame frame, final EncoderParams parameters,
+			final PlanePool pool)
+	{
+		switch (parameters.getTransformType())
 		{
-			case I :
-				for (int y = 0; y < h; ++y)
-				{
-					for (int x = 0; x < w; ++x)
-					{
-						dctErrors[y][x] = (dctErrors[y][x] * 2*quantifScale) * quantifWeights[y%dctBlockSize][x%dctBlockSize] / 16;
-					}
-				}
-				break;
+			case DWT :
+				return inverseTransformErrorsWavelet(frame.getTransformedErrors(), parameters.getWaveletLevels(),
+						parameters.getQuantificationWeights(), parameters.getQuantificationScale(), frame.getType());
+				
+			case DCT :
+			default :
+				final double[][] dctErrors = pool != null ?
+						pool.allocateMatrix(frame.getWidth(), frame.getHeight())
+					:
+						new double[frame.getHeight()][frame.getWidth()];
+				frame.copyTransformedErrors(dctErrors);
 				
-			case P :
-				for (int y = 0; y < h; ++y)
+				return inverseTransformErrorsInPlace(dctErrors, parameters.getDctBlockSize(),
+						parameters.getQuantificationWeights(), parameters.getQuantificationScale(), frame.getType(),
+						frame.getCodedBlockPattern(), parameters.getCoefficientPrediction(),
+						parameters.getSliceHeight(frame.getHeight()), pool);
+		}
+	}
+	
+	/**
+	 * Décodage DPCM, quantification inverse et DCT inverse en place dans la
+	 * matrice de travail spécifiée, rendue au pool s'il est spécifié.
+	 * 
+	 * @param dctErrors
+	 *            prédiction DPCM des coefficients de la DCT par bloc (écrasée).
+	 * @param dctBlockSize
+	 *            taille des blocs DCT.
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de la trame.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés, ou null.
+	 * @param coefficientPrediction
+	 *            coefficients prédits par la DPCM à l'encodage.
+	 * @param sliceHeight
+	 *            hauteur des tranches de la DPCM.
+	 * @param pool
+	 *            pool de la session, ou null.
+	 * @return carte des erreurs de prédiction.
+	 */
+	private static ShortPlane inverseTransformErrorsInPlace(final double[][] dctErrors, final int dctBlockSize,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType,
+			final byte[][] codedBlockPattern, final CoefficientPrediction coefficientPrediction, final int sliceHeight,
+			final PlanePool pool)
+	{
+		final int h = dctErrors.length,
+				  w = dctErrors[0].length;
+		
+		final int stride = dpcmStride(coefficientPrediction, dctBlockSize);
+		forEachSlice(dctErrors, sliceHeight, slice -> DPCM.parallelDecodeInPlace(slice, stride));
+		
+		// Quantification inverse, bloc par bloc.
+		final Quantizer quantizer = Quantizer.get(quantifWeights, quantifScale, frameType, dctBlockSize);
+		
+		for (int by = 0; by < h; by += dctBlockSize)
+		{
+			for (int bx = 0; bx < w; bx += dctBlockSize)
+			{
+				// Bloc nul : rien à faire.
+				if (codedBlockPattern != null && codedBlockPattern[by/dctBlockSize][bx/dctBlockSize] == DCT.BLOCK_ZERO)
 				{
-					for (int x = 0; x < w; ++x)
-					{
-						dctErrors[y][x] = (dctErrors[y][x] * 2*quantifScale - Math.signum(transformedErrors[y][x])*quantifScale) * quantifWeights[y%dctBlockSize][x%dctBlockSize] / 16;
-					}
+					continue;
 				}
-				break;
+				
+				quantizer.dequantizeBlock(dctErrors, bx, by);
+			}
 		}
 		
-		final double[][] predErrorDouble = DCT.inverseBlockTransform(dctErrors, dctBlockSize, dctBlockSize);
-		final int[][] predError = new int[h][w];
+		DCT.parallelInverseBlockTransformInPlace(dctErrors, dctBlockSize, dctBlockSize, codedBlockPattern);
+		final double[][] predErrorDouble = dctErrors;
+		final ShortPlane predError = pool != null ? pool.allocateShort(w, h) : new ShortPlane(w, h);
+		final short[] predErrorData = predError.getData();
 		
 		for (int y = 0; y < h; ++y)
 		{
+			final int offset = predError.index(0, y);
+			
 			for (int x = 0; x < w; ++x)
 			{
 				//predError[y][x] = (int) Math.round(predErrorDouble[y][x]);
-				predError[y][x] = (int) Math.max(-255, Math.min(Math.round(predErrorDouble[y][x]), 255));
+				predErrorData[offset + x] = (short) Math.max(-255, Math.min(Math.round(predErrorDouble[y][x]), 255));
 			}
 		}
 		
+		if (pool != null)
+		{
+			pool.releaseMatrix(dctErrors);
+		}
+		
 		return predError;
 	}
 	
 	/**
-	 * Prédire une trame à partir de la précédente, avec compensation de
-	 * mouvement.
+	 * Obtenir le pas d'échantillonnage des coefficients de la DCT en blocs
+	 * prédits par la DPCM.
 	 * 
-	 * @param prevFrameRec
-	 *            trame précédente reconstruite.
-	 * @param frame
-	 *            trame à prédire.
-	 * @param blockMovementMap
-	 *            carte de déplacement des blocs.
-	 * @param blockW
-	 *            largeur des blocs.
-	 * @param blockH
-	 *            hauteur des blocs.
-	 * @return matrice des erreurs.
+	 * @param coefficientPrediction
+	 *            coefficients prédits par la DPCM.
+	 * @param dctBlockSize
+	 *            taille des blocs DCT.
+	 * @return taille des blocs pour le plan des coefficients DC, 1 pour tous
+	 *         les coefficients.
 	 */
-	/*package*/ static int[][] computeErrors(final int[][] prevFrameRec, final int[][] frame, final Vector2D[][] blockMovementMap,
-			final int blockW, final int blockH)
+	/*package*/ static int dpcmStride(final CoefficientPrediction coefficientPrediction, final int dctBlockSize)
+	{
+		return coefficientPrediction == CoefficientPrediction.DC ? dctBlockSize : 1;
+	}
+	
+	/**
+	 * Obtenir les coefficients quantifiés de la transformée en ondelettes 5/3
+	 * des erreurs de prédiction spécifiées. La sous-bande basse fréquence est
+	 * ensuite codée par prédiction DPCM.
+	 * 
+	 * @param errors
+	 *            carte des erreurs de prédiction.
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de la trame que l'on va envoyer.
+	 * @return coefficients quantifiés organisés en sous-bandes.
+	 */
+	/*package*/ static double[][] transformErrorsWavelet(final ShortPlane errors, final int levels,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType)
+	{
+		final int h = errors.getHeight(),
+				  w = errors.getWidth();
+		
+		// La transformée se fait en place, sur une copie des erreurs.
+		final int[][] coefficients = errors.toInt();
+		
+		DWT.transform2D(coefficients, levels);
+		
+		final SubbandQuantizer quantizer = SubbandQuantizer.get(quantifWeights, quantifScale, frameType, levels);
+		final double[][] transformedErrors = new double[h][w];
+		quantizer.quantize(coefficients, transformedErrors);
+		
+		// Prédiction DPCM sur la sous-bande basse fréquence seulement.
+		final int lowW = quantizer.lowSubbandSize(w),
+				  lowH = quantizer.lowSubbandSize(h);
+		final double[][] lowSubband = new double[lowH][lowW];
+		
+		Matrices.blockCopy(transformedErrors, 0, 0, lowSubband, 0, 0, lowW, lowH);
+		Matrices.blockCopy(DPCM.parallelEncode(lowSubband, 1), 0, 0, transformedErrors, 0, 0, lowW, lowH);
+		
+		return transformedErrors;
+	}
+	
+	/**
+	 * Obtenir la carte des erreurs de prédiction <b>quantifiée</b> à partir
+	 * des coefficients quantifiés de la transformée en ondelettes 5/3.
+	 * 
+	 * @param transformedErrors
+	 *            coefficients quantifiés organisés en sous-bandes.
+	 * @param levels
+	 *            nombre de niveaux de décomposition.
+	 * @param quantifWeights
+	 *            matrice des poids de quantification.
+	 * @param quantifScale
+	 *            échelle de quantification.
+	 * @param frameType
+	 *            type de la trame.
+	 * @return carte des erreurs de prédiction.
+	 */
+	public static ShortPlane inverseTransformErrorsWavelet(final double[][] transformedErrors, final int levels,
+			final int[][] quantifWeights, final double quantifScale, final FrameType frameType)
 	{
-		final int h = frame.length,
-				  w = frame[0].length;
+		final int h = transformedErrors.length,
+				  w = transformedErrors[0].length;
+		
+		final SubbandQuantizer quantizer = SubbandQuantizer.get(quantifWeights, quantifScale, frameType, levels);
+		
+		// Décodage DPCM de la sous-bande basse fréquence.
+		final int lowW = quantizer.lowSubbandSize(w),
+				  lowH = quantizer.lowSubbandSize(h);
+		final double[][] lowSubband = new double[lowH][lowW];
+		final double[][] levelsMatrix = new double[h][];
+		
+		for (int y = 0; y < h; ++y)
+		{
+			levelsMatrix[y] = transformedErrors[y].clone();
+		}
+		
+		Matrices.blockCopy(transformedErrors, 0, 0, lowSubband, 0, 0, lowW, lowH);
+		Matrices.blockCopy(DPCM.parallelDecode(lowSubband), 0, 0, levelsMatrix, 0, 0, lowW, lowH);
+		
+		final int[][] predError = new int[h][w];
+		quantizer.dequantize(levelsMatrix, predError);
 		
-		final int[][] frameErrors = new int[h][w];
+		DWT.inverseTransform2D(predError, levels);
+		
+		final ShortPlane predErrorPlane = new ShortPlane(w, h);
 		for (int y = 0; y < h; ++y)
 		{
 			for (int x = 0; x < w; ++x)
 			{
-				// Vecteur de déplacement du bloc contenant le pixel (x, y).
-				final Vector2D blockMovement = blockMovementMap[y/blockH][x/blockW];
-				frameErrors[y][x] = frame[y][x] - prevFrameRec[y - blockMovement.y()][x - blockMovement.x()];
-				
-//				frameErrors[y][x] = Math.max(-255, Math.min(frame[y][x] - prevFrameRec[y - blockMovement.y()][x - blockMovement.x()], 255));
+				predErrorPlane.set(x, y, Math.max(-255, Math.min(predError[y][x], 255)));
 			}
 		}
-		return frameErrors;
+		
+		return predErrorPlane;
 	}
 	
 	/**
-	 * Reconstruire une trame P à partir des erreurs de prédictions et de la trame
-	 * précédente, avec compensation de mouvement.
+	 * Reconstruire une trame I à partir des erreurs de prédictions.
 	 * 
-	 * @param prevFrameRec
-	 *            trame précédente reconstruite.
 	 * @param predError
 	 *            erreurs de prédiction.
-	 * @param blockMovementMap
-	 *            carte de déplacement des blocs.
-	 * @param blockW
-	 *            largeur des blocs.
-	 * @param blockH
-	 *            hauteur des blocs.
-	 * @return trame reconstruite.
+	 * @param frameRec
+	 *            plan de la taille de la trame recevant la trame
+	 *            reconstruite.
+	 * @return trame reconstruite (frameRec).
 	 */
-	/*package*/ static int[][] reconstructP(final int[][] prevFrameRec, final int[][] predError,
-			final Vector2D[][] blockMovementMap, final int blockW, final int blockH)
+	/*package*/ static BytePlane reconstructI(final ShortPlane predError, final BytePlane frameRec)
 	{
-		final int h = prevFrameRec.length,
-				  w = prevFrameRec[0].length;
+		final int h = predError.getHeight(),
+				  w = predError.getWidth();
 		
-		final int[][] frameRec = new int[h][w];
 		for (int y = 0; y < h; ++y)
 		{
 			for (int x = 0; x < w; ++x)
 			{
-				// Vecteur de déplacement du bloc contenant le pixel (x, y).
-				final Vector2D blockMovement = blockMovementMap[y/blockH][x/blockW];
-				
-				frameRec[y][x] = Math.max(0, Math.min(prevFrameRec[y - blockMovement.y()][x - blockMovement.x()] + predError[y][x], 255));
+				frameRec.set(x, y, MotionCompensation.saturate(predError.get(x, y)));
 			}
 		}
 		return frameRec;
 	}
 	
 	/**
-	 * Reconstruire une trame I à partir des erreurs de prédictions.
-	 * 
-	 * @param predError
-	 *            erreurs de prédiction.
-	 * @return trame reconstruite.
+	 * Tableaux de travail d'un worker pour l'estimation de mouvement sur des
+	 * plans hors du tas, agrandis au besoin.
 	 */
-	/*package*/ static int[][] reconstructI(final int[][] predError)
+	private static class SearchScratch
 	{
-		final int h = predError.length,
-				  w = predError[0].length;
+		/**
+		 * Copie du bloc.
+		 */
+		private byte[] block = new byte[0];
+		/**
+		 * Copie de la fenêtre de recherche.
+		 */
+		private byte[] window = new byte[0];
 		
-		final int[][] frameRec = new int[h][w];
-		for (int y = 0; y < h; ++y)
+		/**
+		 * @param size
+		 *            nombre d'échantillons du bloc.
+		 * @return tableau d'au moins size échantillons pour le bloc.
+		 */
+		public byte[] block(final int size)
 		{
-			for (int x = 0; x < w; ++x)
+			if (block.length < size)
 			{
-				frameRec[y][x] = Math.max(0, Math.min(predError[y][x], 255));
+				block = new byte[size];
 			}
+			return block;
+		}
+		
+		/**
+		 * @param size
+		 *            nombre d'échantillons de la fenêtre de recherche.
+		 * @return tableau d'au moins size échantillons pour la fenêtre.
+		 */
+		public byte[] window(final int size)
+		{
+			if (window.length < size)
+			{
+				window = new byte[size];
+			}
+			return window;
 		}
-		return frameRec;
 	}
 }
@@ -1,29 +1,40 @@
 package img.videoEncoder;
 
 import static img.videoEncoder.VideoEncoder.computeBlockMovementMap;
-import static img.videoEncoder.VideoEncoder.computeErrors;
 import static img.videoEncoder.VideoEncoder.inverseTransformBlockMovementMap;
 import static img.videoEncoder.VideoEncoder.inverseTransformErrors;
 import static img.videoEncoder.VideoEncoder.reconstructI;
-import static img.videoEncoder.VideoEncoder.reconstructP;
 import static img.videoEncoder.VideoEncoder.transformBlockMovementMap;
 import static img.videoEncoder.VideoEncoder.transformErrors;
 
 import java.util.Arrays;
 import java.util.function.Function;
 
+import img.BytePlane;
 import img.Images;
+import img.OffHeapPlaneAllocator;
+import img.PlaneAllocator;
+import img.PlanePool;
+import img.ShortPlane;
 import img.math.Matrices;
-import img.math.Vector2D;
+import img.math.MotionField;
 import img.videoEncoder.io.EncodedFrame;
 import img.videoEncoder.io.EncodedFrame.FrameType;
 import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.EncoderParams.PlaneStorage;
+import img.videoEncoder.io.EncoderParams.TransformType;
 import test.plot.Plot;
 
 /**
- * Pipeline d'encodage vidéo.
+ * Pipeline d'encodage vidéo.<br>
+ * Les trames de référence (trame précédente et trame précédente reconstruite)
+ * et les plans de travail sont obtenus d'un pool propre au pipeline, adossé à
+ * l'allocateur correspondant au stockage choisi dans les paramètres. Ils lui
+ * sont rendus dès qu'ils sont remplacés : en régime établi, aucun plan n'est
+ * alloué par trame. {@link #close()} rend les dernières références et libère
+ * le pool et l'allocateur.
  */
-public class VideoEncodingPipeline implements Function<int[][], EncodedFrame>
+public class VideoEncodingPipeline implements Function<BytePlane, EncodedFrame>, AutoCloseable
 {
 	/**
 	 * Paramètres d'encodage.
@@ -32,15 +43,32 @@ public class VideoEncodingPipeline implements Function<int[][], EncodedFrame>
 	/**
 	 * Trame précédente reconstruite.
 	 */
-	private int[][] prevFrameRec;
+	private BytePlane prevFrameRec;
 	/**
 	 * Trame précédente.
 	 */
-	private int[][] prevFrame;
+	private BytePlane prevFrame;
+	/**
+	 * Allocateur des trames de référence.
+	 */
+	private final PlaneAllocator allocator;
+	/**
+	 * Pool des trames de référence et des plans de travail.
+	 */
+	private final PlanePool pool;
+	/**
+	 * Nombre de trames encodées.
+	 */
+	private long frameCount;
 	
 	public VideoEncodingPipeline(final EncoderParams parameters)
 	{
 		this.parameters = parameters;
+		this.allocator  = parameters.getPlaneStorage() == PlaneStorage.OFF_HEAP ?
+				new OffHeapPlaneAllocator()
+			:
+				PlaneAllocator.HEAP;
+		this.pool       = new PlanePool(allocator);
 	}
 	
 	/**
@@ -51,63 +79,174 @@ public class VideoEncodingPipeline implements Function<int[][], EncodedFrame>
 	 * @return trame encodée.
 	 */
 	@Override
-	public EncodedFrame apply(final int[][] frame)
+	public EncodedFrame apply(final BytePlane frame)
+	{
+		return encode(frame, null);
+	}
+	
+	/**
+	 * Encode une trame dont le mouvement a éventuellement déjà été estimé
+	 * (voir {@link StagedEncoder}).
+	 * 
+	 * @param frame
+	 *            trame actuelle initiale (non reconstruite).
+	 * @param blockMovementMap
+	 *            carte de déplacement des blocs entre la trame précédente
+	 *            initiale et la trame actuelle, ou null pour l'estimer. Elle
+	 *            est ignorée pour une trame intra.
+	 * @return trame encodée.
+	 */
+	public EncodedFrame encode(final BytePlane frame, final MotionField blockMovementMap)
 	{
+		// Début d'un groupe de trames : on repart d'une trame intra.
+		if (parameters.getGopLength() > 0 && frameCount % parameters.getGopLength() == 0)
+		{
+			releaseReferences();
+		}
+		++frameCount;
+		
+		/**
+		 * Trame actuelle reconstruite.
+		 */
+		final BytePlane frameRec = pool.allocate(frame.getWidth(), frame.getHeight());
+		
+		// Encodage fusionné par macroblocs lorsque les paramètres le permettent.
+		if (MacroblockEncoder.supports(parameters, frame.getWidth(), frame.getHeight()))
+		{
+			final EncodedFrame encodedFrame = MacroblockEncoder.encode(frame, prevFrame, prevFrameRec, frameRec,
+					parameters, blockMovementMap, null, null, pool);
+			
+			updateReferences(frame, frameRec);
+			return encodedFrame;
+		}
+		
 		/**
 		 * Matrice des erreurs de prédiction.
 		 */
-		final int[][] errors;
+		final ShortPlane errors;
 		/**
 		 * Matrice des erreurs transformée.
 		 */
 		final double[][] transformedErrors;
 		/**
-		 * Trame actuelle reconstruite.
+		 * Erreurs de prédiction quantifiées, obtenues du pool.
 		 */
-		final int[][] frameRec;
+		final ShortPlane predError;
+		/**
+		 * Motif des blocs codés.
+		 */
+		final byte[][] codedBlockPattern = parameters.getTransformType() == TransformType.DCT ?
+				new byte[frame.getHeight()/parameters.getDctBlockSize()][frame.getWidth()/parameters.getDctBlockSize()]
+			:
+				null;
 		
 		// Si l'on est sur la première trame.
 		if (prevFrameRec == null)
 		{
 			// La matrice d'erreurs de prédiction est l'image même.
-			errors = frame;
+			errors = ShortPlane.fromBytes(frame);
 			
 			// On calcul les coefficients DCT de ces erreurs (l'image) et on applique la quantification.
-			transformedErrors = transformErrors(errors, parameters.getDctBlockSize(),
-					parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.I);
+			transformedErrors = transformErrors(errors, parameters, FrameType.I, codedBlockPattern);
 			
 			// On reconstruit la trame.
-			frameRec = reconstructI(inverseTransformErrors(transformedErrors, parameters.getDctBlockSize(), parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.I));
+			predError = inverseTransformErrors(transformedErrors, parameters, FrameType.I, codedBlockPattern, pool);
+			reconstructI(predError, frameRec);
+			predError.release();
 			
-			prevFrameRec = frameRec;
-			prevFrame    = frame;
+			updateReferences(frame, frameRec);
 			
 			// L'envoyer sans prédiction.
-			return EncodedFrame.intraFrame(transformedErrors);
+			return EncodedFrame.intraFrame(transformedErrors, codedBlockPattern);
 		}
 		
-		final Vector2D[][] transformedBlockMovementMap;
+		final MotionField transformedBlockMovementMap;
 		
-		// On calcul la carte de compensation de mouvement des blocs.
-		final Vector2D[][] blockMovementMap = computeBlockMovementMap(prevFrame, frame, parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
+		// On calcul la carte de compensation de mouvement des blocs, si elle n'est pas donnée.
+		final MotionField movementMap = blockMovementMap != null ?
+				blockMovementMap
+			:
+				computeBlockMovementMap(prevFrame, frame, parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
 		// On calcul les erreurs de prédiction entre la trame actuelle initiale et la trame précédente reconstruite.
-		errors = computeErrors(prevFrameRec, frame, blockMovementMap, parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
+		errors = MotionCompensation.computeErrors(prevFrameRec, frame, movementMap, parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
 		
 		// On calcul la carte de compensation de mouvement transformée.
-		transformedBlockMovementMap = transformBlockMovementMap(blockMovementMap);
+		transformedBlockMovementMap = transformBlockMovementMap(movementMap, parameters);
 		
 		// On calcul les coefficients DCT de ces erreurs et on applique la quantification puis prédiction DPCM.
-		transformedErrors = transformErrors(errors, parameters.getDctBlockSize(),
-				parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.P);
+		transformedErrors = transformErrors(errors, parameters, FrameType.P, codedBlockPattern);
 		
 		//Plot.showImg(Images.grayToJavaImg(Matrices.map(inverseTransformErrors(transformedErrors, parameters.getDctBlockSize(), parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.P), -255, 255, 0, 255)));
 		// On calcul la trame actuelle reconstruite.
-		frameRec = reconstructP(prevFrameRec, inverseTransformErrors(transformedErrors, parameters.getDctBlockSize(), parameters.getQuantificationWeights(), parameters.getQuantificationScale(), FrameType.P), 
-											 inverseTransformBlockMovementMap(transformedBlockMovementMap),
-									   parameters.getMovementBlockSize(), parameters.getMovementBlockSize());
+		predError = inverseTransformErrors(transformedErrors, parameters, FrameType.P, codedBlockPattern, pool);
+		MotionCompensation.reconstruct(prevFrameRec, predError, 
+											 inverseTransformBlockMovementMap(transformedBlockMovementMap, parameters),
+									   parameters.getMovementBlockSize(), parameters.getMovementBlockSize(),
+									   codedBlockPattern, parameters.getDctBlockSize(), frameRec);
+		predError.release();
+		
+		updateReferences(frame, frameRec);
+		return EncodedFrame.predictedFrame(transformedErrors, codedBlockPattern, transformedBlockMovementMap);
+	}
+	
+	/**
+	 * Remplacer les trames de référence par celles de la trame qui vient
+	 * d'être encodée, et rendre les anciennes au pool.
+	 * 
+	 * @param frame
+	 *            trame actuelle initiale.
+	 * @param frameRec
+	 *            trame actuelle reconstruite, obtenue du pool.
+	 */
+	private void updateReferences(final BytePlane frame, final BytePlane frameRec)
+	{
+		releaseReferences();
 		
 		prevFrameRec = frameRec;
-		prevFrame    = frame;
-		return EncodedFrame.predictedFrame(transformedErrors, transformedBlockMovementMap);
+		
+		// La trame initiale appartient à l'appelant : sur le tas on la garde
+		// telle quelle (avec une référence si elle vient d'un pool), hors du
+		// tas on en garde une copie.
+		if (allocator == PlaneAllocator.HEAP)
+		{
+			prevFrame = frame;
+			prevFrame.retain();
+		}
+		else
+		{
+			prevFrame = pool.allocate(frame.getWidth(), frame.getHeight());
+			prevFrame.copyFrom(frame);
+		}
+	}
+	
+	/**
+	 * Rendre les trames de référence au pool.
+	 */
+	private void releaseReferences()
+	{
+		if (prevFrameRec != null)
+		{
+			prevFrameRec.release();
+			prevFrame.release();
+			
+			prevFrameRec = null;
+			prevFrame    = null;
+		}
+	}
+	
+	/**
+	 * Rendre les trames de référence et libérer le pool et l'allocateur. Le
+	 * pipeline repart ensuite d'une trame intra.
+	 */
+	@Override
+	public void close()
+	{
+		releaseReferences();
+		pool.close();
+		
+		if (allocator instanceof OffHeapPlaneAllocator)
+		{
+			((OffHeapPlaneAllocator) allocator).close();
+		}
 	}
 }
\ No newline at end of file
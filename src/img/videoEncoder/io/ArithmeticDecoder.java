@@ -0,0 +1,204 @@
+package img.videoEncoder.io;
+
+import static img.videoEncoder.io.ArithmeticEncoder.ADAPTATION_SHIFT;
+import static img.videoEncoder.io.ArithmeticEncoder.PROBABILITY_BITS;
+import static img.videoEncoder.io.ArithmeticEncoder.PROBABILITY_ONE;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Décodeur arithmétique binaire adaptatif, symétrique de
+ * {@link ArithmeticEncoder}. Au-delà de la fin du flux, des octets nuls sont
+ * lus.
+ */
+public class ArithmeticDecoder
+{
+	/**
+	 * Probabilités d'un bit nul de chaque contexte.
+	 */
+	private final short[] contexts;
+	
+	/**
+	 * Octets du flux, lus par position absolue : tableau enveloppé ou
+	 * projection d'un fichier.
+	 */
+	private final ByteBuffer bytes;
+	/**
+	 * Position de l'octet suivant.
+	 */
+	private int position;
+	/**
+	 * Fin des octets du flux.
+	 */
+	private final int end;
+	
+	/**
+	 * Taille de l'intervalle, non signée.
+	 */
+	private int range;
+	/**
+	 * Position du code dans l'intervalle.
+	 */
+	private int code;
+	
+	/**
+	 * Décoder le flux formé par les octets spécifiés.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param contextCount
+	 *            nombre de contextes, comme au codage.
+	 */
+	public ArithmeticDecoder(final byte[] bytes, final int contextCount)
+	{
+		this(bytes, 0, bytes.length, contextCount);
+	}
+	
+	/**
+	 * Décoder le flux formé par une partie des octets spécifiés.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param offset
+	 *            position du premier octet.
+	 * @param length
+	 *            nombre d'octets.
+	 * @param contextCount
+	 *            nombre de contextes, comme au codage.
+	 * @throws IllegalArgumentException
+	 *             si la partie spécifiée sort du tableau.
+	 */
+	public ArithmeticDecoder(final byte[] bytes, final int offset, final int length, final int contextCount)
+			throws IllegalArgumentException
+	{
+		if (offset < 0 || length < 0 || offset + length > bytes.length)
+		{
+			throw new IllegalArgumentException("Partie du flux invalide.");
+		}
+		
+		this.bytes = ByteBuffer.wrap(bytes);
+		this.position = offset;
+		this.end = offset + length;
+		
+		contexts = new short[contextCount];
+		init();
+	}
+	
+	/**
+	 * Décoder le flux formé par les octets restants d'un buffer, sans les
+	 * copier ni modifier la position du buffer.
+	 * 
+	 * @param bytes
+	 *            octets du flux, de la position à la limite du buffer.
+	 * @param contextCount
+	 *            nombre de contextes, comme au codage.
+	 */
+	public ArithmeticDecoder(final ByteBuffer bytes, final int contextCount)
+	{
+		this.bytes = bytes;
+		this.position = bytes.position();
+		this.end = bytes.limit();
+		
+		contexts = new short[contextCount];
+		init();
+	}
+	
+	/**
+	 * Remettre les contextes à zéro et lire le début du code.
+	 */
+	private void init()
+	{
+		resetContexts();
+		
+		range = -1;
+		for (int i = 0; i < 5; ++i)
+		{
+			code = (code << 8) | read();
+		}
+	}
+	
+	/**
+	 * Remettre tous les contextes à la probabilité 1/2.
+	 */
+	public void resetContexts()
+	{
+		Arrays.fill(contexts, (short) (PROBABILITY_ONE / 2));
+	}
+	
+	/**
+	 * Décoder un bit avec le contexte spécifié, puis adapter ce contexte.
+	 * 
+	 * @param context
+	 *            indice du contexte.
+	 * @return bit décodé.
+	 */
+	public boolean decodeBit(final int context)
+	{
+		final int probability = contexts[context],
+				  bound = (range >>> PROBABILITY_BITS) * probability;
+		final boolean bit;
+		
+		// Comparaison non signée du code et de la borne.
+		if ((code ^ 0x80000000) < (bound ^ 0x80000000))
+		{
+			range = bound;
+			contexts[context] = (short) (probability + ((PROBABILITY_ONE - probability) >>> ADAPTATION_SHIFT));
+			bit = false;
+		}
+		else
+		{
+			code -= bound;
+			range -= bound;
+			contexts[context] = (short) (probability - (probability >>> ADAPTATION_SHIFT));
+			bit = true;
+		}
+		
+		if ((range & 0xFF000000) == 0)
+		{
+			range <<= 8;
+			code = (code << 8) | read();
+		}
+		
+		return bit;
+	}
+	
+	/**
+	 * Décoder des bits équiprobables, sans contexte.
+	 * 
+	 * @param n
+	 *            nombre de bits, de 0 à 32.
+	 * @return bits décodés, poids fort en premier.
+	 */
+	public int decodeBypass(final int n)
+	{
+		int value = 0;
+		
+		for (int i = 0; i < n; ++i)
+		{
+			range >>>= 1;
+			
+			// 1 si le code est sous la moitié de l'intervalle, 0 sinon.
+			final int below = (code - range) >>> 31;
+			code -= range & (below - 1);
+			value = (value << 1) | (1 - below);
+			
+			if ((range & 0xFF000000) == 0)
+			{
+				range <<= 8;
+				code = (code << 8) | read();
+			}
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Lire l'octet suivant du flux.
+	 * @return octet suivant, ou 0 après la fin du flux.
+	 */
+	private int read()
+	{
+		return position < end ? bytes.get(position++) & 0xFF : 0;
+	}
+}
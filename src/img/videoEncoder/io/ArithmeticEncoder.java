@@ -0,0 +1,205 @@
+package img.videoEncoder.io;
+
+import java.util.Arrays;
+
+/**
+ * Codeur arithmétique binaire adaptatif. Chaque contexte estime la
+ * probabilité d'un bit nul sur 11 bits et s'adapte après chaque bit codé.
+ * L'intervalle est tenu sur 32 bits et renormalisé octet par octet : les
+ * probabilités restant loin de 0 et de 1, un seul décalage d'octet suffit
+ * après chaque bit. Les retenues sont propagées par un octet en attente.
+ */
+public class ArithmeticEncoder
+{
+	/**
+	 * Précision des probabilités, en bits.
+	 */
+	/*package*/ static final int PROBABILITY_BITS = 11;
+	/**
+	 * Probabilité 1 sur {@link #PROBABILITY_BITS} bits.
+	 */
+	/*package*/ static final int PROBABILITY_ONE = 1 << PROBABILITY_BITS;
+	/**
+	 * Vitesse d'adaptation : décalage appliqué à l'écart de probabilité.
+	 */
+	/*package*/ static final int ADAPTATION_SHIFT = 5;
+	/**
+	 * Seuil de renormalisation de l'intervalle.
+	 */
+	/*package*/ static final int TOP = 1 << 24;
+	
+	/**
+	 * Probabilités d'un bit nul de chaque contexte.
+	 */
+	private final short[] contexts;
+	
+	/**
+	 * Borne basse de l'intervalle, avec un bit de retenue.
+	 */
+	private long low;
+	/**
+	 * Taille de l'intervalle, non signée.
+	 */
+	private int range;
+	/**
+	 * Octet en attente d'une éventuelle retenue.
+	 */
+	private int cache;
+	/**
+	 * Nombre d'octets en attente : l'octet cache suivi d'octets 0xFF.
+	 */
+	private long cacheSize;
+	
+	/**
+	 * Octets écrits.
+	 */
+	private byte[] bytes;
+	/**
+	 * Nombre d'octets écrits.
+	 */
+	private int size;
+	
+	/**
+	 * Créer un codeur avec le nombre de contextes spécifié, tous à la
+	 * probabilité 1/2.
+	 * 
+	 * @param contextCount
+	 *            nombre de contextes.
+	 */
+	public ArithmeticEncoder(final int contextCount)
+	{
+		contexts = new short[contextCount];
+		bytes = new byte[1024];
+		
+		resetContexts();
+		
+		range = -1;
+		cacheSize = 1;
+	}
+	
+	/**
+	 * Remettre tous les contextes à la probabilité 1/2.
+	 */
+	public void resetContexts()
+	{
+		Arrays.fill(contexts, (short) (PROBABILITY_ONE / 2));
+	}
+	
+	/**
+	 * Coder un bit avec le contexte spécifié, puis adapter ce contexte.
+	 * 
+	 * @param context
+	 *            indice du contexte.
+	 * @param bit
+	 *            bit à coder.
+	 */
+	public void encodeBit(final int context, final boolean bit)
+	{
+		final int probability = contexts[context],
+				  bound = (range >>> PROBABILITY_BITS) * probability;
+				
+		if (!bit)
+		{
+			range = bound;
+			contexts[context] = (short) (probability + ((PROBABILITY_ONE - probability) >>> ADAPTATION_SHIFT));
+		}
+		else
+		{
+			low += bound & 0xFFFFFFFFL;
+			range -= bound;
+			contexts[context] = (short) (probability - (probability >>> ADAPTATION_SHIFT));
+		}
+		
+		if ((range & 0xFF000000) == 0)
+		{
+			range <<= 8;
+			shiftLow();
+		}
+	}
+	
+	/**
+	 * Coder des bits équiprobables, sans contexte.
+	 * 
+	 * @param value
+	 *            valeur dont les n bits de poids faible sont codés, poids fort
+	 *            en premier.
+	 * @param n
+	 *            nombre de bits, de 0 à 32.
+	 */
+	public void encodeBypass(final int value, final int n)
+	{
+		for (int i = n-1; i >= 0; --i)
+		{
+			range >>>= 1;
+			low += range & (0 - ((value >>> i) & 1));
+			
+			if ((range & 0xFF000000) == 0)
+			{
+				range <<= 8;
+				shiftLow();
+			}
+		}
+	}
+	
+	/**
+	 * Terminer le flux : vider la borne basse et les octets en attente. Aucun
+	 * bit ne peut plus être codé ensuite.
+	 */
+	public void finish()
+	{
+		for (int i = 0; i < 5; ++i)
+		{
+			shiftLow();
+		}
+	}
+	
+	/**
+	 * Obtenir les octets écrits.
+	 * @return copie des octets écrits.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(bytes, size);
+	}
+	
+	/**
+	 * Sortir l'octet de poids fort de la borne basse, en retenant les octets
+	 * 0xFF tant qu'une retenue peut encore les modifier.
+	 */
+	private void shiftLow()
+	{
+		final int carry = (int) (low >>> 32);
+		
+		if (carry != 0 || low < 0xFF000000L)
+		{
+			int pending = cache;
+			do
+			{
+				write(pending + carry);
+				pending = 0xFF;
+			}
+			while (--cacheSize != 0);
+			
+			cache = (int) (low >>> 24) & 0xFF;
+		}
+		
+		++cacheSize;
+		low = (low & 0x00FFFFFFL) << 8;
+	}
+	
+	/**
+	 * Ecrire un octet.
+	 * 
+	 * @param b
+	 *            octet dans les 8 bits de poids faible.
+	 */
+	private void write(final int b)
+	{
+		if (size == bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, 2*bytes.length);
+		}
+		
+		bytes[size++] = (byte) b;
+	}
+}
@@ -0,0 +1,241 @@
+package img.videoEncoder.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lecture d'un flux binaire écrit par {@link BitWriter}, bit de poids fort en
+ * premier. Les bits sont lus d'avance dans un tampon de 64 bits : au-delà de
+ * la fin du flux, le tampon est complété par des zéros, qu'il est possible
+ * de consulter mais pas de consommer.
+ */
+public class BitReader
+{
+	/**
+	 * Octets du flux, lus par position absolue : tableau enveloppé ou
+	 * projection d'un fichier.
+	 */
+	private final ByteBuffer bytes;
+	/**
+	 * Position de l'octet suivant à charger dans le tampon.
+	 */
+	private int position;
+	/**
+	 * Fin des octets du flux.
+	 */
+	private final int end;
+	
+	/**
+	 * Bits lus d'avance, alignés sur le poids fort.
+	 */
+	private long buffer;
+	/**
+	 * Nombre de bits du flux présents dans le tampon.
+	 */
+	private int count;
+	
+	/**
+	 * Lire le flux binaire formé par les octets spécifiés.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 */
+	public BitReader(final byte[] bytes)
+	{
+		this(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Lire le flux binaire formé par une partie des octets spécifiés.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param offset
+	 *            position du premier octet.
+	 * @param length
+	 *            nombre d'octets.
+	 * @throws IllegalArgumentException
+	 *             si la partie spécifiée sort du tableau.
+	 */
+	public BitReader(final byte[] bytes, final int offset, final int length) throws IllegalArgumentException
+	{
+		if (offset < 0 || length < 0 || offset + length > bytes.length)
+		{
+			throw new IllegalArgumentException("Partie du flux invalide.");
+		}
+		
+		this.bytes = ByteBuffer.wrap(bytes);
+		this.position = offset;
+		this.end = offset + length;
+		
+		refill();
+	}
+	
+	/**
+	 * Lire le flux binaire formé par les octets restants d'un buffer, sans
+	 * les copier ni modifier la position du buffer.
+	 * 
+	 * @param bytes
+	 *            octets du flux, de la position à la limite du buffer.
+	 */
+	public BitReader(final ByteBuffer bytes)
+	{
+		this.bytes = bytes;
+		this.position = bytes.position();
+		this.end = bytes.limit();
+		
+		refill();
+	}
+	
+	/**
+	 * Consulter les n bits suivants sans les consommer.
+	 * 
+	 * @param n
+	 *            nombre de bits, de 1 à 32.
+	 * @return bits suivants, complétés par des zéros après la fin du flux.
+	 */
+	public int peekBits(final int n)
+	{
+		if (count < n)
+		{
+			refill();
+		}
+		
+		return (int) (buffer >>> (64 - n));
+	}
+	
+	/**
+	 * Consommer n bits.
+	 * 
+	 * @param n
+	 *            nombre de bits, de 0 à 32.
+	 * @throws IllegalStateException
+	 *             si la fin du flux est dépassée.
+	 */
+	public void skipBits(final int n) throws IllegalStateException
+	{
+		if (count < n)
+		{
+			refill();
+			
+			if (count < n)
+			{
+				throw new IllegalStateException("Fin du flux binaire atteinte.");
+			}
+		}
+		
+		buffer <<= n;
+		count -= n;
+	}
+	
+	/**
+	 * Lire n bits.
+	 * 
+	 * @param n
+	 *            nombre de bits, de 0 à 32.
+	 * @return bits lus.
+	 * @throws IllegalStateException
+	 *             si la fin du flux est dépassée.
+	 */
+	public int readBits(final int n) throws IllegalStateException
+	{
+		if (n == 0)
+		{
+			return 0;
+		}
+		
+		final int bits = peekBits(n);
+		skipBits(n);
+		return bits;
+	}
+	
+	/**
+	 * Lire un bit.
+	 * 
+	 * @return vrai pour 1, faux pour 0.
+	 * @throws IllegalStateException
+	 *             si la fin du flux est dépassée.
+	 */
+	public boolean readBit() throws IllegalStateException
+	{
+		return readBits(1) != 0;
+	}
+	
+	/**
+	 * Lire un entier positif codé par
+	 * {@link BitWriter#writeUnsignedExpGolomb(int)}. Les codes d'au plus 32
+	 * bits sont décodés en une seule consultation du tampon.
+	 * 
+	 * @return entier positif ou nul.
+	 * @throws IllegalStateException
+	 *             si la fin du flux est dépassée ou le code invalide.
+	 */
+	public int readUnsignedExpGolomb() throws IllegalStateException
+	{
+		final int window = peekBits(32),
+				  zeros  = Integer.numberOfLeadingZeros(window);
+				
+		if (zeros < 16)
+		{
+			final int length = 2*zeros + 1;
+			skipBits(length);
+			return (window >>> (32 - length)) - 1;
+		}
+		
+		// Code long : préfixe et suffixe lus séparément.
+		int prefix = 0;
+		while (!readBit())
+		{
+			if (++prefix > 31)
+			{
+				throw new IllegalStateException("Code de Golomb exponentiel invalide.");
+			}
+		}
+		
+		return ((1 << prefix) | readBits(prefix)) - 1;
+	}
+	
+	/**
+	 * Lire un entier signé codé par
+	 * {@link BitWriter#writeSignedExpGolomb(int)}.
+	 * 
+	 * @return entier signé.
+	 * @throws IllegalStateException
+	 *             si la fin du flux est dépassée ou le code invalide.
+	 */
+	public int readSignedExpGolomb() throws IllegalStateException
+	{
+		final int code = readUnsignedExpGolomb();
+		return (code & 1) != 0 ? (code + 1) >>> 1 : -(code >>> 1);
+	}
+	
+	/**
+	 * Se placer au début de l'octet suivant, si la position courante n'est
+	 * pas déjà alignée.
+	 */
+	public void align()
+	{
+		skipBits(count % 8);
+	}
+	
+	/**
+	 * Obtenir le nombre de bits restant à lire.
+	 * @return nombre de bits restants.
+	 */
+	public long getRemainingBits()
+	{
+		return count + 8L*(end - position);
+	}
+	
+	/**
+	 * Charger des octets dans le tampon, tant qu'il reste de la place pour un
+	 * octet entier.
+	 */
+	private void refill()
+	{
+		while (count <= 56 && position < end)
+		{
+			buffer |= (bytes.get(position++) & 0xFFL) << (56 - count);
+			count += 8;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package img.videoEncoder.io;
+
+import java.util.Arrays;
+
+/**
+ * Ecriture d'un flux binaire, bit de poids fort en premier. Les bits sont
+ * accumulés dans un tampon de 64 bits, vidé par mots de 32 bits dans un
+ * tableau d'octets extensible.
+ */
+public class BitWriter
+{
+	/**
+	 * Octets déjà écrits.
+	 */
+	private byte[] bytes;
+	/**
+	 * Nombre d'octets écrits.
+	 */
+	private int size;
+	
+	/**
+	 * Bits en attente, alignés sur le poids faible.
+	 */
+	private long buffer;
+	/**
+	 * Nombre de bits en attente dans le tampon.
+	 */
+	private int count;
+	
+	public BitWriter()
+	{
+		this(1024);
+	}
+	
+	/**
+	 * Créer un flux binaire vide.
+	 * 
+	 * @param capacity
+	 *            capacité initiale, en octets.
+	 */
+	public BitWriter(final int capacity)
+	{
+		bytes = new byte[Math.max(capacity, 8)];
+	}
+	
+	/**
+	 * Ecrire les n bits de poids faible de la valeur spécifiée.
+	 * 
+	 * @param value
+	 *            valeur à écrire.
+	 * @param n
+	 *            nombre de bits, de 0 à 32.
+	 */
+	public void writeBits(final int value, final int n)
+	{
+		if (count >= 32)
+		{
+			flushWord();
+		}
+		
+		buffer = (buffer << n) | (value & ((1L << n) - 1));
+		count += n;
+	}
+	
+	/**
+	 * Ecrire un bit.
+	 * 
+	 * @param bit
+	 *            vrai pour 1, faux pour 0.
+	 */
+	public void writeBit(final boolean bit)
+	{
+		writeBits(bit ? 1 : 0, 1);
+	}
+	
+	/**
+	 * Ecrire un entier positif avec un code de Golomb exponentiel d'ordre 0 :
+	 * L-1 zéros suivis des L bits de value+1.
+	 * 
+	 * @param value
+	 *            entier positif ou nul.
+	 */
+	public void writeUnsignedExpGolomb(final int value)
+	{
+		final int code   = value + 1,
+				  length = 32 - Integer.numberOfLeadingZeros(code);
+				
+		if (2*length - 1 <= 32)
+		{
+			writeBits(code, 2*length - 1);
+		}
+		else
+		{
+			writeBits(0, length - 1);
+			writeBits(code, length);
+		}
+	}
+	
+	/**
+	 * Ecrire un entier signé avec un code de Golomb exponentiel : les valeurs
+	 * 0, 1, -1, 2, -2... sont codées comme 0, 1, 2, 3, 4...
+	 * 
+	 * @param value
+	 *            entier signé.
+	 */
+	public void writeSignedExpGolomb(final int value)
+	{
+		writeUnsignedExpGolomb(value > 0 ? 2*value - 1 : -2*value);
+	}
+	
+	/**
+	 * Compléter l'octet en cours avec des zéros.
+	 */
+	public void align()
+	{
+		writeBits(0, (8 - count % 8) % 8);
+	}
+	
+	/**
+	 * Obtenir le nombre de bits écrits.
+	 * @return nombre de bits écrits.
+	 */
+	public long getBitCount()
+	{
+		return 8L*size + count;
+	}
+	
+	/**
+	 * Obtenir les octets du flux, le dernier octet étant complété par des
+	 * zéros.
+	 * 
+	 * @return copie des octets écrits.
+	 */
+	public byte[] toByteArray()
+	{
+		final int pending = (count + 7) / 8;
+		final byte[] result = Arrays.copyOf(bytes, size + pending);
+		
+		// Bits en attente, alignés sur le poids fort de leur octet.
+		final long aligned = buffer << (8*pending - count);
+		for (int i = 0; i < pending; ++i)
+		{
+			result[size + i] = (byte) (aligned >>> (8*(pending - 1 - i)));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Vider les 32 bits les plus anciens du tampon.
+	 */
+	private void flushWord()
+	{
+		if (size + 4 > bytes.length)
+		{
+			bytes = Arrays.copyOf(bytes, 2*bytes.length);
+		}
+		
+		final int word = (int) (buffer >>> (count - 32));
+		bytes[size]     = (byte) (word >>> 24);
+		bytes[size + 1] = (byte) (word >>> 16);
+		bytes[size + 2] = (byte) (word >>> 8);
+		bytes[size + 3] = (byte) word;
+		
+		size  += 4;
+		count -= 32;
+	}
+}
@@ -0,0 +1,840 @@
+package img.videoEncoder.io;
+
+import java.nio.ByteBuffer;
+
+import img.math.MotionField;
+import img.math.transforms.DCT;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams.CoefficientPrediction;
+import img.videoEncoder.io.EncoderParams.TransformType;
+
+/**
+ * Codage arithmétique binaire adaptatif au contexte des trames encodées, à la
+ * manière de CABAC. Chaque élément est binarisé puis ses bits sont codés avec
+ * un contexte choisi selon le type de trame, la position et le voisinage déjà
+ * codé :
+ * <ul>
+ * <li>en-tête : type de trame, largeur et hauteur de la matrice des
+ * coefficients en Golomb exponentiel équiprobable ;</li>
+ * <li>DCT en blocs : motif codé selon les motifs des blocs de gauche et du
+ * dessus, DC selon les DC voisins, puis carte de signification des AC en
+ * zig-zag (bit significatif et bit dernier par position) et niveaux en ordre
+ * inverse selon le nombre de niveaux 1 et supérieurs à 1 déjà codés ;</li>
+ * <li>ondelettes : bit significatif de chaque coefficient selon ses voisins
+ * de gauche et du dessus, suivi de son niveau ;</li>
+ * <li>trames prédites : composantes des erreurs de prédiction des vecteurs de
+ * mouvement, selon l'amplitude des erreurs voisines.</li>
+ * </ul>
+ * Les amplitudes sont binarisées en unaire tronqué, suivi au-delà en Golomb
+ * exponentiel équiprobable, et les signes sont équiprobables. Les contextes
+ * repartent de la probabilité 1/2 à chaque trame.
+ */
+public class CABAC
+{
+	/**
+	 * Nombre de bits unaires d'une amplitude avant le suffixe en Golomb
+	 * exponentiel.
+	 */
+	private static final int UNARY_LENGTH = 14;
+	/**
+	 * Nombre de classes de positions en zig-zag pour les cartes de
+	 * signification.
+	 */
+	private static final int POSITION_CLASSES = 16;
+	
+	/**
+	 * Contextes des motifs de blocs codés : par type de trame, pour les bits
+	 * DC et AC, selon le nombre de voisins ayant ce bit.
+	 */
+	private static final int PATTERN = 0;
+	/**
+	 * Contextes du bit de présence de coefficients AC, par type de trame,
+	 * quand le motif ne suffit pas.
+	 */
+	private static final int CODED_AC = PATTERN + 2*2*3;
+	/**
+	 * Contextes des DC, par type de trame : bit non nul selon les DC voisins
+	 * non nuls, puis amplitude.
+	 */
+	private static final int DC = CODED_AC + 2;
+	/**
+	 * Contextes des bits significatifs des AC, par type de trame et classe de
+	 * position.
+	 */
+	private static final int SIGNIFICANT = DC + 2*5;
+	/**
+	 * Contextes des bits dernier des AC, par type de trame et classe de
+	 * position.
+	 */
+	private static final int LAST = SIGNIFICANT + 2*POSITION_CLASSES;
+	/**
+	 * Contextes des niveaux des AC, par type de trame : premier bit selon les
+	 * niveaux déjà codés du bloc, puis bits suivants.
+	 */
+	private static final int LEVEL = LAST + 2*POSITION_CLASSES;
+	/**
+	 * Contextes des bits significatifs des ondelettes, par type de trame et
+	 * nombre de voisins significatifs.
+	 */
+	private static final int ROW_SIGNIFICANT = LEVEL + 2*10;
+	/**
+	 * Contextes des niveaux des ondelettes, par type de trame.
+	 */
+	private static final int ROW_LEVEL = ROW_SIGNIFICANT + 2*3;
+	/**
+	 * Contextes des composantes des vecteurs de mouvement : bit non nul selon
+	 * l'amplitude des voisins, puis amplitude.
+	 */
+	private static final int VECTOR = ROW_LEVEL + 2*2;
+	/**
+	 * Nombre total de contextes.
+	 */
+	private static final int CONTEXT_COUNT = VECTOR + 2*5;
+	
+	/**
+	 * Coder une trame encodée.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return octets du flux.
+	 */
+	public static byte[] encode(final EncodedFrame frame, final EncoderParams parameters)
+	{
+		final ArithmeticEncoder out = new ArithmeticEncoder(CONTEXT_COUNT);
+		write(frame, parameters, out);
+		out.finish();
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Décoder une trame encodée.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final byte[] bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return read(new ArithmeticDecoder(bytes, CONTEXT_COUNT), parameters);
+	}
+	
+	/**
+	 * Décoder une trame encodée, lue sans copie dans un buffer.
+	 * 
+	 * @param bytes
+	 *            octets du flux, de la position à la limite du buffer, qui
+	 *            n'est pas modifié.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final ByteBuffer bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return read(new ArithmeticDecoder(bytes, CONTEXT_COUNT), parameters);
+	}
+	
+	/**
+	 * Ecrire une trame encodée avec un codeur arithmétique, ses contextes
+	 * étant d'abord remis à zéro.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param out
+	 *            codeur arithmétique d'au moins {@link #CONTEXT_COUNT}
+	 *            contextes.
+	 */
+	public static void write(final EncodedFrame frame, final EncoderParams parameters, final ArithmeticEncoder out)
+	{
+		final double[][] coefficients = frame.getTransformedErrors();
+		final int h = coefficients.length,
+				  w = coefficients[0].length,
+				  type = frame.getType().ordinal();
+				
+		out.resetContexts();
+		out.encodeBypass(type, 1);
+		writeBypassExpGolomb(w, out);
+		writeBypassExpGolomb(h, out);
+		
+		if (parameters.getTransformType() == TransformType.DCT)
+		{
+			writeBlocks(coefficients, frame.getCodedBlockPattern(), type, parameters, out);
+		}
+		else
+		{
+			writeWavelet(coefficients, type, out);
+		}
+		
+		if (frame.getType() == FrameType.P)
+		{
+			final MotionField vectors = frame.getTransformedBlockMovementMap();
+			final short[] components = vectors.getData();
+			final int rowLength = 2*vectors.getWidth();
+			
+			for (int i = 0; i < components.length; ++i)
+			{
+				writeSigned(components[i], VECTOR + (i & 1)*5, vectorContext(components, i, rowLength), out);
+			}
+		}
+	}
+	
+	/**
+	 * Lire une trame encodée avec un décodeur arithmétique, ses contextes
+	 * étant d'abord remis à zéro.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique d'au moins {@link #CONTEXT_COUNT}
+	 *            contextes.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame read(final ArithmeticDecoder in, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		in.resetContexts();
+		
+		final FrameType type = FrameType.values()[in.decodeBypass(1)];
+		final int w = readBypassExpGolomb(in),
+				  h = readBypassExpGolomb(in);
+				
+		final double[][] coefficients = new double[h][w];
+		final byte[][] codedBlockPattern;
+		
+		if (parameters.getTransformType() == TransformType.DCT)
+		{
+			final int dctSize = parameters.getDctBlockSize();
+			codedBlockPattern = new byte[h/dctSize][w/dctSize];
+			readBlocks(in, coefficients, codedBlockPattern, type.ordinal(), parameters);
+		}
+		else
+		{
+			codedBlockPattern = null;
+			readWavelet(in, coefficients, type.ordinal());
+		}
+		
+		if (type == FrameType.I)
+		{
+			return EncodedFrame.intraFrame(coefficients, codedBlockPattern);
+		}
+		
+		final int movementSize = parameters.getMovementBlockSize();
+		final MotionField vectors = new MotionField(w/movementSize, h/movementSize);
+		final short[] components = vectors.getData();
+		final int rowLength = 2*vectors.getWidth();
+		
+		for (int i = 0; i < components.length; ++i)
+		{
+			components[i] = (short) readSigned(VECTOR + (i & 1)*5, vectorContext(components, i, rowLength), in);
+		}
+		
+		return EncodedFrame.predictedFrame(coefficients, codedBlockPattern, vectors);
+	}
+	
+	/**
+	 * Ecrire les blocs de coefficients DCT et leurs motifs codés.
+	 * 
+	 * @param coefficients
+	 *            coefficients quantifiés après DPCM.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeBlocks(final double[][] coefficients, final byte[][] codedBlockPattern, final int type,
+			final EncoderParams parameters, final ArithmeticEncoder out)
+	{
+		final int dctSize = parameters.getDctBlockSize();
+		final ZigZagScan scan = ZigZagScan.get(dctSize);
+		final boolean patternCoversAc = parameters.getCoefficientPrediction() == CoefficientPrediction.DC;
+		
+		final int[] positions = new int[scan.length()],
+					levels    = new int[scan.length()];
+					
+		for (int by = 0; by < codedBlockPattern.length; ++by)
+		{
+			for (int bx = 0; bx < codedBlockPattern[0].length; ++bx)
+			{
+				final int y0 = by*dctSize,
+						  x0 = bx*dctSize;
+						
+				final byte pattern = codedBlockPattern[by][bx];
+				out.encodeBit(patternContext(codedBlockPattern, bx, by, type, DCT.BLOCK_DC), (pattern & DCT.BLOCK_DC) != 0);
+				out.encodeBit(patternContext(codedBlockPattern, bx, by, type, DCT.BLOCK_AC), (pattern & DCT.BLOCK_AC) != 0);
+				
+				writeSigned((int) coefficients[y0][x0], DC + type*5, dcContext(coefficients, x0, y0, dctSize), out);
+				
+				// Positions et niveaux des AC non nuls, en zig-zag.
+				int n = 0;
+				for (int k = 1; k < scan.length(); ++k)
+				{
+					final int level = (int) coefficients[y0 + scan.y(k)][x0 + scan.x(k)];
+					if (level != 0)
+					{
+						positions[n] = k;
+						levels[n++] = level;
+					}
+				}
+				
+				if (patternCoversAc)
+				{
+					if ((pattern & DCT.BLOCK_AC) == 0)
+					{
+						continue;
+					}
+				}
+				else
+				{
+					out.encodeBit(CODED_AC + type, n > 0);
+					if (n == 0)
+					{
+						continue;
+					}
+				}
+				
+				writeSignificanceMap(positions, n, scan.length(), type, out);
+				writeLevels(levels, n, type, out);
+			}
+		}
+	}
+	
+	/**
+	 * Lire les blocs de coefficients DCT et leurs motifs codés.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @param coefficients
+	 *            matrice nulle recevant les coefficients.
+	 * @param codedBlockPattern
+	 *            matrice recevant les motifs des blocs.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 */
+	private static void readBlocks(final ArithmeticDecoder in, final double[][] coefficients,
+			final byte[][] codedBlockPattern, final int type, final EncoderParams parameters)
+	{
+		final int dctSize = parameters.getDctBlockSize();
+		final ZigZagScan scan = ZigZagScan.get(dctSize);
+		final boolean patternCoversAc = parameters.getCoefficientPrediction() == CoefficientPrediction.DC;
+		
+		final int[] positions = new int[scan.length()],
+					levels    = new int[scan.length()];
+					
+		for (int by = 0; by < codedBlockPattern.length; ++by)
+		{
+			for (int bx = 0; bx < codedBlockPattern[0].length; ++bx)
+			{
+				final int y0 = by*dctSize,
+						  x0 = bx*dctSize;
+						
+				byte pattern = DCT.BLOCK_ZERO;
+				if (in.decodeBit(patternContext(codedBlockPattern, bx, by, type, DCT.BLOCK_DC)))
+				{
+					pattern |= DCT.BLOCK_DC;
+				}
+				if (in.decodeBit(patternContext(codedBlockPattern, bx, by, type, DCT.BLOCK_AC)))
+				{
+					pattern |= DCT.BLOCK_AC;
+				}
+				codedBlockPattern[by][bx] = pattern;
+				
+				coefficients[y0][x0] = readSigned(DC + type*5, dcContext(coefficients, x0, y0, dctSize), in);
+				
+				final boolean codedAc = patternCoversAc ? (pattern & DCT.BLOCK_AC) != 0 : in.decodeBit(CODED_AC + type);
+				if (!codedAc)
+				{
+					continue;
+				}
+				
+				final int n = readSignificanceMap(in, positions, scan.length(), type);
+				readLevels(in, levels, n, type);
+				
+				for (int i = 0; i < n; ++i)
+				{
+					coefficients[y0 + scan.y(positions[i])][x0 + scan.x(positions[i])] = levels[i];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ecrire la carte de signification des AC d'un bloc : pour chaque
+	 * position jusqu'au dernier AC non nul, un bit significatif, suivi pour
+	 * les positions significatives d'un bit dernier. Le dernier bit
+	 * significatif de la dernière position est implicite.
+	 * 
+	 * @param positions
+	 *            positions en zig-zag des AC non nuls, croissantes.
+	 * @param n
+	 *            nombre d'AC non nuls, au moins 1.
+	 * @param length
+	 *            nombre de coefficients du bloc.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeSignificanceMap(final int[] positions, final int n, final int length, final int type,
+			final ArithmeticEncoder out)
+	{
+		final int last = positions[n-1];
+		
+		int next = 0;
+		for (int k = 1; k < length - 1; ++k)
+		{
+			final int positionClass = type*POSITION_CLASSES + k*POSITION_CLASSES/length;
+			final boolean significant = positions[next] == k;
+			
+			out.encodeBit(SIGNIFICANT + positionClass, significant);
+			if (significant)
+			{
+				out.encodeBit(LAST + positionClass, k == last);
+				if (k == last)
+				{
+					return;
+				}
+				
+				++next;
+			}
+		}
+	}
+	
+	/**
+	 * Lire la carte de signification des AC d'un bloc.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @param positions
+	 *            tableau recevant les positions en zig-zag des AC non nuls.
+	 * @param length
+	 *            nombre de coefficients du bloc.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @return nombre d'AC non nuls.
+	 */
+	private static int readSignificanceMap(final ArithmeticDecoder in, final int[] positions, final int length,
+			final int type)
+	{
+		int n = 0;
+		for (int k = 1; k < length - 1; ++k)
+		{
+			final int positionClass = type*POSITION_CLASSES + k*POSITION_CLASSES/length;
+			
+			if (in.decodeBit(SIGNIFICANT + positionClass))
+			{
+				positions[n++] = k;
+				if (in.decodeBit(LAST + positionClass))
+				{
+					return n;
+				}
+			}
+		}
+		
+		positions[n++] = length - 1;
+		return n;
+	}
+	
+	/**
+	 * Ecrire les niveaux des AC non nuls d'un bloc, du dernier au premier :
+	 * le premier bit de chaque amplitude dépend du nombre de niveaux 1 et
+	 * supérieurs à 1 déjà codés.
+	 * 
+	 * @param levels
+	 *            niveaux des AC non nuls, en zig-zag.
+	 * @param n
+	 *            nombre d'AC non nuls.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeLevels(final int[] levels, final int n, final int type, final ArithmeticEncoder out)
+	{
+		int ones = 0,
+			greater = 0;
+			
+		for (int i = n-1; i >= 0; --i)
+		{
+			final int magnitude = Math.abs(levels[i]),
+					  base = LEVEL + type*10;
+					
+			writeMagnitude(magnitude - 1, base + levelContext(ones, greater), base + 5 + Math.min(greater, 4), out);
+			out.encodeBypass(levels[i] >>> 31, 1);
+			
+			if (magnitude == 1)
+			{
+				++ones;
+			}
+			else
+			{
+				++greater;
+			}
+		}
+	}
+	
+	/**
+	 * Lire les niveaux des AC non nuls d'un bloc, du dernier au premier.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @param levels
+	 *            tableau recevant les niveaux en zig-zag.
+	 * @param n
+	 *            nombre d'AC non nuls.
+	 * @param type
+	 *            rang du type de la trame.
+	 */
+	private static void readLevels(final ArithmeticDecoder in, final int[] levels, final int n, final int type)
+	{
+		int ones = 0,
+			greater = 0;
+			
+		for (int i = n-1; i >= 0; --i)
+		{
+			final int base = LEVEL + type*10,
+					  magnitude = readMagnitude(base + levelContext(ones, greater), base + 5 + Math.min(greater, 4),
+							  in) + 1;
+							
+			levels[i] = in.decodeBypass(1) != 0 ? -magnitude : magnitude;
+			
+			if (magnitude == 1)
+			{
+				++ones;
+			}
+			else
+			{
+				++greater;
+			}
+		}
+	}
+	
+	/**
+	 * Ecrire les coefficients des ondelettes : bit significatif selon les
+	 * voisins de gauche et du dessus, puis niveau des coefficients non nuls.
+	 * 
+	 * @param coefficients
+	 *            coefficients quantifiés.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeWavelet(final double[][] coefficients, final int type, final ArithmeticEncoder out)
+	{
+		for (int y = 0; y < coefficients.length; ++y)
+		{
+			final double[] row = coefficients[y],
+						   up  = y > 0 ? coefficients[y-1] : null;
+						
+			for (int x = 0; x < row.length; ++x)
+			{
+				final int level = (int) row[x];
+				
+				out.encodeBit(ROW_SIGNIFICANT + type*3 + neighbourContext(row, up, x), level != 0);
+				if (level != 0)
+				{
+					writeMagnitude(Math.abs(level) - 1, ROW_LEVEL + type*2, ROW_LEVEL + type*2 + 1, out);
+					out.encodeBypass(level >>> 31, 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lire les coefficients des ondelettes.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @param coefficients
+	 *            matrice nulle recevant les coefficients.
+	 * @param type
+	 *            rang du type de la trame.
+	 */
+	private static void readWavelet(final ArithmeticDecoder in, final double[][] coefficients, final int type)
+	{
+		for (int y = 0; y < coefficients.length; ++y)
+		{
+			final double[] row = coefficients[y],
+						   up  = y > 0 ? coefficients[y-1] : null;
+						
+			for (int x = 0; x < row.length; ++x)
+			{
+				if (in.decodeBit(ROW_SIGNIFICANT + type*3 + neighbourContext(row, up, x)))
+				{
+					final int magnitude = readMagnitude(ROW_LEVEL + type*2, ROW_LEVEL + type*2 + 1, in) + 1;
+					row[x] = in.decodeBypass(1) != 0 ? -magnitude : magnitude;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ecrire un entier signé : bit non nul, puis amplitude moins 1 et signe.
+	 * 
+	 * @param value
+	 *            entier signé.
+	 * @param base
+	 *            premier des 5 contextes de l'élément : 3 pour le bit non nul,
+	 *            2 pour l'amplitude.
+	 * @param context
+	 *            contexte du bit non nul, de 0 à 2.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeSigned(final int value, final int base, final int context, final ArithmeticEncoder out)
+	{
+		out.encodeBit(base + context, value != 0);
+		if (value != 0)
+		{
+			writeMagnitude(Math.abs(value) - 1, base + 3, base + 4, out);
+			out.encodeBypass(value >>> 31, 1);
+		}
+	}
+	
+	/**
+	 * Lire un entier signé.
+	 * 
+	 * @param base
+	 *            premier des 5 contextes de l'élément.
+	 * @param context
+	 *            contexte du bit non nul, de 0 à 2.
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @return entier signé.
+	 */
+	private static int readSigned(final int base, final int context, final ArithmeticDecoder in)
+	{
+		if (!in.decodeBit(base + context))
+		{
+			return 0;
+		}
+		
+		final int magnitude = readMagnitude(base + 3, base + 4, in) + 1;
+		return in.decodeBypass(1) != 0 ? -magnitude : magnitude;
+	}
+	
+	/**
+	 * Ecrire un entier positif en unaire tronqué à {@link #UNARY_LENGTH}
+	 * bits, suivi au-delà d'un suffixe en Golomb exponentiel équiprobable.
+	 * 
+	 * @param value
+	 *            entier positif ou nul.
+	 * @param first
+	 *            contexte du premier bit unaire.
+	 * @param next
+	 *            contexte des bits unaires suivants.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeMagnitude(final int value, final int first, final int next, final ArithmeticEncoder out)
+	{
+		final int prefix = Math.min(value, UNARY_LENGTH);
+		
+		for (int i = 0; i < prefix; ++i)
+		{
+			out.encodeBit(i == 0 ? first : next, true);
+		}
+		
+		if (value < UNARY_LENGTH)
+		{
+			out.encodeBit(prefix == 0 ? first : next, false);
+		}
+		else
+		{
+			writeBypassExpGolomb(value - UNARY_LENGTH, out);
+		}
+	}
+	
+	/**
+	 * Lire un entier positif en unaire tronqué suivi d'un suffixe en Golomb
+	 * exponentiel.
+	 * 
+	 * @param first
+	 *            contexte du premier bit unaire.
+	 * @param next
+	 *            contexte des bits unaires suivants.
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @return entier positif ou nul.
+	 */
+	private static int readMagnitude(final int first, final int next, final ArithmeticDecoder in)
+	{
+		if (!in.decodeBit(first))
+		{
+			return 0;
+		}
+		
+		int value = 1;
+		while (value < UNARY_LENGTH && in.decodeBit(next))
+		{
+			++value;
+		}
+		
+		return value < UNARY_LENGTH ? value : UNARY_LENGTH + readBypassExpGolomb(in);
+	}
+	
+	/**
+	 * Ecrire un entier positif en Golomb exponentiel d'ordre 0, bits
+	 * équiprobables.
+	 * 
+	 * @param value
+	 *            entier positif ou nul.
+	 * @param out
+	 *            codeur arithmétique.
+	 */
+	private static void writeBypassExpGolomb(final int value, final ArithmeticEncoder out)
+	{
+		final int code   = value + 1,
+				  length = 32 - Integer.numberOfLeadingZeros(code);
+				
+		out.encodeBypass(0, length - 1);
+		out.encodeBypass(code, length);
+	}
+	
+	/**
+	 * Lire un entier positif en Golomb exponentiel d'ordre 0.
+	 * 
+	 * @param in
+	 *            décodeur arithmétique.
+	 * @return entier positif ou nul.
+	 * @throws IllegalArgumentException
+	 *             si le préfixe dépasse 31 zéros.
+	 */
+	private static int readBypassExpGolomb(final ArithmeticDecoder in) throws IllegalArgumentException
+	{
+		int zeros = 0;
+		while (in.decodeBypass(1) == 0)
+		{
+			if (++zeros > 30)
+			{
+				throw new IllegalArgumentException("Flux arithmétique invalide.");
+			}
+		}
+		
+		return ((1 << zeros) | in.decodeBypass(zeros)) - 1;
+	}
+	
+	/**
+	 * Obtenir le contexte d'un bit du motif d'un bloc : nombre de blocs de
+	 * gauche et du dessus ayant ce bit.
+	 * 
+	 * @param codedBlockPattern
+	 *            motifs des blocs.
+	 * @param bx
+	 *            colonne du bloc.
+	 * @param by
+	 *            ligne du bloc.
+	 * @param type
+	 *            rang du type de la trame.
+	 * @param bit
+	 *            bit DC ou AC du motif.
+	 * @return indice du contexte.
+	 */
+	private static int patternContext(final byte[][] codedBlockPattern, final int bx, final int by, final int type,
+			final int bit)
+	{
+		int neighbours = 0;
+		if (bx > 0 && (codedBlockPattern[by][bx-1] & bit) != 0)
+		{
+			++neighbours;
+		}
+		if (by > 0 && (codedBlockPattern[by-1][bx] & bit) != 0)
+		{
+			++neighbours;
+		}
+		
+		return PATTERN + (type*2 + (bit == DCT.BLOCK_DC ? 0 : 1))*3 + neighbours;
+	}
+	
+	/**
+	 * Obtenir le contexte du bit non nul d'un DC : nombre de DC non nuls
+	 * parmi les blocs de gauche et du dessus.
+	 * 
+	 * @param coefficients
+	 *            coefficients quantifiés.
+	 * @param x0
+	 *            colonne du DC.
+	 * @param y0
+	 *            ligne du DC.
+	 * @param dctSize
+	 *            taille des blocs.
+	 * @return contexte, de 0 à 2.
+	 */
+	private static int dcContext(final double[][] coefficients, final int x0, final int y0, final int dctSize)
+	{
+		return (x0 > 0 && coefficients[y0][x0 - dctSize] != 0 ? 1 : 0)
+			 + (y0 > 0 && coefficients[y0 - dctSize][x0] != 0 ? 1 : 0);
+	}
+	
+	/**
+	 * Obtenir le contexte du premier bit d'un niveau AC : aucun niveau
+	 * supérieur à 1 codé, selon le nombre de niveaux 1, ou sinon 0.
+	 * 
+	 * @param ones
+	 *            nombre de niveaux 1 déjà codés dans le bloc.
+	 * @param greater
+	 *            nombre de niveaux supérieurs à 1 déjà codés dans le bloc.
+	 * @return contexte, de 0 à 4.
+	 */
+	private static int levelContext(final int ones, final int greater)
+	{
+		return greater > 0 ? 0 : Math.min(ones + 1, 4);
+	}
+	
+	/**
+	 * Obtenir le contexte du bit significatif d'un coefficient des
+	 * ondelettes : nombre de voisins de gauche et du dessus non nuls.
+	 * 
+	 * @param row
+	 *            ligne du coefficient.
+	 * @param up
+	 *            ligne du dessus, ou null pour la première ligne.
+	 * @param x
+	 *            colonne du coefficient.
+	 * @return contexte, de 0 à 2.
+	 */
+	private static int neighbourContext(final double[] row, final double[] up, final int x)
+	{
+		return (x > 0 && row[x-1] != 0 ? 1 : 0) + (up != null && up[x] != 0 ? 1 : 0);
+	}
+	
+	/**
+	 * Obtenir le contexte du bit non nul d'une composante de vecteur : selon
+	 * la somme des amplitudes de cette composante à gauche et au dessus.
+	 * 
+	 * @param components
+	 *            composantes entrelacées des vecteurs.
+	 * @param i
+	 *            indice de la composante.
+	 * @param rowLength
+	 *            nombre de composantes par ligne.
+	 * @return contexte, de 0 à 2.
+	 */
+	private static int vectorContext(final short[] components, final int i, final int rowLength)
+	{
+		final int left = i % rowLength >= 2 ? Math.abs(components[i-2]) : 0,
+				  up   = i >= rowLength ? Math.abs(components[i - rowLength]) : 0,
+				  sum  = left + up;
+				
+		return sum < 3 ? 0 : sum <= 32 ? 1 : 2;
+	}
+}
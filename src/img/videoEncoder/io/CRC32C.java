@@ -0,0 +1,172 @@
+package img.videoEncoder.io;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Somme de contrôle CRC-32C (polynôme de Castagnoli, celui d'iSCSI et
+ * d'ext4), calculée 8 octets à la fois avec 8 tables (slicing-by-8).
+ * java.util.zip.CRC32C n'existant qu'à partir de Java 9, elle est calculée
+ * ici.
+ */
+public class CRC32C implements Checksum
+{
+	/**
+	 * Polynôme de Castagnoli, bits inversés.
+	 */
+	private static final int POLYNOMIAL = 0x82F63B78;
+	
+	/**
+	 * Tables du calcul par paquets de 8 octets : TABLES[k][b] est le CRC de
+	 * l'octet b suivi de k octets nuls.
+	 */
+	private static final int[][] TABLES = new int[8][256];
+	
+	static
+	{
+		for (int b = 0; b < 256; ++b)
+		{
+			int crc = b;
+			for (int i = 0; i < 8; ++i)
+			{
+				crc = (crc >>> 1) ^ (POLYNOMIAL & -(crc & 1));
+			}
+			
+			TABLES[0][b] = crc;
+		}
+		
+		for (int k = 1; k < 8; ++k)
+		{
+			for (int b = 0; b < 256; ++b)
+			{
+				final int previous = TABLES[k - 1][b];
+				TABLES[k][b] = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+			}
+		}
+	}
+	
+	/**
+	 * CRC courant, complémenté.
+	 */
+	private int crc = 0xFFFFFFFF;
+	
+	@Override
+	public void update(final int b)
+	{
+		crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+	}
+	
+	@Override
+	public void update(final byte[] bytes, final int offset, final int length)
+	{
+		final int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3],
+					t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+					
+		int c = crc,
+			i = offset;
+		final int end = offset + length;
+		
+		for (; i + 8 <= end; i += 8)
+		{
+			final int low = c ^ ((bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8
+					| (bytes[i + 2] & 0xFF) << 16 | (bytes[i + 3] & 0xFF) << 24);
+					
+			c = t7[low & 0xFF] ^ t6[(low >>> 8) & 0xFF] ^ t5[(low >>> 16) & 0xFF] ^ t4[low >>> 24]
+				^ t3[bytes[i + 4] & 0xFF] ^ t2[bytes[i + 5] & 0xFF] ^ t1[bytes[i + 6] & 0xFF] ^ t0[bytes[i + 7] & 0xFF];
+		}
+		
+		for (; i < end; ++i)
+		{
+			c = (c >>> 8) ^ t0[(c ^ bytes[i]) & 0xFF];
+		}
+		
+		crc = c;
+	}
+	
+	/**
+	 * Ajouter les octets restants d'un buffer, sans les copier. La position
+	 * du buffer est avancée jusqu'à sa limite.
+	 * 
+	 * @param buffer
+	 *            octets à ajouter, de la position à la limite.
+	 */
+	public void update(final ByteBuffer buffer)
+	{
+		if (buffer.hasArray())
+		{
+			update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		
+		final int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3],
+					t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+					
+		int c = crc,
+			i = buffer.position();
+		final int end = buffer.limit();
+		
+		for (; i + 8 <= end; i += 8)
+		{
+			final int low = c ^ ((buffer.get(i) & 0xFF) | (buffer.get(i + 1) & 0xFF) << 8
+					| (buffer.get(i + 2) & 0xFF) << 16 | (buffer.get(i + 3) & 0xFF) << 24);
+					
+			c = t7[low & 0xFF] ^ t6[(low >>> 8) & 0xFF] ^ t5[(low >>> 16) & 0xFF] ^ t4[low >>> 24]
+				^ t3[buffer.get(i + 4) & 0xFF] ^ t2[buffer.get(i + 5) & 0xFF] ^ t1[buffer.get(i + 6) & 0xFF]
+				^ t0[buffer.get(i + 7) & 0xFF];
+		}
+		
+		for (; i < end; ++i)
+		{
+			c = (c >>> 8) ^ t0[(c ^ buffer.get(i)) & 0xFF];
+		}
+		
+		crc = c;
+		buffer.position(end);
+	}
+	
+	@Override
+	public long getValue()
+	{
+		return ~crc & 0xFFFFFFFFL;
+	}
+	
+	@Override
+	public void reset()
+	{
+		crc = 0xFFFFFFFF;
+	}
+	
+	/**
+	 * Calculer le CRC-32C d'octets.
+	 * 
+	 * @param bytes
+	 *            octets.
+	 * @param offset
+	 *            position du premier octet.
+	 * @param length
+	 *            nombre d'octets.
+	 * @return CRC-32C des octets, sur 32 bits.
+	 */
+	public static int compute(final byte[] bytes, final int offset, final int length)
+	{
+		final CRC32C checksum = new CRC32C();
+		checksum.update(bytes, offset, length);
+		return (int) checksum.getValue();
+	}
+	
+	/**
+	 * Calculer le CRC-32C des octets restants d'un buffer, sans modifier sa
+	 * position.
+	 * 
+	 * @param buffer
+	 *            octets, de la position à la limite.
+	 * @return CRC-32C des octets, sur 32 bits.
+	 */
+	public static int compute(final ByteBuffer buffer)
+	{
+		final CRC32C checksum = new CRC32C();
+		checksum.update(buffer.duplicate());
+		return (int) checksum.getValue();
+	}
+}
@@ -1,9 +1,22 @@
 package img.videoEncoder.io;
 
-import img.math.Vector2D;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import img.math.MotionField;
 
 /**
- * Trame encodée.
+ * Trame encodée. Les coefficients quantifiés sont entiers, petits et presque
+ * tous nuls : chaque tuile ne garde que ses coefficients non nuls, en paires
+ * (position dans la tuile, niveau) de short, repérées par une table des
+ * positions des tuiles. Une tuile nulle ne coûte que son entrée dans la table
+ * et un bloc DC seul une paire : la place occupée suit le nombre de
+ * coefficients non nuls et non la surface de la trame. Les vecteurs de
+ * mouvement restent compacts dans leur {@link MotionField}. La vue en matrice
+ * de réels n'est construite qu'à la demande.
  */
 public class EncodedFrame
 {
@@ -17,23 +30,170 @@ public class EncodedFrame
 	};
 	
 	/**
-	 * Matrice des coefficients de la DCT des erreurs de prédiction encodée.
+	 * Taille des tuiles des coefficients en l'absence de motif des blocs
+	 * codés (ondelettes).
+	 */
+	private static final int DEFAULT_TILE_SIZE = 8;
+	
+	/**
+	 * Largeur de la matrice des coefficients.
+	 */
+	private final int width;
+	/**
+	 * Hauteur de la matrice des coefficients.
+	 */
+	private final int height;
+	/**
+	 * Taille des tuiles de coefficients : celle des blocs de la DCT s'il y a
+	 * un motif des blocs codés.
 	 */
-	private final double[][] transformedErrors;
+	private final int tileSize;
+	/**
+	 * Position de la première paire de chaque tuile, ligne par ligne, dans
+	 * {@link #positions} et {@link #levels}, suivie du nombre total de paires :
+	 * les paires de la tuile t vont de tileOffsets[t] à tileOffsets[t+1].
+	 */
+	private final int[] tileOffsets;
+	/**
+	 * Position de chaque coefficient non nul dans sa tuile, ligne par ligne,
+	 * non signée. Les tuiles du bord droit et du bas peuvent être tronquées.
+	 */
+	private final short[] positions;
+	/**
+	 * Niveau de chaque coefficient non nul.
+	 */
+	private final short[] levels;
 	/**
 	 * Vecteurs de déplacement des blocs utilisés pour la compensation de
 	 * mouvements encodés.
 	 */
-	private final Vector2D[][] transformedBlockMovementMap;
+	private final MotionField transformedBlockMovementMap;
+	/**
+	 * Motif des blocs codés : contenu (nul, DC seul ou AC) de chaque bloc de
+	 * coefficients quantifiés.
+	 */
+	private final byte[][] codedBlockPattern;
 	/**
 	 * Type de trame.
 	 */
 	private final FrameType type;
 	
-	private EncodedFrame(final FrameType type, final double[][] transformedErrors, final Vector2D[][] transformedBlockMovementMap)
+	/**
+	 * Créer une trame encodée en compactant ses coefficients.
+	 * 
+	 * @param type
+	 *            type de trame.
+	 * @param transformedErrors
+	 *            matrice des coefficients quantifiés, entiers.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés, ou null.
+	 * @param transformedBlockMovementMap
+	 *            vecteurs de mouvement encodés, ou null.
+	 * @throws IllegalArgumentException
+	 *             si un coefficient ne tient pas dans un short.
+	 */
+	private EncodedFrame(final FrameType type, final double[][] transformedErrors, final byte[][] codedBlockPattern,
+			final MotionField transformedBlockMovementMap) throws IllegalArgumentException
+	{
+		this.type = type;
+		this.codedBlockPattern = codedBlockPattern;
+		this.transformedBlockMovementMap = transformedBlockMovementMap;
+		
+		height = transformedErrors.length;
+		width = transformedErrors[0].length;
+		tileSize = codedBlockPattern != null ? width / codedBlockPattern[0].length : DEFAULT_TILE_SIZE;
+		
+		final int tilesX = (width + tileSize - 1) / tileSize,
+				  tilesY = (height + tileSize - 1) / tileSize;
+		tileOffsets = new int[tilesX*tilesY + 1];
+		
+		// Nombre de coefficients non nuls de chaque tuile, puis leurs paires.
+		int size = 0;
+		for (int ty = 0, t = 0; ty < tilesY; ++ty)
+		{
+			for (int tx = 0; tx < tilesX; ++tx, ++t)
+			{
+				final int x0 = tx*tileSize,
+						  y0 = ty*tileSize;
+						
+				tileOffsets[t] = size;
+				size += countNonZero(transformedErrors, x0, y0, Math.min(x0 + tileSize, width),
+						Math.min(y0 + tileSize, height));
+			}
+		}
+		tileOffsets[tilesX*tilesY] = size;
+		
+		positions = new short[size];
+		levels = new short[size];
+		for (int ty = 0, t = 0; ty < tilesY; ++ty)
+		{
+			for (int tx = 0; tx < tilesX; ++tx, ++t)
+			{
+				final int x0 = tx*tileSize,
+						  y0 = ty*tileSize,
+						  x1 = Math.min(x0 + tileSize, width),
+						  y1 = Math.min(y0 + tileSize, height);
+						
+				int i = tileOffsets[t];
+				for (int y = y0; y < y1; ++y)
+				{
+					final double[] row = transformedErrors[y];
+					for (int x = x0; x < x1; ++x)
+					{
+						final int value = (int) row[x];
+						if (value == 0)
+						{
+							continue;
+						}
+						if (value != (short) value)
+						{
+							throw new IllegalArgumentException("Coefficient hors de l'intervalle d'un short : " + value);
+						}
+						
+						positions[i] = (short) ((y - y0)*(x1 - x0) + x - x0);
+						levels[i++] = (short) value;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Créer une trame encodée à partir de coefficients déjà compactés, pour
+	 * découper ou réunir des tranches sans passer par une matrice.
+	 * 
+	 * @param type
+	 *            type de trame.
+	 * @param width
+	 *            largeur de la matrice des coefficients.
+	 * @param height
+	 *            hauteur de la matrice des coefficients.
+	 * @param tileSize
+	 *            taille des tuiles de coefficients.
+	 * @param tileOffsets
+	 *            position de la première paire de chaque tuile, suivie du
+	 *            nombre de paires.
+	 * @param positions
+	 *            position de chaque coefficient non nul dans sa tuile.
+	 * @param levels
+	 *            niveau de chaque coefficient non nul.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés, ou null.
+	 * @param transformedBlockMovementMap
+	 *            vecteurs de mouvement encodés, ou null.
+	 */
+	private EncodedFrame(final FrameType type, final int width, final int height, final int tileSize,
+			final int[] tileOffsets, final short[] positions, final short[] levels, final byte[][] codedBlockPattern,
+			final MotionField transformedBlockMovementMap)
 	{
 		this.type = type;
-		this.transformedErrors = transformedErrors;
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.tileOffsets = tileOffsets;
+		this.positions = positions;
+		this.levels = levels;
+		this.codedBlockPattern = codedBlockPattern;
 		this.transformedBlockMovementMap = transformedBlockMovementMap;
 	}
 	
@@ -42,11 +202,13 @@ public class EncodedFrame
 	 * 
 	 * @param transformedImage
 	 *            matrice des coefficients DCT de l'image intra.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés.
 	 * @return trame encodée intra.
 	 */
-	public static EncodedFrame intraFrame(final double[][] transformedImage)
+	public static EncodedFrame intraFrame(final double[][] transformedImage, final byte[][] codedBlockPattern)
 	{
-		return new EncodedFrame(FrameType.I, transformedImage, null);
+		return new EncodedFrame(FrameType.I, transformedImage, codedBlockPattern, null);
 	}
 	
 	/**
@@ -54,34 +216,500 @@ public class EncodedFrame
 	 * 
 	 * @param transformedErrors
 	 *            matrice des coefficients de la DCT des erreurs de prédiction.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés.
 	 * @param transformedBlockMovementMap
 	 *            Vecteurs de déplacement des blocs utilisés pour la
 	 *            compensation de mouvements.
 	 * @return trame encodée prédite.
 	 */
-	public static EncodedFrame predictedFrame(final double[][] transformedErrors, final Vector2D[][] transformedBlockMovementMap)
+	public static EncodedFrame predictedFrame(final double[][] transformedErrors, final byte[][] codedBlockPattern,
+			final MotionField transformedBlockMovementMap)
+	{
+		return new EncodedFrame(FrameType.P, transformedErrors, codedBlockPattern, transformedBlockMovementMap);
+	}
+	
+	/**
+	 * Lire une trame encodée avec le codage entropique des paramètres.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame fromBytes(final byte[] bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return fromBytes(ByteBuffer.wrap(bytes), parameters);
+	}
+	
+	/**
+	 * Lire une trame encodée avec le codage entropique des paramètres,
+	 * directement dans un buffer, par exemple la projection d'un fichier :
+	 * ni la trame ni ses tranches ne sont copiées.
+	 * 
+	 * @param bytes
+	 *            octets du flux, de la position à la limite du buffer, qui
+	 *            n'est pas modifié.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame fromBytes(final ByteBuffer bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		if (!parameters.hasSlices())
+		{
+			return decodeSlice(bytes, parameters);
+		}
+		
+		// Table des tranches : nombre de tranches puis taille de chacune.
+		final BitReader in = new BitReader(bytes);
+		final int[] offsets, sizes;
+		
+		try
+		{
+			final int sliceCount = in.readUnsignedExpGolomb();
+			if (sliceCount <= 0 || sliceCount > bytes.remaining())
+			{
+				throw new IllegalArgumentException("Nombre de tranches invalide : " + sliceCount);
+			}
+			
+			sizes = new int[sliceCount];
+			for (int s = 0; s < sliceCount; ++s)
+			{
+				sizes[s] = in.readUnsignedExpGolomb();
+			}
+			in.align();
+		} catch (IllegalStateException e)
+		{
+			throw new IllegalArgumentException("Table des tranches tronquée.", e);
+		}
+		
+		offsets = new int[sizes.length];
+		offsets[0] = bytes.limit() - (int) (in.getRemainingBits() / 8);
+		for (int s = 1; s < sizes.length; ++s)
+		{
+			offsets[s] = offsets[s - 1] + sizes[s - 1];
+		}
+		if ((long) offsets[sizes.length - 1] + sizes[sizes.length - 1] > bytes.limit())
+		{
+			throw new IllegalArgumentException("Tranches hors du flux.");
+		}
+		
+		// Chaque tranche se décode indépendamment des autres.
+		return join(IntStream.range(0, sizes.length).parallel()
+				.mapToObj(s -> decodeSlice(view(bytes, offsets[s], sizes[s]), parameters))
+				.collect(Collectors.toList()));
+	}
+	
+	/**
+	 * Lire une trame ou une tranche encodée, sans table des tranches.
+	 * 
+	 * @param bytes
+	 *            octets de la trame, de la position à la limite du buffer.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	private static EncodedFrame decodeSlice(final ByteBuffer bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		switch (parameters.getEntropyCoding())
+		{
+			case CABAC :
+				return CABAC.decode(bytes, parameters);
+				
+			case RANS :
+				return RANS.decode(bytes, parameters);
+				
+			case VLC :
+			default :
+				return VLC.decode(bytes, parameters);
+		}
+	}
+	
+	/**
+	 * Obtenir une vue sur une partie d'un buffer, sans copie.
+	 * 
+	 * @param bytes
+	 *            buffer, qui n'est pas modifié.
+	 * @param offset
+	 *            position absolue du premier octet.
+	 * @param length
+	 *            nombre d'octets.
+	 * @return vue dont la position et la limite encadrent la partie.
+	 */
+	private static ByteBuffer view(final ByteBuffer bytes, final int offset, final int length)
+	{
+		final ByteBuffer view = bytes.duplicate();
+		view.limit(offset + length);
+		view.position(offset);
+		return view;
+	}
+	
+	/**
+	 * Coder cette trame avec le codage entropique des paramètres.
+	 * 
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return octets du flux.
+	 */
+	public byte[] toBytes(final EncoderParams parameters)
 	{
-		return new EncodedFrame(FrameType.P, transformedErrors, transformedBlockMovementMap);
+		if (!parameters.hasSlices())
+		{
+			return encodeSlice(this, parameters);
+		}
+		
+		// Chaque tranche est codée indépendamment des autres.
+		final int sliceHeight = parameters.getSliceHeight(height);
+		final byte[][] slices = IntStream.range(0, (height + sliceHeight - 1) / sliceHeight).parallel()
+				.mapToObj(s -> encodeSlice(slice(s*sliceHeight, Math.min((s + 1)*sliceHeight, height), parameters),
+						parameters))
+				.toArray(byte[][]::new);
+		
+		final BitWriter out = new BitWriter(8 + 4*slices.length);
+		out.writeUnsignedExpGolomb(slices.length);
+		for (final byte[] slice : slices)
+		{
+			out.writeUnsignedExpGolomb(slice.length);
+		}
+		out.align();
+		
+		final byte[] header = out.toByteArray();
+		final byte[] bytes = Arrays.copyOf(header, header.length + Arrays.stream(slices).mapToInt(s -> s.length).sum());
+		
+		int offset = header.length;
+		for (final byte[] slice : slices)
+		{
+			System.arraycopy(slice, 0, bytes, offset, slice.length);
+			offset += slice.length;
+		}
+		
+		return bytes;
 	}
 	
 	/**
-	 * Obtenir la matrice des coefficients de la DCT des erreurs de prédiction.
-	 * @return matrice des coefficients de la DCT des erreurs de prédiction transformée.
+	 * Coder une trame ou une tranche avec le codage entropique des
+	 * paramètres, sans table des tranches.
+	 * 
+	 * @param frame
+	 *            trame ou tranche.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return octets du flux.
+	 */
+	private static byte[] encodeSlice(final EncodedFrame frame, final EncoderParams parameters)
+	{
+		switch (parameters.getEntropyCoding())
+		{
+			case CABAC :
+				return CABAC.encode(frame, parameters);
+				
+			case RANS :
+				return RANS.encode(frame, parameters);
+				
+			case VLC :
+			default :
+				return VLC.encode(frame, parameters);
+		}
+	}
+	
+	/**
+	 * Obtenir la matrice des coefficients de la DCT des erreurs de prédiction,
+	 * construite à chaque appel à partir des coefficients compactés.
+	 * 
+	 * @return copie de la matrice des coefficients de la DCT des erreurs de
+	 *         prédiction transformée.
 	 */
 	public double[][] getTransformedErrors()
 	{
-		return transformedErrors;
+		final double[][] matrix = new double[height][width];
+		copyTransformedErrors(matrix);
+		return matrix;
+	}
+	
+	/**
+	 * Recopier les coefficients dans une matrice, par exemple une matrice de
+	 * travail d'un pool : les coefficients nuls y sont remis à zéro.
+	* 
+	 * @param matrix
+	 *            matrice de taille {@link #getHeight()} x {@link #getWidth()},
+	 *            de contenu quelconque.
+	 */
+	public void copyTransformedErrors(final double[][] matrix)
+	{
+		copyRows(matrix, 0);
+	}
+	
+	/**
+	 * Recopier une bande de lignes des coefficients dans une matrice.
+	 * 
+	 * @param matrix
+	 *            matrice de largeur {@link #getWidth()}, qui reçoit autant de
+	 *            lignes qu'elle en a.
+	 * @param firstRow
+	 *            première ligne de la bande.
+	 */
+	private void copyRows(final double[][] matrix, final int firstRow)
+	{
+		final int tilesX = (width + tileSize - 1) / tileSize,
+				  lastRow = firstRow + matrix.length;
+		
+		for (int ty = firstRow / tileSize; ty*tileSize < lastRow; ++ty)
+		{
+			final int y0 = ty*tileSize,
+					  y1 = Math.min(y0 + tileSize, height);
+			
+			for (int tx = 0, t = ty*tilesX; tx < tilesX; ++tx, ++t)
+			{
+				final int x0 = tx*tileSize,
+						  tileWidth = Math.min(x0 + tileSize, width) - x0;
+						
+				for (int y = Math.max(y0, firstRow); y < Math.min(y1, lastRow); ++y)
+				{
+					Arrays.fill(matrix[y - firstRow], x0, x0 + tileWidth, 0);
+				}
+				
+				for (int i = tileOffsets[t]; i < tileOffsets[t + 1]; ++i)
+				{
+					final int position = positions[i] & 0xFFFF,
+							  y = y0 + position / tileWidth;
+							
+					if (y >= firstRow && y < lastRow)
+					{
+						matrix[y - firstRow][x0 + position % tileWidth] = levels[i];
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Extraire une tranche horizontale de cette trame : ses coefficients, son
+	 * motif des blocs codés et ses vecteurs. Les tuiles de la tranche sont
+	 * recopiées telles quelles, sans passer par une matrice.
+	 * 
+	 * @param y0
+	 *            première ligne de la tranche, multiple de la taille des
+	 *            blocs.
+	 * @param y1
+	 *            ligne suivant la tranche, multiple de la taille des blocs ou
+	 *            hauteur de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur, qui donnent la taille des blocs de
+	 *            mouvement.
+	 * @return tranche de la trame, du même type.
+	 * @throws IllegalArgumentException
+	 *             si la tranche ne tombe pas sur les limites des tuiles.
+	 */
+	public EncodedFrame slice(final int y0, final int y1, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		if (y0 % tileSize != 0 || (y1 % tileSize != 0 && y1 != height) || y0 >= y1 || y1 > height)
+		{
+			throw new IllegalArgumentException("Tranche non alignée sur les tuiles : " + y0 + "-" + y1);
+		}
+		
+		final int tilesX = (width + tileSize - 1) / tileSize,
+				  firstTile = y0 / tileSize * tilesX,
+				  lastTile = (y1 + tileSize - 1) / tileSize * tilesX,
+				  first = tileOffsets[firstTile],
+				  last = tileOffsets[lastTile];
+				
+		final int[] sliceOffsets = new int[lastTile - firstTile + 1];
+		for (int t = 0; t < sliceOffsets.length; ++t)
+		{
+			sliceOffsets[t] = tileOffsets[firstTile + t] - first;
+		}
+		
+		final byte[][] sliceBlockPattern = codedBlockPattern != null ?
+				Arrays.copyOfRange(codedBlockPattern, y0 / tileSize, (y1 + tileSize - 1) / tileSize)
+			:
+				null;
+				
+		final int blockSize = parameters.getMovementBlockSize();
+		final MotionField sliceMovementMap = type == FrameType.P ?
+				transformedBlockMovementMap.copyRows(y0 / blockSize, (y1 + blockSize - 1) / blockSize)
+			:
+				null;
+				
+		return new EncodedFrame(type, width, y1 - y0, tileSize, sliceOffsets,
+				Arrays.copyOfRange(positions, first, last), Arrays.copyOfRange(levels, first, last),
+				sliceBlockPattern, sliceMovementMap);
+	}
+	
+	/**
+	 * Réunir les tranches d'une trame, de haut en bas, en mettant leurs tuiles
+	 * bout à bout.
+	 * 
+	 * @param slices
+	 *            tranches de la trame, toutes du même type, de la même largeur
+	 *            et avec les mêmes tuiles.
+	 * @return trame entière.
+	 * @throws IllegalArgumentException
+	 *             si une tranche autre que la dernière ne se termine pas sur
+	 *             une limite de tuiles.
+	 */
+	public static EncodedFrame join(final List<EncodedFrame> slices) throws IllegalArgumentException
+	{
+		final EncodedFrame first = slices.get(0);
+		
+		int height = 0, blockRows = 0, vectorRows = 0, tiles = 0, pairs = 0;
+		for (final EncodedFrame slice : slices)
+		{
+			if (slice.width != first.width || slice.tileSize != first.tileSize
+					|| (slice != slices.get(slices.size() - 1) && slice.height % slice.tileSize != 0))
+			{
+				throw new IllegalArgumentException("Tranches non alignées sur les tuiles.");
+			}
+			
+			height += slice.height;
+			tiles += slice.tileOffsets.length - 1;
+			pairs += slice.levels.length;
+			blockRows += slice.codedBlockPattern != null ? slice.codedBlockPattern.length : 0;
+			vectorRows += slice.transformedBlockMovementMap != null ? slice.transformedBlockMovementMap.getHeight() : 0;
+		}
+		
+		final int[] tileOffsets = new int[tiles + 1];
+		final short[] positions = new short[pairs],
+					  levels = new short[pairs];
+		final byte[][] codedBlockPattern = first.codedBlockPattern != null ? new byte[blockRows][] : null;
+		final MotionField movementMap = first.type == FrameType.P ?
+				new MotionField(first.transformedBlockMovementMap.getWidth(), vectorRows)
+			:
+				null;
+		
+		int tile = 0, pair = 0, blockY = 0, vectorY = 0;
+		for (final EncodedFrame slice : slices)
+		{
+			final int sliceTiles = slice.tileOffsets.length - 1;
+			for (int t = 0; t < sliceTiles; ++t)
+			{
+				tileOffsets[tile++] = pair + slice.tileOffsets[t];
+			}
+			System.arraycopy(slice.positions, 0, positions, pair, slice.levels.length);
+			System.arraycopy(slice.levels, 0, levels, pair, slice.levels.length);
+			pair += slice.levels.length;
+			
+			if (codedBlockPattern != null)
+			{
+				System.arraycopy(slice.codedBlockPattern, 0, codedBlockPattern, blockY, slice.codedBlockPattern.length);
+				blockY += slice.codedBlockPattern.length;
+			}
+			if (movementMap != null)
+			{
+				movementMap.setRows(vectorY, slice.transformedBlockMovementMap);
+				vectorY += slice.transformedBlockMovementMap.getHeight();
+			}
+		}
+		
+		tileOffsets[tiles] = pairs;
+		
+		return new EncodedFrame(first.type, first.width, height, first.tileSize, tileOffsets, positions, levels,
+				codedBlockPattern, movementMap);
+	}
+	
+	/**
+	 * Obtenir la largeur de la matrice des coefficients.
+	 * @return largeur de la matrice des coefficients.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+	
+	/**
+	 * Obtenir la hauteur de la matrice des coefficients.
+	 * @return hauteur de la matrice des coefficients.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+	
+	/**
+	 * Obtenir la place occupée en mémoire par les données de cette trame,
+	 * hors en-têtes des objets et tableaux.
+	 * 
+	 * @return nombre d'octets des coefficients non nuls, des positions des
+	 *         tuiles, du motif des blocs codés et des vecteurs.
+	 */
+	public long getMemorySize()
+	{
+		long size = 2L*positions.length + 2L*levels.length + 4L*tileOffsets.length;
+		
+		if (codedBlockPattern != null)
+		{
+			size += (long) codedBlockPattern.length * codedBlockPattern[0].length;
+		}
+		if (transformedBlockMovementMap != null)
+		{
+			size += 2L*transformedBlockMovementMap.getData().length;
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Obtenir le motif des blocs codés.
+	 * @return contenu de chaque bloc de coefficients quantifiés.
+	 */
+	public byte[][] getCodedBlockPattern()
+	{
+		return codedBlockPattern;
 	}
 	
 	/**
 	 * Obtenir la carte de compensation de mouvement des blocs.
 	 * @return carte de compensation de mouvement des blocs transformée.
 	 */
-	public Vector2D[][] getTransformedBlockMovementMap()
+	public MotionField getTransformedBlockMovementMap()
 	{
 		return transformedBlockMovementMap;
 	}
 	
+	/**
+	 * Compter les coefficients non nuls d'une tuile.
+	* 
+	 * @param matrix
+	 *            matrice des coefficients.
+	 * @param x0
+	 *            première colonne de la tuile.
+	 * @param y0
+	 *            première ligne de la tuile.
+	 * @param x1
+	 *            colonne suivant la tuile.
+	 * @param y1
+	 *            ligne suivant la tuile.
+	 * @return nombre de coefficients non nuls de la tuile.
+	 */
+	private static int countNonZero(final double[][] matrix, final int x0, final int y0, final int x1, final int y1)
+	{
+		int count = 0;
+		for (int y = y0; y < y1; ++y)
+		{
+			final double[] row = matrix[y];
+			for (int x = x0; x < x1; ++x)
+			{
+				if ((int) row[x] != 0)
+				{
+					++count;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
 	/**
 	 * Obtenir le type de cette trame.
 	 * @return I ou P.
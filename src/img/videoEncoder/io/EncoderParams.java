@@ -5,6 +5,53 @@ package img.videoEncoder.io;
  */
 public class EncoderParams
 {
+	/**
+	 * Différentes transformées utilisables pour coder les erreurs de
+	 * prédiction.
+	 */
+	public static enum TransformType
+	{
+		DCT,	// DCT en blocs
+		DWT		// Ondelettes entières 5/3
+	};
+	
+	/**
+	 * Stockage des trames de référence de l'encodeur.
+	 */
+	public static enum PlaneStorage
+	{
+		HEAP,		// Tableaux sur le tas Java
+		OFF_HEAP	// ByteBuffers directs, hors du tas
+	};
+	
+	/**
+	 * Prédiction utilisée pour la DPCM des vecteurs de mouvement.
+	 */
+	public static enum VectorPrediction
+	{
+		MEAN,	// Moyenne du dessus et de gauche
+		MEDIAN	// Médiane de gauche, du dessus et du dessus à droite
+	};
+	
+	/**
+	 * Coefficients de la DCT en blocs prédits par la DPCM.
+	 */
+	public static enum CoefficientPrediction
+	{
+		ALL,	// Tous les coefficients
+		DC		// Coefficients DC seulement
+	};
+	
+	/**
+	 * Codage entropique des trames encodées.
+	 */
+	public static enum EntropyCoding
+	{
+		VLC,	// Codes à longueur variable
+		CABAC,	// Codage arithmétique binaire adaptatif au contexte
+		RANS	// rANS entrelacé à tables de fréquences statiques
+	};
+	
 	/**
 	 * Matrice de poids pour la quantification.
 	 * Matrice de poids par défaut;
@@ -33,6 +80,51 @@ public class EncoderParams
 	 * Echelle de quantification.
 	 */
 	private int quantifScale = 3;
+	/**
+	 * Facteur du seuil de détection des blocs nuls avant la DCT. A 1, seuls
+	 * les blocs dont on peut prouver qu'ils seront quantifiés à zéro sont
+	 * ignorés.
+	 */
+	private double zeroBlockThreshold = 1.0;
+	/**
+	 * Transformée utilisée pour coder les erreurs de prédiction.
+	 */
+	private TransformType transformType = TransformType.DCT;
+	/**
+	 * Nombre de niveaux de décomposition de la transformée en ondelettes.
+	 */
+	private int waveletLevels = 3;
+	/**
+	 * Stockage des trames de référence de l'encodeur.
+	 */
+	private PlaneStorage planeStorage = PlaneStorage.HEAP;
+	/**
+	 * Prédiction utilisée pour la DPCM des vecteurs de mouvement.
+	 */
+	private VectorPrediction vectorPrediction = VectorPrediction.MEDIAN;
+	/**
+	 * Coefficients de la DCT en blocs prédits par la DPCM.
+	 */
+	private CoefficientPrediction coefficientPrediction = CoefficientPrediction.DC;
+	/**
+	 * Codage entropique des trames encodées.
+	 */
+	private EntropyCoding entropyCoding = EntropyCoding.VLC;
+	/**
+	 * Nombre de trames d'un groupe de trames (GOP), qui commence par une trame
+	 * intra. 0 : seule la première trame est intra.
+	 */
+	private int gopLength = 0;
+	/**
+	 * Nombre de tranches horizontales de chaque trame, si leur hauteur n'est
+	 * pas fixée en lignes de macroblocs.
+	 */
+	private int sliceCount = 1;
+	/**
+	 * Hauteur des tranches en lignes de macroblocs, 0 si elle découle du
+	 * nombre de tranches.
+	 */
+	private int sliceRows = 0;
 	
 	/**
 	 * Définir la taille des blocks dct. Fonction temporaire, à faire : mettre
@@ -75,6 +167,168 @@ public class EncoderParams
 		return this;
 	}
 	
+	/**
+	 * Définir le facteur du seuil de détection des blocs nuls avant la DCT.
+	 * 
+	 * @param zeroBlockThreshold
+	 *            facteur du seuil : 0 pour désactiver la détection, 1 pour
+	 *            une détection sans perte, plus grand pour une détection plus
+	 *            agressive.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams zeroBlockThreshold(final double zeroBlockThreshold)
+	{
+		this.zeroBlockThreshold = zeroBlockThreshold;
+		return this;
+	}
+	
+	/**
+	 * Définir la transformée utilisée pour coder les erreurs de prédiction.
+	 * 
+	 * @param transformType
+	 *            DCT en blocs ou ondelettes 5/3.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams transformType(final TransformType transformType)
+	{
+		this.transformType = transformType;
+		return this;
+	}
+	
+	/**
+	 * Définir le nombre de niveaux de décomposition de la transformée en
+	 * ondelettes.
+	 * 
+	 * @param waveletLevels
+	 *            nombre de niveaux.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams waveletLevels(final int waveletLevels)
+	{
+		this.waveletLevels = waveletLevels;
+		return this;
+	}
+	
+	/**
+	 * Définir le stockage des trames de référence de l'encodeur.
+	 * 
+	 * @param planeStorage
+	 *            sur le tas, ou hors du tas pour limiter la pression sur le
+	 *            ramasse-miettes avec de grandes trames.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams planeStorage(final PlaneStorage planeStorage)
+	{
+		this.planeStorage = planeStorage;
+		return this;
+	}
+	
+	/**
+	 * Définir la prédiction utilisée pour la DPCM des vecteurs de mouvement.
+	 * 
+	 * @param vectorPrediction
+	 *            moyenne du dessus et de gauche, ou médiane de gauche, du
+	 *            dessus et du dessus à droite.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams vectorPrediction(final VectorPrediction vectorPrediction)
+	{
+		this.vectorPrediction = vectorPrediction;
+		return this;
+	}
+	
+	/**
+	 * Définir les coefficients de la DCT en blocs prédits par la DPCM.
+	 * 
+	 * @param coefficientPrediction
+	 *            tous les coefficients, ou seulement le plan des
+	 *            coefficients DC, les coefficients AC étant alors transmis
+	 *            tels quels.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams coefficientPrediction(final CoefficientPrediction coefficientPrediction)
+	{
+		this.coefficientPrediction = coefficientPrediction;
+		return this;
+	}
+	
+	/**
+	 * Définir le codage entropique des trames encodées.
+	 * 
+	 * @param entropyCoding
+	 *            codes à longueur variable, codage arithmétique binaire
+	 *            adaptatif au contexte, ou rANS entrelacé.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams entropyCoding(final EntropyCoding entropyCoding)
+	{
+		this.entropyCoding = entropyCoding;
+		return this;
+	}
+	
+	/**
+	 * Définir le nombre de trames d'un groupe de trames : une trame sur
+	 * gopLength est intra, et chaque groupe se décode indépendamment des
+	 * autres.
+	 * 
+	 * @param gopLength
+	 *            nombre de trames d'un groupe, 0 pour que seule la première
+	 *            trame soit intra.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams gopLength(final int gopLength)
+	{
+		this.gopLength = gopLength;
+		return this;
+	}
+	
+	/**
+	 * Découper chaque trame en tranches horizontales de même hauteur (la
+	 * dernière pouvant être plus basse) : les prédictions DPCM des
+	 * coefficients et des vecteurs repartent de zéro au début de chaque
+	 * tranche, et chaque tranche est codée et décodée indépendamment des
+	 * autres. Seule la DCT en blocs est découpée en tranches.
+	 * 
+	 * @param sliceCount
+	 *            nombre de tranches, 1 pour ne pas découper les trames.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams sliceCount(final int sliceCount)
+	{
+		this.sliceCount = sliceCount;
+		this.sliceRows  = 0;
+		return this;
+	}
+	
+	/**
+	 * Découper chaque trame en tranches horizontales d'une hauteur donnée en
+	 * lignes de macroblocs. Voir {@link #sliceCount(int)}.
+	 * 
+	 * @param sliceRows
+	 *            nombre de lignes de macroblocs d'une tranche.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams sliceRows(final int sliceRows)
+	{
+		this.sliceRows  = sliceRows;
+		this.sliceCount = 1;
+		return this;
+	}
+	
+	/**
+	 * Définir la matrice des poids de quantification.
+	 * 
+	 * @param quantifWeights
+	 *            matrice des poids de quantification, rééchantillonnée à la
+	 *            taille des blocs de la dct si besoin.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams quantificationWeights(final int[][] quantifWeights)
+	{
+		this.quantifWeights = quantifWeights;
+		return this;
+	}
+	
 	/**
 	 * Obtenir la taille des bloc de prédiction de mouvement.
 	 * @return taille des bloc de prédiction de mouvement.
@@ -102,6 +356,134 @@ public class EncoderParams
 		return quantifScale;
 	}
 	
+	/**
+	 * Obtenir le facteur du seuil de détection des blocs nuls avant la DCT.
+	 * @return facteur du seuil de détection des blocs nuls.
+	 */
+	public double getZeroBlockThreshold()
+	{
+		return zeroBlockThreshold;
+	}
+	
+	/**
+	 * Obtenir la transformée utilisée pour coder les erreurs de prédiction.
+	 * @return DCT en blocs ou ondelettes 5/3.
+	 */
+	public TransformType getTransformType()
+	{
+		return transformType;
+	}
+	
+	/**
+	 * Obtenir le nombre de niveaux de décomposition de la transformée en
+	 * ondelettes.
+	 * @return nombre de niveaux.
+	 */
+	public int getWaveletLevels()
+	{
+		return waveletLevels;
+	}
+	
+	/**
+	 * Obtenir le stockage des trames de référence de l'encodeur.
+	 * @return stockage sur le tas ou hors du tas.
+	 */
+	public PlaneStorage getPlaneStorage()
+	{
+		return planeStorage;
+	}
+	
+	/**
+	 * Obtenir la prédiction utilisée pour la DPCM des vecteurs de mouvement.
+	 * @return moyenne ou médiane.
+	 */
+	public VectorPrediction getVectorPrediction()
+	{
+		return vectorPrediction;
+	}
+	
+	/**
+	 * Obtenir les coefficients de la DCT en blocs prédits par la DPCM.
+	 * @return tous les coefficients ou les coefficients DC seulement.
+	 */
+	public CoefficientPrediction getCoefficientPrediction()
+	{
+		return coefficientPrediction;
+	}
+	
+	/**
+	 * Obtenir le codage entropique des trames encodées.
+	 * @return VLC, CABAC ou RANS.
+	 */
+	public EntropyCoding getEntropyCoding()
+	{
+		return entropyCoding;
+	}
+	
+	/**
+	 * Obtenir le nombre de trames d'un groupe de trames.
+	 * @return nombre de trames d'un groupe, 0 si seule la première trame est
+	 *         intra.
+	 */
+	public int getGopLength()
+	{
+		return gopLength;
+	}
+	
+	/**
+	 * Obtenir le nombre de tranches de chaque trame.
+	 * @return nombre de tranches, si leur hauteur n'est pas fixée.
+	 */
+	public int getSliceCount()
+	{
+		return sliceCount;
+	}
+	
+	/**
+	 * Obtenir la hauteur des tranches en lignes de macroblocs.
+	 * @return nombre de lignes de macroblocs d'une tranche, 0 si la hauteur
+	 *         découle du nombre de tranches.
+	 */
+	public int getSliceRows()
+	{
+		return sliceRows;
+	}
+	
+	/**
+	 * Savoir si les trames sont découpées en tranches, même s'il n'y en a
+	 * qu'une : le flux des trames contient alors la table des tranches.
+	 * 
+	 * @return vrai si les trames sont découpées en tranches.
+	 */
+	public boolean hasSlices()
+	{
+		return transformType == TransformType.DCT && (sliceRows > 0 || sliceCount > 1);
+	}
+	
+	/**
+	 * Obtenir la hauteur des tranches d'une trame, multiple de la taille des
+	 * macroblocs (la plus grande des tailles des blocs de mouvement et de la
+	 * DCT).
+	 * 
+	 * @param frameHeight
+	 *            hauteur de la trame.
+	 * @return hauteur des tranches en pixels, la hauteur de la trame si elle
+	 *         n'est pas découpée.
+	 */
+	public int getSliceHeight(final int frameHeight)
+	{
+		if (!hasSlices())
+		{
+			return frameHeight;
+		}
+		
+		final int mbSize = Math.max(movementBlockSize, dctBlockSize),
+				  mbRows = (frameHeight + mbSize - 1) / mbSize,
+				  rows   = sliceRows > 0 ? sliceRows : (mbRows + sliceCount - 1) / sliceCount;
+				  
+		return Math.min(Math.max(rows, 1) * mbSize, frameHeight);
+	}
+	
 	/**
 	 * Obtenir la matrice des poids de quantification.
 	 * @return matrice des poids de quantification.
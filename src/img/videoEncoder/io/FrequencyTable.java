@@ -0,0 +1,311 @@
+package img.videoEncoder.io;
+
+import img.math.Matrices;
+
+/**
+ * Table statique des fréquences des symboles d'une suite d'entiers,
+ * normalisées pour que leur somme fasse 2<sup>{@link #SCALE_BITS}</sup>.
+ * Les valeurs d'amplitude supérieure à {@link #ESCAPE_LIMIT} sont regroupées
+ * dans un symbole d'échappement placé après les autres.
+ */
+public class FrequencyTable
+{
+	/**
+	 * Précision des fréquences, en bits.
+	 */
+	public static final int SCALE_BITS = 12;
+	/**
+	 * Somme des fréquences normalisées.
+	 */
+	public static final int SCALE = 1 << SCALE_BITS;
+	/**
+	 * Amplitude maximale des valeurs ayant leur propre symbole.
+	 */
+	public static final int ESCAPE_LIMIT = 1023;
+	/**
+	 * Valeur des fentes du symbole d'échappement dans {@link #getSlotValues()}.
+	 */
+	public static final int ESCAPE = Integer.MIN_VALUE;
+	
+	/**
+	 * Plus petite valeur ayant son propre symbole.
+	 */
+	private final int low;
+	/**
+	 * Plus grande valeur ayant son propre symbole.
+	 */
+	private final int high;
+	/**
+	 * Fréquence normalisée de chaque symbole, échappement en dernier.
+	 */
+	private final int[] frequencies;
+	/**
+	 * Cumul des fréquences des symboles précédant chaque symbole.
+	 */
+	private final int[] cumulative;
+	
+	/**
+	 * Valeur de chaque fente de l'intervalle des fréquences, calculée à la
+	 * demande pour le décodage.
+	 */
+	private int[] slotValues;
+	/**
+	 * Pas de décodage de chaque fente : fréquence du symbole << SCALE_BITS |
+	 * écart de la fente au cumul du symbole.
+	 */
+	private int[] slotSteps;
+	
+	private FrequencyTable(final int low, final int high, final int[] frequencies)
+	{
+		this.low = low;
+		this.high = high;
+		this.frequencies = frequencies;
+		
+		cumulative = new int[frequencies.length + 1];
+		for (int s = 0; s < frequencies.length; ++s)
+		{
+			cumulative[s+1] = cumulative[s] + frequencies[s];
+		}
+	}
+	
+	/**
+	 * Construire la table des fréquences de valeurs entières à partir de leur
+	 * histogramme.
+	 * 
+	 * @param values
+	 *            valeurs, au moins une.
+	 * @return table des fréquences normalisées.
+	 */
+	public static FrequencyTable build(final int[] values)
+	{
+		final int[][] matrix = {values};
+		final int min = Matrices.min(matrix),
+				  max = Matrices.max(matrix),
+				  low  = Math.max(-ESCAPE_LIMIT, Math.min(min, ESCAPE_LIMIT)),
+				  high = Math.max(-ESCAPE_LIMIT, Math.min(max, ESCAPE_LIMIT));
+				
+		final int[] histogram = Matrices.histogram(matrix, min, max);
+		
+		// Symboles des valeurs de low à high, puis échappement.
+		final int[] counts = new int[high - low + 2];
+		long total = 0;
+		for (int value = min; value <= max; ++value)
+		{
+			final int count = histogram[value - min];
+			counts[value < low || value > high ? counts.length - 1 : value - low] += count;
+			total += count;
+		}
+		
+		return new FrequencyTable(low, high, normalize(counts, total));
+	}
+	
+	/**
+	 * Lire une table des fréquences : plus petite valeur, nombre de valeurs,
+	 * puis fréquence de chaque symbole, en Golomb exponentiel.
+	 * 
+	 * @param in
+	 *            flux binaire.
+	 * @return table des fréquences.
+	 * @throws IllegalStateException
+	 *             si la table est invalide.
+	 */
+	public static FrequencyTable read(final BitReader in) throws IllegalStateException
+	{
+		final int low = in.readSignedExpGolomb(),
+				  values = in.readUnsignedExpGolomb();
+				
+		if (low < -ESCAPE_LIMIT || values > 2*ESCAPE_LIMIT + 1 || low + values - 1 > ESCAPE_LIMIT)
+		{
+			throw new IllegalStateException("Table des fréquences invalide.");
+		}
+		
+		final int[] frequencies = new int[values + 1];
+		int total = 0;
+		for (int s = 0; s < frequencies.length; ++s)
+		{
+			frequencies[s] = in.readUnsignedExpGolomb();
+			total += frequencies[s];
+			
+			if (total > SCALE)
+			{
+				throw new IllegalStateException("Table des fréquences invalide.");
+			}
+		}
+		
+		if (total != SCALE)
+		{
+			throw new IllegalStateException("Table des fréquences invalide.");
+		}
+		
+		return new FrequencyTable(low, low + values - 1, frequencies);
+	}
+	
+	/**
+	 * Ecrire cette table des fréquences.
+	 * 
+	 * @param out
+	 *            flux binaire.
+	 */
+	public void write(final BitWriter out)
+	{
+		out.writeSignedExpGolomb(low);
+		out.writeUnsignedExpGolomb(high - low + 1);
+		
+		for (final int frequency : frequencies)
+		{
+			out.writeUnsignedExpGolomb(frequency);
+		}
+	}
+	
+	/**
+	 * Obtenir le symbole d'une valeur.
+	 * 
+	 * @param value
+	 *            valeur.
+	 * @return symbole de la valeur, ou symbole d'échappement.
+	 */
+	public int symbol(final int value)
+	{
+		return value < low || value > high ? frequencies.length - 1 : value - low;
+	}
+	
+	/**
+	 * Savoir si une valeur passe par le symbole d'échappement.
+	 * 
+	 * @param value
+	 *            valeur.
+	 * @return vrai si la valeur n'a pas son propre symbole.
+	 */
+	public boolean isEscaped(final int value)
+	{
+		return value < low || value > high;
+	}
+	
+	/**
+	 * Savoir si le symbole d'échappement a une fréquence non nulle.
+	 * @return vrai si des valeurs sont échappées.
+	 */
+	public boolean hasEscapes()
+	{
+		return frequencies[frequencies.length - 1] > 0;
+	}
+	
+	/**
+	 * Obtenir la fréquence normalisée d'un symbole.
+	 * 
+	 * @param symbol
+	 *            symbole.
+	 * @return fréquence du symbole.
+	 */
+	public int frequency(final int symbol)
+	{
+		return frequencies[symbol];
+	}
+	
+	/**
+	 * Obtenir le cumul des fréquences des symboles précédant un symbole.
+	 * 
+	 * @param symbol
+	 *            symbole.
+	 * @return cumul des fréquences.
+	 */
+	public int cumulative(final int symbol)
+	{
+		return cumulative[symbol];
+	}
+	
+	/**
+	 * Obtenir la valeur de chaque fente de l'intervalle des fréquences.
+	 * @return valeurs des {@link #SCALE} fentes, {@link #ESCAPE} pour
+	 *         l'échappement.
+	 */
+	public int[] getSlotValues()
+	{
+		buildSlots();
+		return slotValues;
+	}
+	
+	/**
+	 * Obtenir le pas de décodage de chaque fente : fréquence du symbole
+	 * décalée de {@link #SCALE_BITS} bits, et écart de la fente au cumul du
+	 * symbole.
+	 * 
+	 * @return pas des {@link #SCALE} fentes.
+	 */
+	public int[] getSlotSteps()
+	{
+		buildSlots();
+		return slotSteps;
+	}
+	
+	/**
+	 * Calculer les tables de décodage des fentes, si ce n'est pas déjà fait.
+	 */
+	private void buildSlots()
+	{
+		if (slotValues != null)
+		{
+			return;
+		}
+		
+		slotValues = new int[SCALE];
+		slotSteps = new int[SCALE];
+		
+		for (int s = 0; s < frequencies.length; ++s)
+		{
+			final int value = s == frequencies.length - 1 ? ESCAPE : low + s;
+			
+			for (int slot = cumulative[s]; slot < cumulative[s+1]; ++slot)
+			{
+				slotValues[slot] = value;
+				slotSteps[slot] = frequencies[s] << SCALE_BITS | (slot - cumulative[s]);
+			}
+		}
+	}
+	
+	/**
+	 * Normaliser des nombres d'occurrences pour que leur somme fasse
+	 * {@link #SCALE}, chaque symbole présent gardant une fréquence non nulle.
+	 * L'écart d'arrondi est reporté sur les symboles les plus fréquents : il y
+	 * a moins de symboles que {@link #SCALE}, la somme finit donc par tomber
+	 * juste.
+	 * 
+	 * @param counts
+	 *            nombre d'occurrences de chaque symbole.
+	 * @param total
+	 *            somme des nombres d'occurrences, non nulle.
+	 * @return fréquences normalisées.
+	 */
+	private static int[] normalize(final int[] counts, final long total)
+	{
+		final int[] frequencies = new int[counts.length];
+		
+		int sum = 0;
+		for (int s = 0; s < counts.length; ++s)
+		{
+			if (counts[s] > 0)
+			{
+				frequencies[s] = (int) Math.max(1, (long) counts[s] * SCALE / total);
+				sum += frequencies[s];
+			}
+		}
+		
+		while (sum != SCALE)
+		{
+			int largest = 0;
+			for (int s = 1; s < frequencies.length; ++s)
+			{
+				if (frequencies[s] > frequencies[largest])
+				{
+					largest = s;
+				}
+			}
+			
+			final int correction = sum < SCALE ? SCALE - sum : -Math.min(sum - SCALE, frequencies[largest] - 1);
+			frequencies[largest] += correction;
+			sum += correction;
+		}
+		
+		return frequencies;
+	}
+}
@@ -0,0 +1,675 @@
+package img.videoEncoder.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import img.math.MotionField;
+import img.math.transforms.DCT;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams.CoefficientPrediction;
+import img.videoEncoder.io.EncoderParams.TransformType;
+
+/**
+ * Codage rANS entrelacé des trames encodées, pour un décodage à haut débit.
+ * La trame est découpée en suites de valeurs entières (motif des blocs codés,
+ * coefficients, composantes des vecteurs de mouvement), chacune codée avec
+ * une table statique des fréquences construite à partir de son histogramme.
+ * {@link #WAYS} états rANS indépendants se partagent les symboles d'une suite
+ * à tour de rôle : le décodage garde ainsi plusieurs états en vol.
+ * <p>
+ * Le flux commence par un en-tête : type de trame, largeur et hauteur de la
+ * matrice des coefficients. Pour la DCT en blocs suivent le motif des blocs
+ * codés, puis, avec la DPCM des seuls DC, les DC de chaque bloc et les AC des
+ * seuls blocs dont le motif en annonce, ou sinon tous les coefficients ; pour
+ * les ondelettes, tous les coefficients. Les trames prédites finissent par
+ * les composantes des vecteurs. Chaque suite non vide commence, alignée sur
+ * l'octet, par sa table des fréquences, ses valeurs échappées et la taille de
+ * ses données rANS, suivies de ces données en mots de 16 bits.
+ */
+public class RANS
+{
+	/**
+	 * Nombre d'états rANS entrelacés.
+	 */
+	private static final int WAYS = 4;
+	/**
+	 * Borne basse des états : un état reste entre 2<sup>16</sup> et
+	 * 2<sup>32</sup>, et la renormalisation se fait par mots de 16 bits.
+	 */
+	private static final long LOWER_BOUND = 1L << 16;
+	/**
+	 * Masque des fentes de l'intervalle des fréquences.
+	 */
+	private static final int SLOT_MASK = FrequencyTable.SCALE - 1;
+	
+	/**
+	 * Coder une trame encodée.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return octets du flux.
+	 */
+	public static byte[] encode(final EncodedFrame frame, final EncoderParams parameters)
+	{
+		final double[][] coefficients = frame.getTransformedErrors();
+		final int h = coefficients.length,
+				  w = coefficients[0].length;
+				
+		final BitWriter out = new BitWriter();
+		out.writeBit(frame.getType() == FrameType.P);
+		out.writeUnsignedExpGolomb(w);
+		out.writeUnsignedExpGolomb(h);
+		out.align();
+		
+		if (parameters.getTransformType() == TransformType.DCT)
+		{
+			final byte[][] codedBlockPattern = frame.getCodedBlockPattern();
+			final int dctSize = parameters.getDctBlockSize(),
+					  bh = codedBlockPattern.length,
+					  bw = codedBlockPattern[0].length;
+					
+			final int[] patterns = new int[bh*bw];
+			int acBlocks = 0;
+			for (int by = 0; by < bh; ++by)
+			{
+				for (int bx = 0; bx < bw; ++bx)
+				{
+					patterns[by*bw + bx] = codedBlockPattern[by][bx];
+					if ((codedBlockPattern[by][bx] & DCT.BLOCK_AC) != 0)
+					{
+						++acBlocks;
+					}
+				}
+			}
+			writeValues(patterns, out);
+			
+			if (parameters.getCoefficientPrediction() == CoefficientPrediction.DC)
+			{
+				// Les AC transmis sont les coefficients quantifiés : ceux des
+				// blocs sans AC d'après le motif sont tous nuls.
+				final int blockLength = dctSize*dctSize;
+				final int[] dc = new int[bh*bw],
+							ac = new int[acBlocks * (blockLength - 1)];
+							
+				int i = 0;
+				for (int by = 0; by < bh; ++by)
+				{
+					for (int bx = 0; bx < bw; ++bx)
+					{
+						final int y0 = by*dctSize,
+								  x0 = bx*dctSize;
+								
+						dc[by*bw + bx] = (int) coefficients[y0][x0];
+						if ((codedBlockPattern[by][bx] & DCT.BLOCK_AC) != 0)
+						{
+							for (int dy = 0; dy < dctSize; ++dy)
+							{
+								final double[] row = coefficients[y0 + dy];
+								for (int dx = dy == 0 ? 1 : 0; dx < dctSize; ++dx)
+								{
+									ac[i++] = (int) row[x0 + dx];
+								}
+							}
+						}
+					}
+				}
+				
+				writeValues(dc, out);
+				writeValues(ac, out);
+			}
+			else
+			{
+				writeValues(flatten(coefficients), out);
+			}
+		}
+		else
+		{
+			writeValues(flatten(coefficients), out);
+		}
+		
+		if (frame.getType() == FrameType.P)
+		{
+			final short[] components = frame.getTransformedBlockMovementMap().getData();
+			final int[] vectors = new int[components.length];
+			
+			for (int i = 0; i < components.length; ++i)
+			{
+				vectors[i] = components[i];
+			}
+			
+			writeValues(vectors, out);
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Décoder une trame encodée.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final byte[] bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return decode(ByteBuffer.wrap(bytes), parameters);
+	}
+	
+	/**
+	 * Décoder une trame encodée, lue sans copie dans un buffer.
+	 * 
+	 * @param buffer
+	 *            octets du flux, de la position à la limite du buffer, qui
+	 *            n'est pas modifié.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final ByteBuffer buffer, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		// Vue dont les positions partent de zéro, comme dans un tableau.
+		final ByteBuffer bytes = buffer.slice();
+		
+		try
+		{
+			final BitReader in = new BitReader(bytes);
+			final FrameType type = in.readBit() ? FrameType.P : FrameType.I;
+			final int w = in.readUnsignedExpGolomb(),
+					  h = in.readUnsignedExpGolomb();
+			in.align();
+			
+			int offset = bytes.limit() - (int) (in.getRemainingBits() / 8);
+			
+			// La matrice est nulle à la création : seuls les coefficients non
+			// nuls sont recopiés.
+			final double[][] coefficients = new double[h][w];
+			final byte[][] codedBlockPattern;
+			
+			if (parameters.getTransformType() == TransformType.DCT)
+			{
+				final int dctSize = parameters.getDctBlockSize(),
+						  bh = h/dctSize,
+						  bw = w/dctSize;
+						
+				codedBlockPattern = new byte[bh][bw];
+				
+				final int[] patterns = new int[bh*bw];
+				offset = readValues(bytes, offset, patterns);
+				
+				int acBlocks = 0;
+				for (int by = 0; by < bh; ++by)
+				{
+					for (int bx = 0; bx < bw; ++bx)
+					{
+						final int pattern = patterns[by*bw + bx];
+						if ((pattern & ~(DCT.BLOCK_DC | DCT.BLOCK_AC)) != 0)
+						{
+							throw new IllegalStateException("Motif de bloc invalide.");
+						}
+						
+						codedBlockPattern[by][bx] = (byte) pattern;
+						if ((pattern & DCT.BLOCK_AC) != 0)
+						{
+							++acBlocks;
+						}
+					}
+				}
+				
+				if (parameters.getCoefficientPrediction() == CoefficientPrediction.DC)
+				{
+					final int blockLength = dctSize*dctSize;
+					final int[] dc = new int[bh*bw],
+								ac = new int[acBlocks * (blockLength - 1)];
+								
+					offset = readValues(bytes, offset, dc);
+					offset = readValues(bytes, offset, ac);
+					
+					int i = 0;
+					for (int by = 0; by < bh; ++by)
+					{
+						for (int bx = 0; bx < bw; ++bx)
+						{
+							final int y0 = by*dctSize,
+									  x0 = bx*dctSize;
+									
+							coefficients[y0][x0] = dc[by*bw + bx];
+							if ((codedBlockPattern[by][bx] & DCT.BLOCK_AC) != 0)
+							{
+								for (int dy = 0; dy < dctSize; ++dy)
+								{
+									final double[] row = coefficients[y0 + dy];
+									for (int dx = dy == 0 ? 1 : 0; dx < dctSize; ++dx, ++i)
+									{
+										if (ac[i] != 0)
+										{
+											row[x0 + dx] = ac[i];
+										}
+									}
+								}
+							}
+						}
+					}
+				}
+				else
+				{
+					offset = readCoefficients(bytes, offset, coefficients);
+				}
+			}
+			else
+			{
+				codedBlockPattern = null;
+				offset = readCoefficients(bytes, offset, coefficients);
+			}
+			
+			if (type == FrameType.I)
+			{
+				return EncodedFrame.intraFrame(coefficients, codedBlockPattern);
+			}
+			
+			final int movementSize = parameters.getMovementBlockSize();
+			final MotionField vectors = new MotionField(w/movementSize, h/movementSize);
+			final short[] components = vectors.getData();
+			
+			final int[] decoded = new int[components.length];
+			readValues(bytes, offset, decoded);
+			for (int i = 0; i < components.length; ++i)
+			{
+				components[i] = (short) decoded[i];
+			}
+			
+			return EncodedFrame.predictedFrame(coefficients, codedBlockPattern, vectors);
+		}
+		catch (final IllegalStateException | ArrayIndexOutOfBoundsException e)
+		{
+			throw new IllegalArgumentException("Flux rANS invalide.", e);
+		}
+	}
+	
+	/**
+	 * Ecrire une suite de valeurs, alignée sur l'octet : table des fréquences,
+	 * valeurs échappées, nombre de mots rANS, puis ces mots. Une suite vide
+	 * n'écrit rien.
+	 * 
+	 * @param values
+	 *            valeurs.
+	 * @param out
+	 *            flux binaire, aligné sur l'octet.
+	 */
+	private static void writeValues(final int[] values, final BitWriter out)
+	{
+		if (values.length == 0)
+		{
+			return;
+		}
+		
+		final FrequencyTable table = FrequencyTable.build(values);
+		table.write(out);
+		
+		int escaped = 0;
+		for (final int value : values)
+		{
+			if (table.isEscaped(value))
+			{
+				++escaped;
+			}
+		}
+		
+		out.writeUnsignedExpGolomb(escaped);
+		for (final int value : values)
+		{
+			if (table.isEscaped(value))
+			{
+				out.writeSignedExpGolomb(value);
+			}
+		}
+		
+		final char[] words = encodeSymbols(values, table);
+		out.writeUnsignedExpGolomb(words.length);
+		out.align();
+		
+		for (final char word : words)
+		{
+			out.writeBits(word, 16);
+		}
+	}
+	
+	/**
+	 * Lire une suite de valeurs de longueur connue.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param offset
+	 *            position du début de la suite.
+	 * @param values
+	 *            tableau recevant les valeurs.
+	 * @return position suivant la fin de la suite.
+	 * @throws IllegalStateException
+	 *             si la suite est invalide.
+	 */
+	private static int readValues(final ByteBuffer bytes, final int offset, final int[] values)
+			throws IllegalStateException
+	{
+		if (values.length == 0)
+		{
+			return offset;
+		}
+		
+		final ByteBuffer suite = bytes.duplicate();
+		suite.position(offset);
+		
+		final BitReader in = new BitReader(suite);
+		final FrequencyTable table = FrequencyTable.read(in);
+		
+		final int escaped = in.readUnsignedExpGolomb();
+		if (escaped > values.length)
+		{
+			throw new IllegalStateException("Nombre de valeurs échappées invalide.");
+		}
+		
+		final int[] escapes = new int[escaped];
+		for (int i = 0; i < escaped; ++i)
+		{
+			escapes[i] = in.readSignedExpGolomb();
+		}
+		
+		final int length = in.readUnsignedExpGolomb();
+		in.align();
+		
+		final int start = bytes.limit() - (int) (in.getRemainingBits() / 8);
+		if (start + 2L*length > bytes.limit())
+		{
+			throw new IllegalStateException("Données rANS tronquées.");
+		}
+		
+		decodeSymbols(bytes, start, length, table, values);
+		if (escaped > 0 || table.hasEscapes())
+		{
+			resolveEscapes(values, escapes);
+		}
+		
+		return start + 2*length;
+	}
+	
+	/**
+	 * Lire tous les coefficients d'une matrice, ligne par ligne.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param offset
+	 *            position du début de la suite.
+	 * @param coefficients
+	 *            matrice nulle recevant les coefficients.
+	 * @return position suivant la fin de la suite.
+	 * @throws IllegalStateException
+	 *             si la suite est invalide.
+	 */
+	private static int readCoefficients(final ByteBuffer bytes, final int offset, final double[][] coefficients)
+			throws IllegalStateException
+	{
+		final int w = coefficients[0].length;
+		final int[] levels = new int[coefficients.length * w];
+		final int next = readValues(bytes, offset, levels);
+		
+		for (int y = 0; y < coefficients.length; ++y)
+		{
+			final double[] row = coefficients[y];
+			for (int x = 0, i = y*w; x < w; ++x, ++i)
+			{
+				if (levels[i] != 0)
+				{
+					row[x] = levels[i];
+				}
+			}
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Mettre les coefficients d'une matrice bout à bout, ligne par ligne.
+	 * 
+	 * @param coefficients
+	 *            matrice des coefficients.
+	 * @return coefficients entiers.
+	 */
+	private static int[] flatten(final double[][] coefficients)
+	{
+		final int w = coefficients[0].length;
+		final int[] values = new int[coefficients.length * w];
+		
+		for (int y = 0; y < coefficients.length; ++y)
+		{
+			for (int x = 0; x < w; ++x)
+			{
+				values[y*w + x] = (int) coefficients[y][x];
+			}
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Coder une suite de valeurs, la valeur i étant portée par l'état i
+	 * modulo {@link #WAYS}. Les symboles sont codés du dernier au premier,
+	 * pour être décodés dans l'ordre.
+	 * 
+	 * @param values
+	 *            valeurs.
+	 * @param table
+	 *            table des fréquences des valeurs.
+	 * @return mots de 16 bits du flux rANS : états finaux, puis mots de
+	 *         renormalisation dans l'ordre de lecture.
+	 */
+	private static char[] encodeSymbols(final int[] values, final FrequencyTable table)
+	{
+		final int n = values.length;
+		
+		// Au plus un mot par symbole, plus deux mots par état final.
+		final char[] words = new char[n + 2*WAYS];
+		int position = words.length;
+		
+		final long[] states = new long[WAYS];
+		Arrays.fill(states, LOWER_BOUND);
+		
+		for (int i = n-1; i >= 0; --i)
+		{
+			final int symbol    = table.symbol(values[i]),
+					  frequency = table.frequency(symbol);
+			long state = states[i & (WAYS-1)];
+			
+			if (state >= (long) frequency << (32 - FrequencyTable.SCALE_BITS))
+			{
+				words[--position] = (char) state;
+				state >>>= 16;
+			}
+			
+			states[i & (WAYS-1)] = ((state / frequency) << FrequencyTable.SCALE_BITS) + state % frequency
+					+ table.cumulative(symbol);
+		}
+		
+		for (int k = WAYS-1; k >= 0; --k)
+		{
+			words[--position] = (char) states[k];
+			words[--position] = (char) (states[k] >>> 16);
+		}
+		
+		return Arrays.copyOfRange(words, position, words.length);
+	}
+	
+	/**
+	 * Décoder une suite de valeurs. La boucle principale avance les
+	 * {@link #WAYS} états d'un symbole chacun, sans dépendance entre eux.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param offset
+	 *            position des données rANS de la suite.
+	 * @param length
+	 *            nombre de mots de 16 bits des données rANS.
+	 * @param table
+	 *            table des fréquences de la suite.
+	 * @param values
+	 *            tableau recevant les valeurs, {@link FrequencyTable#ESCAPE}
+	 *            pour les valeurs échappées.
+	 * @throws IllegalStateException
+	 *             si les données ne correspondent pas à leur longueur.
+	 */
+	private static void decodeSymbols(final ByteBuffer bytes, final int offset, final int length,
+			final FrequencyTable table, final int[] values) throws IllegalStateException
+	{
+		if (length < 2*WAYS)
+		{
+			throw new IllegalStateException("Données rANS tronquées.");
+		}
+		
+		final int[] slotValues = table.getSlotValues(),
+					slotSteps  = table.getSlotSteps();
+		final int n = values.length,
+				  end = offset + 2*length;
+				
+		int position = offset;
+		long x0 = readState(bytes, position),
+			 x1 = readState(bytes, position + 4),
+			 x2 = readState(bytes, position + 8),
+			 x3 = readState(bytes, position + 12);
+		position += 16;
+		
+		int i = 0;
+		for (; i + WAYS <= n; i += WAYS)
+		{
+			final int slot0 = (int) x0 & SLOT_MASK,
+					  slot1 = (int) x1 & SLOT_MASK,
+					  slot2 = (int) x2 & SLOT_MASK,
+					  slot3 = (int) x3 & SLOT_MASK,
+					  step0 = slotSteps[slot0],
+					  step1 = slotSteps[slot1],
+					  step2 = slotSteps[slot2],
+					  step3 = slotSteps[slot3];
+					
+			values[i]   = slotValues[slot0];
+			values[i+1] = slotValues[slot1];
+			values[i+2] = slotValues[slot2];
+			values[i+3] = slotValues[slot3];
+			
+			x0 = (step0 >>> FrequencyTable.SCALE_BITS) * (x0 >>> FrequencyTable.SCALE_BITS) + (step0 & SLOT_MASK);
+			x1 = (step1 >>> FrequencyTable.SCALE_BITS) * (x1 >>> FrequencyTable.SCALE_BITS) + (step1 & SLOT_MASK);
+			x2 = (step2 >>> FrequencyTable.SCALE_BITS) * (x2 >>> FrequencyTable.SCALE_BITS) + (step2 & SLOT_MASK);
+			x3 = (step3 >>> FrequencyTable.SCALE_BITS) * (x3 >>> FrequencyTable.SCALE_BITS) + (step3 & SLOT_MASK);
+			
+			// Renormalisation, dans l'ordre des symboles.
+			if (x0 < LOWER_BOUND)
+			{
+				x0 = x0 << 16 | readWord(bytes, position);
+				position += 2;
+			}
+			if (x1 < LOWER_BOUND)
+			{
+				x1 = x1 << 16 | readWord(bytes, position);
+				position += 2;
+			}
+			if (x2 < LOWER_BOUND)
+			{
+				x2 = x2 << 16 | readWord(bytes, position);
+				position += 2;
+			}
+			if (x3 < LOWER_BOUND)
+			{
+				x3 = x3 << 16 | readWord(bytes, position);
+				position += 2;
+			}
+		}
+		
+		// Derniers symboles, portés par les premiers états.
+		final long[] states = {x0, x1, x2};
+		for (int k = 0; i < n; ++i, ++k)
+		{
+			final int slot = (int) states[k] & SLOT_MASK,
+					  step = slotSteps[slot];
+					
+			values[i] = slotValues[slot];
+			states[k] = (step >>> FrequencyTable.SCALE_BITS) * (states[k] >>> FrequencyTable.SCALE_BITS)
+					+ (step & SLOT_MASK);
+					
+			if (states[k] < LOWER_BOUND)
+			{
+				states[k] = states[k] << 16 | readWord(bytes, position);
+				position += 2;
+			}
+		}
+		
+		if (position != end)
+		{
+			throw new IllegalStateException("Données rANS invalides.");
+		}
+	}
+	
+	/**
+	 * Remplacer les valeurs échappées décodées par leurs vraies valeurs.
+	 * 
+	 * @param values
+	 *            valeurs décodées.
+	 * @param escapes
+	 *            valeurs échappées, dans l'ordre.
+	 * @throws IllegalStateException
+	 *             si le nombre de valeurs échappées ne correspond pas.
+	 */
+	private static void resolveEscapes(final int[] values, final int[] escapes) throws IllegalStateException
+	{
+		int e = 0;
+		for (int i = 0; i < values.length; ++i)
+		{
+			if (values[i] == FrequencyTable.ESCAPE)
+			{
+				if (e == escapes.length)
+				{
+					throw new IllegalStateException("Valeurs échappées manquantes.");
+				}
+				
+				values[i] = escapes[e++];
+			}
+		}
+		
+		if (e != escapes.length)
+		{
+			throw new IllegalStateException("Valeurs échappées en trop.");
+		}
+	}
+	
+	/**
+	 * Lire un état rANS de 32 bits.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param position
+	 *            position de l'état.
+	 * @return état, non signé.
+	 */
+	private static long readState(final ByteBuffer bytes, final int position)
+	{
+		return (long) readWord(bytes, position) << 16 | readWord(bytes, position + 2);
+	}
+	
+	/**
+	 * Lire un mot de 16 bits, poids fort en premier.
+	 * 
+	 * @param bytes
+	 *            octets du flux.
+	 * @param position
+	 *            position du mot.
+	 * @return mot de 16 bits.
+	 */
+	private static int readWord(final ByteBuffer bytes, final int position)
+	{
+		return (bytes.get(position) & 0xFF) << 8 | (bytes.get(position + 1) & 0xFF);
+	}
+}
@@ -0,0 +1,536 @@
+package img.videoEncoder.io;
+
+import java.nio.ByteBuffer;
+
+import img.math.MotionField;
+import img.math.transforms.DCT;
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams.CoefficientPrediction;
+import img.videoEncoder.io.EncoderParams.TransformType;
+
+/**
+ * Codage à longueur variable des trames encodées, en un véritable flux
+ * binaire :
+ * <ul>
+ * <li>en-tête : type de trame sur un bit, largeur et hauteur de la matrice
+ * des coefficients en Golomb exponentiel ;</li>
+ * <li>DCT en blocs : pour chaque bloc, son motif codé puis ses coefficients
+ * parcourus en zig-zag, le DC en Golomb exponentiel signé et les AC en paires
+ * (niveau, plage de zéros) terminées par un niveau nul ;</li>
+ * <li>ondelettes : chaque ligne de coefficients en paires (niveau, plage de
+ * zéros) ;</li>
+ * <li>trames prédites : composantes des erreurs de prédiction des vecteurs de
+ * mouvement en Golomb exponentiel signé.</li>
+ * </ul>
+ * Le décodage des paires passe par une table indexée par les bits suivants
+ * du flux, qui donne d'un coup toutes les paires qu'ils contiennent.
+ */
+public class VLC
+{
+	/**
+	 * Nombre de bits consultés par accès à la table de décodage.
+	 */
+	private static final int LOOKUP_BITS = 12;
+	/**
+	 * Nombre maximal de paires décodées par accès : une paire occupe au
+	 * moins 4 bits.
+	 */
+	private static final int MAX_PAIRS = LOOKUP_BITS / 4;
+	/**
+	 * Indicateur de fin de bloc dans une entrée de la table.
+	 */
+	private static final int END_OF_BLOCK = 1 << 6;
+	/**
+	 * Table de décodage : bits consommés (bits 0 à 3), nombre de paires
+	 * (bits 4 et 5) et fin de bloc, pour chaque valeur des bits suivants.
+	 */
+	private static final int[] LOOKUP = new int[1 << LOOKUP_BITS];
+	/**
+	 * Paires de chaque entrée de la table : niveau << 8 | plage de zéros.
+	 */
+	private static final int[] LOOKUP_PAIRS = new int[MAX_PAIRS << LOOKUP_BITS];
+	
+	/**
+	 * Ordre des motifs de blocs codés, du plus au moins fréquent, pour les
+	 * trames intra et prédites.
+	 */
+	private static final byte[][] PATTERN_ORDER = {
+		{DCT.BLOCK_DC | DCT.BLOCK_AC, DCT.BLOCK_DC, DCT.BLOCK_AC, DCT.BLOCK_ZERO},
+		{DCT.BLOCK_ZERO, DCT.BLOCK_DC, DCT.BLOCK_AC, DCT.BLOCK_DC | DCT.BLOCK_AC}
+	};
+	/**
+	 * Rang de chaque motif de blocs codés dans {@link #PATTERN_ORDER}.
+	 */
+	private static final int[][] PATTERN_RANK = new int[2][4];
+	
+	static
+	{
+		for (int type = 0; type < PATTERN_ORDER.length; ++type)
+		{
+			for (int rank = 0; rank < PATTERN_ORDER[type].length; ++rank)
+			{
+				PATTERN_RANK[type][PATTERN_ORDER[type][rank]] = rank;
+			}
+		}
+		
+		for (int bits = 0; bits < LOOKUP.length; ++bits)
+		{
+			LOOKUP[bits] = parseLookupEntry(bits);
+		}
+	}
+	
+	/**
+	 * Coder une trame encodée.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return octets du flux binaire.
+	 */
+	public static byte[] encode(final EncodedFrame frame, final EncoderParams parameters)
+	{
+		final BitWriter out = new BitWriter();
+		write(frame, parameters, out);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Décoder une trame encodée.
+	 * 
+	 * @param bytes
+	 *            octets du flux binaire.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final byte[] bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return read(new BitReader(bytes), parameters);
+	}
+	
+	/**
+	 * Décoder une trame encodée, lue sans copie dans un buffer.
+	 * 
+	 * @param bytes
+	 *            octets du flux, de la position à la limite du buffer, qui
+	 *            n'est pas modifié.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame decode(final ByteBuffer bytes, final EncoderParams parameters)
+			throws IllegalArgumentException
+	{
+		return read(new BitReader(bytes), parameters);
+	}
+	
+	/**
+	 * Ecrire une trame encodée dans un flux binaire.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param out
+	 *            flux binaire.
+	 */
+	public static void write(final EncodedFrame frame, final EncoderParams parameters, final BitWriter out)
+	{
+		final double[][] coefficients = frame.getTransformedErrors();
+		final int h = coefficients.length,
+				  w = coefficients[0].length;
+				
+		out.writeBit(frame.getType() == FrameType.P);
+		out.writeUnsignedExpGolomb(w);
+		out.writeUnsignedExpGolomb(h);
+		
+		if (parameters.getTransformType() == TransformType.DCT)
+		{
+			writeBlocks(coefficients, frame.getCodedBlockPattern(), frame.getType(), parameters, out);
+		}
+		else
+		{
+			for (final double[] row : coefficients)
+			{
+				writeRow(row, out);
+			}
+		}
+		
+		if (frame.getType() == FrameType.P)
+		{
+			final short[] vectors = frame.getTransformedBlockMovementMap().getData();
+			for (final short component : vectors)
+			{
+				out.writeSignedExpGolomb(component);
+			}
+		}
+	}
+	
+	/**
+	 * Lire une trame encodée depuis un flux binaire.
+	 * 
+	 * @param in
+	 *            flux binaire.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @return trame encodée.
+	 * @throws IllegalArgumentException
+	 *             si le flux est invalide.
+	 */
+	public static EncodedFrame read(final BitReader in, final EncoderParams parameters) throws IllegalArgumentException
+	{
+		try
+		{
+			final FrameType type = in.readBit() ? FrameType.P : FrameType.I;
+			final int w = in.readUnsignedExpGolomb(),
+					  h = in.readUnsignedExpGolomb();
+					
+			final double[][] coefficients = new double[h][w];
+			final byte[][] codedBlockPattern;
+			
+			if (parameters.getTransformType() == TransformType.DCT)
+			{
+				final int dctSize = parameters.getDctBlockSize();
+				codedBlockPattern = new byte[h/dctSize][w/dctSize];
+				readBlocks(in, coefficients, codedBlockPattern, type, parameters);
+			}
+			else
+			{
+				codedBlockPattern = null;
+				
+				final int[] positions = new int[w],
+							levels    = new int[w];
+				for (final double[] row : coefficients)
+				{
+					final int n = readRunLevels(in, 0, w, positions, levels);
+					for (int i = 0; i < n; ++i)
+					{
+						row[positions[i]] = levels[i];
+					}
+				}
+			}
+			
+			if (type == FrameType.I)
+			{
+				return EncodedFrame.intraFrame(coefficients, codedBlockPattern);
+			}
+			
+			final int movementSize = parameters.getMovementBlockSize();
+			final MotionField vectors = new MotionField(w/movementSize, h/movementSize);
+			final short[] components = vectors.getData();
+			for (int i = 0; i < components.length; ++i)
+			{
+				components[i] = (short) in.readSignedExpGolomb();
+			}
+			
+			return EncodedFrame.predictedFrame(coefficients, codedBlockPattern, vectors);
+		}
+		catch (final IllegalStateException e)
+		{
+			throw new IllegalArgumentException("Flux binaire invalide.", e);
+		}
+	}
+	
+	/**
+	 * Ecrire les blocs de coefficients DCT, chacun précédé de son motif codé.
+	 * 
+	 * @param coefficients
+	 *            coefficients quantifiés après DPCM.
+	 * @param codedBlockPattern
+	 *            motif des blocs codés.
+	 * @param type
+	 *            type de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param out
+	 *            flux binaire.
+	 */
+	private static void writeBlocks(final double[][] coefficients, final byte[][] codedBlockPattern,
+			final FrameType type, final EncoderParams parameters, final BitWriter out)
+	{
+		final int dctSize = parameters.getDctBlockSize();
+		final ZigZagScan scan = ZigZagScan.get(dctSize);
+		
+		// Avec la DPCM des seuls DC, les AC transmis sont les coefficients
+		// quantifiés : le motif suffit à savoir s'ils sont tous nuls.
+		final boolean patternCoversAc = parameters.getCoefficientPrediction() == CoefficientPrediction.DC;
+		
+		for (int by = 0; by < codedBlockPattern.length; ++by)
+		{
+			for (int bx = 0; bx < codedBlockPattern[0].length; ++bx)
+			{
+				final byte pattern = codedBlockPattern[by][bx];
+				out.writeUnsignedExpGolomb(PATTERN_RANK[type.ordinal()][pattern]);
+				
+				final double[] firstRow = coefficients[by*dctSize];
+				out.writeSignedExpGolomb((int) firstRow[bx*dctSize]);
+				
+				if (patternCoversAc && (pattern & DCT.BLOCK_AC) == 0)
+				{
+					continue;
+				}
+				
+				// Coefficients AC en zig-zag : paires (niveau, plage de zéros).
+				int run = 0;
+				for (int k = 1; k < scan.length(); ++k)
+				{
+					final int level = (int) coefficients[by*dctSize + scan.y(k)][bx*dctSize + scan.x(k)];
+					if (level == 0)
+					{
+						++run;
+						continue;
+					}
+					
+					out.writeSignedExpGolomb(level);
+					out.writeUnsignedExpGolomb(run);
+					run = 0;
+				}
+				
+				// Fin de bloc.
+				out.writeSignedExpGolomb(0);
+			}
+		}
+	}
+	
+	/**
+	 * Lire les blocs de coefficients DCT et leurs motifs codés.
+	 * 
+	 * @param in
+	 *            flux binaire.
+	 * @param coefficients
+	 *            matrice nulle recevant les coefficients.
+	 * @param codedBlockPattern
+	 *            matrice recevant les motifs des blocs.
+	 * @param type
+	 *            type de la trame.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 */
+	private static void readBlocks(final BitReader in, final double[][] coefficients, final byte[][] codedBlockPattern,
+			final FrameType type, final EncoderParams parameters)
+	{
+		final int dctSize = parameters.getDctBlockSize();
+		final ZigZagScan scan = ZigZagScan.get(dctSize);
+		final boolean patternCoversAc = parameters.getCoefficientPrediction() == CoefficientPrediction.DC;
+		
+		final int[] positions = new int[scan.length()],
+					levels    = new int[scan.length()];
+					
+		for (int by = 0; by < codedBlockPattern.length; ++by)
+		{
+			for (int bx = 0; bx < codedBlockPattern[0].length; ++bx)
+			{
+				final int rank = in.readUnsignedExpGolomb();
+				if (rank >= PATTERN_ORDER[type.ordinal()].length)
+				{
+					throw new IllegalStateException("Motif de bloc invalide.");
+				}
+				
+				final byte pattern = PATTERN_ORDER[type.ordinal()][rank];
+				codedBlockPattern[by][bx] = pattern;
+				
+				coefficients[by*dctSize][bx*dctSize] = in.readSignedExpGolomb();
+				
+				if (patternCoversAc && (pattern & DCT.BLOCK_AC) == 0)
+				{
+					continue;
+				}
+				
+				final int n = readRunLevels(in, 1, scan.length(), positions, levels);
+				for (int i = 0; i < n; ++i)
+				{
+					coefficients[by*dctSize + scan.y(positions[i])][bx*dctSize + scan.x(positions[i])] = levels[i];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Ecrire une ligne de coefficients en paires (niveau, plage de zéros)
+	 * terminées par un niveau nul.
+	 * 
+	 * @param row
+	 *            ligne de coefficients.
+	 * @param out
+	 *            flux binaire.
+	 */
+	private static void writeRow(final double[] row, final BitWriter out)
+	{
+		int run = 0;
+		for (final double coefficient : row)
+		{
+			final int level = (int) coefficient;
+			if (level == 0)
+			{
+				++run;
+				continue;
+			}
+			
+			out.writeSignedExpGolomb(level);
+			out.writeUnsignedExpGolomb(run);
+			run = 0;
+		}
+		
+		out.writeSignedExpGolomb(0);
+	}
+	
+	/**
+	 * Lire des paires (niveau, plage de zéros) jusqu'au niveau nul de fin,
+	 * plusieurs paires à la fois grâce à la table de décodage.
+	 * 
+	 * @param in
+	 *            flux binaire.
+	 * @param first
+	 *            position du premier coefficient concerné.
+	 * @param length
+	 *            position suivant le dernier coefficient.
+	 * @param positions
+	 *            tableau recevant les positions des coefficients non nuls.
+	 * @param levels
+	 *            tableau recevant les niveaux des coefficients non nuls.
+	 * @return nombre de coefficients non nuls.
+	 * @throws IllegalStateException
+	 *             si une plage de zéros dépasse la fin des coefficients.
+	 */
+	private static int readRunLevels(final BitReader in, final int first, final int length, final int[] positions,
+			final int[] levels) throws IllegalStateException
+	{
+		int position = first,
+			n = 0;
+			
+		while (true)
+		{
+			final int bits  = in.peekBits(LOOKUP_BITS),
+					  entry = LOOKUP[bits];
+					
+			// Aucun code complet dans la fenêtre : lecture code par code.
+			if (entry == 0)
+			{
+				final int level = in.readSignedExpGolomb();
+				if (level == 0)
+				{
+					return n;
+				}
+				
+				position += in.readUnsignedExpGolomb();
+				if (position >= length)
+				{
+					throw new IllegalStateException("Plage de zéros invalide.");
+				}
+				
+				positions[n] = position++;
+				levels[n++] = level;
+				continue;
+			}
+			
+			in.skipBits(entry & 0xF);
+			
+			final int pairs = (entry >> 4) & 0x3;
+			for (int i = 0; i < pairs; ++i)
+			{
+				final int pair = LOOKUP_PAIRS[bits*MAX_PAIRS + i];
+				
+				position += pair & 0xFF;
+				if (position >= length)
+				{
+					throw new IllegalStateException("Plage de zéros invalide.");
+				}
+				
+				positions[n] = position++;
+				levels[n++] = pair >> 8;
+			}
+			
+			if ((entry & END_OF_BLOCK) != 0)
+			{
+				return n;
+			}
+		}
+	}
+	
+	/**
+	 * Calculer l'entrée de la table de décodage pour une valeur des bits
+	 * suivants du flux : les paires complètes qu'elle contient, jusqu'à la fin
+	 * de bloc éventuelle.
+	 * 
+	 * @param bits
+	 *            valeur des {@link #LOOKUP_BITS} bits suivants.
+	 * @return entrée de la table.
+	 */
+	private static int parseLookupEntry(final int bits)
+	{
+		int consumed = 0,
+			pairs = 0;
+			
+		while (pairs < MAX_PAIRS)
+		{
+			final int levelLength = lookupCodeLength(bits, consumed);
+			if (levelLength == 0)
+			{
+				break;
+			}
+			
+			final int levelCode = lookupCodeValue(bits, consumed, levelLength),
+					  level     = (levelCode & 1) != 0 ? (levelCode + 1) >>> 1 : -(levelCode >>> 1);
+			if (level == 0)
+			{
+				return (consumed + levelLength) | pairs << 4 | END_OF_BLOCK;
+			}
+			
+			final int runLength = lookupCodeLength(bits, consumed + levelLength);
+			if (runLength == 0)
+			{
+				break;
+			}
+			
+			final int run = lookupCodeValue(bits, consumed + levelLength, runLength);
+			LOOKUP_PAIRS[bits*MAX_PAIRS + pairs++] = level << 8 | run;
+			consumed += levelLength + runLength;
+		}
+		
+		return consumed | pairs << 4;
+	}
+	
+	/**
+	 * Obtenir la longueur du code de Golomb exponentiel commençant à la
+	 * position spécifiée des bits de la table.
+	 * 
+	 * @param bits
+	 *            valeur des {@link #LOOKUP_BITS} bits.
+	 * @param position
+	 *            position du code.
+	 * @return longueur du code, ou 0 s'il ne tient pas dans les bits.
+	 */
+	private static int lookupCodeLength(final int bits, final int position)
+	{
+		if (position >= LOOKUP_BITS)
+		{
+			return 0;
+		}
+		
+		final int length = 2*Integer.numberOfLeadingZeros(bits << (32 - LOOKUP_BITS + position)) + 1;
+		return position + length <= LOOKUP_BITS ? length : 0;
+	}
+	
+	/**
+	 * Obtenir la valeur du code de Golomb exponentiel de longueur spécifiée
+	 * commençant à la position spécifiée des bits de la table.
+	 * 
+	 * @param bits
+	 *            valeur des {@link #LOOKUP_BITS} bits.
+	 * @param position
+	 *            position du code.
+	 * @param length
+	 *            longueur du code.
+	 * @return valeur du code.
+	 */
+	private static int lookupCodeValue(final int bits, final int position, final int length)
+	{
+		return ((bits >>> (LOOKUP_BITS - position - length)) & ((1 << length) - 1)) - 1;
+	}
+}
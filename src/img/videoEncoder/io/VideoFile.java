@@ -0,0 +1,242 @@
+package img.videoEncoder.io;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import img.videoEncoder.io.EncodedFrame.FrameType;
+import img.videoEncoder.io.EncoderParams.CoefficientPrediction;
+import img.videoEncoder.io.EncoderParams.EntropyCoding;
+import img.videoEncoder.io.EncoderParams.TransformType;
+import img.videoEncoder.io.EncoderParams.VectorPrediction;
+
+/**
+ * Format du fichier conteneur d'une séquence encodée, écrit par
+ * {@link VideoFileWriter} et lu par {@link VideoFileReader}. Tous les
+ * entiers sont gros-boutistes et chaque partie est protégée par un
+ * CRC-32C :
+ * <ul>
+ * <li>en-tête : "VENC", version (short), longueur des paramètres (short),
+ * paramètres de l'encodeur (voir {@link #writeParams(ByteBuffer, EncoderParams)}),
+ * CRC de l'en-tête ;</li>
+ * <li>une entrée par trame : type (octet), taille (int), CRC des données,
+ * puis les données du codage entropique ({@link EncodedFrame#toBytes(EncoderParams)}) ;</li>
+ * <li>index des trames : "VIDX", nombre de trames, puis pour chaque trame la
+ * position de son entrée (long), sa taille (int) et son type (octet), et
+ * enfin le CRC de l'index ;</li>
+ * <li>pied de fichier : position de l'index (long) et "VEND".</li>
+ * </ul>
+ */
+public final class VideoFile
+{
+	/**
+	 * Signature du début de fichier : "VENC".
+	 */
+	/*package*/ static final int MAGIC = 0x56454E43;
+	/**
+	 * Signature de l'index : "VIDX".
+	 */
+	/*package*/ static final int INDEX_MAGIC = 0x56494458;
+	/**
+	 * Signature de la fin de fichier : "VEND".
+	 */
+	/*package*/ static final int END_MAGIC = 0x56454E44;
+	/**
+	 * Version du format.
+	 */
+	/*package*/ static final short VERSION = 2;
+	
+	/**
+	 * Taille de l'en-tête d'une entrée de trame : type, taille et CRC.
+	 */
+	/*package*/ static final int RECORD_HEADER_SIZE = 1 + 4 + 4;
+	/**
+	 * Taille d'une entrée de l'index : position, taille et type.
+	 */
+	/*package*/ static final int INDEX_ENTRY_SIZE = 8 + 4 + 1;
+	/**
+	 * Taille du pied de fichier : position de l'index et signature.
+	 */
+	/*package*/ static final int FOOTER_SIZE = 8 + 4;
+	/**
+	 * Taille maximale des paramètres sérialisés.
+	 */
+	/*package*/ static final int MAX_PARAMS_SIZE = 1024;
+	
+	private VideoFile()
+	{
+	}
+	
+	/**
+	 * Ecrire l'en-tête du fichier.
+	 * 
+	 * @param buffer
+	 *            buffer de destination, d'au moins
+	 *            {@link #MAX_PARAMS_SIZE} + 12 octets restants.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 */
+	/*package*/ static void writeHeader(final ByteBuffer buffer, final EncoderParams parameters)
+	{
+		final int start = buffer.position();
+		
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short) 0);
+		writeParams(buffer, parameters);
+		buffer.putShort(start + 6, (short) (buffer.position() - start - 8));
+		
+		final ByteBuffer header = buffer.duplicate();
+		header.limit(buffer.position());
+		header.position(start);
+		buffer.putInt(CRC32C.compute(header));
+	}
+	
+	/**
+	 * Lire l'en-tête du fichier et vérifier son intégrité.
+	 * 
+	 * @param buffer
+	 *            buffer positionné au début de l'en-tête, positionné après
+	 *            lui au retour.
+	 * @return paramètres de l'encodeur.
+	 * @throws IOException
+	 *             si l'en-tête est invalide ou corrompu.
+	 */
+	/*package*/ static EncoderParams readHeader(final ByteBuffer buffer) throws IOException
+	{
+		final int start = buffer.position();
+		
+		if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+		{
+			throw new IOException("Ce fichier n'est pas une séquence encodée.");
+		}
+		if (buffer.getShort() != VERSION)
+		{
+			throw new IOException("Version du format non supportée.");
+		}
+		
+		final int paramsSize = buffer.getShort() & 0xFFFF;
+		if (paramsSize > buffer.remaining() - 4)
+		{
+			throw new IOException("En-tête tronqué.");
+		}
+		
+		final ByteBuffer header = buffer.duplicate();
+		header.limit(start + 8 + paramsSize);
+		header.position(start);
+		if (CRC32C.compute(header) != buffer.getInt(start + 8 + paramsSize))
+		{
+			throw new IOException("En-tête corrompu.");
+		}
+		
+		final EncoderParams parameters = readParams(buffer);
+		buffer.position(start + 8 + paramsSize + 4);
+		return parameters;
+	}
+	
+	/**
+	 * Ecrire les paramètres de l'encodeur nécessaires au décodage. Le
+	 * stockage des plans, propre à la machine, n'est pas écrit.
+	 * 
+	 * @param buffer
+	 *            buffer de destination.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 */
+	private static void writeParams(final ByteBuffer buffer, final EncoderParams parameters)
+	{
+		buffer.putInt(parameters.getDctBlockSize());
+		buffer.putInt(parameters.getMovementBlockSize());
+		buffer.putInt(parameters.getQuantificationScale());
+		buffer.putDouble(parameters.getZeroBlockThreshold());
+		buffer.put((byte) parameters.getTransformType().ordinal());
+		buffer.putInt(parameters.getWaveletLevels());
+		buffer.put((byte) parameters.getVectorPrediction().ordinal());
+		buffer.put((byte) parameters.getCoefficientPrediction().ordinal());
+		buffer.put((byte) parameters.getEntropyCoding().ordinal());
+		
+		buffer.putInt(parameters.getSliceCount());
+		buffer.putInt(parameters.getSliceRows());
+		
+		final int[][] weights = parameters.getQuantificationWeights();
+		buffer.put((byte) weights.length);
+		buffer.put((byte) weights[0].length);
+		for (final int[] row : weights)
+		{
+			for (final int weight : row)
+			{
+				buffer.putShort((short) weight);
+			}
+		}
+	}
+	
+	/**
+	 * Lire les paramètres de l'encodeur.
+	 * 
+	 * @param buffer
+	 *            buffer positionné au début des paramètres.
+	 * @return paramètres de l'encodeur.
+	 * @throws IOException
+	 *             si un paramètre est invalide.
+	 */
+	private static EncoderParams readParams(final ByteBuffer buffer) throws IOException
+	{
+		try
+		{
+			final EncoderParams parameters = new EncoderParams()
+					.dctBlockSize(buffer.getInt())
+					.movementBlockSize(buffer.getInt())
+					.quantifierScale(buffer.getInt())
+					.zeroBlockThreshold(buffer.getDouble())
+					.transformType(TransformType.values()[buffer.get()])
+					.waveletLevels(buffer.getInt())
+					.vectorPrediction(VectorPrediction.values()[buffer.get()])
+					.coefficientPrediction(CoefficientPrediction.values()[buffer.get()])
+					.entropyCoding(EntropyCoding.values()[buffer.get()]);
+			
+			final int sliceCount = buffer.getInt(),
+					  sliceRows  = buffer.getInt();
+			if (sliceRows > 0)
+			{
+				parameters.sliceRows(sliceRows);
+			}
+			else
+			{
+				parameters.sliceCount(sliceCount);
+			}
+					
+			final int[][] weights = new int[buffer.get() & 0xFF][buffer.get() & 0xFF];
+			for (final int[] row : weights)
+			{
+				for (int x = 0; x < row.length; ++x)
+				{
+					row[x] = buffer.getShort();
+				}
+			}
+			
+			return parameters.quantificationWeights(weights);
+		} catch (ArrayIndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new IOException("Paramètres de l'encodeur invalides.", e);
+		}
+	}
+	
+	/**
+	 * Obtenir le type de trame correspondant à un octet d'une entrée.
+	 * 
+	 * @param type
+	 *            octet du type.
+	 * @return type de trame.
+	 * @throws IOException
+	 *             si le type est inconnu.
+	 */
+	/*package*/ static FrameType frameType(final byte type) throws IOException
+	{
+		if (type < 0 || type >= FrameType.values().length)
+		{
+			throw new IOException("Type de trame inconnu : " + type);
+		}
+		
+		return FrameType.values()[type];
+	}
+}
@@ -0,0 +1,343 @@
+package img.videoEncoder.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import img.videoEncoder.io.EncodedFrame.FrameType;
+
+/**
+ * Lecture à accès aléatoire d'un fichier conteneur (voir {@link VideoFile}).
+ * Seuls l'en-tête, le pied et l'index sont projetés en mémoire et lus à
+ * l'ouverture. Les données des trames sont projetées par morceaux de moins
+ * de 2 Gio, à la première lecture d'une de leurs trames, et les positions
+ * restent des long : la taille du fichier n'est pas limitée. Les données
+ * d'une trame ne sont lues, par le système, que lorsqu'on y accède, et sont
+ * décodées sans copie.
+ */
+public class VideoFileReader implements AutoCloseable
+{
+	/**
+	 * Taille maximale d'un morceau de trames, bien en deçà de la limite d'un
+	 * buffer : une trame plus grande forme seule son morceau.
+	 */
+	private static final long MAX_CHUNK_SIZE = 1L << 30;
+	
+	/**
+	 * Fichier lu.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Paramètres de l'encodeur lus dans l'en-tête.
+	 */
+	private final EncoderParams parameters;
+	
+	/**
+	 * Position des données de chaque trame.
+	 */
+	private final long[] offsets;
+	/**
+	 * Taille des données de chaque trame.
+	 */
+	private final int[] sizes;
+	/**
+	 * Type de chaque trame.
+	 */
+	private final FrameType[] types;
+	/**
+	 * Morceau contenant chaque trame.
+	 */
+	private final int[] frameChunks;
+	
+	/**
+	 * Position dans le fichier de chaque morceau.
+	 */
+	private final long[] chunkPositions;
+	/**
+	 * Taille de chaque morceau.
+	 */
+	private final int[] chunkSizes;
+	/**
+	 * Projection en mémoire de chaque morceau, en lecture seule, ou null s'il
+	 * n'a pas encore été lu.
+	 */
+	private final MappedByteBuffer[] chunks;
+	
+	/**
+	 * Ouvrir un fichier conteneur, en vérifiant son en-tête et son index.
+	 * 
+	 * @param path
+	 *            chemin du fichier.
+	 * @throws IOException
+	 *             si le fichier est inexistant, invalide ou corrompu.
+	 */
+	public VideoFileReader(final Path path) throws IOException
+	{
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		
+		try
+		{
+			final long size = channel.size();
+			
+			// En-tête, de taille bornée.
+			parameters = VideoFile.readHeader(map(0, Math.min(size, VideoFile.MAX_PARAMS_SIZE + 12)));
+			
+			// Pied de fichier, puis index.
+			final ByteBuffer footer = size >= VideoFile.FOOTER_SIZE ?
+					map(size - VideoFile.FOOTER_SIZE, VideoFile.FOOTER_SIZE)
+				:
+					null;
+			if (footer == null || footer.getInt(8) != VideoFile.END_MAGIC)
+			{
+				throw new IOException("Fichier tronqué : pied de fichier absent.");
+			}
+			
+			final long indexPosition = footer.getLong(0);
+			if (indexPosition < 0 || indexPosition + 12 > size - VideoFile.FOOTER_SIZE)
+			{
+				throw new IOException("Index des trames invalide.");
+			}
+			if (size - VideoFile.FOOTER_SIZE - indexPosition > Integer.MAX_VALUE)
+			{
+				throw new IOException("Index des trames trop grand.");
+			}
+			
+			final ByteBuffer index = map(indexPosition, size - VideoFile.FOOTER_SIZE - indexPosition);
+			final int frameCount = index.getInt(4);
+			if (index.getInt(0) != VideoFile.INDEX_MAGIC || frameCount < 0
+					|| 8 + (long) frameCount*VideoFile.INDEX_ENTRY_SIZE + 4 != index.limit())
+			{
+				throw new IOException("Index des trames invalide.");
+			}
+			
+			final int indexSize = 8 + frameCount*VideoFile.INDEX_ENTRY_SIZE;
+			if (CRC32C.compute(slice(index, 0, indexSize)) != index.getInt(indexSize))
+			{
+				throw new IOException("Index des trames corrompu.");
+			}
+			
+			offsets = new long[frameCount];
+			sizes = new int[frameCount];
+			types = new FrameType[frameCount];
+			
+			for (int i = 0, entry = 8; i < frameCount; ++i, entry += VideoFile.INDEX_ENTRY_SIZE)
+			{
+				offsets[i] = index.getLong(entry) + VideoFile.RECORD_HEADER_SIZE;
+				sizes[i] = index.getInt(entry + 8);
+				types[i] = VideoFile.frameType(index.get(entry + 12));
+				
+				if (offsets[i] < VideoFile.RECORD_HEADER_SIZE || sizes[i] < 0 || sizes[i] > Integer.MAX_VALUE - 4
+						|| offsets[i] + sizes[i] > indexPosition)
+				{
+					throw new IOException("Entrée de l'index invalide : trame " + i);
+				}
+			}
+			
+			// Morceaux : trames successives, avec le CRC qui précède leurs
+			// données, tant que le morceau reste sous sa taille maximale.
+			frameChunks = new int[frameCount];
+			final long[] positions = new long[frameCount],
+						 ends = new long[frameCount];
+						
+			int chunkCount = 0;
+			for (int i = 0; i < frameCount; ++i)
+			{
+				final long start = offsets[i] - 4,
+						   end = offsets[i] + sizes[i];
+						
+				if (chunkCount == 0 || Math.max(end, ends[chunkCount - 1])
+						- Math.min(start, positions[chunkCount - 1]) > MAX_CHUNK_SIZE)
+				{
+					positions[chunkCount] = start;
+					ends[chunkCount++] = end;
+				}
+				else
+				{
+					positions[chunkCount - 1] = Math.min(start, positions[chunkCount - 1]);
+					ends[chunkCount - 1] = Math.max(end, ends[chunkCount - 1]);
+				}
+				
+				frameChunks[i] = chunkCount - 1;
+			}
+			
+			chunkPositions = Arrays.copyOf(positions, chunkCount);
+			chunkSizes = new int[chunkCount];
+			for (int c = 0; c < chunkCount; ++c)
+			{
+				chunkSizes[c] = (int) (ends[c] - positions[c]);
+			}
+			chunks = new MappedByteBuffer[chunkCount];
+		} catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Obtenir les paramètres de l'encodeur de la séquence.
+	 * @return paramètres de l'encodeur.
+	 */
+	public EncoderParams getParameters()
+	{
+		return parameters;
+	}
+	
+	/**
+	 * Obtenir le nombre de trames de la séquence.
+	 * @return nombre de trames.
+	 */
+	public int getFrameCount()
+	{
+		return sizes.length;
+	}
+	
+	/**
+	 * Obtenir le type d'une trame, sans lire ses données.
+	 * 
+	 * @param index
+	 *            numéro de la trame.
+	 * @return type de la trame.
+	 */
+	public FrameType getFrameType(final int index)
+	{
+		return types[index];
+	}
+	
+	/**
+	 * Obtenir les données d'une trame, sans copie ni vérification.
+	 * 
+	 * @param index
+	 *            numéro de la trame.
+	 * @return vue en lecture seule sur les données de la trame dans la
+	 *         projection de son morceau du fichier.
+	 * @throws IOException
+	 *             si le morceau de la trame ne peut pas être projeté.
+	 */
+	public ByteBuffer getFrameData(final int index) throws IOException
+	{
+		final int chunk = frameChunks[index];
+		return slice(chunk(chunk), (int) (offsets[index] - chunkPositions[chunk]), sizes[index]);
+	}
+	
+	/**
+	 * Lire une trame, après avoir vérifié le CRC de ses données.
+	 * 
+	 * @param index
+	 *            numéro de la trame.
+	 * @return trame encodée.
+	 * @throws IOException
+	 *             si les données de la trame sont illisibles ou corrompues.
+	 */
+	public EncodedFrame getFrame(final int index) throws IOException
+	{
+		final int chunk = frameChunks[index];
+		final ByteBuffer data = getFrameData(index);
+		if (CRC32C.compute(data) != chunk(chunk).getInt((int) (offsets[index] - chunkPositions[chunk]) - 4))
+		{
+			throw new IOException("Trame " + index + " corrompue.");
+		}
+		
+		// Les décodeurs entropiques lisent directement la projection.
+		try
+		{
+			return EncodedFrame.fromBytes(data, parameters);
+		} catch (IllegalArgumentException | IllegalStateException e)
+		{
+			throw new IOException("Trame " + index + " invalide.", e);
+		}
+	}
+	
+	/**
+	 * Obtenir le flux des trames de la séquence, lues au fur et à mesure.
+	 * 
+	 * @return flux des trames encodées.
+	 * @throws UncheckedIOException
+	 *             à la lecture d'une trame corrompue.
+	 */
+	public Stream<EncodedFrame> frames()
+	{
+		return IntStream.range(0, getFrameCount()).mapToObj(i ->
+		{
+			try
+			{
+				return getFrame(i);
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Fermer le fichier. Les projections déjà faites restent valides jusqu'à
+	 * ce qu'elles soient récupérées par le ramasse-miettes.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+	
+	/**
+	 * Projeter en mémoire une partie du fichier, en lecture seule.
+	 * 
+	 * @param position
+	 *            position dans le fichier.
+	 * @param size
+	 *            nombre d'octets, au plus {@link Integer#MAX_VALUE}.
+	 * @return projection.
+	 * @throws IOException
+	 *             si la projection échoue.
+	 */
+	private MappedByteBuffer map(final long position, final long size) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+	
+	/**
+	 * Obtenir la projection d'un morceau de trames, en la faisant à la
+	 * première demande.
+	 * 
+	 * @param chunk
+	 *            numéro du morceau.
+	 * @return projection du morceau.
+	 * @throws IOException
+	 *             si la projection échoue.
+	 */
+	private synchronized MappedByteBuffer chunk(final int chunk) throws IOException
+	{
+		if (chunks[chunk] == null)
+		{
+			chunks[chunk] = map(chunkPositions[chunk], chunkSizes[chunk]);
+		}
+		
+		return chunks[chunk];
+	}
+	
+	/**
+	 * Obtenir une vue en lecture seule d'une partie d'une projection.
+	 * 
+	 * @param map
+	 *            projection, qui n'est pas modifiée.
+	 * @param offset
+	 *            position du premier octet.
+	 * @param length
+	 *            nombre d'octets.
+	 * @return vue sur les octets.
+	 */
+	private static ByteBuffer slice(final ByteBuffer map, final int offset, final int length)
+	{
+		final ByteBuffer view = map.asReadOnlyBuffer();
+		view.limit(offset + length);
+		view.position(offset);
+		return view.slice();
+	}
+}
@@ -0,0 +1,298 @@
+package img.videoEncoder.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Ecriture d'une séquence encodée dans un fichier conteneur (voir
+ * {@link VideoFile}). Les entrées sont accumulées dans un buffer direct, et
+ * chaque buffer plein est écrit de façon asynchrone à une position multiple
+ * de sa taille pendant que le suivant se remplit : les écritures sont
+ * grandes et alignées, et le codage des trames ne s'arrête que si le disque
+ * a deux buffers de retard.
+ */
+public class VideoFileWriter implements AutoCloseable
+{
+	/**
+	 * Taille par défaut des buffers d'écriture.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	/**
+	 * Alignement des écritures : taille des pages et des blocs usuels.
+	 */
+	private static final int ALIGNMENT = 4096;
+	
+	/**
+	 * Fichier de destination.
+	 */
+	private final AsynchronousFileChannel channel;
+	/**
+	 * Paramètres de l'encodeur, utilisés pour le codage entropique.
+	 */
+	private final EncoderParams parameters;
+	
+	/**
+	 * Buffer en cours de remplissage.
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Buffer en cours d'écriture, ou libre.
+	 */
+	private ByteBuffer pending;
+	/**
+	 * Ecriture en cours, ou null.
+	 */
+	private Future<Integer> pendingWrite;
+	/**
+	 * Position dans le fichier de la suite de l'écriture en cours.
+	 */
+	private long pendingPosition;
+	/**
+	 * Position dans le fichier du début du buffer en cours de remplissage.
+	 */
+	private long bufferPosition;
+	
+	/**
+	 * Position de l'entrée de chaque trame écrite.
+	 */
+	private long[] offsets = new long[64];
+	/**
+	 * Taille des données de chaque trame écrite.
+	 */
+	private int[] sizes = new int[64];
+	/**
+	 * Type de chaque trame écrite.
+	 */
+	private byte[] types = new byte[64];
+	/**
+	 * Nombre de trames écrites.
+	 */
+	private int frameCount;
+	
+	/**
+	 * Créer un fichier conteneur, en écrivant son en-tête.
+	 * 
+	 * @param path
+	 *            chemin du fichier, remplacé s'il existe.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @throws IOException
+	 *             si le fichier ne peut pas être créé.
+	 */
+	public VideoFileWriter(final Path path, final EncoderParams parameters) throws IOException
+	{
+		this(path, parameters, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Créer un fichier conteneur, en écrivant son en-tête.
+	 * 
+	 * @param path
+	 *            chemin du fichier, remplacé s'il existe.
+	 * @param parameters
+	 *            paramètres de l'encodeur.
+	 * @param bufferSize
+	 *            taille des buffers d'écriture, arrondie au multiple de
+	 *            {@value #ALIGNMENT} supérieur.
+	 * @throws IOException
+	 *             si le fichier ne peut pas être créé.
+	 */
+	public VideoFileWriter(final Path path, final EncoderParams parameters, final int bufferSize) throws IOException
+	{
+		final int size = Math.max(ALIGNMENT, (bufferSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+		
+		this.parameters = parameters;
+		channel = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(size);
+		pending = ByteBuffer.allocateDirect(size);
+		
+		final ByteBuffer header = ByteBuffer.allocate(VideoFile.MAX_PARAMS_SIZE + 12);
+		VideoFile.writeHeader(header, parameters);
+		header.flip();
+		put(header);
+	}
+	
+	/**
+	 * Ajouter une trame à la fin du fichier.
+	 * 
+	 * @param frame
+	 *            trame encodée.
+	 * @throws IOException
+	 *             si l'écriture précédente a échoué.
+	 */
+	public void write(final EncodedFrame frame) throws IOException
+	{
+		final byte[] data = frame.toBytes(parameters);
+		
+		if (frameCount == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, 2*frameCount);
+			sizes = Arrays.copyOf(sizes, 2*frameCount);
+			types = Arrays.copyOf(types, 2*frameCount);
+		}
+		
+		offsets[frameCount] = bufferPosition + buffer.position();
+		sizes[frameCount] = data.length;
+		types[frameCount] = (byte) frame.getType().ordinal();
+		
+		final ByteBuffer header = ByteBuffer.allocate(VideoFile.RECORD_HEADER_SIZE);
+		header.put(types[frameCount]);
+		header.putInt(data.length);
+		header.putInt(CRC32C.compute(data, 0, data.length));
+		header.flip();
+		
+		put(header);
+		put(ByteBuffer.wrap(data));
+		++frameCount;
+	}
+	
+	/**
+	 * Ajouter toutes les trames d'un flux à la fin du fichier, dans l'ordre.
+	 * 
+	 * @param frames
+	 *            flux de trames encodées.
+	 * @throws IOException
+	 *             si une écriture a échoué.
+	 */
+	public void writeAll(final Stream<EncodedFrame> frames) throws IOException
+	{
+		final Iterator<EncodedFrame> iterator = frames.iterator();
+		while (iterator.hasNext())
+		{
+			write(iterator.next());
+		}
+	}
+	
+	/**
+	 * Obtenir le nombre de trames écrites.
+	 * @return nombre de trames écrites.
+	 */
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+	
+	/**
+	 * Ecrire l'index et le pied de fichier, attendre la fin des écritures et
+	 * fermer le fichier.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			final long indexPosition = bufferPosition + buffer.position();
+			final ByteBuffer index = ByteBuffer.allocate(8 + frameCount*VideoFile.INDEX_ENTRY_SIZE + 4 + VideoFile.FOOTER_SIZE);
+			
+			index.putInt(VideoFile.INDEX_MAGIC);
+			index.putInt(frameCount);
+			for (int i = 0; i < frameCount; ++i)
+			{
+				index.putLong(offsets[i]);
+				index.putInt(sizes[i]);
+				index.put(types[i]);
+			}
+			index.putInt(CRC32C.compute(index.array(), 0, index.position()));
+			
+			index.putLong(indexPosition);
+			index.putInt(VideoFile.END_MAGIC);
+			index.flip();
+			
+			put(index);
+			
+			// Dernier buffer, partiellement rempli.
+			swapBuffers();
+			awaitPendingWrite();
+		} finally
+		{
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Copier des octets dans les buffers d'écriture, en lançant l'écriture de
+	 * chaque buffer plein.
+	 * 
+	 * @param bytes
+	 *            octets à écrire, de la position à la limite.
+	 * @throws IOException
+	 *             si l'écriture précédente a échoué.
+	 */
+	private void put(final ByteBuffer bytes) throws IOException
+	{
+		while (bytes.hasRemaining())
+		{
+			final int n = Math.min(bytes.remaining(), buffer.remaining());
+			final int limit = bytes.limit();
+			
+			bytes.limit(bytes.position() + n);
+			buffer.put(bytes);
+			bytes.limit(limit);
+			
+			if (!buffer.hasRemaining())
+			{
+				swapBuffers();
+			}
+		}
+	}
+	
+	/**
+	 * Lancer l'écriture du buffer en cours de remplissage, après la fin de
+	 * l'écriture précédente, et continuer dans l'autre buffer.
+	 * 
+	 * @throws IOException
+	 *             si l'écriture précédente a échoué.
+	 */
+	private void swapBuffers() throws IOException
+	{
+		awaitPendingWrite();
+		
+		final ByteBuffer full = buffer;
+		buffer = pending;
+		pending = full;
+		
+		pending.flip();
+		pendingPosition = bufferPosition;
+		pendingWrite = channel.write(pending, pendingPosition);
+		
+		bufferPosition += pending.limit();
+		buffer.clear();
+	}
+	
+	/**
+	 * Attendre la fin de l'écriture en cours, en relançant les écritures
+	 * partielles.
+	 * 
+	 * @throws IOException
+	 *             si l'écriture a échoué.
+	 */
+	private void awaitPendingWrite() throws IOException
+	{
+		while (pendingWrite != null)
+		{
+			try
+			{
+				pendingPosition += pendingWrite.get();
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Ecriture interrompue.");
+			} catch (ExecutionException e)
+			{
+				throw new IOException("Echec de l'écriture.", e.getCause());
+			}
+			
+			pendingWrite = pending.hasRemaining() ? channel.write(pending, pendingPosition) : null;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package img.videoEncoder.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parcours en zig-zag d'un bloc carré de coefficients DCT : des basses vers
+ * les hautes fréquences, pour regrouper en fin de parcours les coefficients
+ * quantifiés à zéro.
+ */
+public class ZigZagScan
+{
+	/**
+	 * Parcours déjà calculés, par taille de bloc.
+	 */
+	private static final Map<Integer, ZigZagScan> CACHE = new ConcurrentHashMap<>();
+	
+	/**
+	 * Positions x des coefficients, dans l'ordre du parcours.
+	 */
+	private final int[] x;
+	/**
+	 * Positions y des coefficients, dans l'ordre du parcours.
+	 */
+	private final int[] y;
+	
+	/**
+	 * Calculer le parcours en zig-zag d'un bloc de la taille spécifiée.
+	 * 
+	 * @param blockSize
+	 *            taille des blocs.
+	 */
+	private ZigZagScan(final int blockSize)
+	{
+		x = new int[blockSize*blockSize];
+		y = new int[blockSize*blockSize];
+		
+		int k = 0;
+		for (int diagonal = 0; diagonal < 2*blockSize - 1; ++diagonal)
+		{
+			final int first = Math.min(diagonal, blockSize-1),
+					  last  = Math.max(0, diagonal - blockSize + 1);
+					
+			// Diagonales paires vers le haut à droite, impaires vers le bas à gauche.
+			for (int i = first; i >= last; --i, ++k)
+			{
+				x[k] = diagonal % 2 == 0 ? diagonal - i : i;
+				y[k] = diagonal % 2 == 0 ? i : diagonal - i;
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir le parcours en zig-zag des blocs de la taille spécifiée.
+	 * 
+	 * @param blockSize
+	 *            taille des blocs.
+	 * @return parcours en zig-zag.
+	 */
+	public static ZigZagScan get(final int blockSize)
+	{
+		return CACHE.computeIfAbsent(blockSize, ZigZagScan::new);
+	}
+	
+	/**
+	 * Obtenir le nombre de coefficients parcourus.
+	 * @return nombre de coefficients d'un bloc.
+	 */
+	public int length()
+	{
+		return x.length;
+	}
+	
+	/**
+	 * Obtenir la position x du k-ième coefficient du parcours.
+	 * 
+	 * @param k
+	 *            rang dans le parcours.
+	 * @return position x dans le bloc.
+	 */
+	public int x(final int k)
+	{
+		return x[k];
+	}
+	
+	/**
+	 * Obtenir la position y du k-ième coefficient du parcours.
+	 * 
+	 * @param k
+	 *            rang dans le parcours.
+	 * @return position y dans le bloc.
+	 */
+	public int y(final int k)
+	{
+		return y[k];
+	}
+}
@@ -1,23 +1,41 @@
 package test;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import img.BytePlane;
 import img.Images;
 import img.Videos;
 import img.math.Complex;
 import img.math.Matrices;
+import img.math.MotionField;
 import img.math.transforms.DCT;
+import img.math.transforms.DWT;
 import img.math.transforms.FFT;
 import img.prediction.DPCM;
+import img.videoEncoder.FrameThreading;
+import img.videoEncoder.RandomAccessDecoder;
+import img.videoEncoder.StagedEncoder;
 import img.videoEncoder.VideoEncoder;
+import img.videoEncoder.VideoEncodingPipeline;
 import img.videoEncoder.io.EncodedFrame;
+import img.videoEncoder.io.EncodedFrame.FrameType;
 import img.videoEncoder.io.EncoderParams;
+import img.videoEncoder.io.EncoderParams.EntropyCoding;
+import img.videoEncoder.io.EncoderParams.PlaneStorage;
+import img.videoEncoder.io.VideoFileReader;
+import img.videoEncoder.io.VideoFileWriter;
 import test.plot.Plot;
 
 /**
@@ -173,6 +191,49 @@ public class Test
 		Plot.showImg(Images.grayToJavaImg(img));
 	}
 	
+	/**
+	 * Tester la transformée en ondelettes 5/3 : la reconstruction doit être
+	 * exacte.
+	 */
+	public static void testDWT()
+	{
+		// Nombre de tests échoués.
+		int nFail = 0;
+		
+		for (int i = 0; i < 100; ++i)
+		{
+			// Tailles quelconques, pas forcément paires.
+			final int h = 1 + (int)(Math.random()*64),
+					  w = 1 + (int)(Math.random()*64),
+					  levels = 1 + (int)(Math.random()*4);
+			
+			final int[][] randomMatrix = new int[h][];
+			for (int y = 0; y < h; ++y)
+			{
+				randomMatrix[y] = IntStream.range(0, w).map(k->(int)((Math.random()-0.5)*510)).toArray();
+			}
+			
+			final int[][] matrixRec = Arrays.stream(randomMatrix).map(int[]::clone).toArray(int[][]::new);
+			DWT.transform2D(matrixRec, levels);
+			DWT.inverseTransform2D(matrixRec, levels);
+			
+			if (!Arrays.deepEquals(randomMatrix, matrixRec))
+			{
+				System.out.println("==| Echec du test |================ " + w + "x" + h + ", " + levels + " niveaux");
+				++nFail;
+			}
+		}
+		
+		if (nFail == 0)
+		{
+			System.out.println("Tous les tests ont été passés avec succès.");
+		}
+		else
+		{
+			System.out.println("Echec de " + nFail + " test.");
+		}
+	}
+	
 	/**
 	 * Tester la lecture d'images et leur affichage.
 	 * @throws FileNotFoundException
@@ -213,6 +274,42 @@ OUT_LOOP: for (int y = 0; y < h; ++y)
 		
 	}
 	
+	/**
+	 * Vérifier que les DPCM en front d'onde donnent le même résultat, bit à
+	 * bit, que les versions séquentielles.
+	 */
+	public static void testParallelDPCM()
+	{
+		final int w = 1280,
+				  h = 720;
+		
+		final double[][] randomMatrix = new double[h][];
+		for (int l = 0; l < randomMatrix.length; ++l)
+		{
+			randomMatrix[l] = IntStream.range(0, w).mapToDouble(i->Math.random()*500).toArray();
+		}
+		
+		final double[][] error = DPCM.encode(randomMatrix, 1);
+		System.out.println("Codage : "
+				+ (Arrays.deepEquals(error, DPCM.parallelEncode(randomMatrix, 1)) ? "OK" : "Erreur !"));
+		System.out.println("Décodage : "
+				+ (Arrays.deepEquals(DPCM.decode(error), DPCM.parallelDecode(error)) ? "OK" : "Erreur !"));
+		
+		final MotionField field = new MotionField(w/2, h/2);
+		for (int by = 0; by < field.getHeight(); ++by)
+		{
+			for (int bx = 0; bx < field.getWidth(); ++bx)
+			{
+				field.set(bx, by, (int)(Math.random()*33) - 16, (int)(Math.random()*33) - 16);
+			}
+		}
+		
+		final MotionField fieldError = DPCM.encodeMedian(field);
+		System.out.println("Vecteurs : "
+				+ (fieldError.equals(DPCM.parallelEncodeMedian(field))
+						&& field.equals(DPCM.parallelDecodeMedian(fieldError)) ? "OK" : "Erreur !"));
+	}
+	
 	/**
 	 * Tester l'encodage d'une séquence.
 	 * @throws FileNotFoundException
@@ -238,6 +335,422 @@ OUT_LOOP: for (int y = 0; y < h; ++y)
 					.forEach(Plot::showImg);
 	}
 	
+	/**
+	 * Vérifier que les trames relues depuis le flux binaire sont identiques
+	 * aux trames encodées, et afficher la taille de chacune.
+	 * @throws FileNotFoundException
+	 */
+	public static void testBitstream() throws FileNotFoundException
+	{
+		for (final EntropyCoding entropyCoding : EntropyCoding.values())
+		{
+			final EncoderParams params = new EncoderParams().entropyCoding(entropyCoding);
+			System.out.println(entropyCoding + " :");
+			
+			VideoEncoder.encode(Videos.readGray(getTestFile("mas")), params).forEach(frame ->
+			{
+				final byte[] bytes = frame.toBytes(params);
+				final EncodedFrame decoded = EncodedFrame.fromBytes(bytes, params);
+				
+				final boolean identical = Arrays.deepEquals(frame.getTransformedErrors(), decoded.getTransformedErrors())
+						&& Arrays.deepEquals(frame.getCodedBlockPattern(), decoded.getCodedBlockPattern())
+						&& (frame.getType() == FrameType.I
+							|| frame.getTransformedBlockMovementMap().equals(decoded.getTransformedBlockMovementMap()));
+				
+				System.out.println(frame.getType() + " : " + 8*bytes.length/1000.0 + " Kbits, "
+						+ (identical ? "OK" : "Erreur !"));
+			});
+		}
+	}
+	
+	/**
+	 * Vérifier qu'une séquence écrite dans un fichier conteneur est relue à
+	 * l'identique, dans l'ordre puis à rebours, pour chaque codage entropique.
+	 * 
+	 * @throws IOException
+	 */
+	public static void testVideoFile() throws IOException
+	{
+		final Path path = Files.createTempFile("sequence", ".venc");
+		
+		try
+		{
+			for (final EntropyCoding entropyCoding : EntropyCoding.values())
+			{
+				final EncoderParams params = new EncoderParams().entropyCoding(entropyCoding);
+				final List<EncodedFrame> frames = VideoEncoder.encode(Videos.readGray(getTestFile("mas")), params)
+						.collect(Collectors.toList());
+				
+				try (final VideoFileWriter writer = new VideoFileWriter(path, params))
+				{
+					writer.writeAll(frames.stream());
+				}
+				
+				try (final VideoFileReader reader = new VideoFileReader(path))
+				{
+					boolean identical = reader.getFrameCount() == frames.size()
+							&& reader.getParameters().getEntropyCoding() == entropyCoding;
+					
+					for (int i = reader.getFrameCount() - 1; identical && i >= 0; --i)
+					{
+						final EncodedFrame frame = frames.get(i),
+										   read = reader.getFrame(i);
+						
+						identical = reader.getFrameType(i) == frame.getType()
+								&& Arrays.deepEquals(frame.getTransformedErrors(), read.getTransformedErrors())
+								&& Arrays.deepEquals(frame.getCodedBlockPattern(), read.getCodedBlockPattern());
+					}
+					
+					System.out.println(entropyCoding + " : " + Files.size(path) + " octets, "
+							+ reader.getFrameCount() + " trames, " + (identical ? "OK" : "Erreur !"));
+				}
+			}
+		} finally
+		{
+			Files.delete(path);
+		}
+	}
+	
+	/**
+	 * Vérifier que les trames atteintes par accès aléatoire, dans le désordre,
+	 * et les trames intra du défilement rapide sont identiques aux trames
+	 * décodées dans l'ordre.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void testRandomAccessDecoding() throws FileNotFoundException
+	{
+		final EncoderParams params = new EncoderParams();
+		final List<EncodedFrame> frames = VideoEncoder.encode(Videos.readGray(getTestFile("mas")), params)
+				.collect(Collectors.toList());
+		final List<int[][]> decoded = VideoEncoder.decode(frames.stream(), params).collect(Collectors.toList());
+		
+		try (final RandomAccessDecoder decoder = new RandomAccessDecoder(frames, params))
+		{
+			final int[] order = {2, 0, 3, 3, 1, 2};
+			for (final int index : order)
+			{
+				final BytePlane frame = decoder.seek(index);
+				System.out.println("Trame " + index + " (depuis la trame " + decoder.findKeyFrame(index) + ") : "
+						+ (Arrays.deepEquals(frame.toInt(), decoded.get(index)) ? "OK" : "Erreur !"));
+				frame.release();
+			}
+			
+			decoder.keyFrames().forEach(frame ->
+			{
+				System.out.println("Trame intra " + decoder.getPosition() + " : "
+						+ (Arrays.deepEquals(frame.toInt(), decoded.get(decoder.getPosition())) ? "OK" : "Erreur !"));
+				frame.release();
+			});
+		}
+	}
+	
+	/**
+	 * Vérifier que l'encodage et le décodage par groupes de trames en
+	 * parallèle donnent les mêmes trames que l'encodage et le décodage
+	 * séquentiels, et comparer leurs durées.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void testGopParallelEncoding() throws FileNotFoundException
+	{
+		final EncoderParams params = new EncoderParams().gopLength(2);
+		final List<int[][]> originalFrames = Videos.readGray(getTestFile("mas")).collect(Collectors.toList());
+		final List<int[][]> sequence = IntStream.range(0, 8)
+				.mapToObj(i -> originalFrames)
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+		
+		long start = System.nanoTime();
+		final List<EncodedFrame> frames = VideoEncoder.encode(sequence.stream(), params).collect(Collectors.toList());
+		final long sequentialTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		final List<EncodedFrame> parallelFrames = VideoEncoder
+				.encodeGopParallel(sequence.stream().map(BytePlane::fromInt), params)
+				.collect(Collectors.toList());
+		final long parallelTime = System.nanoTime() - start;
+		
+		boolean identical = frames.size() == parallelFrames.size();
+		for (int i = 0; identical && i < frames.size(); ++i)
+		{
+			identical = Arrays.equals(frames.get(i).toBytes(params), parallelFrames.get(i).toBytes(params));
+		}
+		
+		final List<int[][]> decoded = VideoEncoder.decode(frames.stream(), params).collect(Collectors.toList());
+		final List<int[][]> parallelDecoded = VideoEncoder.decodeGopParallel(frames.stream(), params)
+				.map(plane ->
+				{
+					final int[][] frame = plane.toInt();
+					plane.release();
+					return frame;
+				})
+				.collect(Collectors.toList());
+		
+		for (int i = 0; identical && i < decoded.size(); ++i)
+		{
+			identical = Arrays.deepEquals(decoded.get(i), parallelDecoded.get(i));
+		}
+		
+		System.out.printf("%d trames : séquentiel %.1f ms, parallèle %.1f ms, %s%n", frames.size(),
+				sequentialTime / 1e6, parallelTime / 1e6, identical ? "OK" : "Erreur !");
+	}
+	
+	/**
+	 * Vérifier que les trames découpées en tranches sont relues à l'identique
+	 * et comparer la taille du flux à celle des trames entières, pour chaque
+	 * codage entropique.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void testSlices() throws FileNotFoundException
+	{
+		for (final EntropyCoding entropyCoding : EntropyCoding.values())
+		{
+			for (final int sliceCount : new int[] {1, 2, 5})
+			{
+				final EncoderParams params = new EncoderParams().entropyCoding(entropyCoding).sliceCount(sliceCount);
+				
+				final long[] bits = new long[1];
+				final boolean identical = VideoEncoder.encode(Videos.readGray(getTestFile("mas")), params).allMatch(frame ->
+				{
+					final byte[] bytes = frame.toBytes(params);
+					final EncodedFrame decoded = EncodedFrame.fromBytes(bytes, params);
+					bits[0] += 8*bytes.length;
+					
+					return Arrays.deepEquals(frame.getTransformedErrors(), decoded.getTransformedErrors())
+							&& Arrays.deepEquals(frame.getCodedBlockPattern(), decoded.getCodedBlockPattern());
+				});
+				
+				System.out.println(entropyCoding + ", " + sliceCount + " tranche(s) : " + bits[0]/1000.0 + " Kbits, "
+						+ (identical ? "OK" : "Erreur !"));
+			}
+		}
+	}
+	
+	/**
+	 * Vérifier que l'encodage et le décodage avec plusieurs trames en cours
+	 * donnent les mêmes trames que l'encodage et le décodage séquentiels, et
+	 * comparer leurs durées.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void testFrameThreading() throws FileNotFoundException
+	{
+		final EncoderParams params = new EncoderParams();
+		final List<int[][]> originalFrames = Videos.readGray(getTestFile("mas")).collect(Collectors.toList());
+		final List<int[][]> sequence = IntStream.range(0, 8)
+				.mapToObj(i -> originalFrames)
+				.flatMap(List::stream)
+				.collect(Collectors.toList());
+		
+		long start = System.nanoTime();
+		final List<EncodedFrame> frames = VideoEncoder.encode(sequence.stream(), params).collect(Collectors.toList());
+		final long sequentialTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		final List<EncodedFrame> threadedFrames;
+		try (final Stream<EncodedFrame> stream = FrameThreading.encode(sequence.stream().map(BytePlane::fromInt), params))
+		{
+			threadedFrames = stream.collect(Collectors.toList());
+		}
+		final long threadedTime = System.nanoTime() - start;
+		
+		boolean identical = frames.size() == threadedFrames.size();
+		for (int i = 0; identical && i < frames.size(); ++i)
+		{
+			identical = Arrays.equals(frames.get(i).toBytes(params), threadedFrames.get(i).toBytes(params));
+		}
+		
+		final List<int[][]> decoded = VideoEncoder.decode(frames.stream(), params).collect(Collectors.toList());
+		final List<int[][]> threadedDecoded;
+		try (final Stream<BytePlane> stream = FrameThreading.decode(frames.stream(), params))
+		{
+			threadedDecoded = stream.map(plane ->
+					{
+						final int[][] frame = plane.toInt();
+						plane.release();
+						return frame;
+					})
+					.collect(Collectors.toList());
+		}
+		
+		for (int i = 0; identical && i < decoded.size(); ++i)
+		{
+			identical = Arrays.deepEquals(decoded.get(i), threadedDecoded.get(i));
+		}
+		
+		System.out.printf("%d trames : séquentiel %.1f ms, %d trames en cours %.1f ms, %s%n", frames.size(),
+				sequentialTime / 1e6, FrameThreading.defaultFramesInFlight(), threadedTime / 1e6,
+				identical ? "OK" : "Erreur !");
+	}
+	
+	/**
+	 * Vérifier que l'encodeur en étages donne les mêmes trames et les mêmes
+	 * flux binaires que l'encodage séquentiel, et comparer leurs durées, de la
+	 * lecture des images au codage entropique.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void testStagedEncoder() throws FileNotFoundException
+	{
+		final EncoderParams params = new EncoderParams();
+		final Path sequencePath = getTestFile("mas");
+		
+		long start = System.nanoTime();
+		final List<byte[]> bitstreams = VideoEncoder.encodePlanes(Videos.readGrayPlanes(sequencePath), params)
+				.map(frame -> frame.toBytes(params))
+				.collect(Collectors.toList());
+		final long sequentialTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		final List<StagedEncoder.CodedFrame> stagedFrames;
+		try (final Stream<StagedEncoder.CodedFrame> stream = StagedEncoder.encode(Videos.readGrayPlanes(sequencePath), params))
+		{
+			stagedFrames = stream.collect(Collectors.toList());
+		}
+		final long stagedTime = System.nanoTime() - start;
+		
+		boolean identical = bitstreams.size() == stagedFrames.size();
+		for (int i = 0; identical && i < bitstreams.size(); ++i)
+		{
+			identical = Arrays.equals(bitstreams.get(i), stagedFrames.get(i).getBytes())
+					&& Arrays.equals(bitstreams.get(i), stagedFrames.get(i).getFrame().toBytes(params));
+		}
+		
+		System.out.printf("%d trames : séquentiel %.1f ms, en étages %.1f ms, %s%n", bitstreams.size(),
+				sequentialTime / 1e6, stagedTime / 1e6, identical ? "OK" : "Erreur !");
+	}
+	
+	/**
+	 * Mesurer les débits de codage et de décodage entropique des trames de la
+	 * séquence de test, en mégaoctets de pixels par seconde, et la taille du
+	 * flux, pour chaque codage entropique.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void benchEntropyCoding() throws FileNotFoundException
+	{
+		final int warmup = 10,
+				  repeats = 20;
+		
+		for (final EntropyCoding entropyCoding : EntropyCoding.values())
+		{
+			final EncoderParams params = new EncoderParams().entropyCoding(entropyCoding);
+			final List<EncodedFrame> frames = VideoEncoder.encode(Videos.readGray(getTestFile("mas")), params)
+					.collect(Collectors.toList());
+			
+			long pixels = 0,
+				 bytes = 0,
+				 encodeTime = 0,
+				 decodeTime = 0;
+			
+			// Passes de préchauffage, non mesurées.
+			for (int i = -warmup; i < repeats; ++i)
+			{
+				for (final EncodedFrame frame : frames)
+				{
+					final long start = System.nanoTime();
+					final byte[] stream = frame.toBytes(params);
+					final long encoded = System.nanoTime();
+					EncodedFrame.fromBytes(stream, params);
+					final long decoded = System.nanoTime();
+					
+					if (i >= 0)
+					{
+						pixels += frame.getWidth() * frame.getHeight();
+						bytes += stream.length;
+						encodeTime += encoded - start;
+						decodeTime += decoded - encoded;
+					}
+				}
+			}
+			
+			System.out.printf("%s : %.1f Kbits/trame, codage %.1f Mo/s, décodage %.1f Mo/s%n", entropyCoding,
+					8.0*bytes / (1000.0*frames.size()*repeats), 1000.0*pixels / encodeTime,
+					1000.0*pixels / decodeTime);
+		}
+	}
+	
+	/**
+	 * Octets alloués par trame tolérés au-delà des données de la trame
+	 * encodée : en-têtes des objets et tableaux, champ de vecteurs avant
+	 * prédiction, vues des tranches.
+	 */
+	private static final long ALLOCATION_ALLOWANCE = 24*1024;
+	
+	/**
+	 * Mesurer les octets alloués par trame encodée en régime établi (tous
+	 * threads confondus), pour chaque stockage des plans, et vérifier qu'au-delà
+	 * des données compactes rendues dans la trame encodée (coefficients, motif
+	 * des blocs codés et vecteurs), l'encodeur n'alloue presque rien : au plus
+	 * {@value #ALLOCATION_ALLOWANCE} octets par trame.
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	public static void benchAllocationRate() throws FileNotFoundException
+	{
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+		{
+			System.err.println("Mesure des allocations non supportée par cette JVM.");
+			return;
+		}
+		
+		final List<BytePlane> frames = Videos.readGrayPlanes(getTestFile("mas")).collect(Collectors.toList());
+		final int nFrames = 100;
+		
+		for (final PlaneStorage planeStorage : PlaneStorage.values())
+		{
+			try (final VideoEncodingPipeline pipeline = new VideoEncodingPipeline(
+					new EncoderParams().planeStorage(planeStorage)))
+			{
+				// Préchauffage : compilation et remplissage du pool.
+				for (int i = 0; i < nFrames; ++i)
+				{
+					pipeline.apply(frames.get(i % frames.size()));
+				}
+				
+				long outputBytes = 0;
+				final long start = allocatedBytes((com.sun.management.ThreadMXBean) threads);
+				for (int i = 0; i < nFrames; ++i)
+				{
+					outputBytes += pipeline.apply(frames.get(i % frames.size())).getMemorySize();
+				}
+				final long bytesPerFrame = (allocatedBytes((com.sun.management.ThreadMXBean) threads) - start) / nFrames;
+				
+				final long outputBytesPerFrame = outputBytes / nFrames,
+						   budget = outputBytesPerFrame + ALLOCATION_ALLOWANCE;
+				
+				System.out.println(planeStorage + " : octets alloués par trame : " + bytesPerFrame
+						+ " (trame encodée : " + outputBytesPerFrame + ", budget : " + budget + ")");
+				
+				if (bytesPerFrame > budget)
+				{
+					throw new IllegalStateException("L'encodeur alloue trop par trame (" + planeStorage + ") : "
+							+ bytesPerFrame + " octets.");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Obtenir le nombre total d'octets alloués par les threads vivants.
+	 * 
+	 * @param threads
+	 *            interface de gestion des threads de la JVM.
+	 * @return nombre d'octets alloués.
+	 */
+	private static long allocatedBytes(final com.sun.management.ThreadMXBean threads)
+	{
+		long total = 0;
+		for (final long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+		{
+			total += Math.max(bytes, 0);
+		}
+		return total;
+	}
+	
 	public static void main(final String[] args)
 	{
 		// testFFT();
@@ -265,6 +778,16 @@ OUT_LOOP: for (int y = 0; y < h; ++y)
 		*/
 		
 		testDPCM();
+		//testParallelDPCM();
+		/*
+		try
+		{
+			benchAllocationRate();
+		} catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+		}
+		*/
 		/*
 		try
 		{
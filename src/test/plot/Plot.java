@@ -7,7 +7,7 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 
 import gui.custom.VectorMapView;
-import img.math.Vector2D;
+import img.math.MotionField;
 
 /**
  * Classe utilitaire pour l'affichage de fonctions et d'images.
@@ -42,7 +42,7 @@ public class Plot
 		frame.pack();
 	}
 	
-	public static void showVectorMap(final Vector2D[][] vectorMap, final int bs)
+	public static void showVectorMap(final MotionField vectorMap, final int bs)
 	{
 		JFrame frame = new JFrame();
 		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);